@@ -0,0 +1,96 @@
+package com.fsfind.benchmarks;
+
+import com.fsfind.FSFindExpression;
+import com.fsfind.FSFindFilters;
+import com.fsfind.FileStatusFilter;
+import com.fsfind.FileStatusFilters;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per status of evaluating a filter, on statuses held in memory with a
+ * mix of names, sizes, owners and a few <code>DONT_DELETE</code> paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(FilterBenchmark.STATUSES)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+    static final int STATUSES = 4096;
+    private static final String[] EXTENSIONS = {".tmp", ".log", ".parquet", ".keep"};
+    private static final String[] USERS = {"hive", "etl", "spark"};
+
+    private FileStatus[] statuses;
+    private FileStatusFilter pathFilter;
+
+    @Setup
+    public void setUp() {
+        statuses = new FileStatus[STATUSES];
+        for (int i = 0; i < STATUSES; i++) {
+            String dir = i % 64 == 0 ? "/data/" + FSFindFilters.DONT_DELETE : "/data/logs";
+            String user = USERS[i % USERS.length];
+            statuses[i] = new FileStatus((i % 7) * (1L << 29), false, 3, 128 << 20, 1000L,
+                    1000L, FsPermission.getFileDefault(), user, user,
+                    new Path(String.format("%s/part-%05d%s", dir, i,
+                            EXTENSIONS[i % EXTENSIONS.length])));
+        }
+        pathFilter = FileStatusFilters.of(FSFindFilters.MARKED_AS_DONT_DELETE);
+    }
+
+    @Benchmark
+    public int expression(Expression expression) {
+        return accepted(expression.compiled);
+    }
+
+    @Benchmark
+    public int pathFilter() {
+        return accepted(pathFilter);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Expression {
+
+        @Param({
+                "-name *.tmp",
+                "-name *.tmp -and -size +1G -and -not -user hive",
+                "( -user hive -or -group etl ) -and -not -regex .*/DONT_DELETE/.*"})
+        public String expression;
+
+        private FileStatusFilter compiled;
+
+        @Setup
+        public void setUp() {
+            compiled = FSFindExpression.compile(expression);
+        }
+    }
+
+    private int accepted(FileStatusFilter filter) {
+        int accepted = 0;
+        for (FileStatus status : statuses) {
+            if (filter.accept(status)) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+}
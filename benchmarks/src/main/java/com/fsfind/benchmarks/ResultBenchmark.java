@@ -0,0 +1,104 @@
+package com.fsfind.benchmarks;
+
+import com.fsfind.FSFindImpl;
+import com.fsfind.FSFindQuery;
+import com.fsfind.FSFindResult;
+import com.fsfind.synthetic.SyntheticFileSystem;
+
+import org.apache.hadoop.fs.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The bookkeeping of a search without the filesystem: collecting candidates
+ * into an <code>FSFindResult</code>, collapsing directories into their parent
+ * the way a search including directories does, reading the candidates back,
+ * and making the query of the next batch from a result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultBenchmark {
+
+    private static final int FILES_PER_DIR = 64;
+
+    private Path[] dirs;
+    private Path[] files;
+    private Path searchPath;
+    private FSFindResult collected;
+    private FSFindResult batch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dirs = new Path[TreeShape.FILES / FILES_PER_DIR];
+        files = new Path[TreeShape.FILES];
+        for (int i = 0; i < files.length; i++) {
+            if (i % FILES_PER_DIR == 0) {
+                dirs[i / FILES_PER_DIR] = new Path(String.format("hdfs://nn/data/logs/dir%03d",
+                        i / FILES_PER_DIR));
+            }
+            files[i] = new Path(dirs[i / FILES_PER_DIR], String.format("part-%05d", i));
+        }
+        collected = collect();
+        SyntheticFileSystem fs = TreeShape.HUGE.create(new Path("/data/logs"));
+        searchPath = fs.makeQualified(new Path("/data/logs"));
+        batch = new FSFindImpl(true, fs).find(FSFindQuery.make(searchPath),
+                TreeShape.PURGE_TIME, 100);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TreeShape.FILES)
+    public FSFindResult collect() {
+        FSFindResult result = new FSFindResult();
+        for (Path file : files) {
+            result.add(file);
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TreeShape.FILES)
+    public FSFindResult collapse() {
+        FSFindResult result = new FSFindResult();
+        for (int i = 0; i < files.length; i++) {
+            result.add(files[i]);
+            if (i % FILES_PER_DIR == FILES_PER_DIR - 1) {
+                Path dir = dirs[i / FILES_PER_DIR];
+                result.removeLast(FILES_PER_DIR);
+                result.add(dir);
+                result.markExplored(dir);
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TreeShape.FILES)
+    public void readBack(Blackhole blackhole) {
+        for (Path candidate : collected.candidates()) {
+            blackhole.consume(candidate);
+        }
+    }
+
+    @Benchmark
+    public FSFindQuery makeFromResult() {
+        return FSFindQuery.makeFromResult(searchPath, batch);
+    }
+}
@@ -0,0 +1,94 @@
+package com.fsfind.benchmarks;
+
+import com.fsfind.FSFind;
+import com.fsfind.FSFindImpl;
+import com.fsfind.FSFindIterator;
+import com.fsfind.FSFindQuery;
+import com.fsfind.FSFindResult;
+import com.fsfind.FileStatusFilters;
+import com.fsfind.synthetic.SyntheticFileSystem;
+
+import org.apache.hadoop.fs.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of walking a tree, in time and bytes allocated (with
+ * <code>-prof gc</code>) per file found. Comparing the two values of
+ * <code>includeDirectories</code> gives the cost of collapsing directories
+ * whose files are all candidates into the directory itself, the batched
+ * search adds the cost of resuming from the last batch's result.
+ * <p/>
+ * The tree is generated by a {@link SyntheticFileSystem}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(TreeShape.FILES)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TraversalBenchmark {
+
+    private static final int BATCH = 100;
+
+    @Param({"WIDE", "DEEP", "HUGE"})
+    public TreeShape shape;
+
+    @Param({"false", "true"})
+    public boolean includeDirectories;
+
+    private Path searchPath;
+    private FSFind fsFind;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SyntheticFileSystem fs = shape.create(new Path("/data/logs"));
+        searchPath = fs.makeQualified(new Path("/data/logs"));
+        fsFind = new FSFindImpl(includeDirectories, fs);
+    }
+
+    @Benchmark
+    public FSFindResult find() throws IOException {
+        return fsFind.findMatching(FSFindQuery.make(searchPath), TreeShape.PURGE_TIME,
+                Integer.MAX_VALUE, FileStatusFilters.all());
+    }
+
+    @Benchmark
+    public void stream(Blackhole blackhole) throws IOException {
+        FSFindIterator iterator = fsFind.streamMatching(FSFindQuery.make(searchPath),
+                TreeShape.PURGE_TIME, FileStatusFilters.all());
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+
+    @Benchmark
+    public int findBatched() throws IOException {
+        int found = 0;
+        FSFindResult result = fsFind.findMatching(FSFindQuery.make(searchPath),
+                TreeShape.PURGE_TIME, BATCH, FileStatusFilters.all());
+        found += result.size();
+        while (!result.cursor().isExhausted()) {
+            result = fsFind.findMatching(FSFindQuery.makeFromResult(searchPath, result),
+                    TreeShape.PURGE_TIME, BATCH, FileStatusFilters.all());
+            found += result.size();
+        }
+        return found;
+    }
+}
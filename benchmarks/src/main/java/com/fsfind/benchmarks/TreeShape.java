@@ -0,0 +1,80 @@
+package com.fsfind.benchmarks;
+
+import com.fsfind.synthetic.NamespaceGenerator;
+import com.fsfind.synthetic.SyntheticFileSystem;
+
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Shapes of the trees searched by the benchmarks. Every shape holds the same
+ * number of files, all of them older than {@link #PURGE_TIME}, so that the
+ * scores of the shapes are comparable and can be normalized per file.
+ */
+public enum TreeShape {
+
+    /**
+     * One level of directories with as many files each.
+     */
+    WIDE {
+        @Override
+        NamespaceGenerator.Builder levels(NamespaceGenerator.Builder builder) {
+            return builder.directories("dir", 64).files(64);
+        }
+    },
+
+    /**
+     * Eight levels of two directories each, with a few files in each
+     * directory of the last level.
+     */
+    DEEP {
+        @Override
+        NamespaceGenerator.Builder levels(NamespaceGenerator.Builder builder) {
+            for (int depth = 0; depth < 8; depth++) {
+                builder.directories("dir", 2);
+            }
+            return builder.files(16);
+        }
+    },
+
+    /**
+     * A couple of huge directories, each listed over several pages.
+     */
+    HUGE {
+        @Override
+        NamespaceGenerator.Builder levels(NamespaceGenerator.Builder builder) {
+            return builder.directories("dir", 2).files(2048);
+        }
+    };
+
+    /**
+     * Number of files of every shape.
+     */
+    public static final int FILES = 4096;
+
+    /**
+     * Purge time the files are older than.
+     */
+    public static final long PURGE_TIME = 2000L;
+
+    private static final long MTIME = 1000L;
+    private static final long LENGTH = 64L << 20;
+
+    /**
+     * Add the levels of the shape, and its files.
+     */
+    abstract NamespaceGenerator.Builder levels(NamespaceGenerator.Builder builder);
+
+    /**
+     * Generate the tree under given directory. Listings are generated as
+     * directories get listed, so their cost is part of the scores.
+     */
+    SyntheticFileSystem create(Path root) {
+        NamespaceGenerator.Builder builder = NamespaceGenerator.builder()
+                .under(root.toUri().getPath());
+        return new SyntheticFileSystem(levels(builder)
+                .now(MTIME)
+                .sizes(LENGTH, LENGTH)
+                .owner("hive")
+                .build());
+    }
+}
@@ -0,0 +1,242 @@
+package com.fsfind;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.io.Closeables;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Holds any number of candidate paths in a bounded amount of memory. Up to a
+ * window of paths is kept in memory, a full window is sorted and spilled to a
+ * run file in a local directory. The paths are read back as a single stream
+ * in path order, merged from the runs and the window.
+ * <p/>
+ * A run is front coded: as the paths are sorted, each one is written as the
+ * number of leading bytes it shares with the previous one followed by the
+ * rest of its UTF-8 bytes, both lengths as variable length integers. The paths
+ * under a directory share the directory's bytes, so a run takes up a fraction
+ * of the bytes of the paths.
+ * <p/>
+ * Not thread safe. Once read back, no path can be added any more. The run
+ * files are deleted on close.
+ */
+public final class CandidateBuffer implements Closeable {
+
+    public static final Logger LOG = Logger.getLogger(CandidateBuffer.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File spillDir;
+    private final String[] window;
+    private int windowSize = 0;
+    private final List<File> runs = Lists.newArrayList();
+    private long size = 0;
+    private boolean reading = false;
+    private final List<Closeable> readers = Lists.newArrayList();
+
+    /**
+     * @param spillDir   local directory to spill the runs to
+     * @param windowSize the most paths held in memory
+     */
+    public CandidateBuffer(File spillDir, int windowSize) {
+        Preconditions.checkArgument(windowSize > 0, "windowSize has to be positive");
+        this.spillDir = spillDir;
+        this.window = new String[windowSize];
+    }
+
+    /**
+     * @param path a candidate
+     */
+    public void add(Path path) throws IOException {
+        Preconditions.checkState(!reading, "The candidates are being read back");
+        if (windowSize == window.length) {
+            spill();
+        }
+        window[windowSize++] = path.toString();
+        size++;
+    }
+
+    /**
+     * @return number of candidates added
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return number of run files spilled so far
+     */
+    public int runs() {
+        return runs.size();
+    }
+
+    /**
+     * Read the candidates back, in path order. Can be called once.
+     */
+    public RemoteIterator<Path> iterator() throws IOException {
+        Preconditions.checkState(!reading, "The candidates can only be read back once");
+        reading = true;
+        Arrays.sort(window, 0, windowSize);
+        final PriorityQueue<Run> heads = new PriorityQueue<Run>();
+        List<Run> sources = Lists.newArrayList();
+        sources.add(new WindowRun(Arrays.asList(window).subList(0, windowSize).iterator()));
+        for (File run : runs) {
+            RunReader reader = new RunReader(run);
+            readers.add(reader);
+            sources.add(reader);
+        }
+        for (Run source : sources) {
+            if (source.head != null) {
+                heads.add(source);
+            }
+        }
+        return new RemoteIterator<Path>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public Path next() throws IOException {
+                Run run = heads.poll();
+                if (run == null) {
+                    throw new NoSuchElementException();
+                }
+                String next = run.head;
+                if (run.advance()) {
+                    heads.add(run);
+                }
+                return new Path(next);
+            }
+        };
+    }
+
+    /**
+     * Delete the run files.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Closeable reader : readers) {
+            Closeables.close(reader, true);
+        }
+        for (File run : runs) {
+            if (!run.delete() && run.exists()) {
+                LOG.warn("Couldn't delete " + run);
+            }
+        }
+        runs.clear();
+    }
+
+    private void spill() throws IOException {
+        Arrays.sort(window, 0, windowSize);
+        File run = File.createTempFile("candidates", ".run", spillDir);
+        runs.add(run);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(run), BUFFER_SIZE));
+        boolean threw = true;
+        try {
+            byte[] previous = new byte[0];
+            for (int i = 0; i < windowSize; i++) {
+                byte[] path = window[i].getBytes(Charsets.UTF_8);
+                int shared = 0;
+                int max = Math.min(previous.length, path.length);
+                while (shared < max && previous[shared] == path[shared]) {
+                    shared++;
+                }
+                WritableUtils.writeVInt(out, shared);
+                WritableUtils.writeVInt(out, path.length - shared);
+                out.write(path, shared, path.length - shared);
+                previous = path;
+                window[i] = null;
+            }
+            threw = false;
+        } finally {
+            Closeables.close(out, threw);
+        }
+        LOG.debug(String.format("Spilled %d candidates to %s, %d bytes", windowSize, run,
+                run.length()));
+        windowSize = 0;
+    }
+
+    /* a sorted source of paths, ordered by its head */
+    private abstract static class Run implements Comparable<Run> {
+        String head;
+
+        /* move to the next path, false if there is none */
+        abstract boolean advance() throws IOException;
+
+        @Override
+        public int compareTo(Run other) {
+            return head.compareTo(other.head);
+        }
+    }
+
+    private static final class WindowRun extends Run {
+        private final Iterator<String> paths;
+
+        private WindowRun(Iterator<String> paths) {
+            this.paths = paths;
+            advance();
+        }
+
+        @Override
+        boolean advance() {
+            head = paths.hasNext() ? paths.next() : null;
+            return head != null;
+        }
+    }
+
+    private static final class RunReader extends Run implements Closeable {
+        private final DataInputStream in;
+        private byte[] previous = new byte[0];
+
+        private RunReader(File run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run),
+                    BUFFER_SIZE));
+            advance();
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            int shared;
+            try {
+                shared = WritableUtils.readVInt(in);
+            } catch (EOFException e) {
+                head = null;
+                close();
+                return false;
+            }
+            byte[] path = new byte[shared + WritableUtils.readVInt(in)];
+            System.arraycopy(previous, 0, path, 0, shared);
+            in.readFully(path, shared, path.length - shared);
+            previous = path;
+            head = new String(path, Charsets.UTF_8);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
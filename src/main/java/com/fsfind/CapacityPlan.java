@@ -0,0 +1,190 @@
+package com.fsfind;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
+
+import com.fsfind.TraversalIterator.Candidate;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * <code>CapacityPlan</code> works out how to bring the space taken up under a
+ * directory down to a budget by deleting the least recently modified files
+ * first. A single pass lists the directory and adds up the length of all the
+ * files, which is the usage, and the length of the files the filter accepts
+ * per hour of their modification time, which is how much deleting everything
+ * older than a given hour frees. The files the filter rejects, or which are
+ * under a directory it rejects, count toward the usage but are never deleted.
+ * The memory held is bounded by the number of hours the modification times
+ * span and the number of directories the filter rejects, not by the number of
+ * files.
+ * <p/>
+ * The outcome is a purge time: deleting what is older than it, with any
+ * <code>FSFind</code> and the same filter, brings the usage under the budget,
+ * unless the files the filter rejects take up more than the budget alone. As
+ * the hour is the unit, up to an hour worth of files more than strictly
+ * needed may go. Partition patterns are ignored by the pass, every directory
+ * is listed.
+ */
+public final class CapacityPlan {
+
+    public static final Logger LOG = Logger.getLogger(CapacityPlan.class);
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private final Path dir;
+    private final long target;
+    private final long usage;
+    private final long reclaimed;
+    private final long purgeTime;
+
+    private CapacityPlan(Path dir, long target, long usage, long reclaimed, long purgeTime) {
+        this.dir = dir;
+        this.target = target;
+        this.usage = usage;
+        this.reclaimed = reclaimed;
+        this.purgeTime = purgeTime;
+    }
+
+    /**
+     * Plan for a directory.
+     *
+     * @param fs     the filesystem
+     * @param dir    the directory
+     * @param target the budget in bytes
+     * @param filter the files which can be deleted
+     * @return the plan
+     */
+    public static CapacityPlan make(FileSystem fs, Path dir, long target,
+                                    final FileStatusFilter filter) throws IOException {
+        Preconditions.checkArgument(target >= 0, "target can't be negative");
+        long start = System.currentTimeMillis();
+        FSFindQuery query = FSFindQuery.make(dir);
+        RpcCounts rpcCounts = new RpcCounts();
+        final Set<Path> rejectedDirs = Sets.newHashSet();
+        final Set<Path> rejectedFiles = Sets.newHashSet();
+        // every directory is listed so every file counts, the filter only decides what can go
+        FileStatusFilter everything = new FileStatusFilter() {
+            @Override
+            public boolean accept(FileStatus status) {
+                if (!filter.accept(status)) {
+                    (status.isDirectory() ? rejectedDirs : rejectedFiles).add(status.getPath());
+                }
+                return true;
+            }
+        };
+        // every file is old enough, directories are not collapsed so each file is a candidate
+        TraversalIterator iterator = new TraversalIterator(fs, null, false,
+                FSFindImpl.searchPathStatus(fs, query, rpcCounts), query, Long.MAX_VALUE,
+                everything, rpcCounts);
+        TreeMap<Long, Long> bytesPerHour = new TreeMap<Long, Long>();
+        long usage = 0;
+        long deletable = 0;
+        while (iterator.hasNext()) {
+            Candidate file = iterator.nextCandidate();
+            usage += file.length;
+            if (rejectedFiles.remove(file.path) || isUnder(file.path, rejectedDirs)) {
+                continue;
+            }
+            long hour = file.modificationTime - (file.modificationTime % HOUR + HOUR) % HOUR;
+            Long bytes = bytesPerHour.get(hour);
+            bytesPerHour.put(hour, (bytes == null ? 0 : bytes) + file.length);
+            deletable += file.length;
+        }
+        if (usage - deletable > target) {
+            LOG.warn(String.format("%s of the files under %s can't be deleted, more than its " +
+                    "budget of %s", StringUtils.byteDesc(usage - deletable), dir,
+                    StringUtils.byteDesc(target)));
+        }
+
+        long reclaimed = 0;
+        long purgeTime = Long.MIN_VALUE;
+        for (Map.Entry<Long, Long> hour : bytesPerHour.entrySet()) {
+            if (usage - reclaimed <= target) {
+                break;
+            }
+            reclaimed += hour.getValue();
+            purgeTime = hour.getKey() + HOUR;
+        }
+        CapacityPlan plan = new CapacityPlan(dir, target, usage, reclaimed, purgeTime);
+        LOG.info(String.format("%s in %d ms, %s", plan, System.currentTimeMillis() - start,
+                rpcCounts));
+        return plan;
+    }
+
+    /* true if the path is under one of the directories */
+    private static boolean isUnder(Path path, Set<Path> dirs) {
+        if (dirs.isEmpty()) {
+            return false;
+        }
+        for (Path parent = path.getParent(); parent != null; parent = parent.getParent()) {
+            if (dirs.contains(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the directory
+     */
+    public Path dir() {
+        return dir;
+    }
+
+    /**
+     * @return the budget in bytes
+     */
+    public long target() {
+        return target;
+    }
+
+    /**
+     * @return bytes taken up by all the files, the ones the filter rejects
+     * included
+     */
+    public long usage() {
+        return usage;
+    }
+
+    /**
+     * @return bytes freed by deleting the files older than the purge time
+     */
+    public long reclaimed() {
+        return reclaimed;
+    }
+
+    /**
+     * @return true if the usage is over the budget
+     */
+    public boolean isOverTarget() {
+        return usage > target;
+    }
+
+    /**
+     * @return the files older than this time have to be deleted,
+     * <code>Long.MIN_VALUE</code> if nothing has to be
+     */
+    public long purgeTime() {
+        return purgeTime;
+    }
+
+    @Override
+    public String toString() {
+        return "CapacityPlan{" +
+                "dir=" + dir +
+                ", target=" + StringUtils.byteDesc(target) +
+                ", usage=" + StringUtils.byteDesc(usage) +
+                ", reclaimed=" + StringUtils.byteDesc(reclaimed) +
+                ", purgeTime=" + purgeTime +
+                '}';
+    }
+}
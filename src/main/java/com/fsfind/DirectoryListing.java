@@ -0,0 +1,222 @@
+package com.fsfind;
+
+import com.google.common.base.Charsets;
+
+import com.fsfind.PagedFileSystem.Page;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.log4j.Logger;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * The children of a directory in name order, starting after the last name an
+ * earlier search had processed. Either the whole listing is held in memory,
+ * or the children are fetched a page at a time as they are consumed, so a
+ * search which stops once its batch is full never fetches the rest of a huge
+ * directory, nor holds more than a page of it.
+ * <p/>
+ * HDFS, and any {@link PagedFileSystem}, lists a page starting after a given
+ * name, so a resumed listing fetches none of the names it skips. Each page is
+ * a <code>FileSystem</code> call of its own, counted as a
+ * <code>LIST_STATUS</code>, which the wrapping filesystems such as
+ * <code>RateLimitedFileSystem</code> and <code>MeteredFileSystem</code> see
+ * go by. The listing of HDFS is fetched without block locations.
+ */
+public final class DirectoryListing implements RemoteIterator<FileStatus> {
+
+    private static final Logger LOG = Logger.getLogger(DirectoryListing.class);
+    private static final String HDFS_SCHEME = "hdfs";
+
+    private final Path dir;
+    private final RemoteIterator<? extends FileStatus> children;
+    private final String after;
+    private FileStatus next;
+
+    private DirectoryListing(Path dir, RemoteIterator<? extends FileStatus> children,
+                             String after) {
+        this.dir = dir;
+        this.children = children;
+        this.after = after;
+    }
+
+    /**
+     * @return true if directories of given filesystem can be listed
+     * incrementally, a page at a time, see {@link #listPage(FileSystem, Path,
+     * String)}
+     */
+    public static boolean isIncremental(FileSystem fs) {
+        if (fs instanceof PagedFileSystem) {
+            return ((PagedFileSystem) fs).listsPages();
+        }
+        // checking the scheme first keeps the HDFS classes from being loaded needlessly
+        return HDFS_SCHEME.equals(fs.getUri().getScheme()) && fs instanceof DistributedFileSystem;
+    }
+
+    /**
+     * List one page of a directory of a filesystem which lists incrementally.
+     *
+     * @param after the page starts after this name, null to start from the
+     *              first child
+     * @see PagedFileSystem#listPage(Path, String)
+     */
+    public static Page listPage(FileSystem fs, Path dir, String after) throws IOException {
+        if (fs instanceof PagedFileSystem) {
+            return ((PagedFileSystem) fs).listPage(dir, after);
+        } else if (!isIncremental(fs)) {
+            throw new UnsupportedOperationException(fs + " can't list a page at a time");
+        }
+        DistributedFileSystem dfs = (DistributedFileSystem) fs;
+        Path qualified = dfs.makeQualified(dir);
+        org.apache.hadoop.hdfs.protocol.DirectoryListing listing = dfs.getClient().listPaths(
+                qualified.toUri().getPath(), after == null ? HdfsFileStatus.EMPTY_NAME
+                        : after.getBytes(Charsets.UTF_8), false);
+        if (listing == null) {
+            throw new FileNotFoundException(dir + " doesn't exist");
+        }
+        HdfsFileStatus[] partial = listing.getPartialListing();
+        FileStatus[] entries = new FileStatus[partial.length];
+        for (int i = 0; i < partial.length; i++) {
+            entries[i] = partial[i].makeQualified(dfs.getUri(), qualified);
+        }
+        return new Page(entries, listing.hasMore());
+    }
+
+    /**
+     * @param listing the listing, sorted by name
+     * @param start   index of the first child to return
+     */
+    static DirectoryListing of(final FileStatus[] listing, final int start) {
+        return new DirectoryListing(null, new RemoteIterator<FileStatus>() {
+            private int index = start;
+
+            @Override
+            public boolean hasNext() {
+                return index < listing.length;
+            }
+
+            @Override
+            public FileStatus next() {
+                if (index == listing.length) {
+                    throw new NoSuchElementException();
+                }
+                return listing[index++];
+            }
+        }, null);
+    }
+
+    /**
+     * List a directory one page at a time, see {@link
+     * #isIncremental(FileSystem)}. Any other filesystem has to list in name
+     * order, its listing is fetched in one go, and the children up to the
+     * given name are skipped. Return null if the directory disappeared, which
+     * can only happen if it got deleted after we started the search.
+     *
+     * @param after name of the last child processed by an earlier search, the
+     *              children up to it are skipped. Null to start from the
+     *              first child
+     */
+    static DirectoryListing incremental(FileSystem fs, Path dir, String after,
+                                        RpcCounts rpcCounts) throws IOException {
+        RemoteIterator<? extends FileStatus> children;
+        try {
+            if (isIncremental(fs)) {
+                // the pages start right after the name
+                return new DirectoryListing(dir, new Pages(fs, dir, after, rpcCounts), null);
+            }
+            rpcCounts.increment(FSOperation.LIST_STATUS);
+            children = fs.listLocatedStatus(dir);
+        } catch (FileNotFoundException e) {
+            LOG.warn(String.format("%s can't be found, it must have been deleted after we " +
+                    "started the search", dir));
+            return null;
+        }
+        return new DirectoryListing(dir, children, after);
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        while (next == null && fetch()) {
+            if (after != null && next.getPath().getName().compareTo(after) <= 0) {
+                next = null;
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public FileStatus next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        FileStatus status = next;
+        next = null;
+        return status;
+    }
+
+    /* the next child, false once there are no more */
+    private boolean fetch() throws IOException {
+        try {
+            if (!children.hasNext()) {
+                return false;
+            }
+            next = children.next();
+            return true;
+        } catch (FileNotFoundException e) {
+            // the directory got deleted between two pages, there is nothing left under it
+            LOG.warn(String.format("%s can't be found any more, it must have been deleted " +
+                    "while being listed", dir));
+            return false;
+        }
+    }
+
+    /* the children of a directory, fetched a page at a time */
+    private static final class Pages implements RemoteIterator<FileStatus> {
+        private final FileSystem fs;
+        private final Path dir;
+        private final RpcCounts rpcCounts;
+        private FileStatus[] page;
+        private boolean hasMore;
+        private int index = 0;
+
+        /* fetches the first page, after given name */
+        private Pages(FileSystem fs, Path dir, String after, RpcCounts rpcCounts)
+                throws IOException {
+            this.fs = fs;
+            this.dir = dir;
+            this.rpcCounts = rpcCounts;
+            fetch(after);
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            while (index == page.length && hasMore && page.length > 0) {
+                fetch(page[page.length - 1].getPath().getName());
+            }
+            return index < page.length;
+        }
+
+        @Override
+        public FileStatus next() throws IOException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page[index++];
+        }
+
+        private void fetch(String after) throws IOException {
+            rpcCounts.increment(FSOperation.LIST_STATUS);
+            Page next = listPage(fs, dir, after);
+            page = next.entries();
+            hasMore = next.hasMore();
+            index = 0;
+        }
+    }
+}
@@ -17,17 +17,18 @@ import java.util.List;
  */
 public abstract class FSFind {
 
-    private static final PathFilter DEFAULT_FILTER = FSFindFilters.ACCEPTS_ALL;
+    private static final FileStatusFilter DEFAULT_FILTER = FileStatusFilters.all();
 
     /**
      * {@code batch defaults to Integer.MAX_VALUE} and {@code filter defaults to
      * FSFind#DEFAULT_FILTER}
      *
      * @return list of paths meeting search criteria
-     * @see FSFind#find(FSFindQuery, long, int, org.apache.hadoop.fs.PathFilter)
+     * @see FSFind#findMatching(FSFindQuery, long, int, FileStatusFilter)
      */
     public List<Path> find(FSFindQuery searchPath, long timestamp) throws IOException {
-        return find(searchPath, timestamp, Integer.MAX_VALUE, DEFAULT_FILTER).candidates();
+        return findMatching(searchPath, timestamp, Integer.MAX_VALUE, DEFAULT_FILTER)
+                .candidates();
     }
 
     /**
@@ -35,41 +36,108 @@ public abstract class FSFind {
      *
      * @return an <code>FSFindResult</code> instance encapsulating the items and
      * search queue
-     * @see FSFind#find(FSFindQuery, long, int, org.apache.hadoop.fs.PathFilter)
+     * @see FSFind#findMatching(FSFindQuery, long, int, FileStatusFilter)
      */
     public FSFindResult find(FSFindQuery searchPath, long timestamp, int batch) throws IOException {
-        return find(searchPath, timestamp, batch, DEFAULT_FILTER);
+        return findMatching(searchPath, timestamp, batch, DEFAULT_FILTER);
     }
 
     /**
      * {@code batch defaults to Integer.MAX_VALUE}
      *
      * @return list of paths meeting search criteria
-     * @see FSFind#find(FSFindQuery, long, int, org.apache.hadoop.fs.PathFilter)
+     * @see FSFind#find(FSFindQuery, long, int, PathFilter)
      */
     public List<Path> find(FSFindQuery searchPath, long timestamp,
                            PathFilter filter) throws IOException {
         return find(searchPath, timestamp, Integer.MAX_VALUE, filter).candidates();
     }
 
+    /**
+     * Same as {@link FSFind#findMatching(FSFindQuery, long, int,
+     * FileStatusFilter)} with a filter which only applies to directories: a
+     * directory rejected by the path filter is skipped with everything under
+     * it.
+     *
+     * @see FileStatusFilters#of(PathFilter)
+     */
+    public FSFindResult find(FSFindQuery searchPath, long timestamp, int batchSize,
+                             PathFilter filter) throws IOException {
+        return findMatching(searchPath, timestamp, batchSize, FileStatusFilters.of(filter));
+    }
+
+    /**
+     * {@code batch defaults to Integer.MAX_VALUE}
+     *
+     * @return list of paths meeting search criteria
+     * @see FSFind#findMatching(FSFindQuery, long, int, FileStatusFilter)
+     */
+    public List<Path> findMatching(FSFindQuery searchPath, long timestamp,
+                                   FileStatusFilter filter) throws IOException {
+        return findMatching(searchPath, timestamp, Integer.MAX_VALUE, filter).candidates();
+    }
+
     /**
      * Recursively traverse a directory and find paths older than the given
      * timestamp and stop if number of paths found are more than the specified
-     * batch size. This is useful to operate on paths in batches. The PathFilter
-     * rule applies to both files and directoties. If the directory is rejected
-     * by path filter; it will be skipped all together i.e. files under it will
-     * not be considered for time based check.
+     * batch size. This is useful to operate on paths in batches. The filter
+     * gets the status each path was listed with, so it costs no further call
+     * to the filesystem. If a directory is rejected by the filter; it will be
+     * skipped all together i.e. files under it will not be considered for
+     * time based check. A file rejected by the filter is not a candidate.
+     * Named apart from the <code>PathFilter</code> overloads of
+     * <code>find</code>, so that a lambda or a <code>null</code> filter isn't
+     * ambiguous.
      *
      * @param searchPath path to begin the search
      * @param timestamp  only paths strictly older than this time would be
      *                   returned
      * @param batchSize  the batch size
-     * @param filter     a PathFilter to filter paths on additional criteria
-     *                   (other than timestamp)
+     * @param filter     a filter on additional criteria (other than
+     *                   timestamp)
      * @return an <code>FSFindResult</code> instance encapsulating the items and
      * search queue
      */
-    public abstract FSFindResult find(FSFindQuery searchPath, long timestamp, int batchSize,
-                                      PathFilter filter) throws IOException;
+    public abstract FSFindResult findMatching(FSFindQuery searchPath, long timestamp,
+                                              int batchSize, FileStatusFilter filter)
+            throws IOException;
+
+    /**
+     * {@code filter defaults to FSFind#DEFAULT_FILTER}
+     *
+     * @return an iterator over the paths meeting search criteria
+     * @see FSFind#streamMatching(FSFindQuery, long, FileStatusFilter)
+     */
+    public FSFindIterator stream(FSFindQuery searchPath, long timestamp) throws IOException {
+        return streamMatching(searchPath, timestamp, DEFAULT_FILTER);
+    }
+
+    /**
+     * Same as {@link FSFind#streamMatching(FSFindQuery, long,
+     * FileStatusFilter)} with a filter which only applies to directories.
+     *
+     * @see FileStatusFilters#of(PathFilter)
+     */
+    public FSFindIterator stream(FSFindQuery searchPath, long timestamp,
+                                 PathFilter filter) throws IOException {
+        return streamMatching(searchPath, timestamp, FileStatusFilters.of(filter));
+    }
+
+    /**
+     * Same search as {@link FSFind#findMatching(FSFindQuery, long, int,
+     * FileStatusFilter)} without batching, except that the candidates are
+     * produced lazily as the directories are listed instead of being collected
+     * up front. Use this when the number of candidates can be too large to
+     * hold in memory.
+     *
+     * @param searchPath path to begin the search
+     * @param timestamp  only paths strictly older than this time would be
+     *                   returned
+     * @param filter     a filter on additional criteria (other than
+     *                   timestamp)
+     * @return an iterator over the paths meeting search criteria
+     */
+    public abstract FSFindIterator streamMatching(FSFindQuery searchPath, long timestamp,
+                                                  FileStatusFilter filter) throws IOException;
 
 }
@@ -0,0 +1,167 @@
+package com.fsfind;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+
+import java.io.Serializable;
+
+/**
+ * <code>FSFindCursor</code> marks where a batched search stopped, so that the
+ * next search can resume right there instead of walking again from the search
+ * path. It holds one position per directory on the way from the search path
+ * down to the directory that was being listed when the batch got full, so its
+ * size is bounded by the depth of the tree.
+ * <p/>
+ * Positions are kept as names rather than offsets: a search lists directories
+ * in name order and resumes after the last name it had processed. This keeps
+ * the cursor valid when the candidates of the previous batch have been deleted
+ * in the meantime.
+ * <p/>
+ * A search of an offline namespace dump (see <code>FSImageFind</code>) doesn't
+ * list directories, its cursor is the offset in the dump to resume reading
+ * from instead.
+ */
+public class FSFindCursor implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Cursor of a search which went through the whole tree.
+     */
+    public static final FSFindCursor EXHAUSTED = new FSFindCursor(null);
+
+    private final Position root;
+    private final Long imageOffset;
+
+    FSFindCursor(Position root) {
+        this.root = root;
+        this.imageOffset = null;
+    }
+
+    FSFindCursor(long imageOffset) {
+        this.root = null;
+        this.imageOffset = imageOffset;
+    }
+
+    /**
+     * @return true if there is nothing left to search
+     */
+    public boolean isExhausted() {
+        return root == null && imageOffset == null;
+    }
+
+    /**
+     * @return number of directories the cursor holds a position in
+     */
+    public int depth() {
+        int depth = 0;
+        for (Position position = root; position != null; position = position.child) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * @return position in the search path, null if exhausted
+     */
+    Position root() {
+        return root;
+    }
+
+    /**
+     * @return offset in the namespace dump to resume from, null if this isn't
+     * the cursor of a dump search
+     */
+    Long imageOffset() {
+        return imageOffset;
+    }
+
+    private Object readResolve() {
+        return isExhausted() ? EXHAUSTED : this;
+    }
+
+    @Override
+    public String toString() {
+        if (imageOffset != null) {
+            return "FSFindCursor{@" + imageOffset + "}";
+        }
+        StringBuilder builder = new StringBuilder("FSFindCursor{");
+        for (Position position = root; position != null; position = position.child) {
+            builder.append(position.path).append('@').append(position.lastName);
+            if (position.child != null) {
+                builder.append(", ");
+            }
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * Position of the search inside one directory.
+     */
+    static final class Position implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+        private final String path;
+        private final String lastName;
+        private final boolean includedAll;
+        private final Position child;
+
+        /**
+         * @param dir         the directory
+         * @param lastName    name of the last child that was completely
+         *                    processed, null if none
+         * @param includedAll true if every child processed so far was
+         *                    included in the candidates
+         * @param child       position inside the child that was being
+         *                    processed, null if search stopped at a file
+         */
+        Position(Path dir, String lastName, boolean includedAll, Position child) {
+            this.path = dir.toUri().getPath();
+            this.lastName = lastName;
+            this.includedAll = includedAll;
+            this.child = child;
+        }
+
+        boolean isAt(Path dir) {
+            return path.equals(dir.toUri().getPath());
+        }
+
+        String lastName() {
+            return lastName;
+        }
+
+        boolean includedAll() {
+            return includedAll;
+        }
+
+        Position child() {
+            return child;
+        }
+
+        /* true if some children of the directory were processed by an earlier search */
+        boolean sawChildren() {
+            return lastName != null;
+        }
+
+        /**
+         * @param listing the directory listing, sorted by name
+         * @return index of the first child that still needs to be processed
+         */
+        int resumeIndex(FileStatus[] listing) {
+            if (lastName == null) {
+                return 0;
+            }
+            int low = 0;
+            int high = listing.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (listing[mid].getPath().getName().compareTo(lastName) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
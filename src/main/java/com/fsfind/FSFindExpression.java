@@ -0,0 +1,577 @@
+package com.fsfind;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.GlobPattern;
+import org.apache.hadoop.fs.permission.FsPermission;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A <code>FileStatusFilter</code> written as a find(1) style expression, such
+ * as <code>-name '*.tmp' -and -size +1G -and -not -user hive</code>. The
+ * expression is parsed once into a tree and evaluated against the status of
+ * every listed path, it supports:
+ * <ul>
+ * <li><code>-name GLOB</code> the name of the path</li>
+ * <li><code>-path GLOB</code>, <code>-regex REGEX</code> the whole path
+ * (without scheme and authority)</li>
+ * <li><code>-type f|d</code></li>
+ * <li><code>-size [+|-]N[c|k|M|G|T]</code> more than, less than or exactly
+ * N bytes, kilobytes etc.</li>
+ * <li><code>-replication [+|-]N</code></li>
+ * <li><code>-user NAME</code>, <code>-group NAME</code></li>
+ * <li><code>-perm MODE</code> exactly the octal mode, <code>-perm -MODE</code>
+ * at least the bits of the mode</li>
+ * <li><code>( EXPR )</code>, <code>-not</code> or <code>!</code>,
+ * <code>-and</code> or <code>-a</code> (the default between two terms),
+ * <code>-or</code> or <code>-o</code></li>
+ * </ul>
+ * The expression selects files, every term of an <code>-and</code> or
+ * <code>-or</code> has to hold for the file to be a candidate. Operands of
+ * <code>-and</code> and <code>-or</code> are reordered so that cheap tests run
+ * first (type, then plain name comparisons, then status fields, then regular
+ * expressions) and evaluation stops as soon as the outcome is known.
+ * <p/>
+ * A directory is skipped with everything under it only when the expression
+ * can't hold for anything below it. Tests apply to directories only inside an
+ * <code>-and</code> which also has <code>-type d</code>, elsewhere their
+ * outcome on a directory is unknown and the directory is explored. So
+ * <code>-not ( -type d -name DONT_DELETE ) -name '*.tmp'</code> prunes every
+ * directory named DONT_DELETE and selects the .tmp files everywhere else,
+ * while <code>-type f -name '*.tmp'</code> or <code>-not -type d</code> prune
+ * nothing.
+ * Instances are immutable and safe to share between threads.
+ */
+public final class FSFindExpression implements FileStatusFilter {
+
+    /* relative cost of the tests, cheaper ones are evaluated first */
+    private static final int TYPE_COST = 0;
+    private static final int NAME_COST = 1;
+    private static final int STATUS_COST = 2;
+    private static final int REGEX_COST = 3;
+    private static final Comparator<Node> BY_COST = new Comparator<Node>() {
+        @Override
+        public int compare(Node a, Node b) {
+            return a.cost - b.cost;
+        }
+    };
+
+    private final String expression;
+    private final Node root;
+
+    private FSFindExpression(String expression, Node root) {
+        this.expression = expression;
+        this.root = root;
+    }
+
+    /**
+     * Compile an expression, throws an IllegalArgumentException if it isn't
+     * valid. Arguments may be quoted with single or double quotes.
+     */
+    public static FSFindExpression compile(String expression) {
+        return compile(tokenize(expression));
+    }
+
+    /**
+     * Compile an expression which was already split into arguments, e.g. by a
+     * shell.
+     */
+    public static FSFindExpression compile(List<String> arguments) {
+        Preconditions.checkArgument(!arguments.isEmpty(), "Empty expression");
+        Parser parser = new Parser(arguments);
+        Node root = parser.or();
+        Preconditions.checkArgument(parser.position == arguments.size(),
+                "Unexpected %s in expression", parser.peek());
+        return new FSFindExpression(Joiner.on(' ').join(arguments), root);
+    }
+
+    @Override
+    public boolean accept(FileStatus status) {
+        if (status.isDirectory()) {
+            return root.onDirectory(status, false) != Truth.FALSE;
+        }
+        return root.matches(status);
+    }
+
+    /**
+     * @return the expression as evaluated, with the operands in evaluation
+     * order
+     */
+    public String plan() {
+        return root.toString();
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    /* outcome of a test on a directory */
+    private enum Truth {
+        TRUE, FALSE, UNKNOWN;
+
+        private Truth not() {
+            return this == TRUE ? FALSE : this == FALSE ? TRUE : UNKNOWN;
+        }
+    }
+
+    private abstract static class Node {
+        private final int cost;
+
+        private Node(int cost) {
+            this.cost = cost;
+        }
+
+        /* evaluate on a file */
+        abstract boolean matches(FileStatus status);
+
+        /* evaluate on a directory, tests only apply if scoped by -type d */
+        Truth onDirectory(FileStatus status, boolean scoped) {
+            if (!scoped) {
+                return Truth.UNKNOWN;
+            }
+            return matches(status) ? Truth.TRUE : Truth.FALSE;
+        }
+    }
+
+    private static final class And extends Node {
+        private final Node[] operands;
+        private final boolean scopesDirectories;
+
+        private And(List<Node> operands) {
+            super(maxCost(operands));
+            this.operands = sorted(operands);
+            boolean scopes = false;
+            for (Node operand : operands) {
+                scopes |= operand instanceof Type && ((Type) operand).directory;
+            }
+            this.scopesDirectories = scopes;
+        }
+
+        @Override
+        boolean matches(FileStatus status) {
+            for (Node operand : operands) {
+                if (!operand.matches(status)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        Truth onDirectory(FileStatus status, boolean scoped) {
+            Truth result = Truth.TRUE;
+            for (Node operand : operands) {
+                Truth truth = operand.onDirectory(status, scoped || scopesDirectories);
+                if (truth == Truth.FALSE) {
+                    return Truth.FALSE;
+                } else if (truth == Truth.UNKNOWN) {
+                    result = Truth.UNKNOWN;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + Joiner.on(" -and ").join(operands) + ")";
+        }
+    }
+
+    private static final class Or extends Node {
+        private final Node[] operands;
+
+        private Or(List<Node> operands) {
+            super(maxCost(operands));
+            this.operands = sorted(operands);
+        }
+
+        @Override
+        boolean matches(FileStatus status) {
+            for (Node operand : operands) {
+                if (operand.matches(status)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        Truth onDirectory(FileStatus status, boolean scoped) {
+            Truth result = Truth.FALSE;
+            for (Node operand : operands) {
+                Truth truth = operand.onDirectory(status, scoped);
+                if (truth == Truth.TRUE) {
+                    return Truth.TRUE;
+                } else if (truth == Truth.UNKNOWN) {
+                    result = Truth.UNKNOWN;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + Joiner.on(" -or ").join(operands) + ")";
+        }
+    }
+
+    private static final class Not extends Node {
+        private final Node operand;
+
+        private Not(Node operand) {
+            super(operand.cost);
+            this.operand = operand;
+        }
+
+        @Override
+        boolean matches(FileStatus status) {
+            return !operand.matches(status);
+        }
+
+        @Override
+        Truth onDirectory(FileStatus status, boolean scoped) {
+            return operand.onDirectory(status, scoped).not();
+        }
+
+        @Override
+        public String toString() {
+            return "-not " + operand;
+        }
+    }
+
+    private static final class Type extends Node {
+        private final boolean directory;
+
+        private Type(boolean directory) {
+            super(TYPE_COST);
+            this.directory = directory;
+        }
+
+        /* like any test, unknown on a directory outside of -type d, files below may match */
+        @Override
+        boolean matches(FileStatus status) {
+            return status.isDirectory() == directory;
+        }
+
+        @Override
+        public String toString() {
+            return "-type " + (directory ? "d" : "f");
+        }
+    }
+
+    /* -name, with the common shapes of globs compared without a regular expression */
+    private static final class Name extends Node {
+        private final String glob;
+        private final String literal;
+        private final boolean anyPrefix;
+        private final boolean anySuffix;
+        private final Pattern pattern;
+
+        private Name(String glob) {
+            super(isLiteral(trim(glob)) ? NAME_COST : REGEX_COST);
+            this.glob = glob;
+            String trimmed = trim(glob);
+            if (isLiteral(trimmed)) {
+                this.literal = trimmed;
+                this.anyPrefix = glob.startsWith("*");
+                this.anySuffix = glob.length() > 1 && glob.endsWith("*");
+                this.pattern = null;
+            } else {
+                this.literal = null;
+                this.anyPrefix = false;
+                this.anySuffix = false;
+                this.pattern = GlobPattern.compile(glob);
+            }
+        }
+
+        /* the glob without a leading and a trailing star */
+        private static String trim(String glob) {
+            int from = glob.startsWith("*") ? 1 : 0;
+            int to = glob.length() > from && glob.endsWith("*") ? glob.length() - 1 : glob.length();
+            return glob.substring(from, Math.max(from, to));
+        }
+
+        private static boolean isLiteral(String glob) {
+            for (int i = 0; i < glob.length(); i++) {
+                if ("*?[]{}\\".indexOf(glob.charAt(i)) >= 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        boolean matches(FileStatus status) {
+            String name = status.getPath().getName();
+            if (pattern != null) {
+                return pattern.matcher(name).matches();
+            } else if (anyPrefix && anySuffix) {
+                return name.contains(literal);
+            } else if (anyPrefix) {
+                return name.endsWith(literal);
+            } else if (anySuffix) {
+                return name.startsWith(literal);
+            }
+            return name.equals(literal);
+        }
+
+        @Override
+        public String toString() {
+            return "-name " + glob;
+        }
+    }
+
+    /* -path and -regex */
+    private static final class PathPattern extends Node {
+        private final String option;
+        private final String source;
+        private final Pattern pattern;
+
+        private PathPattern(String option, String source, Pattern pattern) {
+            super(REGEX_COST);
+            this.option = option;
+            this.source = source;
+            this.pattern = pattern;
+        }
+
+        @Override
+        boolean matches(FileStatus status) {
+            return pattern.matcher(status.getPath().toUri().getPath()).matches();
+        }
+
+        @Override
+        public String toString() {
+            return option + " " + source;
+        }
+    }
+
+    /* -size and -replication: more than, less than or exactly a value */
+    private static final class Compare extends Node {
+        private final String option;
+        private final String argument;
+        private final boolean size;
+        private final int sign;
+        private final long value;
+
+        private Compare(String option, String argument, boolean size, int sign, long value) {
+            super(STATUS_COST);
+            this.option = option;
+            this.argument = argument;
+            this.size = size;
+            this.sign = sign;
+            this.value = value;
+        }
+
+        @Override
+        boolean matches(FileStatus status) {
+            long actual = size ? status.getLen() : status.getReplication();
+            return sign > 0 ? actual > value : sign < 0 ? actual < value : actual == value;
+        }
+
+        @Override
+        public String toString() {
+            return option + " " + argument;
+        }
+    }
+
+    /* -user, -group and -perm */
+    private static final class Attribute extends Node {
+        private final String option;
+        private final String argument;
+        private final short mode;
+        private final boolean allBits;
+
+        private Attribute(String option, String argument, short mode, boolean allBits) {
+            super(STATUS_COST);
+            this.option = option;
+            this.argument = argument;
+            this.mode = mode;
+            this.allBits = allBits;
+        }
+
+        @Override
+        boolean matches(FileStatus status) {
+            if (option.equals("-user")) {
+                return argument.equals(status.getOwner());
+            } else if (option.equals("-group")) {
+                return argument.equals(status.getGroup());
+            }
+            short actual = status.getPermission().toShort();
+            return allBits ? (actual & mode) == mode : actual == mode;
+        }
+
+        @Override
+        public String toString() {
+            return option + " " + argument;
+        }
+    }
+
+    /**
+     * Recursive descent over the arguments: or := and (-or and)*, and := not
+     * ([-and] not)*, not := (-not | !) not | primary.
+     */
+    private static final class Parser {
+        private final List<String> arguments;
+        private int position = 0;
+
+        private Parser(List<String> arguments) {
+            this.arguments = arguments;
+        }
+
+        private Node or() {
+            List<Node> operands = Lists.newArrayList(and());
+            while (peekIs("-or", "-o")) {
+                position++;
+                operands.add(and());
+            }
+            return operands.size() == 1 ? operands.get(0) : new Or(operands);
+        }
+
+        private Node and() {
+            List<Node> operands = Lists.newArrayList(not());
+            while (position < arguments.size() && !peekIs("-or", "-o", ")")) {
+                if (peekIs("-and", "-a")) {
+                    position++;
+                }
+                operands.add(not());
+            }
+            return operands.size() == 1 ? operands.get(0) : new And(operands);
+        }
+
+        private Node not() {
+            if (peekIs("-not", "!")) {
+                position++;
+                return new Not(not());
+            }
+            return primary();
+        }
+
+        private Node primary() {
+            String option = next("an expression");
+            if (option.equals("(")) {
+                Node node = or();
+                Preconditions.checkArgument(")".equals(next("')'")), "Expected ')'");
+                return node;
+            } else if (option.equals("-name")) {
+                return new Name(next("a glob after -name"));
+            } else if (option.equals("-path")) {
+                String glob = next("a glob after -path");
+                return new PathPattern(option, glob, GlobPattern.compile(glob));
+            } else if (option.equals("-regex")) {
+                String regex = next("a regular expression after -regex");
+                return new PathPattern(option, regex, Pattern.compile(regex));
+            } else if (option.equals("-type")) {
+                String type = next("f or d after -type");
+                Preconditions.checkArgument(type.equals("f") || type.equals("d"),
+                        "-type should be f or d, not %s", type);
+                return new Type(type.equals("d"));
+            } else if (option.equals("-size") || option.equals("-replication")) {
+                String argument = next("a number after " + option);
+                int sign = argument.startsWith("+") ? 1 : argument.startsWith("-") ? -1 : 0;
+                String number = sign == 0 ? argument : argument.substring(1);
+                long unit = 1;
+                if (option.equals("-size") && !number.isEmpty()
+                        && !Character.isDigit(number.charAt(number.length() - 1))) {
+                    int exponent = "ckMGT".indexOf(number.charAt(number.length() - 1));
+                    Preconditions.checkArgument(exponent >= 0, "Unknown size unit in %s",
+                            argument);
+                    unit = 1L << (10 * exponent);
+                    number = number.substring(0, number.length() - 1);
+                }
+                try {
+                    return new Compare(option, argument, option.equals("-size"), sign,
+                            Long.parseLong(number) * unit);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid number " + argument, e);
+                }
+            } else if (option.equals("-user") || option.equals("-group")) {
+                return new Attribute(option, next("a name after " + option), (short) 0, false);
+            } else if (option.equals("-perm")) {
+                String argument = next("a mode after -perm");
+                boolean allBits = argument.startsWith("-");
+                try {
+                    short mode = Short.parseShort(allBits ? argument.substring(1) : argument, 8);
+                    return new Attribute(option, argument,
+                            new FsPermission(mode).toShort(), allBits);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid mode " + argument, e);
+                }
+            }
+            throw new IllegalArgumentException("Unknown expression " + option);
+        }
+
+        private String peek() {
+            return position < arguments.size() ? arguments.get(position) : null;
+        }
+
+        private boolean peekIs(String... tokens) {
+            String token = peek();
+            for (String candidate : tokens) {
+                if (candidate.equals(token)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private String next(String expected) {
+            Preconditions.checkArgument(position < arguments.size(), "Expected %s", expected);
+            return arguments.get(position++);
+        }
+    }
+
+    private static int maxCost(List<Node> operands) {
+        int cost = 0;
+        for (Node operand : operands) {
+            cost = Math.max(cost, operand.cost);
+        }
+        return cost;
+    }
+
+    private static Node[] sorted(List<Node> operands) {
+        List<Node> sorted = Lists.newArrayList(operands);
+        Collections.sort(sorted, BY_COST); // stable, ties keep the written order
+        return sorted.toArray(new Node[sorted.size()]);
+    }
+
+    /* split on white space, single or double quotes group an argument */
+    private static List<String> tokenize(String expression) {
+        List<String> tokens = Lists.newArrayList();
+        StringBuilder token = null;
+        char quote = 0;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else {
+                    token.append(c);
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                token = token == null ? new StringBuilder() : token;
+            } else if (Character.isWhitespace(c)) {
+                if (token != null) {
+                    tokens.add(token.toString());
+                    token = null;
+                }
+            } else {
+                token = token == null ? new StringBuilder() : token;
+                token.append(c);
+            }
+        }
+        Preconditions.checkArgument(quote == 0, "Unbalanced quotes in %s", expression);
+        if (token != null) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+}
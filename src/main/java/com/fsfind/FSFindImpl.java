@@ -2,21 +2,34 @@ package com.fsfind;
 
 import com.google.common.base.Preconditions;
 
+import com.fsfind.FSFindCursor.Position;
+import com.fsfind.FSFindMetrics.Counter;
+
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.fs.PathFilter;
 import org.apache.log4j.Logger;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
 
 
 public class FSFindImpl extends FSFind {
 
     public static final Logger LOG = Logger.getLogger(FSFindImpl.class);
+    private static final Comparator<FileStatus> BY_NAME = new Comparator<FileStatus>() {
+        @Override
+        public int compare(FileStatus a, FileStatus b) {
+            return a.getPath().getName().compareTo(b.getPath().getName());
+        }
+    };
     private boolean includeDirectories;
     private FileSystem fs;
+    private ListingIndex index;
+    private boolean incremental;
+    private FSFindMetrics metrics;
 
     /**
      * Default constructor with <code>includeDirectories</code> flag set to
@@ -40,58 +53,114 @@ public class FSFindImpl extends FSFind {
      * @param fs                 the filesystem instace to access file metadata
      */
     public FSFindImpl(boolean includeDirectories, FileSystem fs) {
+        this(includeDirectories, fs, null);
+    }
+
+    /**
+     * Constructor for a search which lists the directories that haven't
+     * changed since the last search from an index instead of the filesystem.
+     * Without an index, the directories of a filesystem which lists them in
+     * name order one page at a time (HDFS) are listed incrementally, see
+     * {@link DirectoryListing}.
+     *
+     * @param includeDirectories see {@link #FSFindImpl(boolean, FileSystem)}
+     * @param fs                 the filesystem instace to access file metadata
+     * @param index              the listings of the last search, null to
+     *                           always list directories
+     */
+    public FSFindImpl(boolean includeDirectories, FileSystem fs, ListingIndex index) {
         this.includeDirectories = includeDirectories;
         this.fs = fs;
+        this.index = index;
+        this.incremental = index == null && DirectoryListing.isIncremental(fs);
     }
 
-    @Override
-    public FSFindResult find(FSFindQuery query, long timestamp,
-                             int batchSize, PathFilter filter) throws IOException {
-        FSFindResult result = new FSFindResult();
-        Preconditions.checkState(fs.exists(query.searchPath()), String.format("%s does not " +
-                "exist.", query.searchPath()));
-        internalFind(query.searchPath(), query, timestamp, batchSize, filter, result);
-        return result;
+    /**
+     * List directories incrementally or not, regardless of the filesystem.
+     * An incremental listing has to come in name order.
+     */
+    void listIncrementally(boolean incremental) {
+        Preconditions.checkState(!incremental || index == null,
+                "An indexed search lists directories as a whole");
+        this.incremental = incremental;
     }
 
     /**
-     * The flow: 1. Verify the directory exists. 2. If directory was covered
-     * during last search, skip it this time. 3. Check if path filter applies to
-     * the directory, if filter rejects directory; don't check files underneath.
-     * 4. Initialize the 'includedAllFiles' flag to true, the flag tracks the
-     * fact whether or not we included all files as return candidates in the
-     * directory being traversed. 5. Recrusively traverse the directory while
-     * maintaining the 'includedAllFiles' flag. 6. If after finishing a
-     * directory 'includedAllFiles' is still set as true, remove the individual
-     * files and include the whole directory in return list. 7. If at any point
-     * the candidate list gets bigger than the batch, bail out.
+     * Count the directories and files visited, the candidates and the
+     * collapses of the searches in given metrics.
      *
-     * Return <code>true</code> if we had to bail out early due to batch size
-     * restriction. For all other reasons, return false.
+     * @param metrics the metrics, null to count nothing
      */
-    private boolean internalFind(Path searchDir, FSFindQuery origQuery, long timestamp,
-                                 int batchSize, PathFilter filter, FSFindResult result)
-            throws IOException {
-        FileStatus searchDirStatus;
-        try {
-            // At this point if dir doesn't exist; that certainly means it disappeared in the
-            // middle of our execution flow. Just return.
-            searchDirStatus = fs.getFileStatus(searchDir);
-            searchDir = searchDirStatus.getPath(); // this will normalize the path (the uri part)
-        } catch (FileNotFoundException e) {
-            LOG.warn(String.format("%s can't be found, it must have been deleted after we " +
-                    "started the search", searchDir));
-            return false;
+    public void useMetrics(FSFindMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public FSFindResult findMatching(FSFindQuery query, long timestamp,
+                                     int batchSize, FileStatusFilter filter) throws IOException {
+        FSFindResult result = new FSFindResult();
+        if (query.cursor() != null && query.cursor().isExhausted()) {
+            result.setCursor(FSFindCursor.EXHAUSTED);
+            return result;
         }
+        FileStatus searchPathStatus = searchPathStatus(fs, query, result.rpcCounts());
+        if (query.order() != FSFindOrder.WALK) {
+            TraversalIterator iterator = new TraversalIterator(fs, index, includeDirectories,
+                    searchPathStatus, query.withoutCursor(), timestamp, filter,
+                    result.rpcCounts(), true);
+            // only the candidates selected out of the traversal are emitted
+            iterator.useMetrics(metrics, false);
+            TopCandidates.select(iterator, query, timestamp, batchSize, result);
+        } else {
+            Position stoppedAt = internalFind(searchPathStatus,
+                    resumePosition(query, searchPathStatus), query, timestamp, batchSize, filter,
+                    result);
+            result.setCursor(stoppedAt == null ? FSFindCursor.EXHAUSTED
+                    : new FSFindCursor(stoppedAt));
+        }
+        count(Counter.CANDIDATES_EMITTED, result.size());
+        return result;
+    }
 
-        Preconditions.checkState(searchDirStatus.isDirectory(), "Expected a directory but found "
-                + searchDir);
+    @Override
+    public FSFindIterator streamMatching(FSFindQuery query, long timestamp,
+                                         FileStatusFilter filter) throws IOException {
+        RpcCounts rpcCounts = new RpcCounts();
+        FileStatus searchPathStatus = searchPathStatus(fs, query, rpcCounts);
+        TraversalIterator iterator = new TraversalIterator(fs, index, includeDirectories,
+                searchPathStatus, query, timestamp, filter, rpcCounts);
+        iterator.useMetrics(metrics, true);
+        return iterator;
+    }
 
-        /* optimization: if during last search we have already explored this path; dont redo */
-        if (origQuery.isCovered(searchDir)) {
-            result.markExplored(searchDir); // presrve this knowledge between runs
-            return false;
-        }
+    /**
+     * The flow: 1. Check if path filter applies to the directory, if filter
+     * rejects directory; don't check files underneath. 2. List the directory,
+     * if it doesn't exist anymore skip it. 3. If resuming, skip the children
+     * which were processed by the last search. 4. Initialize the
+     * 'includedAllFiles' flag to true (or to what it was when last search
+     * stopped), the flag tracks the fact whether or not we included all files
+     * as return candidates in the directory being traversed. 5. Recrusively
+     * traverse the directory while maintaining the 'includedAllFiles' flag. 6.
+     * If after finishing a directory 'includedAllFiles' is still set as true,
+     * remove the individual files and include the whole directory in return
+     * list. 7. If at any point the candidate list gets bigger than the batch,
+     * bail out, without fetching the rest of an incremental listing. A directory matching a partition pattern of the query is not
+     * listed at all: a partition older than the timestamp is included as a
+     * whole (if directories are included), a newer one is skipped. The space
+     * taken up by the candidate files is accounted for as they are included.
+     *
+     * The status of a directory comes from its parent's listing, so apart from
+     * the search path itself every directory costs a single listStatus RPC, or
+     * none if its listing is served from the index.
+     *
+     * Return the position to resume from if we had to bail out early due to
+     * batch size restriction. For all other reasons, return null.
+     */
+    private Position internalFind(FileStatus searchDirStatus, Position resume,
+                                  FSFindQuery origQuery, long timestamp, int batchSize,
+                                  FileStatusFilter filter, FSFindResult result) throws IOException {
+        Path searchDir = searchDirStatus.getPath();
 
         /**
          * Check if this directory in itself is candidate for complete exclusion,
@@ -99,88 +168,222 @@ public class FSFindImpl extends FSFind {
          */
         REJECT_REASON reason = includePath(searchDirStatus, timestamp, filter);
         if (reason == REJECT_REASON.PATH_FILTER) {
-            LOG.info("Directory was filtered by configured Pathfilter " + searchDir);
+            LOG.info("Directory was filtered by configured filter " + searchDir);
+            result.markExplored(searchDir);
+            return null;
+        }
+
+        /* a partition is judged by its name, without being listed */
+        PartitionPattern.Age age = origQuery.partitionAge(searchDir, timestamp);
+        if (age == PartitionPattern.Age.NEWER) {
+            count(Counter.DIRECTORIES_VISITED, 1);
+            result.markExplored(searchDir);
+            return null;
+        } else if (age == PartitionPattern.Age.OLDER && includeDirectories) {
+            if (result.size() >= batchSize) {
+                /* bail out, the next search starts at this directory */
+                return new Position(searchDir, null, true, null);
+            }
+            count(Counter.DIRECTORIES_VISITED, 1);
+            result.add(searchDir);
+            result.reclaimable().recordUnlisted();
             result.markExplored(searchDir);
-            return false;
+            return null;
         }
 
-        // Recursively traverse the directory. NOTE: In a rare case listStatus could throw
-        // FileNotFoundException. Its going to be rare because at the beginining we already
-        // checked that directory exists. Between then and now there is no RPC call or nothing
-        // expensive happens, so we have to be really unlucky for dir to get deleted between then
-        // and now.
-        FileStatus[] allFiles = fs.listStatus(searchDir);
+        // the children up to the last name were processed by the last search
+        DirectoryListing children = listChildren(searchDirStatus, resume, result.rpcCounts());
+        if (children == null) {
+            return null;
+        }
+        count(Counter.DIRECTORIES_VISITED, 1);
 
         // if this flag is true it means all files and directories 'directly' under it were
         // included in the result set.
         boolean includedAllFiles = true;
+        String lastName = null;
+        Position resumeChild = null;
+        if (resume != null) {
+            includedAllFiles = resume.includedAll();
+            lastName = resume.lastName();
+            resumeChild = resume.child();
+        }
 
-        for (FileStatus status : allFiles) {
+        // the children processed by this search
+        int processed = 0;
+        while (children.hasNext()) {
+            FileStatus status = children.next();
             if (status.isDirectory()) {
-                if (internalFind(status.getPath(), origQuery, timestamp, batchSize, filter,
-                        result)) {
+                Position childResume = resumeChild != null && resumeChild.isAt(status.getPath())
+                        ? resumeChild : null;
+                Position stoppedAt = internalFind(status, childResume, origQuery, timestamp,
+                        batchSize, filter, result);
+                if (stoppedAt != null) {
                     /* while exploring a sub directory our batch got full,
                     so we bail early as well */
-                    return true;
-                } else if (result.size() == 0 ||
-                        result.size() > 0 && !result.getLast().equals(status.getPath())) {
+                    return new Position(searchDir, lastName, includedAllFiles, stoppedAt);
+                } else if (!result.isLast(status.getPath())) {
                     // Since the subdir was not included in the result, unset the all files flag.
                     includedAllFiles = false;
                 }
             } else if (result.size() >= batchSize) {
                 /* bail out */
-                return true;
+                return new Position(searchDir, lastName, includedAllFiles, null);
             } else if (includePath(status, timestamp, filter) == REJECT_REASON.NONE) {
+                count(Counter.FILES_VISITED, 1);
                 result.add(status.getPath());
+                result.reclaimable().record(status, timestamp);
             } else {
+                count(Counter.FILES_VISITED, 1);
                 includedAllFiles = false;
             }
+            lastName = status.getPath().getName();
+            processed++;
         }
 
-
-        if (allFiles.length == 0) {
+        boolean sawChildren = processed > 0 || (resume != null && resume.sawChildren());
+        if (!sawChildren) {
             if (includeDirectories
                     && searchDirStatus.getModificationTime() < timestamp
                     && !currentSameAsOriginal(searchDir, origQuery.searchPath())) {
                 result.add(searchDir);
             }
         } else if (
-                result.size() > 0
-                        && includeDirectories
+                includeDirectories
                         && includedAllFiles
                         && !currentSameAsOriginal(searchDir, origQuery.searchPath())) {
             // Its odd that we don't check here if the sub directory's mtime is older than purge
             // time or not (unlike above). We don't check because when batching is on - a delete
             // operation could change the mtime of the directory if batch got full before
-            // directory could be scanned fully.
-            result.removeLast(allFiles.length);
+            // directory could be scanned fully. For the same reason children included by the
+            // last search (and likely deleted by now) don't stop the directory from collapsing.
+            result.removeLast(processed);
             result.add(searchDir);
+            count(Counter.COLLAPSES, 1);
         }
 
         /* mark this explored to assist future search */
         result.markExplored(searchDir);
-        return false;
+        return null;
+    }
+
+    private void count(Counter counter, long delta) {
+        if (metrics != null) {
+            metrics.increment(counter, delta);
+        }
+    }
+
+    /* the children of a directory whose status came from its parent's listing, after the
+    last name the resumed search had processed. Null if the directory disappeared */
+    private DirectoryListing listChildren(FileStatus dir, Position resume, RpcCounts rpcCounts)
+            throws IOException {
+        if (incremental) {
+            return DirectoryListing.incremental(fs, dir.getPath(),
+                    resume == null ? null : resume.lastName(), rpcCounts);
+        }
+        FileStatus[] listing = listDirectory(fs, dir, index, rpcCounts);
+        if (listing == null) {
+            return null;
+        }
+        return DirectoryListing.of(listing, resume == null ? 0 : resume.resumeIndex(listing));
+    }
+
+    /**
+     * Position in the search path to resume from, null if the search starts
+     * over.
+     */
+    static Position resumePosition(FSFindQuery query, FileStatus searchPathStatus) {
+        if (query.cursor() == null) {
+            return null;
+        }
+        Position resume = query.cursor().root();
+        Preconditions.checkArgument(resume != null, String.format(
+                "Cursor %s is the cursor of a namespace dump search", query.cursor()));
+        Preconditions.checkArgument(resume.isAt(searchPathStatus.getPath()), String.format(
+                "Cursor %s doesn't belong to %s", query.cursor(), query.searchPath()));
+        return resume;
+    }
+
+    /**
+     * Fetch the status of the search path, this is the only getFileStatus call
+     * of a search. Throws an IllegalStateException if the path doesn't exist.
+     */
+    static FileStatus searchPathStatus(FileSystem fs, FSFindQuery query, RpcCounts rpcCounts)
+            throws IOException {
+        rpcCounts.increment(FSOperation.GET_FILE_STATUS);
+        FileStatus status;
+        try {
+            status = fs.getFileStatus(query.searchPath());
+        } catch (FileNotFoundException e) {
+            throw new IllegalStateException(String.format("%s does not exist.",
+                    query.searchPath()));
+        }
+        Preconditions.checkState(status.isDirectory(), "Expected a directory but found "
+                + query.searchPath());
+        return status;
     }
 
-    private boolean currentSameAsOriginal(Path currentDir, Path origDir) {
+    /**
+     * List a directory whose status came from its parent's listing. The
+     * listing is sorted by name, which is what makes a search resumable from
+     * an <code>FSFindCursor</code>. Return null if the directory disappeared
+     * in the meantime, which can only happen if it got deleted after we
+     * started the search.
+     *
+     * If there is an index, the listing is served from it when the directory
+     * hasn't been modified since it was indexed. A status which itself was
+     * served from the index may be stale, the current one is fetched first.
+     */
+    static FileStatus[] listDirectory(FileSystem fs, FileStatus dir, ListingIndex index,
+                                      RpcCounts rpcCounts) throws IOException {
+        try {
+            if (index != null) {
+                if (dir instanceof ListingIndex.IndexedStatus) {
+                    rpcCounts.increment(FSOperation.GET_FILE_STATUS);
+                    dir = fs.getFileStatus(dir.getPath());
+                }
+                FileStatus[] indexed = index.lookup(dir);
+                if (indexed != null) {
+                    return indexed;
+                }
+            }
+            rpcCounts.increment(FSOperation.LIST_STATUS);
+            FileStatus[] listing = fs.listStatus(dir.getPath());
+            // HDFS already lists in name order, in which case this is a linear pass.
+            Arrays.sort(listing, BY_NAME);
+            if (index != null) {
+                index.record(dir, listing);
+            }
+            return listing;
+        } catch (FileNotFoundException e) {
+            LOG.warn(String.format("%s can't be found, it must have been deleted after we " +
+                    "started the search", dir.getPath()));
+            return null;
+        }
+    }
+
+    static boolean currentSameAsOriginal(Path currentDir, Path origDir) {
         return currentDir.toUri().getPath().equals(origDir.toUri().getPath());
     }
 
     /* return REJECT_REASON.NONE only if mtime is older than our threshold and filter accepts
-    the path */
-    private REJECT_REASON includePath(FileStatus status, long purgeTime, PathFilter filter) {
-        if (status.isDirectory() && !filter.accept(status.getPath())) {
+    the path. The filter is asked first for directories since rejecting one prunes the sub
+    tree, and last for files since the mtime check is cheaper */
+    static REJECT_REASON includePath(FileStatus status, long purgeTime, FileStatusFilter filter) {
+        if (status.isDirectory() && !filter.accept(status)) {
             return REJECT_REASON.PATH_FILTER;
         } else if (status.getModificationTime() >= purgeTime) {
             return REJECT_REASON.NOT_OLD_ENOUGH;
+        } else if (!status.isDirectory() && !filter.accept(status)) {
+            return REJECT_REASON.PATH_FILTER;
         } else {
             return REJECT_REASON.NONE;
         }
     }
 
-    private enum REJECT_REASON {
+    enum REJECT_REASON {
         NONE, // accepted!
         NOT_OLD_ENOUGH,
-        PATH_FILTER,
+        PATH_FILTER, // rejected by the filter
     }
 }
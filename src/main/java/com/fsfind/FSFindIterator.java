@@ -0,0 +1,36 @@
+package com.fsfind;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+
+/**
+ * A pull based alternative to <code>FSFind#find</code>. Candidates are
+ * produced lazily as the search goes, so unlike <code>FSFindResult</code> the
+ * memory held doesn't grow with the number of candidates. The candidates come
+ * out in the same order as the ones returned by the <code>find</code> method
+ * of the same <code>FSFind</code> implementation. If the query carries a
+ * cursor, the iterator resumes from it.
+ */
+public abstract class FSFindIterator implements RemoteIterator<Path> {
+
+    private final RpcCounts rpcCounts;
+    private final ReclaimableSpace reclaimable = new ReclaimableSpace();
+
+    FSFindIterator(RpcCounts rpcCounts) {
+        this.rpcCounts = rpcCounts;
+    }
+
+    /**
+     * @return the FileSystem calls issued so far by this iterator
+     */
+    public RpcCounts rpcCounts() {
+        return rpcCounts;
+    }
+
+    /**
+     * @return the space taken up by the candidates produced so far
+     */
+    public ReclaimableSpace reclaimable() {
+        return reclaimable;
+    }
+}
@@ -0,0 +1,215 @@
+package com.fsfind;
+
+import com.google.common.base.CaseFormat;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsInfo;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.metrics2.lib.Interns;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableQuantiles;
+import org.apache.hadoop.metrics2.lib.MutableStat;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe metrics of the searches and the deletes of a run, published
+ * through Hadoop metrics2 and, like every metrics2 source, as a JMX MBean
+ * named <code>Hadoop:service=fsfind,name=&lt;name&gt;</code>. The values are
+ * the live ones, so a run can be watched while it is in progress.
+ * <p/>
+ * For every <code>FSOperation</code> there are the number of calls and their
+ * average latency (<code>&lt;Operation&gt;NumOps</code>,
+ * <code>&lt;Operation&gt;AvgMicros</code>), the latency percentiles over the
+ * last minute (<code>&lt;Operation&gt;60s99thPercentileMicros</code> and so
+ * on) and the number of calls which failed. Every <code>Counter</code> is
+ * published under its name in camel case, e.g. <code>FilesVisited</code>.
+ * Gauges, such as the depth of a queue, are read when the metrics are. JMX
+ * reads them at most once per period of the metrics system, 10 seconds by
+ * default.
+ * <p/>
+ * Nothing is published until the instance is registered, see
+ * {@link #register(String)}.
+ */
+public class FSFindMetrics implements MetricsSource {
+
+    /**
+     * Prefix of the metrics system, the sinks of the metrics are configured
+     * under it in <code>hadoop-metrics2.properties</code>.
+     */
+    public static final String PREFIX = "fsfind";
+
+    /**
+     * Seconds the latency percentiles are computed over.
+     */
+    public static final int PERCENTILES_INTERVAL = 60;
+
+    /**
+     * What the searches and the deletes count.
+     */
+    public enum Counter {
+        DIRECTORIES_VISITED("Directories listed, or judged by their name alone"),
+        FILES_VISITED("Files looked at"),
+        CANDIDATES_EMITTED("Candidates handed to the caller of a search"),
+        COLLAPSES("Directories included in place of all of their children"),
+        DELETES_SUCCEEDED("Candidates deleted or quarantined"),
+        DELETES_SKIPPED("Candidates which were gone or modified by the time of their delete"),
+        DELETES_FAILED("Candidates whose delete threw");
+
+        private final String description;
+
+        Counter(String description) {
+            this.description = description;
+        }
+    }
+
+    /**
+     * A value read each time the metrics are.
+     */
+    public interface Gauge {
+        long value();
+    }
+
+    private final MetricsRegistry registry;
+    private final MutableStat[] latencies = new MutableStat[FSOperation.values().length];
+    private final MutableQuantiles[] percentiles =
+            new MutableQuantiles[FSOperation.values().length];
+    private final AtomicLongArray calls = new AtomicLongArray(FSOperation.values().length);
+    private final AtomicLongArray failures = new AtomicLongArray(FSOperation.values().length);
+    private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+    private final Map<MetricsInfo, Gauge> gauges = Maps.newLinkedHashMap();
+
+    /**
+     * @param name name of the record the metrics are published in
+     */
+    public FSFindMetrics(String name) {
+        registry = new MetricsRegistry(name).setContext(PREFIX);
+        for (FSOperation operation : FSOperation.values()) {
+            String metric = metricName(operation);
+            latencies[operation.ordinal()] = registry.newStat(metric, "Latency of " + metric,
+                    "Ops", "Micros", false);
+            percentiles[operation.ordinal()] = registry.newQuantiles(metric + PERCENTILES_INTERVAL
+                            + "s", "Latency percentiles of " + metric, "Ops", "Micros",
+                    PERCENTILES_INTERVAL);
+        }
+    }
+
+    /**
+     * Register new metrics with the default metrics system, starting it if
+     * need be. Once registered, the metrics are published until the system
+     * is shut down.
+     *
+     * @param name name of the metrics, has to be unique within the JVM
+     * @return the registered metrics
+     */
+    public static FSFindMetrics register(String name) {
+        DefaultMetricsSystem.initialize(PREFIX);
+        return DefaultMetricsSystem.instance().register(name, "Metrics of " + name,
+                new FSFindMetrics(name));
+    }
+
+    /**
+     * Record a <code>FileSystem</code> call.
+     *
+     * @param operation    the call
+     * @param latencyNanos how long it took
+     * @param failed       true if it threw
+     */
+    public void record(FSOperation operation, long latencyNanos, boolean failed) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+        latencies[operation.ordinal()].add(micros);
+        percentiles[operation.ordinal()].add(micros);
+        calls.incrementAndGet(operation.ordinal());
+        if (failed) {
+            failures.incrementAndGet(operation.ordinal());
+        }
+    }
+
+    /**
+     * @param counter the counter to add to
+     * @param delta   amount to add
+     */
+    public void increment(Counter counter, long delta) {
+        counters.addAndGet(counter.ordinal(), delta);
+    }
+
+    /**
+     * @return number of given calls recorded so far
+     */
+    public long calls(FSOperation operation) {
+        return calls.get(operation.ordinal());
+    }
+
+    /**
+     * @return number of given calls which failed so far
+     */
+    public long failures(FSOperation operation) {
+        return failures.get(operation.ordinal());
+    }
+
+    /**
+     * @return value of given counter
+     */
+    public long get(Counter counter) {
+        return counters.get(counter.ordinal());
+    }
+
+    /**
+     * Publish a gauge along with the other metrics.
+     *
+     * @param name        name of the gauge, in camel case
+     * @param description what the gauge measures
+     * @param gauge       read each time the metrics are
+     */
+    public synchronized void gauge(String name, String description, Gauge gauge) {
+        MetricsInfo info = Interns.info(name, description);
+        Preconditions.checkArgument(!gauges.containsKey(info), "Gauge %s already exists", name);
+        gauges.put(info, gauge);
+    }
+
+    @Override
+    public synchronized void getMetrics(MetricsCollector collector, boolean all) {
+        MetricsRecordBuilder builder = collector.addRecord(registry.info()).setContext(PREFIX);
+        registry.snapshot(builder, all);
+        for (FSOperation operation : FSOperation.values()) {
+            builder.addCounter(Interns.info(metricName(operation) + "Failures",
+                    "Failed calls of " + metricName(operation)), failures(operation));
+        }
+        for (Counter counter : Counter.values()) {
+            builder.addCounter(Interns.info(metricName(counter), counter.description),
+                    get(counter));
+        }
+        for (Map.Entry<MetricsInfo, Gauge> gauge : gauges.entrySet()) {
+            builder.addGauge(gauge.getKey(), gauge.getValue().value());
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("FSFindMetrics{");
+        for (Counter counter : Counter.values()) {
+            builder.append(metricName(counter)).append('=').append(get(counter)).append(", ");
+        }
+        for (FSOperation operation : FSOperation.values()) {
+            if (operation.ordinal() > 0) {
+                builder.append(", ");
+            }
+            builder.append(metricName(operation)).append('=').append(calls(operation));
+            if (failures(operation) > 0) {
+                builder.append(" (").append(failures(operation)).append(" failed)");
+            }
+        }
+        return builder.append('}').toString();
+    }
+
+    /* GET_FILE_STATUS becomes GetFileStatus */
+    private static String metricName(Enum<?> constant) {
+        return CaseFormat.UPPER_UNDERSCORE.to(CaseFormat.UPPER_CAMEL, constant.name());
+    }
+}
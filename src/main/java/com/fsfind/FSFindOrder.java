@@ -0,0 +1,15 @@
+package com.fsfind;
+
+/**
+ * Which candidates a batched search returns first. By default a batch is
+ * filled in the order the tree is walked in and the next batch resumes where
+ * it stopped, so a run that is cut short may have deleted recent data while
+ * much older data survived. The other orders look at every candidate and fill
+ * each batch with the most valuable ones instead, see
+ * {@link FSFindQuery#withOrder(FSFindOrder)}.
+ */
+public enum FSFindOrder {
+    WALK, // the order the tree is walked in
+    OLDEST_FIRST, // the least recently modified candidates first
+    LARGEST_FIRST // the candidates with the most bytes first
+}
@@ -1,43 +1,57 @@
 package com.fsfind;
 
-import com.google.common.collect.Sets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 
 import org.apache.hadoop.fs.Path;
 
-import java.util.Set;
+import java.util.List;
 
 /**
  * <code>FSFindQuery</code> represents a search query for
  * <code>FSFind#find</code> method. It enapsulates two types of data. First
- * being the to-be-searched path (a directory) & the other type is a set of
- * paths which are marked as 'covered'. These paths act as hint for search
- * algorithm, if a path is marked as covered - algorithm does not explore it.
+ * being the to-be-searched path (a directory) & the other type is an optional
+ * cursor marking where a previous search of the same path stopped. If a cursor
+ * is present, search resumes from it instead of starting from the search path.
+ * A query may also carry partition patterns, which let the search judge time
+ * partitioned directories by their names, see <code>PartitionPattern</code>,
+ * and an order in which the candidates of a batch are picked.
  */
 public class FSFindQuery {
 
     private Path searchPath;
-    private Set<Path> coveredPaths = Sets.newHashSet();
+    private FSFindCursor cursor;
+    private List<PartitionPattern> partitions = ImmutableList.of();
+    private FSFindOrder order = FSFindOrder.WALK;
 
-    private FSFindQuery(Path path) {
+    private FSFindQuery(Path path, FSFindCursor cursor) {
         this.searchPath = path;
+        this.cursor = cursor;
     }
 
     /**
-     * Helper method to create FSFindQuery with empty explored set.
+     * Helper method to create FSFindQuery which starts from the search path.
      */
     public static FSFindQuery make(Path path) {
-        return new FSFindQuery(path);
+        return new FSFindQuery(path, null);
+    }
+
+    /**
+     * Helper method to create FSFindQuery which resumes from given cursor, for
+     * instance one that was persisted by an earlier process. A null cursor
+     * means start from the search path.
+     */
+    public static FSFindQuery make(Path path, FSFindCursor cursor) {
+        return new FSFindQuery(path, cursor);
     }
 
     /**
      * Helper method to create an instance of FSFindQuery from FSFindResult.
-     * Client should pass the FSFindResult from the last iteration. The explored
-     * path hint is passed from FSFindResult to FSFindQuery.
+     * Client should pass the FSFindResult from the last iteration. The search
+     * resumes where the last iteration stopped.
      */
     public static FSFindQuery makeFromResult(Path path, FSFindResult result) {
-        FSFindQuery query = new FSFindQuery(path);
-        query.coveredPaths = Sets.newHashSet(result.explored());
-        return query;
+        return new FSFindQuery(path, result.cursor());
     }
 
     /**
@@ -48,10 +62,71 @@ public class FSFindQuery {
     }
 
     /**
-     * Return true of path is marked covered/explored.
+     * Return the cursor to resume from, null if search starts from the search
+     * path.
+     */
+    public FSFindCursor cursor() {
+        return this.cursor;
+    }
+
+    /**
+     * Return a copy of this query which recognizes the directories matching
+     * any of the given partition patterns.
+     */
+    public FSFindQuery withPartitions(List<PartitionPattern> partitions) {
+        FSFindQuery query = new FSFindQuery(searchPath, cursor);
+        query.partitions = ImmutableList.copyOf(partitions);
+        query.order = order;
+        return query;
+    }
+
+    /**
+     * Return a copy of this query which picks the candidates of a batch in
+     * given order. Unless the order is <code>FSFindOrder.WALK</code>, every
+     * batch walks the whole tree and keeps the best candidates in a heap the
+     * size of the batch, so the memory held doesn't grow with the number of
+     * candidates. The next batch walks the tree again, it expects the
+     * candidates of the last one to have been deleted, and the cursor only
+     * tells whether there are more candidates.
+     */
+    public FSFindQuery withOrder(FSFindOrder order) {
+        Preconditions.checkNotNull(order, "order");
+        FSFindQuery query = new FSFindQuery(searchPath, cursor);
+        query.partitions = partitions;
+        query.order = order;
+        return query;
+    }
+
+    /**
+     * Return the partition patterns, empty if there are none.
+     */
+    public List<PartitionPattern> partitions() {
+        return this.partitions;
+    }
+
+    /**
+     * Return the order the candidates of a batch are picked in.
+     */
+    public FSFindOrder order() {
+        return this.order;
+    }
+
+    /**
+     * Return a copy of this query which starts from the search path.
+     */
+    FSFindQuery withoutCursor() {
+        return make(searchPath).withPartitions(partitions).withOrder(order);
+    }
+
+    /**
+     * How the time a directory covers compares with given purge time. The
+     * search path itself is never judged by its name.
      */
-    public boolean isCovered(Path path) {
-        return this.coveredPaths.contains(path);
+    PartitionPattern.Age partitionAge(Path dir, long timestamp) {
+        if (partitions.isEmpty() || FSFindImpl.currentSameAsOriginal(dir, searchPath)) {
+            return PartitionPattern.Age.UNKNOWN;
+        }
+        return PartitionPattern.age(partitions, dir, timestamp);
     }
 
 }
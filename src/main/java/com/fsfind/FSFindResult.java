@@ -1,46 +1,163 @@
 package com.fsfind;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 
 import org.apache.hadoop.fs.Path;
 
-import java.util.LinkedList;
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
  * <code>FSFindResult</code> represents the result of a find operation. Along
  * with the candidates discovered during the search (which met the search
  * criteria), it also contains a set of directories which were completely
- * explored during this search iteration. This knowledge can be passed to the
- * next iteration for optimizing the search.
+ * explored during this search iteration and a cursor marking where the search
+ * stopped. The cursor can be passed to the next iteration to resume the
+ * search.
+ * <p/>
+ * An unbatched search of a big tree can hold millions of paths, so they are
+ * not kept as <code>Path</code> objects but interned in a
+ * <code>PathArena</code>: candidates are a list of arena ids and explored
+ * directories a bit set over them. <code>candidates()</code> and
+ * <code>explored()</code> are read only views which create the
+ * <code>Path</code> objects as they are accessed.
  */
 public class FSFindResult {
 
-    private Set<Path> explored = Sets.newHashSet();
-    private LinkedList<Path> candidates = Lists.newLinkedList();
+    private final PathArena arena = new PathArena();
+    private final BitSet explored = new BitSet();
+    private int[] candidates = new int[16];
+    private int size = 0;
+    private final RpcCounts rpcCounts = new RpcCounts();
+    private final ReclaimableSpace reclaimable = new ReclaimableSpace();
+    private FSFindCursor cursor;
 
     /**
      * @return the explored set
      */
     public Set<Path> explored() {
-        return explored;
+        return new AbstractSet<Path>() {
+            @Override
+            public Iterator<Path> iterator() {
+                return new Iterator<Path>() {
+                    private int next = explored.nextSetBit(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return next >= 0;
+                    }
+
+                    @Override
+                    public Path next() {
+                        if (next < 0) {
+                            throw new NoSuchElementException();
+                        }
+                        Path path = arena.toPath(next);
+                        next = explored.nextSetBit(next + 1);
+                        return path;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return explored.cardinality();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if (!(o instanceof Path)) {
+                    return false;
+                }
+                int id = arena.find((Path) o);
+                return id >= 0 && explored.get(id);
+            }
+        };
     }
 
     /**
      * @return the candidate that met the search criteria
      */
     public List<Path> candidates() {
-        return candidates;
+        return new AbstractList<Path>() {
+            @Override
+            public Path get(int index) {
+                Preconditions.checkElementIndex(index, size);
+                return arena.toPath(candidates[index]);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public int indexOf(Object o) {
+                if (!(o instanceof Path)) {
+                    return -1;
+                }
+                int id = arena.find((Path) o);
+                for (int i = 0; id >= 0 && i < size; i++) {
+                    if (candidates[i] == id) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return indexOf(o) >= 0;
+            }
+        };
+    }
+
+    /**
+     * @return where the search stopped, null if this result didn't come from a
+     * search
+     */
+    public FSFindCursor cursor() {
+        return cursor;
+    }
+
+    void setCursor(FSFindCursor cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return the FileSystem calls issued while producing this result
+     */
+    public RpcCounts rpcCounts() {
+        return rpcCounts;
+    }
+
+    /**
+     * @return the space taken up by the candidates, accounted for from the
+     * statuses listed during the search
+     */
+    public ReclaimableSpace reclaimable() {
+        return reclaimable;
     }
 
     /**
      * @param path the path to be included in the candidate list
      */
     public void add(Path path) {
-        this.candidates.add(path);
+        if (size == candidates.length) {
+            candidates = Arrays.copyOf(candidates, size * 2);
+        }
+        candidates[size++] = arena.intern(path);
     }
 
     /**
@@ -51,7 +168,7 @@ public class FSFindResult {
     public void removeLast(int n) {
         Preconditions.checkState(size() >= n, String.format("Have %d candidates" +
                 ", cant remove %d more.", size(), n));
-        candidates.subList(size() - n, size()).clear();
+        size -= n;
     }
 
     /**
@@ -60,28 +177,39 @@ public class FSFindResult {
      * @param path the path to be marked
      */
     public void markExplored(Path path) {
-        this.explored.add(path);
+        this.explored.set(arena.intern(path));
     }
 
     /**
      * @return current size of the candidate list
      */
     public int size() {
-        return candidates.size();
+        return size;
     }
 
     /**
      * @return the last included candidate path
      */
     public Path getLast() {
-        return candidates.getLast();
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return arena.toPath(candidates[size - 1]);
+    }
+
+    /* true if given path is the last candidate, without creating a Path for the comparison */
+    boolean isLast(Path path) {
+        return size > 0 && candidates[size - 1] == arena.find(path);
     }
 
     @Override
     public String toString() {
         return "FSFindResult{" +
-                "explored=" + explored +
-                ", candidates=" + candidates +
+                "explored=" + explored() +
+                ", candidates=" + candidates() +
+                ", rpcCounts=" + rpcCounts +
+                ", reclaimable=" + reclaimable +
+                ", cursor=" + cursor +
                 '}';
     }
 }
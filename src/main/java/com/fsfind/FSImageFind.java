@@ -0,0 +1,557 @@
+package com.fsfind;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.NoSuchElementException;
+
+/**
+ * <code>FSFind</code> implementation which searches an offline dump of the
+ * namespace instead of listing the live <code>FileSystem</code>, so a search
+ * costs no NameNode RPC at all. The dump is the output of the HDFS offline
+ * image viewer's delimited processor (<code>hdfs oiv -p Delimited</code>), or
+ * any local file in the same layout: one inode per line, tab separated, the
+ * absolute path in the 1st column, the modification time in the 3rd (either
+ * <code>yyyy-MM-dd HH:mm</code> in the local time zone, as written by the
+ * image viewer, or milliseconds since the epoch) and the permission string in
+ * the 10th, where directories start with 'd'. A header line is skipped.
+ * <p/>
+ * The same rules as <code>FSFindImpl</code> apply: files older than the
+ * timestamp are candidates unless the filter rejects them, a directory
+ * rejected by the filter is skipped with everything under it, and if
+ * directories are included, a directory all of whose children are candidates
+ * (or an empty one that is old enough) is returned instead of its children.
+ * The filter sees the size, replication, block size, permission, owner and
+ * group columns of the dump, which also account for the space the candidates
+ * take up. The dump is read twice per search: the first pass works out which
+ * directories collapse, keeping state only for directories, the second one
+ * streams out the candidates in dump order. The first pass is reused by the
+ * batches that follow, and the cursor of a batched search is the offset in
+ * the dump to resume reading from.
+ * <p/>
+ * The dump is only as fresh as the image it came from, and the image viewer
+ * rounds modification times down to the minute. Deletes should make sure a
+ * candidate is still old enough right before deleting it. Unlike
+ * <code>FSFindImpl</code>, an instance must not be used by more than one
+ * thread at a time.
+ */
+public class FSImageFind extends FSFind {
+
+    public static final Logger LOG = Logger.getLogger(FSImageFind.class);
+    private static final String TIME_FORMAT = "yyyy-MM-dd HH:mm";
+    private static final int PATH_COLUMN = 0;
+    private static final int REPLICATION_COLUMN = 1;
+    private static final int MTIME_COLUMN = 2;
+    private static final int BLOCK_SIZE_COLUMN = 4;
+    private static final int SIZE_COLUMN = 6;
+    private static final int PERMISSION_COLUMN = 9;
+    private static final int USER_COLUMN = 10;
+    private static final int GROUP_COLUMN = 11;
+    private final boolean includeDirectories;
+    private final FileSystem fs;
+    private final File image;
+    private Scan lastScan;
+
+    /**
+     * @param includeDirectories whether to include directories in the results
+     * @param fs                 the filesystem the dump was taken from, the
+     *                           candidates are qualified against it
+     * @param image              the namespace dump
+     */
+    public FSImageFind(boolean includeDirectories, FileSystem fs, File image) {
+        this.includeDirectories = includeDirectories;
+        this.fs = fs;
+        this.image = image;
+    }
+
+    @Override
+    public FSFindResult findMatching(FSFindQuery query, long timestamp, int batchSize,
+                                     FileStatusFilter filter) throws IOException {
+        FSFindResult result = new FSFindResult();
+        if (query.cursor() != null && query.cursor().isExhausted()) {
+            result.setCursor(FSFindCursor.EXHAUSTED);
+            return result;
+        }
+        DumpIterator iterator = iterator(query, timestamp, filter);
+        try {
+            while (iterator.hasNext()) {
+                if (result.size() >= batchSize) {
+                    /* bail out */
+                    result.setCursor(new FSFindCursor(iterator.offset()));
+                    return result;
+                }
+                result.add(iterator.next());
+            }
+        } finally {
+            iterator.close();
+            result.reclaimable().add(iterator.reclaimable());
+        }
+        iterator.scan.markExplored(result);
+        result.setCursor(FSFindCursor.EXHAUSTED);
+        return result;
+    }
+
+    @Override
+    public FSFindIterator streamMatching(FSFindQuery query, long timestamp,
+                                         FileStatusFilter filter) throws IOException {
+        return iterator(query, timestamp, filter);
+    }
+
+    private DumpIterator iterator(FSFindQuery query, long timestamp, FileStatusFilter filter)
+            throws IOException {
+        // a dump is read front to back anyway, pruning by name would save next to nothing
+        Preconditions.checkArgument(query.partitions().isEmpty(),
+                "Partition patterns aren't supported when searching a namespace dump");
+        Preconditions.checkArgument(query.order() == FSFindOrder.WALK,
+                "Only the dump order is supported when searching a namespace dump");
+        long offset = 0;
+        if (query.cursor() != null) {
+            Preconditions.checkArgument(query.cursor().isExhausted()
+                    || query.cursor().imageOffset() != null, String.format(
+                    "Cursor %s isn't the cursor of a namespace dump search", query.cursor()));
+            offset = query.cursor().isExhausted() ? image.length() : query.cursor().imageOffset();
+        }
+        return new DumpIterator(scan(fs.makeQualified(query.searchPath()), timestamp, filter),
+                offset);
+    }
+
+    /* first pass over the dump, reused as long as the same search is resumed */
+    private Scan scan(Path searchPath, long timestamp, FileStatusFilter filter)
+            throws IOException {
+        if (lastScan == null || !lastScan.isFor(searchPath, timestamp, filter, image)) {
+            lastScan = new Scan(searchPath, timestamp, filter);
+            lastScan.run();
+        }
+        return lastScan;
+    }
+
+    /**
+     * What the first pass learnt about the directories under the search path.
+     * Directories are interned in a <code>PathArena</code>. The search path is
+     * interned first, and parents are always interned before their children,
+     * so the ids above the one of the search path are the directories under it
+     * and can be processed in ascending order from parents down to children.
+     */
+    private final class Scan {
+        private final Path searchPath;
+        private final String searchPathString;
+        private final long timestamp;
+        private final FileStatusFilter filter;
+        private final long imageModificationTime;
+        private final PathArena dirs = new PathArena();
+        private final int fsRoot;
+        private final int root;
+        private final Parser parser = new Parser();
+        private final BitSet isDir = new BitSet();
+        private final BitSet old = new BitSet();
+        private final BitSet hasChildren = new BitSet();
+        private final BitSet filtered = new BitSet();
+        /* a descendant isn't a candidate, so the directory can't be included as a whole */
+        private final BitSet blocked = new BitSet();
+        /* the directory's descendants are skipped, it is either included or filtered */
+        private final BitSet covers = new BitSet();
+        /* the directory was filtered or is under a filtered directory */
+        private final BitSet hidden = new BitSet();
+        private boolean found = false;
+
+        private Scan(Path searchPath, long timestamp, FileStatusFilter filter) {
+            this.searchPath = searchPath;
+            this.searchPathString = searchPath.toUri().getPath();
+            this.timestamp = timestamp;
+            this.filter = filter;
+            this.imageModificationTime = image.lastModified();
+            this.fsRoot = dirs.root(fs.getUri());
+            this.root = dirs.intern(fsRoot, searchPathString, searchPathString.length());
+        }
+
+        private boolean isFor(Path searchPath, long timestamp, FileStatusFilter filter,
+                              File image) {
+            return this.searchPath.equals(searchPath) && this.timestamp == timestamp
+                    && this.filter.equals(filter) && imageModificationTime == image.lastModified();
+        }
+
+        private void run() throws IOException {
+            long start = System.currentTimeMillis();
+            long lines = 0;
+            DumpReader reader = new DumpReader(image, 0);
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines++;
+                    if (parser.parse(line) && isUnderSearchPath(parser.path)) {
+                        visit();
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            Preconditions.checkState(found, String.format("%s does not exist.", searchPath));
+            finish();
+            LOG.info(String.format("Scanned %d entries of %s for %s in %d ms, %d directories",
+                    lines, image, searchPath, System.currentTimeMillis() - start, dirs.size()));
+        }
+
+        private void visit() {
+            String path = parser.path;
+            if (path.length() == searchPathString.length()) {
+                Preconditions.checkState(parser.isDirectory, "Expected a directory but found "
+                        + searchPath);
+                found = true;
+                if (!filter.accept(parser.status(searchPath))) {
+                    filtered.set(root);
+                }
+                return;
+            }
+            int parentLength = path.lastIndexOf('/');
+            int parent = parentLength == 0 ? fsRoot : dirs.intern(fsRoot, path, parentLength);
+            hasChildren.set(parent);
+            if (parser.isDirectory) {
+                int id = dirs.intern(fsRoot, path, path.length());
+                isDir.set(id);
+                if (parser.modificationTime < timestamp) {
+                    old.set(id);
+                }
+                if (!filter.accept(parser.status(toPath(path)))) {
+                    filtered.set(id);
+                    block(parent);
+                }
+            } else if (parser.modificationTime >= timestamp || !accepts(parser, path)) {
+                block(parent);
+            }
+        }
+
+        /* the directory can't be included as a whole, and neither can its ancestors */
+        private void block(int dir) {
+            while (dir >= 0 && dir != root && !blocked.get(dir)) {
+                blocked.set(dir);
+                dir = dirs.parent(dir);
+            }
+        }
+
+        /* second half of the first pass, once all the directories are known */
+        private void finish() {
+            for (int id = root + 1; id < dirs.size(); id++) {
+                if (isDir.get(id) && !hasChildren.get(id) && !old.get(id)) {
+                    block(dirs.parent(id)); // empty but too recent, stays
+                }
+            }
+            hidden.set(root, filtered.get(root));
+            covers.set(root, filtered.get(root));
+            for (int id = root + 1; id < dirs.size(); id++) {
+                int parent = dirs.parent(id);
+                if (hidden.get(parent) || filtered.get(id)) {
+                    hidden.set(id);
+                }
+                if (covers.get(parent) || filtered.get(id) || isIncluded(id)) {
+                    covers.set(id);
+                }
+            }
+        }
+
+        /* whether the filter accepts the file on the parsed line */
+        private boolean accepts(Parser parser, String path) {
+            // most filters only look at directories, don't build a status for each file then
+            return FileStatusFilters.acceptsAllFiles(filter)
+                    || filter.accept(parser.status(toPath(path)));
+        }
+
+        private boolean isIncluded(int dir) {
+            return includeDirectories && dir != root && !filtered.get(dir) && !blocked.get(dir)
+                    && (hasChildren.get(dir) || (isDir.get(dir) && old.get(dir)));
+        }
+
+        private boolean isUnderSearchPath(String path) {
+            if (!path.startsWith(searchPathString)) {
+                return false;
+            }
+            return path.length() == searchPathString.length() || searchPathString.equals("/")
+                    || path.charAt(searchPathString.length()) == '/';
+        }
+
+        /* directories explored by a search which went through the whole dump */
+        private void markExplored(FSFindResult result) {
+            result.markExplored(searchPath);
+            for (int id = root + 1; id < dirs.size(); id++) {
+                if (isDir.get(id) && !hidden.get(dirs.parent(id))) {
+                    result.markExplored(dirs.toPath(id));
+                }
+            }
+        }
+
+        private Path toPath(String path) {
+            URI uri = fs.getUri();
+            return new Path(uri.getScheme(), uri.getAuthority(), path);
+        }
+    }
+
+    /**
+     * <code>FSFindIterator</code> over a namespace dump, the second pass of a
+     * search.
+     */
+    private final class DumpIterator extends FSFindIterator implements Closeable {
+        private final Scan scan;
+        private final Parser parser = new Parser();
+        private final DumpReader reader;
+        private final ArrayDeque<Path> ready = new ArrayDeque<Path>();
+        private long readyOffset;
+        /* status of the ready candidate if it is a file, accounted for once handed out */
+        private FileStatus readyFile;
+
+        private DumpIterator(Scan scan, long offset) throws IOException {
+            super(new RpcCounts());
+            this.scan = scan;
+            this.reader = new DumpReader(image, offset);
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            while (ready.isEmpty()) {
+                long offset = reader.offset();
+                String line = reader.readLine();
+                if (line == null) {
+                    close();
+                    return false;
+                }
+                if (parser.parse(line) && scan.isUnderSearchPath(parser.path)) {
+                    Path candidate = evaluate();
+                    if (candidate != null) {
+                        ready.add(candidate);
+                        readyOffset = offset;
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Path next() throws IOException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (readyFile != null) {
+                reclaimable().record(readyFile, scan.timestamp);
+                readyFile = null;
+            }
+            return ready.poll();
+        }
+
+        /**
+         * @return offset of the line holding the next candidate, where a
+         * search resumes from to get that candidate
+         */
+        long offset() {
+            return readyOffset;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+
+        private Path evaluate() {
+            String path = parser.path;
+            if (path.length() == scan.searchPathString.length()) {
+                return null;
+            }
+            int parentLength = path.lastIndexOf('/');
+            int parent = parentLength == 0 ? scan.fsRoot
+                    : scan.dirs.intern(scan.fsRoot, path, parentLength);
+            if (scan.covers.get(parent)) {
+                if (!parser.isDirectory && !scan.hidden.get(parent)) {
+                    // under a directory candidate which was handed out already
+                    parser.account(reclaimable(), scan.timestamp);
+                }
+                return null;
+            }
+            if (parser.isDirectory) {
+                int id = scan.dirs.intern(scan.fsRoot, path, path.length());
+                return scan.isIncluded(id) ? scan.toPath(path) : null;
+            }
+            if (parser.modificationTime < scan.timestamp && scan.accepts(parser, path)) {
+                Path candidate = scan.toPath(path);
+                readyFile = parser.status(candidate);
+                return candidate;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Picks the columns a search needs out of a line of the dump.
+     */
+    private static final class Parser {
+        private final SimpleDateFormat format = new SimpleDateFormat(TIME_FORMAT);
+        private final int[] starts = new int[GROUP_COLUMN + 1];
+        private final int[] ends = new int[GROUP_COLUMN + 1];
+        private String line;
+        private int columns;
+        private String lastTime;
+        private long lastModificationTime;
+        private String path;
+        private long modificationTime;
+        private boolean isDirectory;
+
+        /* return false if the line is the header or can't be parsed */
+        private boolean parse(String line) {
+            this.line = line;
+            columns = 0;
+            int from = 0;
+            while (columns <= GROUP_COLUMN) {
+                int to = line.indexOf('\t', from);
+                if (to < 0) {
+                    to = line.length();
+                }
+                starts[columns] = from;
+                ends[columns] = to;
+                columns++;
+                if (to == line.length()) {
+                    break;
+                }
+                from = to + 1;
+            }
+            if (columns <= PERMISSION_COLUMN || line.charAt(starts[PATH_COLUMN]) != '/') {
+                if (!line.startsWith("Path\t")) {
+                    LOG.warn("Skipping malformed line: " + line);
+                }
+                return false;
+            }
+            path = column(PATH_COLUMN);
+            if (path.length() > 1 && path.endsWith("/")) {
+                path = path.substring(0, path.length() - 1);
+            }
+            isDirectory = ends[PERMISSION_COLUMN] > starts[PERMISSION_COLUMN]
+                    && line.charAt(starts[PERMISSION_COLUMN]) == 'd';
+            try {
+                modificationTime = modificationTime(column(MTIME_COLUMN));
+            } catch (ParseException e) {
+                LOG.warn("Skipping line with unparsable modification time: " + line);
+                return false;
+            }
+            return true;
+        }
+
+        /* status of the parsed line, for the filter */
+        private FileStatus status(Path path) {
+            String permission = column(PERMISSION_COLUMN);
+            // a trailing '+' marks an ACL
+            FsPermission fsPermission = permission.length() >= 10
+                    ? FsPermission.valueOf(permission.substring(0, 10))
+                    : FsPermission.getDefault();
+            return new FileStatus(number(SIZE_COLUMN), isDirectory,
+                    (int) number(REPLICATION_COLUMN), number(BLOCK_SIZE_COLUMN),
+                    modificationTime, 0, fsPermission,
+                    columns > USER_COLUMN ? column(USER_COLUMN) : null,
+                    columns > GROUP_COLUMN ? column(GROUP_COLUMN) : null, path);
+        }
+
+        /* account for the file on the parsed line */
+        private void account(ReclaimableSpace reclaimable, long purgeTime) {
+            reclaimable.record(number(SIZE_COLUMN), (short) number(REPLICATION_COLUMN),
+                    modificationTime, columns > USER_COLUMN ? column(USER_COLUMN) : null,
+                    purgeTime);
+        }
+
+        private String column(int column) {
+            return line.substring(starts[column], ends[column]);
+        }
+
+        private long number(int column) {
+            try {
+                return Long.parseLong(column(column));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        /* lines come grouped by directory, most of them share their time with the previous one */
+        private long modificationTime(String time) throws ParseException {
+            if (!Objects.equal(time, lastTime)) {
+                boolean millis = !time.isEmpty();
+                for (int i = 0; i < time.length() && millis; i++) {
+                    millis = Character.isDigit(time.charAt(i));
+                }
+                lastModificationTime = millis ? Long.parseLong(time) : format.parse(time).getTime();
+                lastTime = time;
+            }
+            return lastModificationTime;
+        }
+    }
+
+    /**
+     * Reads the dump line by line, keeping track of the offset of each line so
+     * that reading can resume from there.
+     */
+    private static final class DumpReader implements Closeable {
+        private final FileInputStream in;
+        private final byte[] buffer = new byte[64 * 1024];
+        private byte[] line = new byte[256];
+        private int position = 0;
+        private int limit = 0;
+        private long offset;
+
+        private DumpReader(File file, long offset) throws IOException {
+            this.in = new FileInputStream(file);
+            this.in.getChannel().position(offset);
+            this.offset = offset;
+        }
+
+        /* offset of the next line */
+        private long offset() {
+            return offset;
+        }
+
+        private String readLine() throws IOException {
+            int length = 0;
+            boolean read = false;
+            while (true) {
+                if (position == limit) {
+                    limit = in.read(buffer);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        return read ? decode(length) : null;
+                    }
+                }
+                byte b = buffer[position++];
+                offset++;
+                read = true;
+                if (b == '\n') {
+                    return decode(length);
+                }
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = b;
+            }
+        }
+
+        private String decode(int length) {
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            return new String(line, 0, length, Charsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.fsfind;
+
+/**
+ * The <code>FileSystem</code> calls made by fsfind, each of them results in
+ * (at least) one NameNode RPC on HDFS. Searches only read, the deletes of a
+ * retention run write.
+ */
+public enum FSOperation {
+    GET_FILE_STATUS,
+    LIST_STATUS,
+    DELETE,
+    RENAME,
+    MKDIRS,
+}
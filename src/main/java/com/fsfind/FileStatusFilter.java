@@ -0,0 +1,20 @@
+package com.fsfind;
+
+import org.apache.hadoop.fs.FileStatus;
+
+/**
+ * A filter on the <code>FileStatus</code> returned by a directory listing.
+ * Unlike a <code>PathFilter</code> it can look at the size, owner, group,
+ * permission and replication of a path without another call to the
+ * filesystem. A directory rejected by the filter is skipped with everything
+ * under it, a file rejected by the filter is not a candidate. See
+ * <code>FileStatusFilters</code> for the common filters.
+ */
+public interface FileStatusFilter {
+
+    /**
+     * @param status status of a file or directory, as listed by its parent
+     * @return true if the path should be considered by the search
+     */
+    boolean accept(FileStatus status);
+}
@@ -0,0 +1,320 @@
+package com.fsfind;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.permission.FsPermission;
+
+import java.util.Arrays;
+
+/**
+ * Common <code>FileStatusFilter</code> implementations. The predicates only
+ * compare fields of the status handed to them, they don't allocate.
+ * <p/>
+ * Size and replication are attributes of files, the filters on them accept
+ * every directory so that they don't cut whole sub trees off. Owner, group and
+ * permission filters apply to directories as well, wrap them with
+ * <code>onFiles</code> to leave directories alone.
+ */
+public final class FileStatusFilters {
+
+    private static final FileStatusFilter ACCEPTS_ALL = new FileStatusFilter() {
+        @Override
+        public boolean accept(FileStatus status) {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "all";
+        }
+    };
+
+    private FileStatusFilters() {
+    }
+
+    /**
+     * @return a filter accepting everything
+     */
+    public static FileStatusFilter all() {
+        return ACCEPTS_ALL;
+    }
+
+    /**
+     * Adapt a <code>PathFilter</code>. As with the <code>PathFilter</code>
+     * overloads of <code>FSFind</code>, it only applies to directories.
+     */
+    public static FileStatusFilter of(PathFilter filter) {
+        Preconditions.checkNotNull(filter, "filter");
+        if (filter == FSFindFilters.ACCEPTS_ALL) {
+            return ACCEPTS_ALL;
+        }
+        return new PathFilterAdapter(filter);
+    }
+
+    /**
+     * @return a filter which applies given filter to files, and accepts all
+     * directories
+     */
+    public static FileStatusFilter onFiles(final FileStatusFilter filter) {
+        return new FileStatusFilter() {
+            @Override
+            public boolean accept(FileStatus status) {
+                return status.isDirectory() || filter.accept(status);
+            }
+
+            @Override
+            public String toString() {
+                return "onFiles(" + filter + ")";
+            }
+        };
+    }
+
+    /**
+     * @return a filter which applies given filter to directories, and accepts
+     * all files
+     */
+    public static FileStatusFilter onDirectories(final FileStatusFilter filter) {
+        return new FileStatusFilter() {
+            @Override
+            public boolean accept(FileStatus status) {
+                return !status.isDirectory() || filter.accept(status);
+            }
+
+            @Override
+            public String toString() {
+                return "onDirectories(" + filter + ")";
+            }
+        };
+    }
+
+    /**
+     * @return a filter accepting files of at least given size in bytes
+     */
+    public static FileStatusFilter sizeAtLeast(final long bytes) {
+        return new FileStatusFilter() {
+            @Override
+            public boolean accept(FileStatus status) {
+                return status.isDirectory() || status.getLen() >= bytes;
+            }
+
+            @Override
+            public String toString() {
+                return "size >= " + bytes;
+            }
+        };
+    }
+
+    /**
+     * @return a filter accepting files of at most given size in bytes
+     */
+    public static FileStatusFilter sizeAtMost(final long bytes) {
+        return new FileStatusFilter() {
+            @Override
+            public boolean accept(FileStatus status) {
+                return status.isDirectory() || status.getLen() <= bytes;
+            }
+
+            @Override
+            public String toString() {
+                return "size <= " + bytes;
+            }
+        };
+    }
+
+    /**
+     * @return a filter accepting files with a replication factor of at least
+     * given value
+     */
+    public static FileStatusFilter replicationAtLeast(final short replication) {
+        return new FileStatusFilter() {
+            @Override
+            public boolean accept(FileStatus status) {
+                return status.isDirectory() || status.getReplication() >= replication;
+            }
+
+            @Override
+            public String toString() {
+                return "replication >= " + replication;
+            }
+        };
+    }
+
+    /**
+     * @return a filter accepting files with a replication factor of at most
+     * given value
+     */
+    public static FileStatusFilter replicationAtMost(final short replication) {
+        return new FileStatusFilter() {
+            @Override
+            public boolean accept(FileStatus status) {
+                return status.isDirectory() || status.getReplication() <= replication;
+            }
+
+            @Override
+            public String toString() {
+                return "replication <= " + replication;
+            }
+        };
+    }
+
+    /**
+     * @return a filter accepting paths owned by given user
+     */
+    public static FileStatusFilter ownedBy(final String owner) {
+        Preconditions.checkNotNull(owner, "owner");
+        return new FileStatusFilter() {
+            @Override
+            public boolean accept(FileStatus status) {
+                return owner.equals(status.getOwner());
+            }
+
+            @Override
+            public String toString() {
+                return "owner = " + owner;
+            }
+        };
+    }
+
+    /**
+     * @return a filter accepting paths belonging to given group
+     */
+    public static FileStatusFilter inGroup(final String group) {
+        Preconditions.checkNotNull(group, "group");
+        return new FileStatusFilter() {
+            @Override
+            public boolean accept(FileStatus status) {
+                return group.equals(status.getGroup());
+            }
+
+            @Override
+            public String toString() {
+                return "group = " + group;
+            }
+        };
+    }
+
+    /**
+     * @return a filter accepting paths whose permission has all the bits of
+     * given permission set, e.g. <code>new FsPermission((short) 0002)</code>
+     * for world writable paths
+     */
+    public static FileStatusFilter permissionHasAll(FsPermission permission) {
+        final short bits = permission.toShort();
+        return new FileStatusFilter() {
+            @Override
+            public boolean accept(FileStatus status) {
+                return (status.getPermission().toShort() & bits) == bits;
+            }
+
+            @Override
+            public String toString() {
+                return "permission has " + Integer.toOctalString(bits);
+            }
+        };
+    }
+
+    /**
+     * @return a filter accepting what all the given filters accept, filters
+     * are applied in order until one rejects
+     */
+    public static FileStatusFilter and(FileStatusFilter... filters) {
+        final FileStatusFilter[] all = filters.clone();
+        return new FileStatusFilter() {
+            @Override
+            public boolean accept(FileStatus status) {
+                for (FileStatusFilter filter : all) {
+                    if (!filter.accept(status)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public String toString() {
+                return "and" + Arrays.toString(all);
+            }
+        };
+    }
+
+    /**
+     * @return a filter accepting what any of the given filters accepts,
+     * filters are applied in order until one accepts
+     */
+    public static FileStatusFilter or(FileStatusFilter... filters) {
+        final FileStatusFilter[] any = filters.clone();
+        return new FileStatusFilter() {
+            @Override
+            public boolean accept(FileStatus status) {
+                for (FileStatusFilter filter : any) {
+                    if (filter.accept(status)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public String toString() {
+                return "or" + Arrays.toString(any);
+            }
+        };
+    }
+
+    /**
+     * @return a filter accepting what given filter rejects
+     */
+    public static FileStatusFilter not(final FileStatusFilter filter) {
+        return new FileStatusFilter() {
+            @Override
+            public boolean accept(FileStatus status) {
+                return !filter.accept(status);
+            }
+
+            @Override
+            public String toString() {
+                return "not(" + filter + ")";
+            }
+        };
+    }
+
+    /**
+     * @return true if given filter is known to accept every file
+     */
+    static boolean acceptsAllFiles(FileStatusFilter filter) {
+        return filter == ACCEPTS_ALL || filter instanceof PathFilterAdapter;
+    }
+
+    /* equal when adapting the same PathFilter, so a search can tell it is resumed */
+    private static final class PathFilterAdapter implements FileStatusFilter {
+        private final PathFilter filter;
+
+        private PathFilterAdapter(PathFilter filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean accept(FileStatus status) {
+            return !status.isDirectory() || filter.accept(status.getPath());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PathFilterAdapter
+                    && Objects.equal(filter, ((PathFilterAdapter) o).filter);
+        }
+
+        @Override
+        public int hashCode() {
+            return filter.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "of(" + filter + ")";
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.fsfind;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <code>ListingIndex</code> is a local, memory mapped index of the directory
+ * listings of an earlier search, which lets the next search skip listing the
+ * directories that haven't changed since. Every listing is stored with the
+ * modification time of its directory: adding, removing or renaming a child
+ * updates the directory's modification time, so a listing whose directory
+ * still has the same modification time is served from the index instead of
+ * calling <code>listStatus</code>.
+ * <p/>
+ * A listing served from the index holds the name, type, modification time,
+ * length, replication, permission, owner and group of each child, enough for
+ * any <code>FileStatusFilter</code>. The modification time of a child directory
+ * served that way may be stale, so before its own listing can be served the
+ * directory's current status is fetched with a <code>getFileStatus</code>
+ * call, which is far cheaper than listing a big directory. Children of a
+ * directory that was actually listed need no such check.
+ * <p/>
+ * Writing to a file in place (an append) doesn't change the modification time
+ * of its directory, so a small fraction of the listings that could be served
+ * from the index are listed anyway: the revalidation rate. Revalidations which
+ * found the index out of date are counted as stale. As with any snapshot, the
+ * modification time of a candidate should be checked again right before it
+ * gets deleted.
+ * <p/>
+ * The listings of a search are written to a new index, which replaces the old
+ * one once the search completes, see {@link #complete()}. Directories which
+ * weren't visited are dropped. Closing the index of a search which didn't
+ * complete, e.g. because it failed, throws the new index away and keeps the
+ * old one, which still covers the directories the search didn't get to.
+ * Safe to use from multiple threads.
+ */
+public class ListingIndex implements Closeable {
+
+    public static final Logger LOG = Logger.getLogger(ListingIndex.class);
+    /* records never straddle two mapped regions */
+    private static final int REGION_SIZE = 1 << 30;
+    private final File file;
+    private final File next;
+    private final double revalidationRate;
+    private final Random random = new Random();
+    private final List<MappedByteBuffer> regions = Lists.newArrayList();
+    private final Map<String, Long> offsets = Maps.newHashMap();
+    private final DataOutputStream out;
+    private long written = 0;
+    private boolean closed = false;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+
+    /**
+     * @param file             the index, created on close if it doesn't
+     *                         exist yet
+     * @param revalidationRate fraction, between 0 and 1, of the directories
+     *                         that are listed even though they could be
+     *                         served from the index
+     */
+    public ListingIndex(File file, double revalidationRate) throws IOException {
+        Preconditions.checkArgument(revalidationRate >= 0 && revalidationRate <= 1,
+                "revalidationRate must be between 0 and 1");
+        this.file = file;
+        this.next = new File(file.getPath() + ".next");
+        this.revalidationRate = revalidationRate;
+        if (file.exists()) {
+            load();
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(next)));
+    }
+
+    /**
+     * The listing of given directory, if it is in the index and the directory
+     * hasn't been modified since.
+     *
+     * @param dir the current status of the directory
+     * @return the listing sorted by name, or null if the directory has to be
+     * listed
+     */
+    FileStatus[] lookup(FileStatus dir) throws IOException {
+        Long offset = offsets.get(dir.getPath().toUri().getPath());
+        if (offset == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        ByteBuffer record = record(offset);
+        skipHeader(record);
+        if (record.getLong() != dir.getModificationTime()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (revalidationRate > 0 && random.nextDouble() < revalidationRate) {
+            revalidations.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        FileStatus[] listing = new FileStatus[record.getInt()];
+        for (int i = 0; i < listing.length; i++) {
+            byte[] name = new byte[record.getInt()];
+            record.get(name);
+            boolean isDir = record.get() != 0;
+            long modificationTime = record.getLong();
+            long length = record.getLong();
+            short replication = record.getShort();
+            FsPermission permission = new FsPermission(record.getShort());
+            String owner = getString(record);
+            String group = getString(record);
+            listing[i] = new IndexedStatus(length, isDir, replication, modificationTime,
+                    permission, owner, group,
+                    new Path(dir.getPath(), new String(name, Charsets.UTF_8)));
+        }
+        record.rewind();
+        write(record);
+        return listing;
+    }
+
+    /**
+     * Add the listing of a directory which was actually listed.
+     *
+     * @param dir     the status of the directory
+     * @param listing its listing, sorted by name
+     */
+    void record(FileStatus dir, FileStatus[] listing) throws IOException {
+        String path = dir.getPath().toUri().getPath();
+        byte[] pathBytes = path.getBytes(Charsets.UTF_8);
+        byte[][] names = new byte[listing.length][];
+        byte[][] owners = new byte[listing.length][];
+        byte[][] groups = new byte[listing.length][];
+        int length = 4 + 4 + pathBytes.length + 8 + 4;
+        for (int i = 0; i < listing.length; i++) {
+            names[i] = listing[i].getPath().getName().getBytes(Charsets.UTF_8);
+            owners[i] = Strings.nullToEmpty(listing[i].getOwner()).getBytes(Charsets.UTF_8);
+            groups[i] = Strings.nullToEmpty(listing[i].getGroup()).getBytes(Charsets.UTF_8);
+            length += 4 + names[i].length + 1 + 8 + 8 + 2 + 2 + 4 + owners[i].length + 4
+                    + groups[i].length;
+        }
+        if (length > REGION_SIZE) {
+            LOG.warn(String.format("Listing of %s is too big to be indexed", path));
+            return;
+        }
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.putInt(length).putInt(pathBytes.length).put(pathBytes);
+        record.putLong(dir.getModificationTime()).putInt(listing.length);
+        for (int i = 0; i < listing.length; i++) {
+            record.putInt(names[i].length).put(names[i]);
+            record.put((byte) (listing[i].isDirectory() ? 1 : 0));
+            record.putLong(listing[i].getModificationTime()).putLong(listing[i].getLen());
+            record.putShort(listing[i].getReplication());
+            record.putShort(listing[i].getPermission().toShort());
+            record.putInt(owners[i].length).put(owners[i]);
+            record.putInt(groups[i].length).put(groups[i]);
+        }
+        record.flip();
+        Long offset = offsets.get(path);
+        if (offset != null && isRevalidation(record, record(offset))) {
+            stale.incrementAndGet();
+            LOG.info("Listing index was out of date for " + path);
+        }
+        write(record);
+    }
+
+    /**
+     * @return number of listings served from the index
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of listings which weren't in the index or whose
+     * directory was modified
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of listings which could have been served from the index
+     * but were listed to revalidate it
+     */
+    public long revalidations() {
+        return revalidations.get();
+    }
+
+    /**
+     * @return number of revalidations which found the index out of date
+     */
+    public long stale() {
+        return stale.get();
+    }
+
+    /**
+     * Mark the search as complete, replace the index with the listings of this
+     * search and close it.
+     */
+    public synchronized void complete() throws IOException {
+        Preconditions.checkState(!closed, "%s is already closed", file);
+        closed = true;
+        out.close();
+        if (!next.renameTo(file)) {
+            throw new IOException(String.format("Can't rename %s to %s", next, file));
+        }
+        logStats();
+    }
+
+    /**
+     * Close the index, unless it is closed already. The listings of this
+     * search are thrown away if it didn't complete.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        out.close();
+        if (!next.delete()) {
+            LOG.warn("Can't delete " + next);
+        }
+        LOG.info(String.format("Search didn't complete, kept listing index %s as it was", file));
+        logStats();
+    }
+
+    private void logStats() {
+        LOG.info(String.format("Listing index %s: %d hit(s), %d miss(es), %d revalidation(s) " +
+                        "of which %d stale, %.1f%% served from the index", file, hits(), misses(),
+                revalidations(), stale(), 100.0 * hits() / Math.max(1, hits() + misses()
+                        + revalidations())));
+    }
+
+    @Override
+    public String toString() {
+        return "ListingIndex{" +
+                "hits=" + hits +
+                ", misses=" + misses +
+                ", revalidations=" + revalidations +
+                ", stale=" + stale +
+                '}';
+    }
+
+    /* map the index and find where the listing of each directory is */
+    private void load() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            for (long start = 0; start < size; start += REGION_SIZE) {
+                regions.add(channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(REGION_SIZE, size - start)));
+            }
+            long offset = 0;
+            while (offset < size) {
+                ByteBuffer record = regions.get((int) (offset / REGION_SIZE)).duplicate();
+                record.position((int) (offset % REGION_SIZE));
+                int length = record.getInt();
+                if (length == 0) { // padding up to the next region
+                    offset = (offset / REGION_SIZE + 1) * REGION_SIZE;
+                    continue;
+                }
+                byte[] path = new byte[record.getInt()];
+                record.get(path);
+                offsets.put(new String(path, Charsets.UTF_8), offset);
+                offset += length;
+            }
+        } finally {
+            raf.close(); // mappings stay valid after the channel is closed
+        }
+        LOG.info(String.format("Loaded %d listing(s) from %s", offsets.size(), file));
+    }
+
+    /* the record at given offset, positioned at its start and limited to its end */
+    private ByteBuffer record(long offset) {
+        ByteBuffer record = regions.get((int) (offset / REGION_SIZE)).duplicate();
+        record.position((int) (offset % REGION_SIZE));
+        int length = record.getInt(record.position());
+        record.limit(record.position() + length);
+        return record.slice();
+    }
+
+    private static String getString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getInt()];
+        record.get(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    private static void skipHeader(ByteBuffer record) {
+        record.getInt();
+        int pathLength = record.getInt();
+        record.position(record.position() + pathLength);
+    }
+
+    /* true if the directory wasn't modified, yet its listing changed */
+    private static boolean isRevalidation(ByteBuffer listed, ByteBuffer indexed) {
+        ByteBuffer header = indexed.duplicate();
+        skipHeader(header);
+        ByteBuffer current = listed.duplicate();
+        skipHeader(current);
+        return header.getLong() == current.getLong() && !listed.equals(indexed);
+    }
+
+    private synchronized void write(ByteBuffer record) throws IOException {
+        int length = record.remaining();
+        if (written / REGION_SIZE != (written + length - 1) / REGION_SIZE) {
+            long padding = REGION_SIZE - written % REGION_SIZE;
+            out.write(new byte[(int) padding]);
+            written += padding;
+        }
+        if (record.hasArray()) {
+            out.write(record.array(), record.arrayOffset() + record.position(), length);
+        } else {
+            byte[] bytes = new byte[length];
+            record.duplicate().get(bytes);
+            out.write(bytes);
+        }
+        written += length;
+    }
+
+    /**
+     * Status of a child served from the index, its modification time may be
+     * stale.
+     */
+    static final class IndexedStatus extends FileStatus {
+        IndexedStatus(long length, boolean isDir, short replication, long modificationTime,
+                      FsPermission permission, String owner, String group, Path path) {
+            super(length, isDir, replication, 0, modificationTime, 0, permission, owner, group,
+                    path);
+        }
+    }
+}
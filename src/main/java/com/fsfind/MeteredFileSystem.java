@@ -0,0 +1,152 @@
+package com.fsfind;
+
+import com.fsfind.PagedFileSystem.Page;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FilterFileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.fs.permission.FsPermission;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * <code>FileSystem</code> which records the latency of each call it passes on
+ * in a {@link FSFindMetrics}, keyed by <code>FSOperation</code>. A call which
+ * threw counts as failed, unless all it found is that the path doesn't exist.
+ * A <code>listLocatedStatus</code> is timed up to the first page of the
+ * listing, the later pages are fetched as its entries are consumed. Each page
+ * of an incremental listing (see <code>DirectoryListing</code>) is timed on
+ * its own.
+ */
+public class MeteredFileSystem extends FilterFileSystem implements PagedFileSystem {
+
+    private final FSFindMetrics metrics;
+
+    /**
+     * @param fs      the filesystem to pass the calls on to
+     * @param metrics where the calls are recorded
+     */
+    public MeteredFileSystem(FileSystem fs, FSFindMetrics metrics) {
+        super(fs);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public FileStatus getFileStatus(Path path) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            FileStatus status = super.getFileStatus(path);
+            failed = false;
+            return status;
+        } catch (FileNotFoundException e) {
+            failed = false;
+            throw e;
+        } finally {
+            metrics.record(FSOperation.GET_FILE_STATUS, System.nanoTime() - start, failed);
+        }
+    }
+
+    @Override
+    public FileStatus[] listStatus(Path path) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            FileStatus[] listing = super.listStatus(path);
+            failed = false;
+            return listing;
+        } catch (FileNotFoundException e) {
+            failed = false;
+            throw e;
+        } finally {
+            metrics.record(FSOperation.LIST_STATUS, System.nanoTime() - start, failed);
+        }
+    }
+
+    @Override
+    public RemoteIterator<LocatedFileStatus> listLocatedStatus(Path path) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            RemoteIterator<LocatedFileStatus> listing = super.listLocatedStatus(path);
+            failed = false;
+            return listing;
+        } catch (FileNotFoundException e) {
+            failed = false;
+            throw e;
+        } finally {
+            metrics.record(FSOperation.LIST_STATUS, System.nanoTime() - start, failed);
+        }
+    }
+
+    @Override
+    public boolean listsPages() {
+        return DirectoryListing.isIncremental(fs);
+    }
+
+    @Override
+    public Page listPage(Path dir, String after) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Page page = DirectoryListing.listPage(fs, dir, after);
+            failed = false;
+            return page;
+        } catch (FileNotFoundException e) {
+            failed = false;
+            throw e;
+        } finally {
+            metrics.record(FSOperation.LIST_STATUS, System.nanoTime() - start, failed);
+        }
+    }
+
+    @Override
+    public boolean delete(Path path, boolean recursive) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            boolean deleted = super.delete(path, recursive);
+            failed = false;
+            return deleted;
+        } finally {
+            metrics.record(FSOperation.DELETE, System.nanoTime() - start, failed);
+        }
+    }
+
+    @Override
+    public boolean rename(Path src, Path dst) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            boolean renamed = super.rename(src, dst);
+            failed = false;
+            return renamed;
+        } finally {
+            metrics.record(FSOperation.RENAME, System.nanoTime() - start, failed);
+        }
+    }
+
+    @Override
+    public boolean mkdirs(Path path, FsPermission permission) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            boolean created = super.mkdirs(path, permission);
+            failed = false;
+            return created;
+        } finally {
+            metrics.record(FSOperation.MKDIRS, System.nanoTime() - start, failed);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MeteredFileSystem{" +
+                "fs=" + fs +
+                '}';
+    }
+}
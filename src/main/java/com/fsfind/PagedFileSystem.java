@@ -0,0 +1,59 @@
+package com.fsfind;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+
+/**
+ * A <code>FileSystem</code> which lists a directory one page at a time, in
+ * name order, starting after any given name, like HDFS does one RPC per page.
+ * A <code>FileSystem</code> wrapping another one implements it to see each
+ * page being fetched, and passes the page on to
+ * {@link DirectoryListing#listPage(org.apache.hadoop.fs.FileSystem, Path,
+ * String)} of the filesystem it wraps.
+ */
+public interface PagedFileSystem {
+
+    /**
+     * @return false if a page can't be listed after all, e.g. because the
+     * filesystem this one wraps can't
+     */
+    boolean listsPages();
+
+    /**
+     * List one page of a directory.
+     *
+     * @param dir   the directory
+     * @param after the page starts after this name, null to start from the
+     *              first child
+     * @return the page, whose entries are sorted by name
+     * @throws java.io.FileNotFoundException if the directory doesn't exist
+     */
+    Page listPage(Path dir, String after) throws IOException;
+
+    /**
+     * A page of a listing.
+     */
+    final class Page {
+        private final FileStatus[] entries;
+        private final boolean hasMore;
+
+        /**
+         * @param entries the entries of the page, sorted by name
+         * @param hasMore true if the listing goes on after the last entry
+         */
+        public Page(FileStatus[] entries, boolean hasMore) {
+            this.entries = entries;
+            this.hasMore = hasMore;
+        }
+
+        public FileStatus[] entries() {
+            return entries;
+        }
+
+        public boolean hasMore() {
+            return hasMore;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.fsfind;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import com.fsfind.FSFindCursor.Position;
+import com.fsfind.FSFindImpl.REJECT_REASON;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An <code>FSFind</code> implementation which lists sibling sub directories
+ * concurrently on a fork-join pool. The search semantics are the same as
+ * <code>FSFindImpl</code> (directory collapsing, path filter pruning, batching
+ * and explored bookkeeping), only the order in which directories are listed
+ * differs. Most of the time of a search on HDFS is spent waiting on NameNode
+ * round trips, so the parallelism level effectively bounds the number of
+ * outstanding <code>listStatus</code> calls.
+ * <p/>
+ * Each directory task collects its candidates in a task local list which is
+ * handed over to the parent task on join, so workers never contend on a
+ * shared collection. The only shared state is the batch counter.
+ */
+public class ParallelFSFindImpl extends FSFind implements Closeable {
+
+    public static final Logger LOG = Logger.getLogger(ParallelFSFindImpl.class);
+    public static final int DEFAULT_PARALLELISM = 8;
+    private final boolean includeDirectories;
+    private final FileSystem fs;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructor with <code>includeDirectories</code> flag set to false and
+     * parallelism set to {@link #DEFAULT_PARALLELISM}
+     *
+     * @param fs the filesystem instace to access file metadata
+     */
+    public ParallelFSFindImpl(FileSystem fs) {
+        this(false, fs, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param includeDirectories see {@link FSFindImpl#FSFindImpl(boolean,
+     *                           FileSystem)}
+     * @param fs                 the filesystem instace to access file metadata
+     * @param parallelism        maximum number of directories listed at the
+     *                           same time
+     */
+    public ParallelFSFindImpl(boolean includeDirectories, FileSystem fs, int parallelism) {
+        Preconditions.checkArgument(parallelism > 0, "parallelism should be positive");
+        this.includeDirectories = includeDirectories;
+        this.fs = fs;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    @Override
+    public FSFindResult findMatching(FSFindQuery query, long timestamp,
+                                     int batchSize, FileStatusFilter filter) throws IOException {
+        FSFindResult result = new FSFindResult();
+        if (query.cursor() != null && query.cursor().isExhausted()) {
+            result.setCursor(FSFindCursor.EXHAUSTED);
+            return result;
+        }
+        FileStatus searchPathStatus = FSFindImpl.searchPathStatus(fs, query, result.rpcCounts());
+        if (query.order() != FSFindOrder.WALK) {
+            // every candidate has to be seen anyway, the walk is sequential like a stream's
+            return TopCandidates.select(new TraversalIterator(fs, null, includeDirectories,
+                    searchPathStatus, query.withoutCursor(), timestamp, filter,
+                    result.rpcCounts(), true), query, timestamp, batchSize, result);
+        }
+        Search search = new Search(query, timestamp, batchSize, filter, result.rpcCounts(),
+                result.reclaimable());
+        Partial partial;
+        try {
+            partial = pool.invoke(new DirectoryTask(search, searchPathStatus,
+                    FSFindImpl.resumePosition(query, searchPathStatus)));
+        } catch (RuntimeException e) {
+            // fork-join may rethrow a copy of the worker's exception, dig out the original cause
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) cause).getCause();
+                }
+            }
+            throw e;
+        }
+
+        for (Path candidate : partial.candidates) {
+            result.add(candidate);
+        }
+        for (Path explored : partial.explored) {
+            result.markExplored(explored);
+        }
+        result.setCursor(partial.stoppedAt == null ? FSFindCursor.EXHAUSTED
+                : new FSFindCursor(partial.stoppedAt));
+        return result;
+    }
+
+    /**
+     * Streaming is sequential by nature, this simply hands out the same
+     * iterator as <code>FSFindImpl</code>.
+     */
+    @Override
+    public FSFindIterator streamMatching(FSFindQuery query, long timestamp,
+                                         FileStatusFilter filter) throws IOException {
+        RpcCounts rpcCounts = new RpcCounts();
+        FileStatus searchPathStatus = FSFindImpl.searchPathStatus(fs, query, rpcCounts);
+        return new TraversalIterator(fs, null, includeDirectories, searchPathStatus, query,
+                timestamp, filter, rpcCounts);
+    }
+
+    /**
+     * Shuts down the worker pool, the instance can't be used afterwards.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * State shared by all the tasks of a single search.
+     */
+    private static final class Search {
+        private final FSFindQuery query;
+        private final long timestamp;
+        private final int batchSize;
+        private final FileStatusFilter filter;
+        private final RpcCounts rpcCounts;
+        private final ReclaimableSpace reclaimable;
+        private final AtomicInteger reserved = new AtomicInteger();
+
+        private Search(FSFindQuery query, long timestamp, int batchSize, FileStatusFilter filter,
+                       RpcCounts rpcCounts, ReclaimableSpace reclaimable) {
+            this.query = query;
+            this.timestamp = timestamp;
+            this.batchSize = batchSize;
+            this.filter = filter;
+            this.rpcCounts = rpcCounts;
+            this.reclaimable = reclaimable;
+        }
+
+        /* claim a slot in the batch, return false if batch is already full */
+        private boolean tryReserve() {
+            while (true) {
+                int current = reserved.get();
+                if (current >= batchSize) {
+                    return false;
+                }
+                if (reserved.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private boolean batchFull() {
+            return reserved.get() >= batchSize;
+        }
+    }
+
+    /**
+     * Candidates and explored directories discovered under one directory.
+     */
+    private static final class Partial {
+        private List<Path> candidates = Lists.newArrayList();
+        private List<Path> explored = Lists.newArrayList();
+        private Position stoppedAt;
+
+        private void merge(Partial child) {
+            candidates.addAll(child.candidates);
+            explored.addAll(child.explored);
+        }
+
+        /* true if the directory was included as a whole */
+        private boolean collapsedInto(Path dir) {
+            return stoppedAt == null && candidates.size() == 1 && candidates.get(0).equals(dir);
+        }
+    }
+
+    /**
+     * Explores one directory, see <code>FSFindImpl#internalFind</code> for the
+     * flow. Sub directories are forked before the files of this directory are
+     * checked, and joined in listing order so the candidate order stays the
+     * same as the listing order.
+     * <p/>
+     * When the batch gets full the cursor is placed at the first child (in
+     * listing order) that wasn't completely processed. Siblings after it may
+     * have completed concurrently; they get visited again by the next search,
+     * which is harmless since their candidates are expected to be deleted by
+     * then.
+     */
+    private final class DirectoryTask extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+        private final Search search;
+        private final FileStatus searchDirStatus;
+        private final Position resume;
+
+        private DirectoryTask(Search search, FileStatus searchDirStatus, Position resume) {
+            this.search = search;
+            this.searchDirStatus = searchDirStatus;
+            this.resume = resume;
+        }
+
+        @Override
+        protected Partial compute() {
+            try {
+                return explore();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private Partial explore() throws IOException {
+            Partial partial = new Partial();
+            Path searchDir = searchDirStatus.getPath();
+            if (search.batchFull()) {
+                partial.stoppedAt = resume != null ? resume
+                        : new Position(searchDir, null, true, null);
+                return partial;
+            }
+
+            REJECT_REASON reason = FSFindImpl.includePath(searchDirStatus, search.timestamp,
+                    search.filter);
+            if (reason == REJECT_REASON.PATH_FILTER) {
+                LOG.info("Directory was filtered by configured filter " + searchDir);
+                partial.explored.add(searchDir);
+                return partial;
+            }
+
+            PartitionPattern.Age age = search.query.partitionAge(searchDir, search.timestamp);
+            if (age == PartitionPattern.Age.NEWER) {
+                partial.explored.add(searchDir);
+                return partial;
+            } else if (age == PartitionPattern.Age.OLDER && includeDirectories) {
+                if (search.tryReserve()) {
+                    partial.candidates.add(searchDir);
+                    partial.explored.add(searchDir);
+                    search.reclaimable.recordUnlisted();
+                } else {
+                    partial.stoppedAt = resume != null ? resume
+                            : new Position(searchDir, null, true, null);
+                }
+                return partial;
+            }
+
+            FileStatus[] allFiles = FSFindImpl.listDirectory(fs, searchDirStatus, null,
+                    search.rpcCounts);
+            if (allFiles == null) {
+                return partial;
+            }
+            int start = resume == null ? 0 : resume.resumeIndex(allFiles);
+            Position resumeChild = resume == null ? null : resume.child();
+
+            /* fork the sub directories first so their listings overlap with the work below */
+            DirectoryTask[] subTasks = new DirectoryTask[allFiles.length];
+            for (int i = start; i < allFiles.length; i++) {
+                if (allFiles[i].isDirectory()) {
+                    Position childResume = resumeChild != null
+                            && resumeChild.isAt(allFiles[i].getPath()) ? resumeChild : null;
+                    subTasks[i] = new DirectoryTask(search, allFiles[i], childResume);
+                    subTasks[i].fork();
+                }
+            }
+
+            // index of the first child which couldn't be completely processed
+            int stopIndex = allFiles.length;
+            boolean[] included = new boolean[allFiles.length];
+            for (int i = start; i < allFiles.length; i++) {
+                FileStatus status = allFiles[i];
+                if (status.isDirectory()) {
+                    continue;
+                }
+                if (FSFindImpl.includePath(status, search.timestamp, search.filter)
+                        != REJECT_REASON.NONE) {
+                    included[i] = false;
+                } else if (search.tryReserve()) {
+                    included[i] = true;
+                } else {
+                    /* bail out, sub directories still need to be joined */
+                    stopIndex = i;
+                    break;
+                }
+            }
+
+            Position childStoppedAt = null;
+            for (int i = start; i < allFiles.length; i++) {
+                if (subTasks[i] != null) {
+                    Partial child = subTasks[i].join();
+                    included[i] = child.collapsedInto(allFiles[i].getPath());
+                    if (child.stoppedAt != null && i < stopIndex) {
+                        stopIndex = i;
+                        childStoppedAt = child.stoppedAt;
+                    }
+                    partial.merge(child);
+                } else if (included[i]) {
+                    partial.candidates.add(allFiles[i].getPath());
+                    search.reclaimable.record(allFiles[i], search.timestamp);
+                }
+            }
+
+            boolean includedAllFiles = resume == null || resume.includedAll();
+            String lastName = resume == null ? null : resume.lastName();
+            for (int i = start; i < stopIndex; i++) {
+                includedAllFiles &= included[i];
+                lastName = allFiles[i].getPath().getName();
+            }
+            if (stopIndex < allFiles.length) {
+                partial.stoppedAt = new Position(searchDir, lastName, includedAllFiles,
+                        childStoppedAt);
+                return partial;
+            }
+
+            boolean isSearchRoot = FSFindImpl.currentSameAsOriginal(searchDir,
+                    search.query.searchPath());
+            boolean sawChildren = allFiles.length > 0 || (resume != null && resume.sawChildren());
+            if (!sawChildren) {
+                if (includeDirectories
+                        && searchDirStatus.getModificationTime() < search.timestamp
+                        && !isSearchRoot) {
+                    search.reserved.incrementAndGet();
+                    partial.candidates.add(searchDir);
+                }
+            } else if (includeDirectories
+                    && includedAllFiles
+                    && !isSearchRoot) {
+                // see FSFindImpl on why the directory mtime isn't checked here
+                search.reserved.addAndGet(1 - partial.candidates.size());
+                partial.candidates.clear();
+                partial.candidates.add(searchDir);
+            }
+
+            partial.explored.add(searchDir);
+            return partial;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.fsfind;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import org.apache.hadoop.fs.Path;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * <code>PartitionPattern</code> recognizes directories of a time partitioned
+ * layout from their path alone, such as <code>dt=2014-06-10/hr=03</code> or
+ * <code>2014/06/10</code>. Each <code>/</code> separated segment of the
+ * pattern matches one directory name: text in braces is a
+ * <code>SimpleDateFormat</code> pattern and the rest is matched literally, so
+ * the two layouts above are <code>dt={yyyy-MM-dd}/hr={HH}</code> and
+ * <code>{yyyy}/{MM}/{dd}</code>. Dates are in UTC.
+ * <p/>
+ * A directory matches when its last names match the leading segments of the
+ * pattern, so <code>dt=2014-06-10</code> is the whole day and
+ * <code>dt=2014-06-10/hr=03</code> a single hour of it. The leading segment
+ * must hold the year, and every further segment may only narrow the time
+ * down, from years to months, days, hours, minutes and seconds. A name which
+ * doesn't format back to itself (<code>2014-6-1</code>) isn't a match.
+ * <p/>
+ * When a search matches a directory, the time the directory covers takes the
+ * place of the modification times underneath: a partition that ended before
+ * the purge time is a candidate as a whole and isn't listed, and one that
+ * starts at or after it is skipped without a single call to the filesystem.
+ * Safe to use from multiple threads.
+ */
+public final class PartitionPattern {
+
+    /**
+     * How the time covered by a directory compares with the purge time.
+     */
+    public enum Age {
+        OLDER, // the partition ended before the purge time
+        NEWER, // the partition starts at or after the purge time
+        UNKNOWN // straddles the purge time, or the directory isn't a partition
+    }
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    /* the calendar fields a pattern letter stands for, coarsest first */
+    private static final String LETTERS = "yMdHms";
+    private static final int[] FIELDS = {Calendar.YEAR, Calendar.MONTH,
+            Calendar.DAY_OF_MONTH, Calendar.HOUR_OF_DAY, Calendar.MINUTE, Calendar.SECOND};
+
+    private final String pattern;
+    /* formats[i] matches the first i + 1 segments joined with slashes */
+    private final SimpleDateFormat[] formats;
+    /* finest calendar field given by the first i + 1 segments */
+    private final int[] finest;
+
+    private PartitionPattern(String pattern, SimpleDateFormat[] formats, int[] finest) {
+        this.pattern = pattern;
+        this.formats = formats;
+        this.finest = finest;
+    }
+
+    /**
+     * Compile a pattern, throws an IllegalArgumentException if it isn't
+     * valid.
+     */
+    public static PartitionPattern compile(String pattern) {
+        String[] segments = pattern.split("/");
+        Preconditions.checkArgument(segments.length > 0, "Empty partition pattern");
+        SimpleDateFormat[] formats = new SimpleDateFormat[segments.length];
+        int[] finest = new int[segments.length];
+        StringBuilder joined = new StringBuilder();
+        int fields = 0;
+        for (int i = 0; i < segments.length; i++) {
+            Preconditions.checkArgument(!segments[i].isEmpty(),
+                    "Empty segment in partition pattern %s", pattern);
+            if (i > 0) {
+                joined.append('/'); // not a pattern letter, needs no quotes
+            }
+            // the segment has to give the next coarsest fields, e.g. days after months
+            int segmentFields = translate(pattern, segments[i], joined);
+            int given = segmentFields >>> fields;
+            Preconditions.checkArgument(given != 0 && (given & (given + 1)) == 0
+                            && given << fields == segmentFields,
+                    "Segment %s of partition pattern %s doesn't narrow the time down from %s",
+                    segments[i], pattern, i == 0 ? "years" : "the segment before it");
+            fields += Integer.bitCount(given);
+            finest[i] = FIELDS[fields - 1];
+            try {
+                formats[i] = new SimpleDateFormat(joined.toString());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid partition pattern " + pattern, e);
+            }
+            formats[i].setLenient(false);
+            formats[i].setTimeZone(UTC);
+        }
+        return new PartitionPattern(pattern, formats, finest);
+    }
+
+    /**
+     * Compile all the given patterns.
+     */
+    public static List<PartitionPattern> compile(List<String> patterns) {
+        List<PartitionPattern> compiled = Lists.newArrayList();
+        for (String pattern : patterns) {
+            compiled.add(compile(pattern));
+        }
+        return compiled;
+    }
+
+    /**
+     * @param dir       a directory
+     * @param timestamp the purge time
+     * @return how the time the directory covers compares with the purge time
+     */
+    public Age age(Path dir, long timestamp) {
+        for (int matched = formats.length; matched > 0; matched--) {
+            long[] range = range(dir, matched);
+            if (range == null) {
+                continue;
+            }
+            if (range[1] <= timestamp) {
+                return Age.OLDER;
+            } else if (range[0] >= timestamp) {
+                return Age.NEWER;
+            }
+            return Age.UNKNOWN;
+        }
+        return Age.UNKNOWN;
+    }
+
+    /**
+     * @return age of given directory according to the first of the patterns
+     * which knows it
+     */
+    public static Age age(List<PartitionPattern> patterns, Path dir, long timestamp) {
+        for (PartitionPattern pattern : patterns) {
+            Age age = pattern.age(dir, timestamp);
+            if (age != Age.UNKNOWN) {
+                return age;
+            }
+        }
+        return Age.UNKNOWN;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+    /* start and end of the time covered by a directory, if its last names match the first
+    segments */
+    private long[] range(Path dir, int segments) {
+        String names = lastNames(dir, segments);
+        if (names == null) {
+            return null;
+        }
+        SimpleDateFormat format = formats[segments - 1];
+        Date start;
+        synchronized (format) {
+            ParsePosition position = new ParsePosition(0);
+            start = format.parse(names, position);
+            if (start == null || position.getIndex() != names.length()
+                    || !format.format(start).equals(names)) {
+                return null;
+            }
+        }
+        Calendar end = Calendar.getInstance(UTC);
+        end.setTime(start);
+        end.add(finest[segments - 1], 1);
+        return new long[]{start.getTime(), end.getTimeInMillis()};
+    }
+
+    /* the last names of a path joined with slashes, null if the path isn't that deep */
+    private static String lastNames(Path dir, int count) {
+        String path = dir.toUri().getPath();
+        int from = path.length();
+        for (int i = 0; i < count; i++) {
+            from = path.lastIndexOf('/', from - 1);
+            if (from <= 0 && i < count - 1) {
+                return null;
+            }
+        }
+        return from < 0 || from + 1 >= path.length() ? null : path.substring(from + 1);
+    }
+
+    /*
+     * Append a segment to a SimpleDateFormat pattern, quoting its literal text. Return the
+     * calendar fields the segment gives as bits of LETTERS.
+     */
+    private static int translate(String pattern, String segment, StringBuilder format) {
+        int fields = 0;
+        int from = 0;
+        while (from < segment.length()) {
+            int open = segment.indexOf('{', from);
+            if (open < 0) {
+                open = segment.length();
+            }
+            quote(segment.substring(from, open), format);
+            if (open == segment.length()) {
+                break;
+            }
+            int close = segment.indexOf('}', open);
+            Preconditions.checkArgument(close > open + 1, "Unbalanced braces in partition " +
+                    "pattern %s", pattern);
+            for (int i = open + 1; i < close; i++) {
+                char c = segment.charAt(i);
+                if (Character.isLetter(c)) {
+                    int field = LETTERS.indexOf(c);
+                    Preconditions.checkArgument(field >= 0, "Partition pattern %s may only use " +
+                            "the letters %s", pattern, LETTERS);
+                    fields |= 1 << field;
+                } else if (c == '\'') {
+                    throw new IllegalArgumentException("Quotes aren't allowed in partition " +
+                            "pattern " + pattern);
+                }
+            }
+            format.append(segment, open + 1, close);
+            from = close + 1;
+        }
+        return fields;
+    }
+
+    private static void quote(String literal, StringBuilder format) {
+        if (literal.isEmpty()) {
+            return;
+        }
+        Preconditions.checkArgument(literal.indexOf('}') < 0, "Unbalanced braces in %s",
+                literal);
+        format.append('\'').append(literal.replace("'", "''")).append('\'');
+    }
+}
@@ -0,0 +1,295 @@
+package com.fsfind;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+
+import org.apache.hadoop.fs.Path;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Interns paths as integer ids. Every path is stored as the id of its parent
+ * plus the UTF-8 bytes of its name, in a handful of primitive arrays, so that
+ * all the paths under a directory share the directory's entry. A Hadoop
+ * <code>Path</code> on the other hand carries a full <code>URI</code> with all
+ * its parsed strings, which costs an order of magnitude more heap per path.
+ * <code>Path</code> objects are only created when asked for.
+ * <p/>
+ * Ids are dense and start at 0, an id once given out never changes. Not thread
+ * safe.
+ */
+final class PathArena {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int NOT_FOUND = -1;
+
+    /* parent id, or -(root index + 1) for the root directory of a filesystem */
+    private int[] parents = new int[INITIAL_CAPACITY];
+    /* name of id i is names[nameOffsets[i]] to names[nameOffsets[i + 1]] */
+    private int[] nameOffsets = new int[INITIAL_CAPACITY + 1];
+    private byte[] names = new byte[INITIAL_CAPACITY * 16];
+    private int size = 0;
+    /* open addressing table of (parent, name) -> id + 1, zero marks a free slot */
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+    /* scheme & authority of each filesystem root */
+    private final List<String[]> roots = Lists.newArrayList();
+    private final List<Integer> rootIds = Lists.newArrayList();
+
+    /* the name being looked up, encoded */
+    private byte[] scratch = new byte[256];
+    private int scratchLength;
+
+    /* paths usually come in sibling order, remember the directory of the last lookup */
+    private String lastPath;
+    private int lastDirLength = -1;
+    private int lastDirId;
+    private int lastDirRoot;
+
+    /**
+     * @return the id of given path, allocating one if needed
+     */
+    int intern(Path path) {
+        return lookup(path, true);
+    }
+
+    /**
+     * @return the id of given path, or -1 if it was never interned
+     */
+    int find(Path path) {
+        return lookup(path, false);
+    }
+
+    /**
+     * @return the id of the root directory of given filesystem, allocating one
+     * if needed
+     */
+    int root(URI fsUri) {
+        return root(fsUri.getScheme(), fsUri.getAuthority(), true);
+    }
+
+    /**
+     * Intern the first <code>length</code> characters of an absolute path
+     * string, on the filesystem whose root is <code>root</code>. Saves creating
+     * a <code>Path</code> when paths come as plain strings.
+     *
+     * @return the id of the path
+     */
+    int intern(int root, String path, int length) {
+        return lookup(root, path, length, true);
+    }
+
+    /**
+     * @return the id of the parent of given path, or -1 for a root directory
+     */
+    int parent(int id) {
+        return parents[id] < 0 ? NOT_FOUND : parents[id];
+    }
+
+    /**
+     * @return number of interned paths (including their ancestors)
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the path with given id
+     */
+    Path toPath(int id) {
+        int depth = 0;
+        for (int i = id; parents[i] >= 0; i = parents[i]) {
+            depth++;
+        }
+        int[] chain = new int[depth];
+        int root = id;
+        for (int i = depth - 1; i >= 0; i--) {
+            chain[i] = root;
+            root = parents[root];
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int i : chain) {
+            builder.append('/').append(new String(names, nameOffsets[i],
+                    nameOffsets[i + 1] - nameOffsets[i], Charsets.UTF_8));
+        }
+        String[] schemeAndAuthority = roots.get(-parents[root] - 1);
+        return new Path(schemeAndAuthority[0], schemeAndAuthority[1],
+                builder.length() == 0 ? "/" : builder.toString());
+    }
+
+    private int lookup(Path path, boolean create) {
+        URI uri = path.toUri();
+        int root = root(uri.getScheme(), uri.getAuthority(), create);
+        if (root == NOT_FOUND) {
+            return NOT_FOUND;
+        }
+        return lookup(root, uri.getPath(), uri.getPath().length(), create);
+    }
+
+    private int lookup(int root, String pathString, int length, boolean create) {
+        int id = root;
+        int dirLength = pathString.lastIndexOf('/', length - 1);
+        int from = 0;
+        if (dirLength > 0 && dirLength == lastDirLength
+                && lastDirRoot == root
+                && pathString.regionMatches(0, lastPath, 0, dirLength)) {
+            id = lastDirId;
+            from = dirLength + 1;
+        }
+        while (from < length) {
+            int to = pathString.indexOf('/', from);
+            if (to < 0 || to > length) {
+                to = length;
+            }
+            if (to > from) {
+                id = child(id, pathString, from, to, create);
+                if (id == NOT_FOUND) {
+                    return NOT_FOUND;
+                }
+            }
+            if (to == dirLength && dirLength > 0) {
+                lastPath = pathString;
+                lastDirLength = dirLength;
+                lastDirId = id;
+                lastDirRoot = root;
+            }
+            from = to + 1;
+        }
+        return id;
+    }
+
+    /* there is one root per filesystem, a linear scan is good enough */
+    private int root(String scheme, String authority, boolean create) {
+        for (int i = 0; i < roots.size(); i++) {
+            String[] root = roots.get(i);
+            if (Objects.equal(root[0], scheme) && Objects.equal(root[1], authority)) {
+                return rootIds.get(i);
+            }
+        }
+        if (!create) {
+            return NOT_FOUND;
+        }
+        roots.add(new String[]{scheme, authority});
+        scratchLength = 0;
+        int id = append(-roots.size());
+        rootIds.add(id);
+        return id;
+    }
+
+    private int child(int parent, String pathString, int from, int to, boolean create) {
+        encode(pathString, from, to);
+        int mask = slots.length - 1;
+        int slot = hash(parent) & mask;
+        while (slots[slot] != 0) {
+            int candidate = slots[slot] - 1;
+            if (parents[candidate] == parent && nameEquals(candidate)) {
+                return candidate;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (!create) {
+            return NOT_FOUND;
+        }
+        int id = append(parent);
+        slots[slot] = id + 1;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /* add an entry with the name held in scratch */
+    private int append(int parent) {
+        if (size + 2 > nameOffsets.length) {
+            int capacity = nameOffsets.length * 2;
+            parents = Arrays.copyOf(parents, capacity);
+            nameOffsets = Arrays.copyOf(nameOffsets, capacity + 1);
+        }
+        int offset = nameOffsets[size];
+        if (offset + scratchLength > names.length) {
+            names = Arrays.copyOf(names, Math.max(names.length * 2, offset + scratchLength));
+        }
+        System.arraycopy(scratch, 0, names, offset, scratchLength);
+        parents[size] = parent;
+        nameOffsets[size + 1] = offset + scratchLength;
+        return size++;
+    }
+
+    private void rehash() {
+        int[] rehashed = new int[slots.length * 2];
+        int mask = rehashed.length - 1;
+        for (int id = 0; id < size; id++) {
+            if (parents[id] < 0) {
+                continue; // roots aren't hashed
+            }
+            int slot = hash(parents[id], names, nameOffsets[id], nameOffsets[id + 1]) & mask;
+            while (rehashed[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            rehashed[slot] = id + 1;
+        }
+        slots = rehashed;
+    }
+
+    private boolean nameEquals(int id) {
+        int offset = nameOffsets[id];
+        if (nameOffsets[id + 1] - offset != scratchLength) {
+            return false;
+        }
+        for (int i = 0; i < scratchLength; i++) {
+            if (names[offset + i] != scratch[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int hash(int parent) {
+        return hash(parent, scratch, 0, scratchLength);
+    }
+
+    private static int hash(int parent, byte[] bytes, int from, int to) {
+        int h = parent;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + bytes[i];
+        }
+        // murmur3 finalizer, linear probing needs the low bits well mixed
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /* UTF-8 encode the given region of a string into scratch without allocating */
+    private void encode(String s, int from, int to) {
+        int length = 0;
+        if (scratch.length < (to - from) * 3) {
+            scratch = new byte[(to - from) * 3];
+        }
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                scratch[length++] = (byte) c;
+            } else if (c < 0x800) {
+                scratch[length++] = (byte) (0xc0 | (c >> 6));
+                scratch[length++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < to
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                scratch[length++] = (byte) (0xf0 | (codePoint >> 18));
+                scratch[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                scratch[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                scratch[length++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else {
+                scratch[length++] = (byte) (0xe0 | (c >> 12));
+                scratch[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                scratch[length++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        scratchLength = length;
+    }
+}
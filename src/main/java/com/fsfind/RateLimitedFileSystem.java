@@ -0,0 +1,147 @@
+package com.fsfind;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.RateLimiter;
+
+import com.fsfind.PagedFileSystem.Page;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FilterFileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.fs.permission.FsPermission;
+
+import java.io.IOException;
+
+/**
+ * <code>FileSystem</code> which holds the calls it passes on to a budget of
+ * calls per second, one for reads and one for writes, so that a search or a
+ * retention run can't flood a NameNode it shares with other jobs. Everything
+ * handed the same instance shares its budget.
+ * <p/>
+ * Reads are <code>getFileStatus</code>, <code>listStatus</code>,
+ * <code>listLocatedStatus</code> and each page of an incremental listing
+ * (see <code>DirectoryListing</code>), writes are <code>delete</code>,
+ * <code>rename</code> and <code>mkdirs</code>. The calls <code>FileSystem</code>
+ * builds on top of those, such as <code>exists</code> and
+ * <code>globStatus</code>, are held once per call they make. The budgets may
+ * be changed while calls are being made, a budget of 0 is no limit.
+ */
+public class RateLimitedFileSystem extends FilterFileSystem implements PagedFileSystem {
+
+    private volatile RateLimiter reads;
+    private volatile RateLimiter writes;
+
+    /**
+     * @param fs              the filesystem to pass the calls on to
+     * @param readsPerSecond  budget of the reads, 0 for no limit
+     * @param writesPerSecond budget of the writes, 0 for no limit
+     */
+    public RateLimitedFileSystem(FileSystem fs, double readsPerSecond, double writesPerSecond) {
+        super(fs);
+        setRates(readsPerSecond, writesPerSecond);
+    }
+
+    /**
+     * Change the budgets, the calls waiting for their turn get it at the new
+     * rate.
+     *
+     * @param readsPerSecond  budget of the reads, 0 for no limit
+     * @param writesPerSecond budget of the writes, 0 for no limit
+     */
+    public synchronized void setRates(double readsPerSecond, double writesPerSecond) {
+        reads = limiter(reads, readsPerSecond);
+        writes = limiter(writes, writesPerSecond);
+    }
+
+    /**
+     * @return budget of the reads, 0 if there is no limit
+     */
+    public double readsPerSecond() {
+        RateLimiter limiter = reads;
+        return limiter == null ? 0 : limiter.getRate();
+    }
+
+    /**
+     * @return budget of the writes, 0 if there is no limit
+     */
+    public double writesPerSecond() {
+        RateLimiter limiter = writes;
+        return limiter == null ? 0 : limiter.getRate();
+    }
+
+    @Override
+    public FileStatus getFileStatus(Path path) throws IOException {
+        acquire(reads);
+        return super.getFileStatus(path);
+    }
+
+    @Override
+    public FileStatus[] listStatus(Path path) throws IOException {
+        acquire(reads);
+        return super.listStatus(path);
+    }
+
+    @Override
+    public RemoteIterator<LocatedFileStatus> listLocatedStatus(Path path) throws IOException {
+        acquire(reads);
+        return super.listLocatedStatus(path);
+    }
+
+    @Override
+    public boolean listsPages() {
+        return DirectoryListing.isIncremental(fs);
+    }
+
+    @Override
+    public Page listPage(Path dir, String after) throws IOException {
+        acquire(reads);
+        return DirectoryListing.listPage(fs, dir, after);
+    }
+
+    @Override
+    public boolean delete(Path path, boolean recursive) throws IOException {
+        acquire(writes);
+        return super.delete(path, recursive);
+    }
+
+    @Override
+    public boolean rename(Path src, Path dst) throws IOException {
+        acquire(writes);
+        return super.rename(src, dst);
+    }
+
+    @Override
+    public boolean mkdirs(Path path, FsPermission permission) throws IOException {
+        acquire(writes);
+        return super.mkdirs(path, permission);
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimitedFileSystem{" +
+                "fs=" + fs +
+                ", readsPerSecond=" + readsPerSecond() +
+                ", writesPerSecond=" + writesPerSecond() +
+                '}';
+    }
+
+    private static RateLimiter limiter(RateLimiter current, double perSecond) {
+        Preconditions.checkArgument(perSecond >= 0, "Negative rate %s", perSecond);
+        if (perSecond == 0) {
+            return null;
+        } else if (current == null) {
+            return RateLimiter.create(perSecond);
+        }
+        current.setRate(perSecond);
+        return current;
+    }
+
+    private static void acquire(RateLimiter limiter) {
+        if (limiter != null) {
+            limiter.acquire();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.fsfind;
+
+import com.google.common.collect.Maps;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.util.StringUtils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Thread safe account of the space the candidates of a search take up, the
+ * space deleting them frees. It is built from the statuses the search lists
+ * anyway, so it costs no extra <code>FileSystem</code> call.
+ * <p/>
+ * Files are counted with their length and their length times their
+ * replication, in total and per owner, and by how long before the purge time
+ * they were last modified. A directory candidate accounts for the files found
+ * under it. A partition included as a whole without being listed (see
+ * <code>PartitionPattern</code>) can't be accounted for, it is only counted
+ * as an unlisted directory.
+ */
+public class ReclaimableSpace {
+
+    /**
+     * Upper bounds of the age buckets in days past the purge time, the last
+     * bucket holds everything older.
+     */
+    public static final int[] AGE_BUCKET_DAYS = {1, 7, 30, 90, 365};
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private final Totals totals = new Totals();
+    private final long[] ageHistogram = new long[AGE_BUCKET_DAYS.length + 1];
+    private final SortedMap<String, Totals> owners = Maps.newTreeMap();
+    private long unlistedDirectories = 0;
+
+    /**
+     * Account for a file candidate.
+     *
+     * @param status    status of the file as listed
+     * @param purgeTime the purge time of the search
+     */
+    public void record(FileStatus status, long purgeTime) {
+        record(status.getLen(), status.getReplication(), status.getModificationTime(),
+                status.getOwner(), purgeTime);
+    }
+
+    synchronized void record(long length, short replication, long modificationTime,
+                             String owner, long purgeTime) {
+        totals.add(1, length, length * replication);
+        ageHistogram[ageBucket(purgeTime - modificationTime)]++;
+        String key = owner == null ? "" : owner;
+        Totals ownerTotals = owners.get(key);
+        if (ownerTotals == null) {
+            ownerTotals = new Totals();
+            owners.put(key, ownerTotals);
+        }
+        ownerTotals.add(1, length, length * replication);
+    }
+
+    /**
+     * Count a directory candidate whose content wasn't listed.
+     */
+    public synchronized void recordUnlisted() {
+        unlistedDirectories++;
+    }
+
+    /**
+     * Add up the account of another search, e.g. to sum up a policy.
+     */
+    public void add(ReclaimableSpace other) {
+        // copy first, so that two accounts adding up each other can't dead lock
+        ReclaimableSpace copy = other.copy();
+        synchronized (this) {
+            totals.add(copy.totals.files, copy.totals.bytes, copy.totals.replicatedBytes);
+            for (int i = 0; i < ageHistogram.length; i++) {
+                ageHistogram[i] += copy.ageHistogram[i];
+            }
+            for (Map.Entry<String, Totals> entry : copy.owners.entrySet()) {
+                Totals ownerTotals = owners.get(entry.getKey());
+                if (ownerTotals == null) {
+                    ownerTotals = new Totals();
+                    owners.put(entry.getKey(), ownerTotals);
+                }
+                Totals added = entry.getValue();
+                ownerTotals.add(added.files, added.bytes, added.replicatedBytes);
+            }
+            unlistedDirectories += copy.unlistedDirectories;
+        }
+    }
+
+    /**
+     * @return number of files
+     */
+    public synchronized long files() {
+        return totals.files;
+    }
+
+    /**
+     * @return sum of the file lengths
+     */
+    public synchronized long bytes() {
+        return totals.bytes;
+    }
+
+    /**
+     * @return sum of the file lengths times their replication, the raw
+     * capacity freed on the datanodes
+     */
+    public synchronized long replicatedBytes() {
+        return totals.replicatedBytes;
+    }
+
+    /**
+     * @return number of directory candidates whose content is not accounted for
+     */
+    public synchronized long unlistedDirectories() {
+        return unlistedDirectories;
+    }
+
+    /**
+     * @return number of files per age bucket, see <code>AGE_BUCKET_DAYS</code>
+     */
+    public synchronized long[] ageHistogram() {
+        return ageHistogram.clone();
+    }
+
+    /**
+     * @return the account per owner, by owner name
+     */
+    public synchronized SortedMap<String, Totals> owners() {
+        SortedMap<String, Totals> copy = Maps.newTreeMap();
+        for (Map.Entry<String, Totals> entry : owners.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().copy());
+        }
+        return copy;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("ReclaimableSpace{totals=").append(totals);
+        builder.append(", unlistedDirectories=").append(unlistedDirectories);
+        builder.append(", daysPastPurgeTime={");
+        for (int i = 0; i < ageHistogram.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(i < AGE_BUCKET_DAYS.length ? "<" + AGE_BUCKET_DAYS[i]
+                    : ">=" + AGE_BUCKET_DAYS[i - 1]).append('=').append(ageHistogram[i]);
+        }
+        return builder.append("}, owners=").append(owners).append('}').toString();
+    }
+
+    private synchronized ReclaimableSpace copy() {
+        ReclaimableSpace copy = new ReclaimableSpace();
+        copy.totals.add(totals.files, totals.bytes, totals.replicatedBytes);
+        System.arraycopy(ageHistogram, 0, copy.ageHistogram, 0, ageHistogram.length);
+        copy.owners.putAll(owners());
+        copy.unlistedDirectories = unlistedDirectories;
+        return copy;
+    }
+
+    private static int ageBucket(long age) {
+        int bucket = Arrays.binarySearch(AGE_BUCKET_DAYS, (int) Math.min(age / DAY,
+                Integer.MAX_VALUE));
+        // an exact match is the lower bound of the next bucket
+        return bucket >= 0 ? bucket + 1 : -bucket - 1;
+    }
+
+    /**
+     * Files, bytes and replicated bytes of a group of files.
+     */
+    public static final class Totals {
+        private long files;
+        private long bytes;
+        private long replicatedBytes;
+
+        private void add(long files, long bytes, long replicatedBytes) {
+            this.files += files;
+            this.bytes += bytes;
+            this.replicatedBytes += replicatedBytes;
+        }
+
+        private Totals copy() {
+            Totals copy = new Totals();
+            copy.add(files, bytes, replicatedBytes);
+            return copy;
+        }
+
+        public long files() {
+            return files;
+        }
+
+        public long bytes() {
+            return bytes;
+        }
+
+        public long replicatedBytes() {
+            return replicatedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "{files=" + files + ", bytes=" + StringUtils.byteDesc(bytes)
+                    + ", replicatedBytes=" + StringUtils.byteDesc(replicatedBytes) + "}";
+        }
+    }
+}
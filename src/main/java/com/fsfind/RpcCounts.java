@@ -0,0 +1,50 @@
+package com.fsfind;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe count of <code>FileSystem</code> calls, keyed by
+ * <code>FSOperation</code>. Useful to confirm how many NameNode RPCs a search
+ * cost.
+ */
+public class RpcCounts {
+
+    private final AtomicLongArray counts = new AtomicLongArray(FSOperation.values().length);
+
+    /**
+     * @param operation the operation that was just issued
+     */
+    public void increment(FSOperation operation) {
+        counts.incrementAndGet(operation.ordinal());
+    }
+
+    /**
+     * @return number of times given operation was issued
+     */
+    public long get(FSOperation operation) {
+        return counts.get(operation.ordinal());
+    }
+
+    /**
+     * @return number of calls across all operations
+     */
+    public long total() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("RpcCounts{");
+        for (FSOperation operation : FSOperation.values()) {
+            if (operation.ordinal() > 0) {
+                builder.append(", ");
+            }
+            builder.append(operation).append('=').append(get(operation));
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,89 @@
+package com.fsfind;
+
+import com.google.common.base.Preconditions;
+
+import com.fsfind.FSFindCursor.Position;
+import com.fsfind.TraversalIterator.Candidate;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Fills a batch with the best candidates of a whole search according to an
+ * <code>FSFindOrder</code>. The candidates are streamed through a heap bounded
+ * by the batch size whose head is the worst candidate kept so far, so picking
+ * the K best of N candidates takes O(N log K) time and O(K) memory.
+ */
+final class TopCandidates {
+
+    private TopCandidates() {
+    }
+
+    /**
+     * @param iterator  a search from the search path
+     * @param query     the query of the batch
+     * @param timestamp the purge time
+     * @param batchSize the batch size, nothing is selected if it is 0
+     * @param result    receives the best candidates, best first
+     * @return the result
+     */
+    static FSFindResult select(TraversalIterator iterator, FSFindQuery query, long timestamp,
+                               int batchSize, FSFindResult result) throws IOException {
+        Preconditions.checkArgument(query.order() != FSFindOrder.WALK, "Not an ordered query");
+        Preconditions.checkArgument(batchSize >= 0, "batchSize can't be negative");
+        final Comparator<Candidate> best = comparator(query.order());
+        PriorityQueue<Candidate> heap = new PriorityQueue<Candidate>(11,
+                new Comparator<Candidate>() {
+                    @Override
+                    public int compare(Candidate a, Candidate b) {
+                        return best.compare(b, a);
+                    }
+                });
+        boolean more = false;
+        while (iterator.hasNext()) {
+            Candidate candidate = iterator.nextCandidate();
+            if (heap.size() < batchSize) {
+                heap.add(candidate);
+            } else {
+                more = true;
+                if (batchSize == 0) {
+                    break; // nothing is kept, that there is a candidate is all there is to know
+                }
+                if (best.compare(candidate, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(candidate);
+                }
+            }
+        }
+
+        Candidate[] selected = heap.toArray(new Candidate[heap.size()]);
+        Arrays.sort(selected, best);
+        for (Candidate candidate : selected) {
+            result.add(candidate.path);
+            candidate.accountTo(result.reclaimable(), timestamp);
+        }
+        // the next batch searches from the start again, the candidates of this one being gone
+        result.setCursor(more ? new FSFindCursor(new Position(query.searchPath(), null, true,
+                null)) : FSFindCursor.EXHAUSTED);
+        return result;
+    }
+
+    private static Comparator<Candidate> comparator(final FSFindOrder order) {
+        return new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate a, Candidate b) {
+                int result;
+                if (order == FSFindOrder.OLDEST_FIRST) {
+                    result = a.modificationTime < b.modificationTime ? -1
+                            : a.modificationTime > b.modificationTime ? 1 : 0;
+                } else {
+                    result = a.length > b.length ? -1 : a.length < b.length ? 1 : 0;
+                }
+                // ties are broken by path so that the batches don't depend on the walk
+                return result != 0 ? result : a.path.compareTo(b.path);
+            }
+        };
+    }
+}
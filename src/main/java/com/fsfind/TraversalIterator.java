@@ -0,0 +1,311 @@
+package com.fsfind;
+
+import com.google.common.collect.Lists;
+
+import com.fsfind.FSFindCursor.Position;
+import com.fsfind.FSFindMetrics.Counter;
+import com.fsfind.FSFindImpl.REJECT_REASON;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * <code>FSFindIterator</code> walking the live namespace. Candidates are
+ * produced lazily while directories are listed, so the memory held is bounded
+ * by the depth of the traversal and the size of the directory listings on the
+ * current path.
+ * <p/>
+ * The traversal keeps an explicit stack of directories. When directories are
+ * included, a directory's direct children are deferred only while the
+ * directory is still a collapse candidate; as soon as any child is rejected
+ * the deferred children of that directory (and of its ancestors, which can't
+ * collapse either) are released. The candidates come out in the same order
+ * as the ones returned by <code>FSFindImpl</code>. If the query carries a
+ * cursor, the iterator resumes from it.
+ */
+final class TraversalIterator extends FSFindIterator {
+
+    public static final Logger LOG = Logger.getLogger(TraversalIterator.class);
+    private final FileSystem fs;
+    private final ListingIndex index;
+    private final boolean includeDirectories;
+    private final FileStatus searchPathStatus;
+    private final FSFindQuery query;
+    private final long timestamp;
+    private final FileStatusFilter filter;
+    private final boolean accountCandidates;
+    private final List<Frame> stack = Lists.newArrayList();
+    private final ArrayDeque<Candidate> ready = new ArrayDeque<Candidate>();
+    private boolean started = false;
+    private FSFindMetrics metrics;
+    private boolean countCandidates;
+
+    TraversalIterator(FileSystem fs, ListingIndex index, boolean includeDirectories,
+                      FileStatus searchPathStatus, FSFindQuery query, long timestamp,
+                      FileStatusFilter filter, RpcCounts rpcCounts) {
+        this(fs, index, includeDirectories, searchPathStatus, query, timestamp, filter,
+                rpcCounts, false);
+    }
+
+    /**
+     * @param accountCandidates true to account for the space of every
+     *                          directory candidate on its own, see
+     *                          <code>Candidate#space</code>
+     */
+    TraversalIterator(FileSystem fs, ListingIndex index, boolean includeDirectories,
+                      FileStatus searchPathStatus, FSFindQuery query, long timestamp,
+                      FileStatusFilter filter, RpcCounts rpcCounts,
+                      boolean accountCandidates) {
+        super(rpcCounts);
+        this.fs = fs;
+        this.index = index;
+        this.includeDirectories = includeDirectories;
+        this.searchPathStatus = searchPathStatus;
+        this.query = query;
+        this.timestamp = timestamp;
+        this.filter = filter;
+        this.accountCandidates = accountCandidates;
+    }
+
+    /**
+     * Count the directories and files visited and the collapses of the
+     * traversal in given metrics.
+     *
+     * @param metrics         the metrics, null to count nothing
+     * @param countCandidates true to count the candidates as emitted as they
+     *                        come out of the iterator
+     */
+    void useMetrics(FSFindMetrics metrics, boolean countCandidates) {
+        this.metrics = metrics;
+        this.countCandidates = countCandidates;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        if (!started) {
+            started = true;
+            if (query.cursor() == null || !query.cursor().isExhausted()) {
+                enter(searchPathStatus, FSFindImpl.resumePosition(query, searchPathStatus));
+            }
+        }
+        while (ready.isEmpty() && !stack.isEmpty()) {
+            step();
+        }
+        return !ready.isEmpty();
+    }
+
+    @Override
+    public Path next() throws IOException {
+        return nextCandidate().path;
+    }
+
+    /**
+     * @return the next candidate along with what is known about it
+     */
+    Candidate nextCandidate() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        if (countCandidates) {
+            count(Counter.CANDIDATES_EMITTED);
+        }
+        return ready.poll();
+    }
+
+    /* look at the next entry of the directory on top of the stack, or finish the directory */
+    private void step() throws IOException {
+        Frame top = stack.get(stack.size() - 1);
+        if (top.index < top.listing.length) {
+            FileStatus status = top.listing[top.index++];
+            if (status.isDirectory()) {
+                Position childResume = top.resumeChild != null
+                        && top.resumeChild.isAt(status.getPath()) ? top.resumeChild : null;
+                if (!enter(status, childResume)) {
+                    exclude(stack.size() - 1);
+                }
+            } else if (FSFindImpl.includePath(status, timestamp, filter) == REJECT_REASON.NONE) {
+                count(Counter.FILES_VISITED);
+                reclaimable().record(status, timestamp);
+                offer(top, new Candidate(status));
+            } else {
+                count(Counter.FILES_VISITED);
+                exclude(stack.size() - 1);
+            }
+            return;
+        }
+
+        stack.remove(stack.size() - 1);
+        boolean included;
+        if (top.listing.length == 0 && !top.sawChildren) {
+            included = top.collapsible && top.status.getModificationTime() < timestamp;
+        } else {
+            included = top.collapsible;
+        }
+        if (included) {
+            if (top.listing.length > 0 || top.sawChildren) {
+                count(Counter.COLLAPSES);
+            }
+            offer(stack.get(stack.size() - 1), collapse(top));
+        } else {
+            ready.addAll(top.deferred);
+            if (!stack.isEmpty()) {
+                exclude(stack.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * Push a directory on the stack. Return false if the directory was skipped
+     * and therefore can't be included by its parent.
+     */
+    private boolean enter(FileStatus status, Position resume) throws IOException {
+        if (FSFindImpl.includePath(status, timestamp, filter) == REJECT_REASON.PATH_FILTER) {
+            LOG.info("Directory was filtered by configured filter " + status.getPath());
+            return false;
+        }
+        PartitionPattern.Age age = query.partitionAge(status.getPath(), timestamp);
+        if (age == PartitionPattern.Age.NEWER) {
+            count(Counter.DIRECTORIES_VISITED);
+            return false;
+        } else if (age == PartitionPattern.Age.OLDER && includeDirectories) {
+            count(Counter.DIRECTORIES_VISITED);
+            reclaimable().recordUnlisted();
+            ReclaimableSpace space = null;
+            if (accountCandidates) {
+                space = new ReclaimableSpace();
+                space.recordUnlisted();
+            }
+            offer(stack.get(stack.size() - 1), new Candidate(status.getPath(),
+                    status.getModificationTime(), 0, space));
+            return true;
+        }
+        FileStatus[] listing = FSFindImpl.listDirectory(fs, status, index, rpcCounts());
+        if (listing == null) {
+            return false;
+        }
+        count(Counter.DIRECTORIES_VISITED);
+        boolean isSearchRoot = stack.isEmpty();
+        Frame frame = new Frame(status, listing, includeDirectories && !isSearchRoot);
+        if (resume != null) {
+            frame.index = resume.resumeIndex(listing);
+            frame.collapsible &= resume.includedAll();
+            frame.sawChildren = resume.sawChildren();
+            frame.resumeChild = resume.child();
+        }
+        stack.add(frame);
+        return true;
+    }
+
+    private void count(Counter counter) {
+        if (metrics != null) {
+            metrics.increment(counter, 1);
+        }
+    }
+
+    /* the candidate standing for a directory whose children are all candidates */
+    private Candidate collapse(Frame frame) {
+        long modificationTime = frame.deferred.isEmpty()
+                ? frame.status.getModificationTime() : Long.MIN_VALUE;
+        long length = 0;
+        ReclaimableSpace space = accountCandidates ? new ReclaimableSpace() : null;
+        for (Candidate child : frame.deferred) {
+            modificationTime = Math.max(modificationTime, child.modificationTime);
+            length += child.length;
+            if (space != null) {
+                child.accountTo(space, timestamp);
+            }
+        }
+        return new Candidate(frame.status.getPath(), modificationTime, length, space);
+    }
+
+    /* hand a candidate to the given directory, hold it back if the directory might collapse */
+    private void offer(Frame frame, Candidate candidate) {
+        if (frame.collapsible) {
+            frame.deferred.add(candidate);
+        } else {
+            ready.add(candidate);
+        }
+    }
+
+    /**
+     * A child of the directory at <code>depth</code> was rejected, so neither
+     * it nor any collapsible ancestor can be included as a whole anymore.
+     * Release the deferred candidates, outermost directory first to preserve
+     * the listing order.
+     */
+    private void exclude(int depth) {
+        int from = depth;
+        while (from >= 0 && stack.get(from).collapsible) {
+            from--;
+        }
+        for (int i = from + 1; i <= depth; i++) {
+            Frame frame = stack.get(i);
+            frame.collapsible = false;
+            ready.addAll(frame.deferred);
+            frame.deferred.clear();
+        }
+    }
+
+    private static final class Frame {
+        private final FileStatus status;
+        private final FileStatus[] listing;
+        private final List<Candidate> deferred = Lists.newArrayList();
+        private int index = 0;
+        private boolean collapsible;
+        private boolean sawChildren = false;
+        private Position resumeChild;
+
+        private Frame(FileStatus status, FileStatus[] listing, boolean collapsible) {
+            this.status = status;
+            this.listing = listing;
+            this.collapsible = collapsible;
+        }
+    }
+
+    /**
+     * A candidate with the newest modification time and the total length of
+     * the files it stands for.
+     */
+    static final class Candidate {
+        final Path path;
+        final long modificationTime;
+        final long length;
+        /* the file, null for a directory */
+        private final FileStatus file;
+        /* the space of a directory, null unless the iterator accounts for candidates */
+        private final ReclaimableSpace space;
+
+        private Candidate(FileStatus file) {
+            this.path = file.getPath();
+            this.modificationTime = file.getModificationTime();
+            this.length = file.getLen();
+            this.file = file;
+            this.space = null;
+        }
+
+        private Candidate(Path dir, long modificationTime, long length,
+                          ReclaimableSpace space) {
+            this.path = dir;
+            this.modificationTime = modificationTime;
+            this.length = length;
+            this.file = null;
+            this.space = space;
+        }
+
+        /* add the space the candidate takes up to an account */
+        void accountTo(ReclaimableSpace reclaimable, long purgeTime) {
+            if (file != null) {
+                reclaimable.record(file, purgeTime);
+            } else if (space != null) {
+                reclaimable.add(space);
+            }
+        }
+    }
+}
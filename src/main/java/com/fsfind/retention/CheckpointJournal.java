@@ -0,0 +1,318 @@
+package com.fsfind.retention;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.BaseEncoding;
+
+import com.fsfind.FSFindCursor;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+import org.codehaus.jackson.annotate.JsonProperty;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * <code>CheckpointJournal</code> is an append only local file recording the
+ * progress of a <code>DataRetention</code> run, so that a run that died half
+ * way (OOM killed, host rebooted) can be resumed by the next invocation
+ * instead of scanning every policy from scratch.
+ * <p/>
+ * Every time a batch of deletes finishes, the cursor of the search that
+ * produced the batch is recorded for the policy, path pattern and directory
+ * being searched. A cursor is only recorded once its batch is deleted, so
+ * resuming from it never skips a candidate. A directory whose cursor is
+ * exhausted is done. Once a run completes, a marker is written and the next
+ * run starts from an empty journal.
+ * <p/>
+ * Records are JSON objects, one per line. They are written by a background
+ * thread which drains whatever has queued up and syncs it to disk in one go,
+ * so recording a checkpoint never waits for the disk. A torn last line left
+ * by a crash is ignored.
+ */
+public class CheckpointJournal implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger(CheckpointJournal.class);
+    private static final int MAX_RECORDS_PER_WRITE = 1024;
+    private static final Record CLOSE = new Record(null, null, null, null, 0, false);
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final File file;
+    private final Map<String, Checkpoint> checkpoints = Maps.newHashMap();
+    private final BlockingQueue<Record> pending = new LinkedBlockingQueue<Record>();
+    private final FileOutputStream out;
+    private final Thread writer;
+    private volatile IOException writeFailure;
+    private boolean closed = false;
+
+    /**
+     * Open the journal, loading the checkpoints of a run that didn't complete.
+     *
+     * @param file the journal file, created if it doesn't exist
+     */
+    public CheckpointJournal(File file) throws IOException {
+        this.file = file;
+        boolean resume = load();
+        if (resume) {
+            LOG.info(String.format("Resuming from %d checkpoint(s) found in %s",
+                    checkpoints.size(), file));
+        }
+        this.out = new FileOutputStream(file, resume);
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "checkpoint-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @return the last checkpoint recorded for given directory, null if there
+     * is none
+     */
+    public Checkpoint checkpoint(String policy, String pathPattern, Path dir) {
+        return checkpoints.get(key(policy, pathPattern, dir));
+    }
+
+    /**
+     * Record that a batch of deletes under given directory is done. Returns
+     * right away, the record is written in background.
+     *
+     * @param cursor  cursor of the search which produced the batch
+     * @param deleted number of paths deleted in the batch
+     */
+    public void record(String policy, String pathPattern, Path dir, FSFindCursor cursor,
+                       int deleted) throws IOException {
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+        pending.add(new Record(policy, pathPattern, dir.toString(), encode(cursor), deleted,
+                false));
+    }
+
+    /**
+     * Mark the run as complete and close the journal. The next run will start
+     * from scratch.
+     */
+    public void complete() throws IOException {
+        pending.add(new Record(null, null, null, null, 0, true));
+        close();
+    }
+
+    /**
+     * Write out all pending records and close the journal.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pending.add(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing " + file, e);
+        } finally {
+            out.close();
+        }
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+    }
+
+    private void writeLoop() {
+        List<Record> records = Lists.newArrayList();
+        while (true) {
+            try {
+                records.add(pending.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            pending.drainTo(records, MAX_RECORDS_PER_WRITE - 1);
+            boolean close = false;
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try {
+                for (Record record : records) {
+                    if (record == CLOSE) {
+                        close = true;
+                        continue;
+                    }
+                    buffer.write(mapper.writeValueAsBytes(record));
+                    buffer.write('\n');
+                }
+                if (writeFailure == null && buffer.size() > 0) {
+                    out.write(buffer.toByteArray());
+                    out.getFD().sync();
+                }
+            } catch (IOException e) {
+                LOG.warn("Failed to write checkpoints to " + file
+                        + ", the run can't be resumed from here on", e);
+                writeFailure = e;
+            }
+            if (close) {
+                return;
+            }
+            records.clear();
+        }
+    }
+
+    /* replay the journal, return true if it holds a run that didn't complete */
+    private boolean load() throws IOException {
+        if (!file.exists()) {
+            return false;
+        }
+        long validLength = 0;
+        boolean complete = false;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), Charsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Record record;
+                try {
+                    record = mapper.readValue(line, Record.class);
+                } catch (IOException e) {
+                    LOG.warn("Ignoring the rest of " + file + ", found a torn record: " + line);
+                    break;
+                }
+                validLength += line.getBytes(Charsets.UTF_8).length + 1;
+                if (record.complete) {
+                    checkpoints.clear();
+                    complete = true;
+                    continue;
+                }
+                complete = false;
+                String key = key(record.policy, record.pathPattern, record.dir);
+                Checkpoint previous = checkpoints.get(key);
+                int deleted = previous == null ? record.deleted : previous.deleted + record.deleted;
+                checkpoints.put(key, new Checkpoint(decode(record.cursor), deleted));
+            }
+        } finally {
+            reader.close();
+        }
+        if (complete) {
+            return false;
+        }
+        // drop the torn record, if any, so that new records start on a line of their own
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            if (validLength > raf.length()) {
+                raf.seek(raf.length()); // the last record made it, its line end didn't
+                raf.write('\n');
+            } else {
+                raf.setLength(validLength);
+            }
+        } finally {
+            raf.close();
+        }
+        return true;
+    }
+
+    private static String key(String policy, String pathPattern, Path dir) {
+        return key(policy, pathPattern, dir.toString());
+    }
+
+    private static String key(String policy, String pathPattern, String dir) {
+        return policy + '\t' + pathPattern + '\t' + dir;
+    }
+
+    private static String encode(FSFindCursor cursor) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bytes);
+        oos.writeObject(cursor);
+        oos.close();
+        return BaseEncoding.base64().encode(bytes.toByteArray());
+    }
+
+    private static FSFindCursor decode(String cursor) throws IOException {
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(
+                BaseEncoding.base64().decode(cursor)));
+        try {
+            return (FSFindCursor) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        } finally {
+            ois.close();
+        }
+    }
+
+    /**
+     * Progress of an earlier run under one directory.
+     */
+    public static final class Checkpoint {
+        private final FSFindCursor cursor;
+        private final int deleted;
+
+        Checkpoint(FSFindCursor cursor, int deleted) {
+            this.cursor = cursor;
+            this.deleted = deleted;
+        }
+
+        /**
+         * @return cursor to resume the search from, exhausted if the
+         * directory is done
+         */
+        public FSFindCursor cursor() {
+            return cursor;
+        }
+
+        /**
+         * @return number of paths deleted under the directory so far
+         */
+        public int deleted() {
+            return deleted;
+        }
+    }
+
+    /**
+     * One line of the journal.
+     */
+    static final class Record {
+        @JsonProperty
+        final String policy;
+        @JsonProperty
+        final String pathPattern;
+        @JsonProperty
+        final String dir;
+        @JsonProperty
+        final String cursor;
+        @JsonProperty
+        final int deleted;
+        @JsonProperty
+        final boolean complete;
+
+        Record(@JsonProperty("policy") String policy,
+               @JsonProperty("pathPattern") String pathPattern,
+               @JsonProperty("dir") String dir,
+               @JsonProperty("cursor") String cursor,
+               @JsonProperty("deleted") int deleted,
+               @JsonProperty("complete") boolean complete) {
+            this.policy = policy;
+            this.pathPattern = pathPattern;
+            this.dir = dir;
+            this.cursor = cursor;
+            this.deleted = deleted;
+            this.complete = complete;
+        }
+    }
+}
@@ -1,11 +1,30 @@
 package com.fsfind.retention;
 
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
 
+import com.fsfind.CandidateBuffer;
+import com.fsfind.CapacityPlan;
 import com.fsfind.FSFind;
+import com.fsfind.FSFindCursor;
+import com.fsfind.FSFindExpression;
 import com.fsfind.FSFindImpl;
+import com.fsfind.FSFindIterator;
+import com.fsfind.FSFindMetrics;
+import com.fsfind.FSFindOrder;
 import com.fsfind.FSFindQuery;
 import com.fsfind.FSFindResult;
+import com.fsfind.FSImageFind;
+import com.fsfind.FileStatusFilter;
+import com.fsfind.FileStatusFilters;
+import com.fsfind.ListingIndex;
+import com.fsfind.MeteredFileSystem;
+import com.fsfind.PartitionPattern;
+import com.fsfind.RateLimitedFileSystem;
+import com.fsfind.ReclaimableSpace;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.OptionBuilder;
@@ -15,15 +34,27 @@ import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.GlobPattern;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -35,12 +66,71 @@ public class DataRetention extends Command {
     static final String HDFS_PATH = "hdfs_path";
     static final String NUM_DAYS = "num_days";
     static final String DELETE = "delete";
+    static final String CHECKPOINT = "checkpoint";
+    static final String FSIMAGE = "fsimage";
+    static final String LISTING_INDEX = "listing_index";
+    static final String REVALIDATION_RATE = "revalidation_rate";
+    static final String EXPRESSION = "expression";
+    static final String ORDER = "order";
+    static final String MIN_DELETES = "min_deletes";
+    static final String MAX_DELETES = "max_deletes";
+    static final String READS_PER_SECOND = "reads_per_second";
+    static final String WRITES_PER_SECOND = "writes_per_second";
+    static final String CONCURRENCY = "concurrency";
+    static final String SPILL_DIR = "spill_dir";
+    static final String QUARANTINE = "quarantine";
+    static final String PURGE_QUARANTINE = "purge_quarantine";
+    static final String GRACE_DAYS = "grace_days";
+    static final String RESTORE = "restore";
+    private static final double DEFAULT_REVALIDATION_RATE = 0.01;
     private static final Logger LOG = Logger.getLogger(DataRetention.class);
-    private static final int THREAD_POOL_SIZE = 5;
-    private FileSystem fs;
-    private FSFind fsFind;
-    private ExecutorService deleteWorkers = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
+    private static final int INITIAL_DELETES = 5;
+    private static final int DEFAULT_CONCURRENCY = 1;
+    private static final int DEFAULT_GRACE_DAYS = 7;
+    private static final int SPILL_WINDOW = 1 << 16;
+    private static final int DEFAULT_MIN_DELETES = 1;
+    private static final int DEFAULT_MAX_DELETES = 20;
+    private static final int DELETE_QUEUE_SIZE = 1000;
+    private static final String METRICS_NAME = "DataRetention";
+    /*
+     * a full delete queue makes the search wait for the delete workers to catch up, a task
+     * submitted once the workers are shut down is rejected since no worker would ever run it
+     */
+    static final RejectedExecutionHandler WAIT_FOR_ROOM = new RejectedExecutionHandler() {
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Delete workers are shut down");
+            }
+            try {
+                executor.getQueue().put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for room in " +
+                        "the delete queue", e);
+            }
+            // shut down while waiting, the task may have made it into the queue too late
+            if (executor.isShutdown() && executor.remove(task)) {
+                throw new RejectedExecutionException("Delete workers are shut down");
+            }
+        }
+    };
+    private RateLimitedFileSystem fs;
+    private final FSFindMetrics metrics;
+    private File image;
+    private volatile ThreadPoolExecutor deleteWorkers = deleteWorkers(DEFAULT_MAX_DELETES);
+    private volatile DeleteLimiter deleteLimiter = new DeleteLimiter(DEFAULT_MIN_DELETES,
+            DEFAULT_MAX_DELETES, INITIAL_DELETES);
     private boolean dryRun = true;
+    private CheckpointJournal journal;
+    private boolean recheckBeforeDelete = false;
+    private ListingIndex listingIndex;
+    private FileStatusFilter filter = FileStatusFilters.all();
+    private FSFindOrder order = FSFindOrder.WALK;
+    private final ReclaimableSpace reclaimed = new ReclaimableSpace();
+    private int concurrency = DEFAULT_CONCURRENCY;
+    private File spillDir = new File(System.getProperty("java.io.tmpdir"));
+    private Quarantine quarantine;
 
     /**
      * Constructor with <code>FileSystem</code> initialized based on
@@ -52,18 +142,54 @@ public class DataRetention extends Command {
 
     /**
      * Constructor with <code>FileSystem</code> initialized with instance passed
-     * by the client
+     * by the client. Every call made to it goes through the calls per second
+     * caps of the run and of the policy being applied
      *
      * @param fs a filesystem instance
      */
     public DataRetention(FileSystem fs) throws IOException {
-        this.fs = fs;
-        fsFind = new FSFindImpl(Boolean.TRUE, fs);
+        this(fs, new FSFindMetrics(METRICS_NAME));
+    }
+
+    /**
+     * Constructor with <code>FileSystem</code> initialized with instance passed
+     * by the client, whose calls are recorded in given metrics along with the
+     * searches, the deletes and the depth of the delete queue
+     *
+     * @param fs      a filesystem instance
+     * @param metrics metrics of the run
+     */
+    public DataRetention(FileSystem fs, FSFindMetrics metrics) throws IOException {
+        this.metrics = metrics;
+        this.fs = new RateLimitedFileSystem(new MeteredFileSystem(fs, metrics), 0, 0);
+        metrics.gauge("DeleteQueue", "Deletes waiting for a delete worker",
+                new FSFindMetrics.Gauge() {
+                    @Override
+                    public long value() {
+                        return deleteWorkers.getQueue().size();
+                    }
+                });
+        metrics.gauge("DeletesInFlight", "Deletes being made", new FSFindMetrics.Gauge() {
+            @Override
+            public long value() {
+                return deleteLimiter.inFlight();
+            }
+        });
+        metrics.gauge("DeleteLimit", "Deletes allowed in flight", new FSFindMetrics.Gauge() {
+            @Override
+            public long value() {
+                return deleteLimiter.limit();
+            }
+        });
     }
 
     public static void main(String[] args) throws Exception {
-        DataRetention retention = new DataRetention();
-        System.exit(retention.doMain(args));
+        // published through the metrics system, JMX included, while the run is in progress
+        DataRetention retention = new DataRetention(FileSystem.get(new Configuration()),
+                FSFindMetrics.register(METRICS_NAME));
+        int status = retention.doMain(args);
+        DefaultMetricsSystem.shutdown(); // flushes the last values to the sinks
+        System.exit(status);
     }
 
     // meant for silencing the logger while unit testing
@@ -92,11 +218,87 @@ public class DataRetention extends Command {
                 "Specify this if you don't want a dry run, " +
                         "unless this option is specified - data won't be deleted")
                 .hasArg(false).isRequired(false).create(DELETE));
+        options.addOption(OptionBuilder.withDescription(
+                "Local file to checkpoint progress in, a run that didn't complete " +
+                        "is resumed from it. Ignored during dry run")
+                .hasArg().isRequired(false).create(CHECKPOINT));
+        options.addOption(OptionBuilder.withDescription(
+                "Local namespace dump (hdfs oiv -p Delimited) to search instead of listing " +
+                        "the file system, candidates are checked to still be old enough " +
+                        "right before getting deleted. Not with " + ORDER + ", partition " +
+                        "patterns or capacity mappings")
+                .hasArg().isRequired(false).create(FSIMAGE));
+        options.addOption(OptionBuilder.withDescription(
+                "Local file to index directory listings in, directories which haven't " +
+                        "changed since the last run are not listed again. Candidates are " +
+                        "checked to still be old enough right before getting deleted")
+                .hasArg().isRequired(false).create(LISTING_INDEX));
+        options.addOption(OptionBuilder.withDescription(
+                "Fraction of the unchanged directories which get listed anyway, to " +
+                        "catch files appended to in place. Defaults to " +
+                        DEFAULT_REVALIDATION_RATE)
+                .hasArg().isRequired(false).create(REVALIDATION_RATE));
+        options.addOption(OptionBuilder.withDescription(
+                "find(1) style expression the files have to match to get deleted, e.g. " +
+                        "\"-name '*.tmp' -and -size +1G -and -not -user hive\". Directories " +
+                        "matching a -type d term are skipped with everything under them")
+                .hasArg().isRequired(false).create(EXPRESSION));
+        options.addOption(OptionBuilder.withDescription(
+                "Which candidates each batch deletes first, one of walk (the default, in " +
+                        "the order the tree is walked in), oldest_first or largest_first. " +
+                        "Every batch of the last two walks the whole tree. Batches of the " +
+                        "paths of a capacity mapping are always picked oldest first")
+                .hasArg().isRequired(false).create(ORDER));
+        options.addOption(OptionBuilder.withDescription(
+                "Least deletes kept in flight, the number in flight backs off towards it " +
+                        "when deletes fail or get slower. Defaults to " + DEFAULT_MIN_DELETES)
+                .hasArg().isRequired(false).create(MIN_DELETES));
+        options.addOption(OptionBuilder.withDescription(
+                "Most deletes kept in flight, the number in flight grows towards it while " +
+                        "deletes stay fast. Defaults to " + DEFAULT_MAX_DELETES)
+                .hasArg().isRequired(false).create(MAX_DELETES));
+        options.addOption(OptionBuilder.withDescription(
+                "Most reads (listStatus, getFileStatus) per second made of the NameNode, " +
+                        "across searching and deleting and all the policies. A policy may " +
+                        "cap its own further. No limit by default")
+                .hasArg().isRequired(false).create(READS_PER_SECOND));
+        options.addOption(OptionBuilder.withDescription(
+                "Most writes (delete) per second made of the NameNode, across all the " +
+                        "policies. A policy may cap its own further. No limit by default")
+                .hasArg().isRequired(false).create(WRITES_PER_SECOND));
+        options.addOption(OptionBuilder.withDescription(
+                "Number of directories processed at the same time, across all the " +
+                        "policies and their paths. Defaults to " + DEFAULT_CONCURRENCY)
+                .hasArg().isRequired(false).create(CONCURRENCY));
+        options.addOption(OptionBuilder.withDescription(
+                "Local directory the candidates of an unbatched search are spilled to, " +
+                        "instead of being held in memory. Defaults to java.io.tmpdir")
+                .hasArg().isRequired(false).create(SPILL_DIR));
+        options.addOption(OptionBuilder.withDescription(
+                "Directory on the same file system to move the candidates into instead of " +
+                        "deleting them, under a directory of the run. They can be restored " +
+                        "until it is purged")
+                .hasArg().isRequired(false).create(QUARANTINE));
+        options.addOption(OptionBuilder.withDescription(
+                "Quarantine directory to purge instead of applying retention, the " +
+                        "directories of the runs older than " + GRACE_DAYS + " get deleted")
+                .hasArg().isRequired(false).create(PURGE_QUARANTINE));
+        options.addOption(OptionBuilder.withDescription(
+                "Days the directory of a run stays in quarantine before getting purged. " +
+                        "Defaults to " + DEFAULT_GRACE_DAYS)
+                .hasArg().isRequired(false).create(GRACE_DAYS));
+        options.addOption(OptionBuilder.withDescription(
+                "Directory of a quarantine run to move back to where it came from, " +
+                        "instead of applying retention")
+                .hasArg().isRequired(false).create(RESTORE));
         return options;
     }
 
     @Override
     public int run(CommandLine cl) throws Exception {
+        if (cl.hasOption(PURGE_QUARANTINE) || cl.hasOption(RESTORE)) {
+            return manageQuarantine(cl);
+        }
         if (!isValidOption(cl)) {
             return FAILURE;
         }
@@ -106,16 +308,88 @@ public class DataRetention extends Command {
         } else {
             LOG.info("Doing dry run");
         }
+        if (cl.hasOption(FSIMAGE)) {
+            LOG.info("Searching namespace dump " + cl.getOptionValue(FSIMAGE));
+            useImage(new File(cl.getOptionValue(FSIMAGE)));
+        }
+        if (cl.hasOption(LISTING_INDEX)) {
+            double revalidationRate = cl.hasOption(REVALIDATION_RATE)
+                    ? Double.parseDouble(cl.getOptionValue(REVALIDATION_RATE))
+                    : DEFAULT_REVALIDATION_RATE;
+            useListingIndex(new ListingIndex(new File(cl.getOptionValue(LISTING_INDEX)),
+                    revalidationRate));
+        }
+        if (cl.hasOption(EXPRESSION)) {
+            useFilter(FSFindExpression.compile(cl.getOptionValue(EXPRESSION)));
+            LOG.info("Deleting only what matches " + filter);
+        }
+        if (cl.hasOption(ORDER)) {
+            useOrder(FSFindOrder.valueOf(cl.getOptionValue(ORDER).toUpperCase()));
+        }
+        if (cl.hasOption(MIN_DELETES) || cl.hasOption(MAX_DELETES)) {
+            useDeleteConcurrency(cl.hasOption(MIN_DELETES)
+                            ? Integer.parseInt(cl.getOptionValue(MIN_DELETES))
+                            : DEFAULT_MIN_DELETES,
+                    cl.hasOption(MAX_DELETES)
+                            ? Integer.parseInt(cl.getOptionValue(MAX_DELETES))
+                            : DEFAULT_MAX_DELETES);
+        }
+        if (cl.hasOption(READS_PER_SECOND) || cl.hasOption(WRITES_PER_SECOND)) {
+            useRates(cl.hasOption(READS_PER_SECOND)
+                            ? Double.parseDouble(cl.getOptionValue(READS_PER_SECOND)) : 0,
+                    cl.hasOption(WRITES_PER_SECOND)
+                            ? Double.parseDouble(cl.getOptionValue(WRITES_PER_SECOND)) : 0);
+        }
+        if (cl.hasOption(CONCURRENCY)) {
+            useConcurrency(Integer.parseInt(cl.getOptionValue(CONCURRENCY)));
+        }
+        if (cl.hasOption(SPILL_DIR)) {
+            spillDir = new File(cl.getOptionValue(SPILL_DIR));
+        }
+        if (cl.hasOption(QUARANTINE)) {
+            useQuarantine(new Path(cl.getOptionValue(QUARANTINE)));
+        }
+        if (cl.hasOption(CHECKPOINT)) {
+            if (dryRun) {
+                LOG.warn("Nothing gets deleted in dry run, ignoring " + CHECKPOINT);
+            } else {
+                journal = new CheckpointJournal(new File(cl.getOptionValue(CHECKPOINT)));
+            }
+        }
         int totalDeleted = 0;
-        if (cl.hasOption(CONF_FILE)) {
-            totalDeleted = retentionByConfiguration(cl);
-            LOG.info(String.format("Finished retention, deleted %d in total across all policies.",
-                    totalDeleted));
-        } else {
-            totalDeleted = retentionByHdfsPath(cl);
-            LOG.info(String.format(
-                    "Finished retention, deleted %d in total under given HDFS path.",
-                    totalDeleted));
+        try {
+            if (cl.hasOption(CONF_FILE)) {
+                totalDeleted = retentionByConfiguration(cl);
+                LOG.info(String.format(
+                        "Finished retention, deleted %d in total across all policies.",
+                        totalDeleted));
+            } else {
+                totalDeleted = retentionByHdfsPath(cl);
+                LOG.info(String.format(
+                        "Finished retention, deleted %d in total under given HDFS path.",
+                        totalDeleted));
+            }
+            LOG.info((dryRun ? "Would have reclaimed " : "Reclaimed ") + reclaimed);
+            LOG.info("Finished with " + metrics);
+            if (!dryRun) {
+                LOG.info("Deleted with " + deleteLimiter);
+            }
+            if (!dryRun && quarantine != null) {
+                LOG.info("Quarantined into " + quarantine.runDir());
+            }
+            if (journal != null) {
+                journal.complete();
+            }
+            if (listingIndex != null) {
+                listingIndex.complete();
+            }
+        } finally {
+            if (journal != null) {
+                journal.close();
+            }
+            if (listingIndex != null) {
+                listingIndex.close();
+            }
         }
         fs.close();
         return SUCCESS;
@@ -123,75 +397,438 @@ public class DataRetention extends Command {
 
     /**
      * Apply retention on given <code>DataRetentionPolicy</code>. During dry run
-     * batching is turned off
+     * the candidates are streamed instead of being searched in batches
      *
      * @param policy data retention policy
      * @return total count of deleted paths covered by this policy
      */
     protected final int applyPolicy(DataRetentionPolicy policy) throws IOException {
-        policy.validate();
-        if (dryRun) {
-            // turn off batching if doing dry run, else we might go into infinite loop since
-            // search  module will keep returning the same paths again & again (because delete is
-            // not executed in dry run)
-            LOG.info("Since it's a dry run batching will be turned off");
-            policy.turnOffBatching();
+        return applyPolicy(null, policy);
+    }
+
+    /**
+     * Apply retention on given <code>DataRetentionPolicy</code>.
+     *
+     * @param name   name of the policy, identifies its progress in the
+     *               checkpoint journal
+     * @param policy data retention policy
+     * @return total count of deleted paths covered by this policy
+     */
+    protected final int applyPolicy(String name, DataRetentionPolicy policy) throws IOException {
+        Map<String, DataRetentionPolicy> policies = Maps.newLinkedHashMap();
+        policies.put(name, policy);
+        return applyPolicies(policies);
+    }
+
+    /**
+     * Apply given policies. The directories their path patterns match are
+     * processed by <code>concurrency</code> threads, each directory by a
+     * single one. To share the threads fairly the directories take turns:
+     * the policies take turns, and within a policy its path patterns take
+     * turns, so a pattern matching thousands of directories doesn't hold up
+     * the others. A policy is summed up once all of its directories are done.
+     * <p/>
+     * The path patterns of all the policies are compiled into a
+     * <code>PathPatternTrie</code>, every directory is processed by the most
+     * specific pattern which matches it. A directory matched by a pattern is
+     * skipped by the patterns which only find it under a directory they
+     * match, so overlapping patterns don't search the same directories twice.
+     * The globs of all the patterns share their listings, see
+     * <code>GlobListings</code>, but a directory a glob went through is
+     * listed again if it is searched. The same pattern in several policies is
+     * governed by the rule which keeps the most: the longest retention, then
+     * the largest budget, an age rule over a capacity rule since it never
+     * deletes newer files.
+     * <p/>
+     * If a directory fails, the directories which didn't start yet are
+     * skipped, the ones in progress are finished and then the failure is
+     * thrown. A namespace dump is only searched in its own order, so with one
+     * an order, partition patterns and capacity mappings, whose plans list
+     * the file system, are rejected before anything starts.
+     *
+     * @param policies the policies by name, a null name is fine if there is a
+     *                 single policy and no checkpoint journal
+     * @return total count of deleted paths covered by the policies
+     */
+    int applyPolicies(Map<String, DataRetentionPolicy> policies) throws IOException {
+        Preconditions.checkArgument(image == null || order == FSFindOrder.WALK,
+                "Only the dump order is supported when searching a namespace dump, not %s",
+                order);
+        for (Map.Entry<String, DataRetentionPolicy> entry : policies.entrySet()) {
+            DataRetentionPolicy policy = entry.getValue();
+            policy.validate();
+            Preconditions.checkArgument(image == null || policy.getPartitionPatterns().isEmpty(),
+                    "Policy %s has partition patterns, they aren't supported when searching a " +
+                            "namespace dump", entry.getKey());
+            Preconditions.checkArgument(image == null || policy.getCapacityMapping().isEmpty(),
+                    "Policy %s has a capacity mapping, its budgets are planned on the file " +
+                            "system which a namespace dump doesn't stand for", entry.getKey());
         }
-        int totalDeleted = 0;
-        Map<String, Integer> pathMapping = policy.getPathMapping();
-        for (String pathPattern : pathMapping.keySet()) {
-            totalDeleted += processPathEntry(pathPattern, policy);
+        ExecutorService scheduler = Executors.newFixedThreadPool(concurrency);
+        List<Future<Integer>> directories = Lists.newArrayList();
+        try {
+            // the glob patterns are expanded concurrently as well
+            List<PatternRun> patterns = Lists.newArrayList();
+            List<Future<List<Path>>> matches = Lists.newArrayList();
+            final GlobListings globListings = new GlobListings();
+            for (Map.Entry<String, DataRetentionPolicy> entry : policies.entrySet()) {
+                PolicyRun policy = new PolicyRun(entry.getKey(), entry.getValue());
+                for (final PatternRun pattern : policy.patterns) {
+                    patterns.add(pattern);
+                    matches.add(scheduler.submit(new Callable<List<Path>>() {
+                        @Override
+                        public List<Path> call() throws IOException {
+                            return matchingDirectories(globListings.through(pattern.policy.fs),
+                                    pattern.pathPattern);
+                        }
+                    }));
+                }
+            }
+            List<String> pathPatterns = Lists.newArrayList();
+            // of the runs of the same pattern, the one which keeps the most
+            Map<String, Integer> keepsMost = Maps.newHashMap();
+            for (int i = 0; i < patterns.size(); i++) {
+                PatternRun pattern = patterns.get(i);
+                pathPatterns.add(pattern.pathPattern);
+                String normalized = new Path(pattern.pathPattern).toUri().getPath();
+                Integer other = keepsMost.get(normalized);
+                if (other == null) {
+                    keepsMost.put(normalized, i);
+                    continue;
+                }
+                PatternRun kept = keepsMore(patterns.get(other), pattern);
+                LOG.warn(String.format("%s is in policy %s and policy %s, the rule of %s " +
+                        "governs it as it keeps more", normalized, patterns.get(other).policy.name,
+                        pattern.policy.name, kept.policy.name));
+                keepsMost.put(normalized, kept == pattern ? i : other);
+            }
+            PathPatternTrie trie = new PathPatternTrie(pathPatterns);
+            Map<PolicyRun, List<List<DirectoryRun>>> turns = Maps.newLinkedHashMap();
+            for (int i = 0; i < patterns.size(); i++) {
+                PatternRun pattern = patterns.get(i);
+                List<DirectoryRun> runs = Lists.newArrayList();
+                for (Path dir : await(matches.get(i), matches)) {
+                    int governing = trie.governing(dir);
+                    if (governing != -1) {
+                        governing = keepsMost.get(
+                                new Path(trie.pattern(governing)).toUri().getPath());
+                    }
+                    if (governing != -1 && governing != i) {
+                        if (new Path(trie.pattern(governing)).equals(
+                                new Path(pattern.pathPattern))) {
+                            LOG.info(String.format("Skipping %s for %s of policy %s, the rule " +
+                                    "of policy %s keeps more", dir, pattern.pathPattern,
+                                    pattern.policy.name, patterns.get(governing).policy.name));
+                        } else if (trie.equallySpecific(governing, i)) {
+                            LOG.warn(String.format("Skipping %s for %s, %s is as specific and " +
+                                    "comes first in name order", dir, pattern.pathPattern,
+                                    trie.pattern(governing)));
+                        } else {
+                            LOG.info(String.format("Skipping %s for %s, %s is more specific",
+                                    dir, pattern.pathPattern, trie.pattern(governing)));
+                        }
+                        continue;
+                    }
+                    if (quarantine != null && quarantine.holds(dir)) {
+                        LOG.info(String.format("Skipping %s for %s, it is in quarantine", dir,
+                                pattern.pathPattern));
+                        continue;
+                    }
+                    // the directories under it matched by a pattern are processed on their own
+                    FileStatusFilter searchFilter = FileStatusFilters.and(filter,
+                            trie.unclaimedUnder(dir));
+                    runs.add(new DirectoryRun(pattern, dir, quarantine == null ? searchFilter
+                            : FileStatusFilters.and(searchFilter, quarantine.outside())));
+                }
+                pattern.expect(runs.size());
+                if (!turns.containsKey(pattern.policy)) {
+                    turns.put(pattern.policy, Lists.<List<DirectoryRun>>newArrayList());
+                }
+                turns.get(pattern.policy).add(runs);
+            }
+            List<List<DirectoryRun>> policyTurns = Lists.newArrayList();
+            for (List<List<DirectoryRun>> patternTurns : turns.values()) {
+                policyTurns.add(roundRobin(patternTurns));
+            }
+            for (DirectoryRun directory : roundRobin(policyTurns)) {
+                directories.add(scheduler.submit(directory));
+            }
+            int totalDeleted = 0;
+            for (Future<Integer> directory : directories) {
+                totalDeleted += await(directory, directories);
+            }
+            return totalDeleted;
+        } finally {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /* of two runs of the same pattern, the one whose rule deletes less */
+    private static PatternRun keepsMore(PatternRun a, PatternRun b) {
+        Integer daysA = a.policy.policy.getPathMapping().get(a.pathPattern);
+        Integer daysB = b.policy.policy.getPathMapping().get(b.pathPattern);
+        if (daysA != null && daysB != null) {
+            return daysB > daysA ? b : a;
+        } else if (daysA != null || daysB != null) {
+            return daysA != null ? a : b; // an age rule never deletes files newer than its age
+        }
+        return b.policy.policy.getCapacity(b.pathPattern)
+                > a.policy.policy.getCapacity(a.pathPattern) ? b : a;
+    }
+
+    /**
+     * Take one element of each list in turn, until all of them are used up.
+     */
+    static <T> List<T> roundRobin(List<List<T>> lists) {
+        List<T> turns = Lists.newArrayList();
+        for (int i = 0; turns.size() < size(lists); i++) {
+            for (List<T> list : lists) {
+                if (i < list.size()) {
+                    turns.add(list.get(i));
+                }
+            }
+        }
+        return turns;
+    }
+
+    private static int size(List<? extends List<?>> lists) {
+        int size = 0;
+        for (List<?> list : lists) {
+            size += list.size();
+        }
+        return size;
+    }
+
+    /* the outcome of a scheduled task, if it failed the tasks which didn't start yet are
+    cancelled */
+    private static <T> T await(Future<T> task, List<? extends Future<?>> all)
+            throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(all);
+            throw new InterruptedIOException("Interrupted while applying retention");
+        } catch (ExecutionException e) {
+            cancel(all);
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static void cancel(List<? extends Future<?>> tasks) {
+        for (Future<?> task : tasks) {
+            task.cancel(false);
         }
-        return totalDeleted;
     }
 
     /**
-     * Apply retention on given path
+     * Apply retention on a directory a path pattern matched. If a checkpoint
+     * journal is configured, a checkpoint is recorded after every batch of
+     * deletes and the search resumes from the last checkpoint of an earlier
+     * run. A directory of the capacity mapping is planned first and brought
+     * under its budget by deleting what is older than the plan's purge time.
+     * Bounded batches of it are always picked oldest first, so a run cut short
+     * has deleted the files the plan would have deleted first; without a
+     * batch size everything goes in one streamed walk, whatever the order.
+     * <p/>
+     * Searching and deleting overlap: the deletes of a batch are handed off to
+     * the delete workers and the next batch is searched for while they run.
+     * Batches picked in an order other than the walk order start over every
+     * time, so those wait for their deletes before searching again.
      *
-     * @param pathPattern path from where to begin search from
-     * @param policy      the policy which the path belongs to
-     * @return total count of deleted paths under this base path
+     * @param pattern      the path pattern which matched the directory
+     * @param dir          the directory
+     * @param searchFilter the paths under the directory which can be deleted
+     * @return count of deleted paths under the directory
      */
-    protected final int processPathEntry(String pathPattern, DataRetentionPolicy policy) throws
-            IOException {
-        List<Path> dirs = matchingDirectories(pathPattern);
+    private int processDirectory(PatternRun pattern, Path dir, FileStatusFilter searchFilter)
+            throws IOException {
+        String policyName = pattern.policy.name;
+        DataRetentionPolicy policy = pattern.policy.policy;
+        String pathPattern = pattern.pathPattern;
+        FileSystem fs = pattern.policy.fs;
+        ReclaimableSpace patternReclaimed = pattern.reclaimed;
+        // a search of its own, searches keep state between the batches of a directory
+        FSFind fsFind = searcher(fs);
         int totalDeleted = 0;
-        for (Path dir : dirs) {
-            LOG.info("Scanning " + dir);
-            FSFindResult result = new FSFindResult();
+        LOG.info("Scanning " + dir);
+        long purgeTime;
+        FSFindOrder batchOrder = order;
+        if (policy.getCapacityMapping().containsKey(pathPattern)) {
+            // an ordered batch holds its candidates and walks the whole tree, worth it only
+            // when a bounded batch has to pick which candidates go first
+            batchOrder = policy.getBatchSize() == Integer.MAX_VALUE ? FSFindOrder.WALK
+                    : FSFindOrder.OLDEST_FIRST;
+            // the files are deleted oldest first, up to the time that brings it under budget
+            CapacityPlan plan = CapacityPlan.make(fs, dir, policy.getCapacity(pathPattern),
+                    searchFilter);
+            if (!plan.isOverTarget()) {
+                LOG.info(dir + " is within its budget");
+                return 0;
+            }
+            purgeTime = plan.purgeTime();
+        } else {
+            purgeTime = purgeTime(policy.getPathMapping().get(pathPattern));
+        }
+        if (dryRun) {
+            // nothing gets deleted in dry run so there is no point in batching, stream the
+            // candidates instead so they don't have to be held in memory all at once.
+            return doDryRun(fsFind, FSFindQuery.make(dir).withPartitions(pattern.partitions),
+                    purgeTime, searchFilter, patternReclaimed);
+        }
+        FSFindQuery query = FSFindQuery.make(dir);
+        CheckpointJournal.Checkpoint checkpoint = journal == null ? null
+                : journal.checkpoint(policyName, pathPattern, dir);
+        if (checkpoint != null) {
+            LOG.info(String.format("Resuming %s from checkpoint %s, %d path(s) were deleted " +
+                    "by an earlier run", dir, checkpoint.cursor(), checkpoint.deleted()));
+            query = FSFindQuery.make(dir, checkpoint.cursor());
+        } else if (policy.getBatchSize() == Integer.MAX_VALUE && batchOrder == FSFindOrder.WALK) {
+            return deleteUnbatched(pattern, dir, fs, fsFind, purgeTime, searchFilter);
+        }
+        List<Path> lastBatch = null;
+        // the deletes of a batch run while the next batch is searched for
+        PendingBatch pending = null;
+        try {
             while (true) {
-                FSFindQuery query = FSFindQuery.makeFromResult(dir, result);
-                long purgeTime = purgeTime(policy.getPathMapping().get(pathPattern));
-                result = fsFind.find(query, purgeTime, policy.getBatchSize());
-                if (result.size() != 0) {
-                    doDeletes(result); //blocks till all deletes finish
-                    totalDeleted += result.size();
-                    LOG.info(String.format("Deleted %d path(s) under %s", result.size(), dir));
-                } else {
+                FSFindResult result = fsFind.findMatching(query.withPartitions(pattern.partitions)
+                        .withOrder(batchOrder), purgeTime, policy.getBatchSize(), searchFilter);
+                if (batchOrder != FSFindOrder.WALK && result.candidates().equals(lastBatch)) {
+                    // an ordered batch starts over, it comes back the same if the deletes failed
+                    LOG.warn(String.format("None of the last %d path(s) under %s could be " +
+                            "deleted, giving up on it", result.size(), dir));
                     break;
                 }
+                PendingBatch batch = new PendingBatch(result, doDeletes(fs, result, purgeTime));
+                if (pending != null) {
+                    PendingBatch previous = pending;
+                    pending = null;
+                    totalDeleted += finishBatch(policyName, pathPattern, dir, previous,
+                            patternReclaimed);
+                }
+                if (batchOrder == FSFindOrder.WALK) {
+                    pending = batch;
+                } else {
+                    // the next ordered batch starts over, it has to see these deleted
+                    totalDeleted += finishBatch(policyName, pathPattern, dir, batch,
+                            patternReclaimed);
+                }
+                if (result.size() == 0 || result.cursor().isExhausted()) {
+                    break; // the last batch was cut short by the end of the tree, not its size
+                }
+                query = FSFindQuery.makeFromResult(dir, result);
+                lastBatch = batchOrder == FSFindOrder.WALK ? null
+                        : Lists.newArrayList(result.candidates());
+            }
+        } finally {
+            // even when the search failed, the deletes already handed off go ahead and are
+            // checkpointed
+            if (pending != null) {
+                totalDeleted += finishBatch(policyName, pathPattern, dir, pending,
+                        patternReclaimed);
             }
         }
-        LOG.info(String.format("Done with %s, deleted %d paths", pathPattern, totalDeleted));
         return totalDeleted;
     }
 
     /**
-     * Issue async delete calls and wait for all async ops to finish. If running
-     * in dry run mode, fake the deletes
+     * Delete all the candidates under a directory as a single batch. The
+     * candidates are streamed into a <code>CandidateBuffer</code> rather than
+     * collected in a <code>FSFindResult</code>, so the memory held doesn't
+     * grow with their number. The batch is checkpointed once all of its
+     * deletes finished.
      *
-     * @param result the result of a <code>FSFind#find</code> operation
+     * @return count of deleted paths under the directory
      */
-    protected void doDeletes(FSFindResult result) {
+    private int deleteUnbatched(PatternRun pattern, Path dir, FileSystem fs, FSFind fsFind,
+                                long purgeTime, FileStatusFilter searchFilter)
+            throws IOException {
+        FSFindIterator iterator = fsFind.streamMatching(FSFindQuery.make(dir)
+                .withPartitions(pattern.partitions), purgeTime, searchFilter);
+        CandidateBuffer candidates = new CandidateBuffer(spillDir, SPILL_WINDOW);
+        try {
+            while (iterator.hasNext()) {
+                candidates.add(iterator.next());
+            }
+            if (candidates.runs() > 0) {
+                LOG.info(String.format("Spilled the candidates under %s to %d run(s) in %s",
+                        dir, candidates.runs(), spillDir));
+            }
+            CountDownLatch latch = new CountDownLatch(Ints.checkedCast(candidates.size()));
+            RemoteIterator<Path> paths = candidates.iterator();
+            while (paths.hasNext()) {
+                submitDelete(fs, paths.next(), latch, purgeTime);
+            }
+            awaitDeletes(latch);
+        } finally {
+            candidates.close();
+        }
+        int deleted = (int) candidates.size();
+        if (deleted > 0) {
+            pattern.reclaimed.add(iterator.reclaimable());
+            LOG.info(String.format("Deleted %d path(s) under %s", deleted, dir));
+        }
+        if (journal != null) {
+            journal.record(pattern.policy.name, pattern.pathPattern, dir, FSFindCursor.EXHAUSTED,
+                    deleted);
+        }
+        return deleted;
+    }
+
+    /* searches aren't shared between threads, FSImageFind keeps the state of the last one */
+    private FSFind searcher(FileSystem fs) {
+        if (image != null) {
+            return new FSImageFind(Boolean.TRUE, fs, image);
+        }
+        FSFindImpl fsFind = new FSFindImpl(Boolean.TRUE, fs, listingIndex);
+        fsFind.useMetrics(metrics);
+        return fsFind;
+    }
+
+    /**
+     * Hand the candidates off to the delete workers without waiting for the
+     * deletes to finish. The hand-off queue is bounded, once it is full this
+     * blocks until the workers catch up. If running in dry run mode, fake the
+     * deletes. When searching a namespace dump, each candidate is checked to
+     * still be older than the purge time right before it gets deleted.
+     *
+     * @param fs        the filesystem to delete from
+     * @param result    the result of a <code>FSFind#find</code> operation
+     * @param purgeTime the purge time the candidates were searched with
+     * @return latch counted down as the deletes finish
+     */
+    protected CountDownLatch doDeletes(FileSystem fs, FSFindResult result, long purgeTime) {
         final CountDownLatch latch = new CountDownLatch(result.size());
         for (Path candidate : result.candidates()) {
-            LOG.info("Deleting " + candidate);
-            if (!dryRun) {
-                deleteWorkers.submit(new DeleteCallable(fs, candidate, latch));
-            } else {
-                latch.countDown(); // fake the delete completion if dryrun.
-            }
+            submitDelete(fs, candidate, latch, purgeTime);
+        }
+        return latch;
+    }
+
+    private void submitDelete(FileSystem fs, Path candidate, CountDownLatch latch,
+                              long purgeTime) {
+        submitDelete(fs, candidate, latch, purgeTime, quarantine);
+    }
+
+    private void submitDelete(FileSystem fs, Path candidate, CountDownLatch latch,
+                              long purgeTime, Quarantine quarantine) {
+        LOG.info((quarantine == null ? "Deleting " : "Quarantining ") + candidate);
+        if (!dryRun) {
+            deleteWorkers.submit(new DeleteCallable(fs, candidate, latch,
+                    recheckBeforeDelete ? purgeTime : DeleteCallable.NO_RECHECK, deleteLimiter,
+                    quarantine, metrics));
+        } else {
+            latch.countDown(); // fake the delete completion if dryrun.
         }
+    }
+
+    private static void awaitDeletes(CountDownLatch latch) {
         try {
             latch.await();
         } catch (InterruptedException e) {
@@ -199,13 +836,62 @@ public class DataRetention extends Command {
         }
     }
 
+    /**
+     * Wait for the deletes of a batch to finish, then count it and record its
+     * checkpoint. Batches are finished in the order they were searched in, so
+     * a checkpoint never runs ahead of a delete.
+     *
+     * @return count of paths the batch deleted
+     */
+    private int finishBatch(String policyName, String pathPattern, Path dir, PendingBatch batch,
+                            ReclaimableSpace patternReclaimed) throws IOException {
+        FSFindResult result = batch.result;
+        awaitDeletes(batch.deletes);
+        if (result.size() > 0) {
+            patternReclaimed.add(result.reclaimable());
+            LOG.info(String.format("Deleted %d path(s) under %s", result.size(), dir));
+        }
+        if (journal != null) {
+            journal.record(policyName, pathPattern, dir, result.cursor(), result.size());
+        }
+        return result.size();
+    }
+
+    /**
+     * Fake the deletes of all the candidates under given directory, used
+     * during dry run
+     *
+     * @param fsFind      the search to use
+     * @param query       the search of the directory
+     * @param purgeTime   only paths strictly older than this time are candidates
+     * @param filter      the paths which can be deleted
+     * @param reclaimable the account to add the space of the candidates to
+     * @return count of candidates found under the directory
+     */
+    protected int doDryRun(FSFind fsFind, FSFindQuery query, long purgeTime,
+                           FileStatusFilter filter, ReclaimableSpace reclaimable)
+            throws IOException {
+        Path dir = query.searchPath();
+        int candidates = 0;
+        FSFindIterator iterator = fsFind.streamMatching(query, purgeTime, filter);
+        while (iterator.hasNext()) {
+            LOG.info("Deleting " + iterator.next());
+            candidates++;
+        }
+        LOG.info(String.format("Deleted %d path(s) under %s", candidates, dir));
+        reclaimable.add(iterator.reclaimable());
+        return candidates;
+    }
+
     /**
      * Expand a glob patten and find the matching directories
      *
+     * @param fs          the filesystem to expand the pattern with
      * @param pathPattern the glob pattern
      * @return list of directories that matched the given glob pattern `
      */
-    protected List<Path> matchingDirectories(String pathPattern) throws IOException {
+    protected List<Path> matchingDirectories(FileSystem fs, String pathPattern)
+            throws IOException {
         GlobPattern globPattern = new GlobPattern(pathPattern);
         List<Path> dirs = Lists.newArrayList();
         Path input = new Path(pathPattern);
@@ -231,6 +917,95 @@ public class DataRetention extends Command {
         return dirs;
     }
 
+    /* purge or restore a quarantine instead of applying retention */
+    private int manageQuarantine(CommandLine cl) throws IOException {
+        try {
+            if (cl.hasOption(RESTORE)) {
+                Path runDir = new Path(cl.getOptionValue(RESTORE));
+                LOG.info(String.format("Restored %d paths from %s", restoreQuarantine(runDir),
+                        runDir));
+            } else {
+                dryRun = !cl.hasOption(DELETE);
+                int graceDays = cl.hasOption(GRACE_DAYS)
+                        ? Integer.parseInt(cl.getOptionValue(GRACE_DAYS)) : DEFAULT_GRACE_DAYS;
+                Path root = new Path(cl.getOptionValue(PURGE_QUARANTINE));
+                LOG.info(String.format("%s %d runs from %s", dryRun ? "Would have purged"
+                        : "Purged", purgeQuarantine(root, graceDays), root));
+            }
+        } finally {
+            deleteWorkers.shutdown();
+            fs.close();
+        }
+        return SUCCESS;
+    }
+
+    /**
+     * Delete the directories of the runs in given quarantine directory which
+     * are older than given number of days. The directory of a run is broken
+     * down into enough subtrees to keep the delete workers busy, the subtrees
+     * are deleted with one recursive delete each. A purge that didn't complete
+     * is resumed by purging again.
+     *
+     * @param root      the quarantine directory
+     * @param graceDays number of days a run stays in quarantine
+     * @return number of runs purged, or that would have been during dry run
+     */
+    int purgeQuarantine(Path root, int graceDays) throws IOException {
+        List<Path> expired = Quarantine.expired(fs, root, purgeTime(graceDays));
+        for (Path runDir : expired) {
+            List<Path> subtrees = subtrees(runDir, deleteLimiter.limit());
+            LOG.info(String.format("Purging %s in %d deletes", runDir, subtrees.size()));
+            CountDownLatch latch = new CountDownLatch(subtrees.size());
+            for (Path subtree : subtrees) {
+                // deleted for good, even by a run which quarantines its candidates
+                submitDelete(fs, subtree, latch, DeleteCallable.NO_RECHECK, null);
+            }
+            awaitDeletes(latch);
+            // the directories left above the subtrees
+            if (!dryRun && !fs.delete(runDir, true)) {
+                LOG.warn("Couldn't delete " + runDir);
+            }
+        }
+        return expired.size();
+    }
+
+    /* the children of given directory, directories expanded level by level to at least n paths */
+    private List<Path> subtrees(Path dir, int n) throws IOException {
+        List<FileStatus> subtrees = Lists.newArrayList(fs.listStatus(dir));
+        boolean expanded = true;
+        while (subtrees.size() < n && expanded) {
+            expanded = false;
+            List<FileStatus> next = Lists.newArrayList();
+            for (FileStatus subtree : subtrees) {
+                if (subtree.isDirectory()) {
+                    FileStatus[] children = fs.listStatus(subtree.getPath());
+                    if (children.length > 0) {
+                        next.addAll(Arrays.asList(children));
+                        expanded = true;
+                        continue;
+                    }
+                }
+                next.add(subtree);
+            }
+            subtrees = next;
+        }
+        List<Path> paths = Lists.newArrayList();
+        for (FileStatus subtree : subtrees) {
+            paths.add(subtree.getPath());
+        }
+        return paths;
+    }
+
+    /**
+     * Move what a quarantine run holds back to where it came from
+     *
+     * @param runDir the directory of the run
+     * @return number of paths moved back
+     */
+    int restoreQuarantine(Path runDir) throws IOException {
+        return Quarantine.restore(fs, runDir);
+    }
+
     /**
      * Calculate purge time as difference of current time and provided number of
      * days
@@ -265,6 +1040,11 @@ public class DataRetention extends Command {
             System.err.println("HDFS path is given but num_days is missing, exiting.");
             return false;
         }
+        if (cl.hasOption(FSIMAGE) && cl.hasOption(LISTING_INDEX)) {
+            System.err.println(String.format("Please provide either %s or %s, a namespace " +
+                    "dump isn't listed so there is nothing to index.", FSIMAGE, LISTING_INDEX));
+            return false;
+        }
         return true;
     }
 
@@ -278,13 +1058,11 @@ public class DataRetention extends Command {
                 LOG.error("Configuration doesn't contain policy " + name);
                 return FAILURE;
             } else {
-                totalDeleted += applyPolicy(policyMap.get(name));
+                totalDeleted += applyPolicy(name, policyMap.get(name));
             }
         } else {
-            for (String name : policyMap.keySet()) {
-                LOG.info("Applying data retention on " + name);
-                totalDeleted += applyPolicy(policyMap.get(name));
-            }
+            LOG.info("Applying data retention on " + policyMap.keySet());
+            totalDeleted += applyPolicies(policyMap);
         }
         return totalDeleted;
     }
@@ -294,8 +1072,236 @@ public class DataRetention extends Command {
                 cl.getOptionValue(HDFS_PATH), Integer.parseInt(cl.getOptionValue(NUM_DAYS)), 5000)).create());
     }
 
+    /**
+     * @return the space reclaimed by the policies applied so far, or that
+     * would have been during dry run
+     */
+    ReclaimableSpace reclaimed() {
+        return reclaimed;
+    }
+
     // turn off dry run for testing
     void toggleDryRun(boolean value) {
         this.dryRun = value;
     }
+
+    /**
+     * Search given namespace dump instead of the file system
+     *
+     * @param image output of the offline image viewer's delimited processor
+     */
+    void useImage(File image) {
+        this.image = image;
+        recheckBeforeDelete = true;
+    }
+
+    /**
+     * Only delete what given filter accepts, directories it rejects are
+     * skipped with everything under them
+     *
+     * @param filter applied to every path of every policy
+     */
+    void useFilter(FileStatusFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Pick the candidates of each batch in given order
+     *
+     * @param order the order, applied to every path of every policy but the
+     *              ones of a capacity mapping, whose batches are picked oldest
+     *              first
+     */
+    void useOrder(FSFindOrder order) {
+        this.order = order;
+    }
+
+    /**
+     * Cap the calls per second made of the filesystem, by all the policies
+     * together
+     *
+     * @param readsPerSecond  cap of the reads, 0 for no limit
+     * @param writesPerSecond cap of the writes, 0 for no limit
+     */
+    void useRates(double readsPerSecond, double writesPerSecond) {
+        fs.setRates(readsPerSecond, writesPerSecond);
+        LOG.info("Calling " + fs);
+    }
+
+    /**
+     * Process this many directories at the same time
+     *
+     * @param concurrency the number of directories, 1 to process them one
+     *                    after another
+     */
+    void useConcurrency(int concurrency) {
+        Preconditions.checkArgument(concurrency > 0, "concurrency has to be positive");
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Adapt the number of deletes in flight within given bounds, starting
+     * from the default number if it is within them
+     *
+     * @param min the least deletes in flight
+     * @param max the most deletes in flight
+     */
+    void useDeleteConcurrency(int min, int max) {
+        deleteLimiter = new DeleteLimiter(min, max, INITIAL_DELETES);
+        deleteWorkers.shutdown();
+        deleteWorkers = deleteWorkers(max);
+        LOG.info("Deleting with " + deleteLimiter);
+    }
+
+    /**
+     * Serve the listings of directories which haven't changed from given index
+     *
+     * @param index listings of the last run, replaced with the ones of this
+     *              run only if it completes
+     */
+    void useListingIndex(ListingIndex index) {
+        listingIndex = index;
+        recheckBeforeDelete = true;
+    }
+
+    /**
+     * Move the candidates into a directory of this run under given quarantine
+     * directory instead of deleting them
+     *
+     * @param root the quarantine directory, on the same filesystem
+     */
+    void useQuarantine(Path root) {
+        quarantine = new Quarantine(fs, root, System.currentTimeMillis());
+        LOG.info("Quarantining into " + quarantine.runDir());
+    }
+
+    // checkpoint into given journal, for testing
+    void setJournal(CheckpointJournal journal) {
+        this.journal = journal;
+    }
+
+    /* enough workers for the most deletes the limiter may allow in flight */
+    private static ThreadPoolExecutor deleteWorkers(int size) {
+        return new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(DELETE_QUEUE_SIZE), WAIT_FOR_ROOM);
+    }
+
+    /**
+     * A policy being applied. Its calls go through caps of its own, on top of
+     * the caps of the run, if it has any.
+     */
+    private final class PolicyRun {
+        private final String name;
+        private final DataRetentionPolicy policy;
+        private final FileSystem fs;
+        private final List<PatternRun> patterns = Lists.newArrayList();
+        private final ReclaimableSpace reclaimed = new ReclaimableSpace();
+        private int remaining;
+
+        private PolicyRun(String name, DataRetentionPolicy policy) {
+            this.name = name;
+            this.policy = policy;
+            this.fs = policy.getReadsPerSecond() > 0 || policy.getWritesPerSecond() > 0
+                    ? new RateLimitedFileSystem(DataRetention.this.fs,
+                    policy.getReadsPerSecond(), policy.getWritesPerSecond())
+                    : DataRetention.this.fs;
+            List<PartitionPattern> partitions = PartitionPattern.compile(
+                    policy.getPartitionPatterns());
+            for (String pathPattern : policy.getPathMapping().keySet()) {
+                patterns.add(new PatternRun(this, pathPattern, partitions));
+            }
+            for (String pathPattern : policy.getCapacityMapping().keySet()) {
+                patterns.add(new PatternRun(this, pathPattern, partitions));
+            }
+            remaining = patterns.size();
+        }
+
+        private synchronized void done(PatternRun pattern) {
+            reclaimed.add(pattern.reclaimed);
+            if (--remaining > 0) {
+                return;
+            }
+            if (name != null) {
+                LOG.info(String.format("Done with policy %s, %s %s", name,
+                        dryRun ? "would have reclaimed" : "reclaimed", reclaimed));
+            }
+            DataRetention.this.reclaimed.add(reclaimed);
+        }
+    }
+
+    /**
+     * A path pattern of a policy being applied, summed up once all the
+     * directories it matched are done.
+     */
+    private final class PatternRun {
+        private final PolicyRun policy;
+        private final String pathPattern;
+        private final List<PartitionPattern> partitions;
+        private final ReclaimableSpace reclaimed = new ReclaimableSpace();
+        private int remaining;
+        private int deleted = 0;
+
+        private PatternRun(PolicyRun policy, String pathPattern,
+                           List<PartitionPattern> partitions) {
+            this.policy = policy;
+            this.pathPattern = pathPattern;
+            this.partitions = partitions;
+        }
+
+        private synchronized void expect(int directories) {
+            remaining = directories;
+            if (directories == 0) {
+                done();
+            }
+        }
+
+        private synchronized void done(int deleted) {
+            this.deleted += deleted;
+            if (--remaining == 0) {
+                done();
+            }
+        }
+
+        private void done() {
+            LOG.info(String.format("Done with %s, deleted %d paths, %s %s", pathPattern, deleted,
+                    dryRun ? "would have reclaimed" : "reclaimed", reclaimed));
+            policy.done(this);
+        }
+    }
+
+    /**
+     * A directory a path pattern matched, the unit of work shared among the
+     * threads.
+     */
+    private final class DirectoryRun implements Callable<Integer> {
+        private final PatternRun pattern;
+        private final Path dir;
+        private final FileStatusFilter filter;
+
+        private DirectoryRun(PatternRun pattern, Path dir, FileStatusFilter filter) {
+            this.pattern = pattern;
+            this.dir = dir;
+            this.filter = filter;
+        }
+
+        @Override
+        public Integer call() throws IOException {
+            int deleted = processDirectory(pattern, dir, filter);
+            pattern.done(deleted);
+            return deleted;
+        }
+    }
+
+    /**
+     * A batch whose deletes were handed off but may not have finished yet.
+     */
+    private static final class PendingBatch {
+        private final FSFindResult result;
+        private final CountDownLatch deletes;
+
+        private PendingBatch(FSFindResult result, CountDownLatch deletes) {
+            this.result = result;
+            this.deletes = deletes;
+        }
+    }
 }
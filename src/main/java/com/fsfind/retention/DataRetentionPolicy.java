@@ -1,32 +1,108 @@
 package com.fsfind.retention;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
+import com.fsfind.PartitionPattern;
+
+import org.apache.hadoop.util.StringUtils;
 import org.codehaus.jackson.annotate.JsonProperty;
 
 import java.io.Serializable;
+import java.util.List;
 import java.util.Map;
 
 /**
  * <code>DataRetentionPolicy</code> represents a retention policy in JSON
  * format. Policy contains paths & their corresponding retention time periods &
- * attributes like batch delete size etc.
+ * attributes like batch delete size etc. A policy may also list partition
+ * patterns (see <code>PartitionPattern</code>), directories matching them are
+ * judged by the time in their names instead of being listed.
+ * <p/>
+ * Instead of a retention period, a path may have a budget in its capacity
+ * mapping, such as <code>"5t"</code> or <code>"500g"</code>: the least
+ * recently modified files under it are deleted until it takes up no more than
+ * that (see <code>CapacityPlan</code>). A path can't have both.
+ * <p/>
+ * A policy may cap the <code>FileSystem</code> calls per second it makes,
+ * reads and writes separately (see <code>RateLimitedFileSystem</code>), on
+ * top of the caps of the run. A cap of 0 leaves the calls to the caps of the
+ * run.
  */
 public class DataRetentionPolicy implements Serializable {
     private int batchSize;
     private Map<String, Integer> pathMapping;
+    private List<String> partitionPatterns;
+    private Map<String, String> capacityMapping;
+    private double readsPerSecond;
+    private double writesPerSecond;
 
     /**
      * @param batch       the batch delete size
      * @param pathMapping paths and their retention periods
      */
+    public DataRetentionPolicy(int batch, Map<String, Integer> pathMapping) {
+        this(batch, pathMapping, null);
+    }
+
+    /**
+     * @param batch             the batch delete size
+     * @param pathMapping       paths and their retention periods
+     * @param partitionPatterns patterns of the time partitioned directories
+     *                          under those paths, may be null
+     */
+    public DataRetentionPolicy(int batch, Map<String, Integer> pathMapping,
+                               List<String> partitionPatterns) {
+        this(batch, pathMapping, partitionPatterns, null);
+    }
+
+    /**
+     * @param batch             the batch delete size
+     * @param pathMapping       paths and their retention periods, may be null
+     *                          if there is a capacity mapping
+     * @param partitionPatterns patterns of the time partitioned directories
+     *                          under those paths, may be null
+     * @param capacityMapping   paths and their budgets, may be null
+     */
+    public DataRetentionPolicy(int batch, Map<String, Integer> pathMapping,
+                               List<String> partitionPatterns,
+                               Map<String, String> capacityMapping) {
+        this(batch, pathMapping, partitionPatterns, capacityMapping, 0, 0);
+    }
+
+    /**
+     * @param batch             the batch delete size
+     * @param pathMapping       paths and their retention periods, may be null
+     *                          if there is a capacity mapping
+     * @param partitionPatterns patterns of the time partitioned directories
+     *                          under those paths, may be null
+     * @param capacityMapping   paths and their budgets, may be null
+     * @param readsPerSecond    cap of the reads, 0 for only the cap of the run
+     * @param writesPerSecond   cap of the writes, 0 for only the cap of the run
+     */
     public DataRetentionPolicy(
             @JsonProperty("batchSize")
             int batch,
             @JsonProperty("pathMapping")
-            Map<String, Integer> pathMapping) {
+            Map<String, Integer> pathMapping,
+            @JsonProperty("partitionPatterns")
+            List<String> partitionPatterns,
+            @JsonProperty("capacityMapping")
+            Map<String, String> capacityMapping,
+            @JsonProperty("readsPerSecond")
+            double readsPerSecond,
+            @JsonProperty("writesPerSecond")
+            double writesPerSecond) {
         this.batchSize = batch;
-        this.pathMapping = pathMapping;
+        this.pathMapping = pathMapping == null ? ImmutableMap.<String, Integer>of()
+                : pathMapping;
+        this.partitionPatterns = partitionPatterns == null ? ImmutableList.<String>of()
+                : ImmutableList.copyOf(partitionPatterns);
+        this.capacityMapping = capacityMapping == null ? ImmutableMap.<String, String>of()
+                : capacityMapping;
+        this.readsPerSecond = readsPerSecond;
+        this.writesPerSecond = writesPerSecond;
     }
 
     /**
@@ -43,6 +119,48 @@ public class DataRetentionPolicy implements Serializable {
         return pathMapping;
     }
 
+    /**
+     * @return patterns of the time partitioned directories, empty if there
+     * are none
+     */
+    public List<String> getPartitionPatterns() {
+        return partitionPatterns;
+    }
+
+    /**
+     * @return mapping of paths & their budgets, empty if there are none
+     */
+    public Map<String, String> getCapacityMapping() {
+        return capacityMapping;
+    }
+
+    /**
+     * @return cap of the reads per second, 0 for only the cap of the run
+     */
+    public double getReadsPerSecond() {
+        return readsPerSecond;
+    }
+
+    /**
+     * @return cap of the writes per second, 0 for only the cap of the run
+     */
+    public double getWritesPerSecond() {
+        return writesPerSecond;
+    }
+
+    /**
+     * @return the budget of given path of the capacity mapping in bytes
+     */
+    public long getCapacity(String path) {
+        String capacity = capacityMapping.get(path);
+        Preconditions.checkArgument(capacity != null, "No capacity for %s", path);
+        try {
+            return StringUtils.TraditionalBinaryPrefix.string2long(capacity.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid capacity " + capacity + " of " + path, e);
+        }
+    }
+
     /**
      * Validate the policy, throw a RuntimeException if its not valid.
      *
@@ -50,7 +168,16 @@ public class DataRetentionPolicy implements Serializable {
      */
     public boolean validate() {
         Preconditions.checkState(batchSize >= 0, "batchSize can't be negative");
-        Preconditions.checkState(!pathMapping.isEmpty(), "no path mapping found");
+        Preconditions.checkState(!pathMapping.isEmpty() || !capacityMapping.isEmpty(),
+                "no path mapping found");
+        Preconditions.checkState(readsPerSecond >= 0, "readsPerSecond can't be negative");
+        Preconditions.checkState(writesPerSecond >= 0, "writesPerSecond can't be negative");
+        PartitionPattern.compile(partitionPatterns);
+        for (String path : capacityMapping.keySet()) {
+            Preconditions.checkState(!pathMapping.containsKey(path),
+                    "%s has both a retention period and a capacity", path);
+            Preconditions.checkState(getCapacity(path) >= 0, "Negative capacity of %s", path);
+        }
         return true;
     }
 
@@ -79,6 +206,18 @@ public class DataRetentionPolicy implements Serializable {
         if (!pathMapping.equals(that.pathMapping)) {
             return false;
         }
+        if (!partitionPatterns.equals(that.partitionPatterns)) {
+            return false;
+        }
+        if (!capacityMapping.equals(that.capacityMapping)) {
+            return false;
+        }
+        if (Double.compare(readsPerSecond, that.readsPerSecond) != 0) {
+            return false;
+        }
+        if (Double.compare(writesPerSecond, that.writesPerSecond) != 0) {
+            return false;
+        }
 
         return true;
     }
@@ -87,6 +226,12 @@ public class DataRetentionPolicy implements Serializable {
     public int hashCode() {
         int result = batchSize;
         result = 31 * result + pathMapping.hashCode();
+        result = 31 * result + partitionPatterns.hashCode();
+        result = 31 * result + capacityMapping.hashCode();
+        long bits = Double.doubleToLongBits(readsPerSecond);
+        result = 31 * result + (int) (bits ^ (bits >>> 32));
+        bits = Double.doubleToLongBits(writesPerSecond);
+        result = 31 * result + (int) (bits ^ (bits >>> 32));
         return result;
     }
 }
@@ -1,36 +1,117 @@
 package com.fsfind.retention;
 
+import com.fsfind.FSFindMetrics;
+import com.fsfind.FSFindMetrics.Counter;
+
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
 
+import java.io.FileNotFoundException;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 
 /**
  * A <code>Callable</code> to perform delete operation on given path.
+ * Optionally the modification time of the path is checked again right before
+ * deleting it, for candidates which were found in a snapshot of the namespace
+ * that may be stale by now. Optionally the path is moved into a quarantine
+ * instead of being deleted, and the outcome is counted in metrics.
  */
 public class DeleteCallable implements Callable<Boolean> {
 
-    private FileSystem fs;
-    private Path path;
-    private CountDownLatch latch;
+    /**
+     * Purge time meaning the modification time isn't checked again.
+     */
+    public static final long NO_RECHECK = Long.MAX_VALUE;
+    private static final Logger LOG = Logger.getLogger(DeleteCallable.class);
+    private final FileSystem fs;
+    private final Path path;
+    private final CountDownLatch latch;
+    private final long purgeTime;
+    private final DeleteLimiter limiter;
+    private final Quarantine quarantine;
+    private final FSFindMetrics metrics;
 
     /**
-     * @param fs    a filesystem instance
-     * @param path  a path to delete
-     * @param latch countdown latch
+     * @param fs         a filesystem instance
+     * @param path       a path to delete
+     * @param latch      counted down once the delete is done, whatever its
+     *                   outcome
+     * @param purgeTime  the path is only deleted if it is still strictly older
+     *                   than this time, NO_RECHECK to delete it right away
+     * @param limiter    limits the deletes in flight and is told how long this
+     *                   one took, null for no limit
+     * @param quarantine the path is moved into it instead of being deleted,
+     *                   null to delete it
+     * @param metrics    counts the delete as succeeded, skipped or failed, null
+     *                   to count nothing
      */
-    public DeleteCallable(FileSystem fs, Path path, CountDownLatch latch) {
+    public DeleteCallable(FileSystem fs, Path path, CountDownLatch latch, long purgeTime,
+                          DeleteLimiter limiter, Quarantine quarantine, FSFindMetrics metrics) {
         this.fs = fs;
         this.path = path;
         this.latch = latch;
+        this.purgeTime = purgeTime;
+        this.limiter = limiter;
+        this.quarantine = quarantine;
+        this.metrics = metrics;
     }
 
     public Boolean call() throws Exception {
         try {
-            return fs.delete(path, true);
+            boolean deleted = limiter == null ? delete() : limitedDelete();
+            count(deleted ? Counter.DELETES_SUCCEEDED : Counter.DELETES_SKIPPED);
+            return deleted;
+        } catch (Exception e) {
+            count(Counter.DELETES_FAILED);
+            throw e;
         } finally {
             latch.countDown();
         }
     }
+
+    private boolean limitedDelete() throws Exception {
+        limiter.acquire();
+        long start = System.nanoTime();
+        boolean overloaded = false;
+        try {
+            return delete();
+        } catch (Exception e) {
+            overloaded = DeleteLimiter.isOverload(e);
+            throw e;
+        } finally {
+            limiter.release(System.nanoTime() - start, overloaded);
+        }
+    }
+
+    private void count(Counter counter) {
+        if (metrics != null) {
+            metrics.increment(counter, 1);
+        }
+    }
+
+    private boolean delete() throws Exception {
+        if (purgeTime != NO_RECHECK && !isStillOld()) {
+            return false;
+        }
+        return quarantine == null ? fs.delete(path, true) : quarantine.move(fs, path);
+    }
+
+    private boolean isStillOld() throws Exception {
+        FileStatus status;
+        try {
+            status = fs.getFileStatus(path);
+        } catch (FileNotFoundException e) {
+            LOG.info(path + " is already gone");
+            return false;
+        }
+        if (status.getModificationTime() >= purgeTime) {
+            LOG.info(String.format("Not deleting %s, it was modified at %d which isn't older " +
+                    "than %d anymore", path, status.getModificationTime(), purgeTime));
+            return false;
+        }
+        return true;
+    }
 }
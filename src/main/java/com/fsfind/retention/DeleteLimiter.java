@@ -0,0 +1,171 @@
+package com.fsfind.retention;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.RetriableException;
+import org.apache.hadoop.ipc.StandbyException;
+import org.apache.log4j.Logger;
+
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how many deletes are in flight at once and adapts the limit to how
+ * the NameNode copes, additive increase / multiplicative decrease style. The
+ * latency of the deletes is looked at in windows of a fixed number of
+ * deletes. The limit goes up by one after a window without overload whose
+ * median latency stayed within <code>TOLERANCE</code> times the baseline,
+ * and is halved after any other window. The limit stays within given bounds,
+ * the concurrency and latency percentiles of every window are logged so the
+ * bounds can be tuned.
+ * <p/>
+ * The baseline follows the medians: it drops right away to a faster median
+ * and moves a quarter of the way up to a slower one, so a slow cluster, or
+ * deletes of whole directories following deletes of single files, aren't
+ * mistaken for overload for the rest of the run. Only the failures which
+ * tell that the NameNode is overloaded count, see {@link
+ * #isOverload(Throwable)}: a path that can't be deleted, e.g. for lack of
+ * permission, says nothing about load.
+ */
+public class DeleteLimiter {
+
+    /**
+     * How many times slower than the best median a window may be before the
+     * limit backs off.
+     */
+    public static final int TOLERANCE = 2;
+    private static final Logger LOG = Logger.getLogger(DeleteLimiter.class);
+    private static final int DEFAULT_WINDOW = 50;
+    /* a slower median moves the baseline up by this fraction of the difference */
+    private static final int BASELINE_RISE = 4;
+    private static final Set<String> OVERLOAD_EXCEPTIONS = ImmutableSet.of(
+            RetriableException.class.getName(), StandbyException.class.getName());
+
+    private final int min;
+    private final int max;
+    private final long[] window;
+    private int samples = 0;
+    private int overloads = 0;
+    private int limit;
+    private int inFlight = 0;
+    private long baseline = Long.MAX_VALUE;
+
+    /**
+     * @param min     the least deletes allowed in flight
+     * @param max     the most deletes allowed in flight
+     * @param initial the deletes allowed in flight to begin with
+     */
+    public DeleteLimiter(int min, int max, int initial) {
+        this(min, max, initial, DEFAULT_WINDOW);
+    }
+
+    DeleteLimiter(int min, int max, int initial, int window) {
+        Preconditions.checkArgument(min > 0, "min has to be positive");
+        Preconditions.checkArgument(max >= min, "max can't be less than min");
+        Preconditions.checkArgument(window > 0, "window has to be positive");
+        this.min = min;
+        this.max = max;
+        this.limit = Math.max(min, Math.min(max, initial));
+        this.window = new long[window];
+    }
+
+    /**
+     * Wait till another delete is allowed in flight.
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    /**
+     * Done with a delete.
+     *
+     * @param latencyNanos how long the delete took
+     * @param overloaded   true if the delete threw because of overload
+     */
+    public synchronized void release(long latencyNanos, boolean overloaded) {
+        inFlight--;
+        record(latencyNanos, overloaded);
+        notifyAll();
+    }
+
+    /**
+     * @param e what a delete threw
+     * @return true if it tells that the NameNode is overloaded: a timeout, or
+     * a <code>RetriableException</code> or <code>StandbyException</code>,
+     * remote or not
+     */
+    public static boolean isOverload(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException || cause instanceof RetriableException
+                    || cause instanceof StandbyException || (cause instanceof RemoteException
+                    && OVERLOAD_EXCEPTIONS.contains(((RemoteException) cause).getClassName()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the deletes in flight right now
+     */
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the deletes allowed in flight right now
+     */
+    public synchronized int limit() {
+        return limit;
+    }
+
+    synchronized void record(long latencyNanos, boolean overloaded) {
+        window[samples++] = latencyNanos;
+        if (overloaded) {
+            overloads++;
+        }
+        if (samples < window.length) {
+            return;
+        }
+        Arrays.sort(window);
+        long median = percentile(50);
+        int previous = limit;
+        if (overloads == 0 && (baseline == Long.MAX_VALUE || median <= baseline * TOLERANCE)) {
+            limit = Math.min(max, limit + 1);
+        } else {
+            limit = Math.max(min, limit / 2);
+        }
+        baseline = median <= baseline ? median : baseline + (median - baseline) / BASELINE_RISE;
+        LOG.info(String.format("Delete concurrency %d -> %d, latency p50=%d ms p90=%d ms " +
+                "p99=%d ms over %d deletes, %d overloaded", previous, limit, millis(median),
+                millis(percentile(90)), millis(percentile(99)), samples, overloads));
+        samples = 0;
+        overloads = 0;
+    }
+
+    /* of the sorted window */
+    private long percentile(int percentile) {
+        return window[Math.min(window.length - 1, window.length * percentile / 100)];
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DeleteLimiter{" +
+                "min=" + min +
+                ", max=" + max +
+                ", limit=" + limit +
+                ", baselineMillis=" + (baseline == Long.MAX_VALUE ? "none" : millis(baseline)) +
+                '}';
+    }
+}
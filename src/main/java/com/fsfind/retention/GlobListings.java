@@ -0,0 +1,85 @@
+package com.fsfind.retention;
+
+import com.google.common.collect.Maps;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FilterFileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The listings and statuses fetched while expanding the glob patterns of a
+ * run, shared among all the patterns. Overlapping patterns such as
+ * <code>/data/*</code> and <code>/data/logs/*</code> go through the same
+ * parent directories, each of which is listed once for all of them, even
+ * when the patterns are expanded concurrently. A call is made with the
+ * filesystem of the pattern which needed it first, so it counts against the
+ * calls per second cap of that pattern's policy.
+ * <p/>
+ * The listings are a snapshot taken for the expansion, they aren't meant to
+ * be used for anything else.
+ */
+final class GlobListings {
+
+    private final ConcurrentMap<Path, Future<FileStatus[]>> listings = Maps.newConcurrentMap();
+    private final ConcurrentMap<Path, Future<FileStatus>> statuses = Maps.newConcurrentMap();
+
+    /**
+     * @param fs the filesystem of a pattern
+     * @return a filesystem to expand the pattern with, whose listings and
+     * statuses are shared
+     */
+    FileSystem through(final FileSystem fs) {
+        return new FilterFileSystem(fs) {
+            @Override
+            public FileStatus[] listStatus(final Path path) throws IOException {
+                return shared(listings, path, new Callable<FileStatus[]>() {
+                    @Override
+                    public FileStatus[] call() throws IOException {
+                        return fs.listStatus(path);
+                    }
+                });
+            }
+
+            @Override
+            public FileStatus getFileStatus(final Path path) throws IOException {
+                return shared(statuses, path, new Callable<FileStatus>() {
+                    @Override
+                    public FileStatus call() throws IOException {
+                        return fs.getFileStatus(path);
+                    }
+                });
+            }
+        };
+    }
+
+    /* the outcome of the first call for the path, a path which doesn't exist included */
+    private static <T> T shared(ConcurrentMap<Path, Future<T>> outcomes, Path path,
+                                Callable<T> call) throws IOException {
+        FutureTask<T> task = new FutureTask<T>(call);
+        Future<T> outcome = outcomes.putIfAbsent(path, task);
+        if (outcome == null) {
+            task.run();
+            outcome = task;
+        }
+        try {
+            return outcome.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + path);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.fsfind.retention;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.fsfind.FileStatusFilter;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.GlobPattern;
+import org.apache.hadoop.fs.Path;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The path patterns of all the policies of a run compiled into a single trie,
+ * one level per path component. Literal components are looked up, only the
+ * components with wildcards are matched, so matching a path against all the
+ * patterns costs a walk down the trie rather than a match per pattern.
+ * <p/>
+ * A directory matched by a pattern is governed by it. If several patterns
+ * match the same directory, the most specific one governs it: the one with
+ * the most literal components, then the one with the most literal
+ * characters. A tie between different patterns goes to the one first in
+ * name order, whatever order the patterns were given in, the same pattern
+ * given twice to the first one given. A directory matched by one pattern and
+ * also found under a directory matched by another pattern is governed by the
+ * one that matched it, which is the more specific match. Searches are kept
+ * out of the directories they don't govern with {@link #unclaimedUnder(Path)},
+ * so no directory is searched by more than one pattern.
+ */
+public final class PathPatternTrie {
+
+    private final List<String> patterns;
+    private final Node root = new Node(null);
+
+    /**
+     * @param patterns the path patterns, identified by their index from here
+     *                 on. The same pattern may be given more than once
+     */
+    public PathPatternTrie(List<String> patterns) {
+        this.patterns = ImmutableList.copyOf(patterns);
+        for (int i = 0; i < this.patterns.size(); i++) {
+            Node node = root;
+            for (String component : components(new Path(this.patterns.get(i)))) {
+                node = node.child(component);
+            }
+            node.patterns.add(i);
+        }
+    }
+
+    /**
+     * @return indexes of the patterns which match given path, in the order
+     * they were given
+     */
+    public List<Integer> matches(Path path) {
+        List<Node> nodes = Lists.newArrayList(root);
+        for (String component : components(path)) {
+            List<Node> next = Lists.newArrayList();
+            for (Node node : nodes) {
+                Node literal = node.literals.get(component);
+                if (literal != null) {
+                    next.add(literal);
+                }
+                for (Node glob : node.globs) {
+                    if (glob.glob.matches(component)) {
+                        next.add(glob);
+                    }
+                }
+            }
+            if (next.isEmpty()) {
+                return ImmutableList.of();
+            }
+            nodes = next;
+        }
+        List<Integer> matches = Lists.newArrayList();
+        for (Node node : nodes) {
+            matches.addAll(node.patterns);
+        }
+        Collections.sort(matches);
+        return matches;
+    }
+
+    /**
+     * @return index of the pattern which governs given directory, -1 if no
+     * pattern matches it
+     */
+    public int governing(Path dir) {
+        int governing = -1;
+        for (int match : matches(dir)) {
+            if (governing == -1 || moreSpecific(match, governing)) {
+                governing = match;
+            }
+        }
+        return governing;
+    }
+
+    /**
+     * @return true if neither of the patterns of given indexes is more
+     * specific than the other one, so the tie is broken by their names
+     */
+    public boolean equallySpecific(int a, int b) {
+        return compareSpecificity(a, b) == 0;
+    }
+
+    /**
+     * Filter keeping a search of given directory out of the directories under
+     * it which are matched by a pattern, and so are searched on their own.
+     * Files and the directory itself are always accepted.
+     *
+     * @param dir the directory being searched
+     * @return the filter
+     */
+    public FileStatusFilter unclaimedUnder(Path dir) {
+        final String searchPath = dir.toUri().getPath();
+        return new FileStatusFilter() {
+            @Override
+            public boolean accept(FileStatus status) {
+                return !status.isDirectory()
+                        || status.getPath().toUri().getPath().equals(searchPath)
+                        || matches(status.getPath()).isEmpty();
+            }
+
+            @Override
+            public String toString() {
+                return "unclaimedUnder(" + searchPath + ")";
+            }
+        };
+    }
+
+    /**
+     * @return the pattern of given index
+     */
+    public String pattern(int index) {
+        return patterns.get(index);
+    }
+
+    private boolean moreSpecific(int a, int b) {
+        int comparison = compareSpecificity(a, b);
+        if (comparison != 0) {
+            return comparison > 0;
+        }
+        // whichever comes first in name order, the first one given if they are the same
+        return patterns.get(a).compareTo(patterns.get(b)) < 0;
+    }
+
+    private int compareSpecificity(int a, int b) {
+        int[] specificityA = specificity(patterns.get(a));
+        int[] specificityB = specificity(patterns.get(b));
+        for (int i = 0; i < specificityA.length; i++) {
+            if (specificityA[i] != specificityB[i]) {
+                return specificityA[i] > specificityB[i] ? 1 : -1;
+            }
+        }
+        return 0;
+    }
+
+    /* literal components, then literal characters */
+    private static int[] specificity(String pattern) {
+        int[] specificity = new int[2];
+        for (String component : components(new Path(pattern))) {
+            if (!new GlobPattern(component).hasWildcard()) {
+                specificity[0]++;
+            }
+            for (char c : component.toCharArray()) {
+                if ("*?[]{},\\".indexOf(c) < 0) {
+                    specificity[1]++;
+                }
+            }
+        }
+        return specificity;
+    }
+
+    private static List<String> components(Path path) {
+        List<String> components = Lists.newArrayList();
+        for (String component : path.toUri().getPath().split(Path.SEPARATOR)) {
+            if (!component.isEmpty()) {
+                components.add(component);
+            }
+        }
+        return components;
+    }
+
+    private static final class Node {
+        private final GlobPattern glob;
+        private final Map<String, Node> literals = Maps.newHashMap();
+        private final List<Node> globs = Lists.newArrayList();
+        private final Map<String, Node> globsByComponent = Maps.newHashMap();
+        private final List<Integer> patterns = Lists.newArrayList();
+
+        private Node(GlobPattern glob) {
+            this.glob = glob;
+        }
+
+        private Node child(String component) {
+            GlobPattern pattern = new GlobPattern(component);
+            if (!pattern.hasWildcard()) {
+                Node child = literals.get(component);
+                if (child == null) {
+                    child = new Node(null);
+                    literals.put(component, child);
+                }
+                return child;
+            }
+            Node child = globsByComponent.get(component);
+            if (child == null) {
+                child = new Node(pattern);
+                globsByComponent.put(component, child);
+                globs.add(child);
+            }
+            return child;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.fsfind.retention;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import com.fsfind.FileStatusFilter;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * A quarantine directory on the filesystem the candidates are deleted from.
+ * Instead of being deleted right away, candidates are moved with a rename,
+ * which only touches metadata, into a directory of the run under the
+ * quarantine directory. Their original paths are kept under the directory of
+ * the run, e.g. <code>/data/logs/x</code> is moved to
+ * <code>/quarantine/20240101-000000Z-1a2b3c4d/data/logs/x</code>. The
+ * directory of a run is named after the time it started in UTC, with a
+ * random suffix so that runs started in the same second don't share it.
+ * <p/>
+ * Until the directory of a run is purged, what it holds can be restored to
+ * where it came from. Purging deletes the directories of the runs which
+ * started longer ago than a grace period, each with a few large recursive
+ * deletes. When a run started is read from the name of its directory, which
+ * restoring part of it or listing it doesn't change.
+ */
+public class Quarantine {
+
+    private static final Logger LOG = Logger.getLogger(Quarantine.class);
+    private static final String RUN_FORMAT = "yyyyMMdd-HHmmss";
+    private static final String UTC_RUN_FORMAT = RUN_FORMAT + "'Z'";
+    private static final Pattern RUN_SUFFIX = Pattern.compile("(-[0-9a-f]+)?");
+
+    private final Path root;
+    private final Path runDir;
+    // the paths under the directory of the run, which only this run writes to
+    private final Set<Path> existing = Sets.newSetFromMap(Maps.<Path, Boolean>newConcurrentMap());
+
+    /**
+     * @param fs   the filesystem the candidates are on
+     * @param root the quarantine directory
+     * @param time start time of the run, names the directory of the run
+     */
+    public Quarantine(FileSystem fs, Path root, long time) {
+        this.root = fs.makeQualified(root);
+        this.runDir = new Path(this.root, format(UTC_RUN_FORMAT).format(new Date(time)) + "-"
+                + UUID.randomUUID().toString().substring(0, 8));
+    }
+
+    private static SimpleDateFormat format(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        format.setLenient(false);
+        return format;
+    }
+
+    /**
+     * @return the directory of this run
+     */
+    public Path runDir() {
+        return runDir;
+    }
+
+    /**
+     * @return where given path is moved to
+     */
+    public Path target(Path path) {
+        return new Path(runDir, path.toUri().getPath().substring(1));
+    }
+
+    /**
+     * @return true if given path is the quarantine directory or is under it
+     */
+    public boolean holds(Path path) {
+        String quarantine = root.toUri().getPath();
+        String other = path.toUri().getPath();
+        return other.equals(quarantine) || other.startsWith(quarantine + Path.SEPARATOR);
+    }
+
+    /**
+     * Move a path into the quarantine. Its parents are created under the
+     * directory of the run first, once per run. A path whose target already
+     * exists, e.g. a directory created as the parent of a path under it, is
+     * not moved: a rename onto a directory would nest the path inside it and
+     * it wouldn't be restored to where it came from.
+     *
+     * @param fs   the filesystem to make the calls with, the one the
+     *             quarantine was created for or one passing calls on to it
+     * @param path the path to move
+     * @return true if the path was moved
+     */
+    public boolean move(FileSystem fs, Path path) throws IOException {
+        Path target = target(path);
+        if (existing.contains(target)) {
+            LOG.warn(String.format("Not quarantining %s, %s exists", path, target));
+            return false;
+        }
+        Path parent = target.getParent();
+        if (!existing.contains(parent)) {
+            fs.mkdirs(parent);
+            for (Path created = parent; !created.equals(runDir); created = created.getParent()) {
+                existing.add(created);
+            }
+        }
+        if (!fs.rename(path, target)) {
+            return false;
+        }
+        existing.add(target);
+        return true;
+    }
+
+    /**
+     * Filter keeping searches out of the quarantine directory, so that what
+     * is in quarantine isn't picked up again when it is under a path which
+     * retention is applied on.
+     */
+    public FileStatusFilter outside() {
+        return new FileStatusFilter() {
+            @Override
+            public boolean accept(FileStatus status) {
+                return !status.isDirectory() || !holds(status.getPath());
+            }
+
+            @Override
+            public String toString() {
+                return "outside(" + root.toUri().getPath() + ")";
+            }
+        };
+    }
+
+    /**
+     * The directories of the runs which started before given time, as named
+     * after the start time of their run. Names without a zone, of earlier
+     * versions, are read in the default time zone. Anything else under the
+     * quarantine directory is left alone.
+     *
+     * @param fs   the filesystem
+     * @param root the quarantine directory
+     * @param time the directories of the runs started before this time are
+     *             expired
+     * @return the expired directories, empty if there is no quarantine
+     * directory
+     */
+    public static List<Path> expired(FileSystem fs, Path root, long time) throws IOException {
+        List<Path> expired = Lists.newArrayList();
+        FileStatus[] runs;
+        try {
+            runs = fs.listStatus(root);
+        } catch (FileNotFoundException e) {
+            return expired;
+        }
+        SimpleDateFormat utc = format(UTC_RUN_FORMAT);
+        SimpleDateFormat local = new SimpleDateFormat(RUN_FORMAT);
+        local.setLenient(false);
+        for (FileStatus run : runs) {
+            if (!run.isDirectory()) {
+                continue;
+            }
+            String name = run.getPath().getName();
+            ParsePosition position = new ParsePosition(0);
+            Date started = utc.parse(name, position);
+            if (started == null) {
+                position = new ParsePosition(0);
+                started = local.parse(name, position);
+            }
+            if (started == null
+                    || !RUN_SUFFIX.matcher(name.substring(position.getIndex())).matches()) {
+                LOG.warn(String.format("Not purging %s, it isn't named after the start " +
+                        "time of a run", run.getPath()));
+            } else if (started.getTime() < time) {
+                expired.add(run.getPath());
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Move what a run quarantined back to where it came from. A quarantined
+     * path is moved back if its original path doesn't exist. Otherwise, if
+     * both are directories, their content is restored into the original one
+     * by one, and anything else is left in quarantine with a warning. What
+     * was restored is removed from the directory of the run, and so is the
+     * directory of the run once it is empty.
+     *
+     * @param fs     the filesystem
+     * @param runDir the directory of the run
+     * @return number of paths moved back
+     */
+    public static int restore(FileSystem fs, Path runDir) throws IOException {
+        Path qualified = fs.makeQualified(runDir);
+        int restored = 0;
+        for (FileStatus child : fs.listStatus(qualified)) {
+            restored += restore(fs, child, new Path(Path.SEPARATOR + child.getPath().getName()));
+        }
+        if (fs.listStatus(qualified).length == 0) {
+            fs.delete(qualified, false);
+        }
+        return restored;
+    }
+
+    private static int restore(FileSystem fs, FileStatus quarantined, Path original)
+            throws IOException {
+        FileStatus current;
+        try {
+            current = fs.getFileStatus(original);
+        } catch (FileNotFoundException e) {
+            fs.mkdirs(original.getParent());
+            if (fs.rename(quarantined.getPath(), original)) {
+                LOG.info("Restored " + original);
+                return 1;
+            }
+            LOG.warn(String.format("Couldn't restore %s to %s", quarantined.getPath(), original));
+            return 0;
+        }
+        if (!quarantined.isDirectory() || !current.isDirectory()) {
+            LOG.warn(String.format("Not restoring %s, %s exists", quarantined.getPath(),
+                    original));
+            return 0;
+        }
+        int restored = 0;
+        for (FileStatus child : fs.listStatus(quarantined.getPath())) {
+            restored += restore(fs, child, new Path(original, child.getPath().getName()));
+        }
+        if (fs.listStatus(quarantined.getPath()).length == 0) {
+            fs.delete(quarantined.getPath(), false);
+        }
+        return restored;
+    }
+
+    @Override
+    public String toString() {
+        return "Quarantine{" +
+                "runDir=" + runDir +
+                '}';
+    }
+}
@@ -0,0 +1,185 @@
+package com.fsfind.synthetic;
+
+import com.google.common.base.Preconditions;
+
+import com.fsfind.DirectoryListing;
+import com.fsfind.FSOperation;
+import com.fsfind.PagedFileSystem;
+import com.fsfind.RpcCounts;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FilterFileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.fs.permission.FsPermission;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <code>FileSystem</code> which holds each call it passes on for a latency
+ * plus a random jitter, set per <code>FSOperation</code>, so that a search or a retention
+ * run against a local or synthetic filesystem takes as long as it would
+ * against a busy NameNode. Listings are held once per page of entries, as
+ * HDFS fetches a directory one RPC per page: <code>listStatus</code> up
+ * front, <code>listLocatedStatus</code> as its entries are consumed, and
+ * <code>listPage</code> a page per call. Counts
+ * the calls it held. The latencies may be changed while calls are being
+ * made, they are all 0 to begin with.
+ */
+public class LatencyInjectingFileSystem extends FilterFileSystem implements PagedFileSystem {
+
+    /**
+     * Entries per page of a listing, the default of HDFS' dfs.ls.limit.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    private final int pageSize;
+    private final AtomicLongArray latencies = new AtomicLongArray(FSOperation.values().length);
+    private final AtomicLongArray jitters = new AtomicLongArray(FSOperation.values().length);
+    private final RpcCounts calls = new RpcCounts();
+    private final Random random = new Random();
+
+    /**
+     * @param fs the filesystem to pass the calls on to
+     */
+    public LatencyInjectingFileSystem(FileSystem fs) {
+        this(fs, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * @param fs       the filesystem to pass the calls on to
+     * @param pageSize entries per page of a listing
+     */
+    public LatencyInjectingFileSystem(FileSystem fs, int pageSize) {
+        super(fs);
+        Preconditions.checkArgument(pageSize > 0, "pageSize has to be positive");
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Hold given kind of call for a latency plus a jitter drawn uniformly
+     * between 0 and given jitter.
+     *
+     * @return this filesystem
+     */
+    public LatencyInjectingFileSystem setLatency(FSOperation operation, long latency,
+                                                 long jitter, TimeUnit unit) {
+        Preconditions.checkArgument(latency >= 0 && jitter >= 0, "Negative latency");
+        latencies.set(operation.ordinal(), unit.toNanos(latency));
+        jitters.set(operation.ordinal(), unit.toNanos(jitter));
+        return this;
+    }
+
+    /**
+     * @return number of calls of given kind held so far, a call per page for
+     * listings
+     */
+    public long calls(FSOperation operation) {
+        return calls.get(operation);
+    }
+
+    @Override
+    public FileStatus getFileStatus(Path path) throws IOException {
+        hold(FSOperation.GET_FILE_STATUS);
+        return super.getFileStatus(path);
+    }
+
+    @Override
+    public FileStatus[] listStatus(Path path) throws IOException {
+        hold(FSOperation.LIST_STATUS);
+        FileStatus[] listing = super.listStatus(path);
+        for (int pages = 1; pages * pageSize < listing.length; pages++) {
+            hold(FSOperation.LIST_STATUS);
+        }
+        return listing;
+    }
+
+    @Override
+    public RemoteIterator<LocatedFileStatus> listLocatedStatus(Path path) throws IOException {
+        hold(FSOperation.LIST_STATUS);
+        final RemoteIterator<LocatedFileStatus> listing = super.listLocatedStatus(path);
+        return new RemoteIterator<LocatedFileStatus>() {
+            private int fetched = 0;
+
+            @Override
+            public boolean hasNext() throws IOException {
+                return listing.hasNext();
+            }
+
+            @Override
+            public LocatedFileStatus next() throws IOException {
+                if (fetched > 0 && fetched % pageSize == 0) {
+                    hold(FSOperation.LIST_STATUS); // the next page
+                }
+                LocatedFileStatus next = listing.next();
+                fetched++;
+                return next;
+            }
+        };
+    }
+
+    @Override
+    public boolean listsPages() {
+        return DirectoryListing.isIncremental(fs);
+    }
+
+    @Override
+    public Page listPage(Path dir, String after) throws IOException {
+        hold(FSOperation.LIST_STATUS);
+        return DirectoryListing.listPage(fs, dir, after);
+    }
+
+    @Override
+    public boolean delete(Path path, boolean recursive) throws IOException {
+        hold(FSOperation.DELETE);
+        return super.delete(path, recursive);
+    }
+
+    @Override
+    public boolean rename(Path src, Path dst) throws IOException {
+        hold(FSOperation.RENAME);
+        return super.rename(src, dst);
+    }
+
+    @Override
+    public boolean mkdirs(Path path, FsPermission permission) throws IOException {
+        hold(FSOperation.MKDIRS);
+        return super.mkdirs(path, permission);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("LatencyInjectingFileSystem{fs=").append(fs);
+        for (FSOperation operation : FSOperation.values()) {
+            builder.append(", ").append(operation).append('=')
+                    .append(TimeUnit.NANOSECONDS.toMicros(latencies.get(operation.ordinal())))
+                    .append('+')
+                    .append(TimeUnit.NANOSECONDS.toMicros(jitters.get(operation.ordinal())))
+                    .append("us");
+        }
+        return builder.append('}').toString();
+    }
+
+    private void hold(FSOperation operation) throws InterruptedIOException {
+        calls.increment(operation);
+        long nanos = latencies.get(operation.ordinal());
+        long jitter = jitters.get(operation.ordinal());
+        if (jitter > 0) {
+            nanos += (long) (jitter * random.nextDouble());
+        }
+        if (nanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while holding " + operation);
+            }
+        }
+    }
+}
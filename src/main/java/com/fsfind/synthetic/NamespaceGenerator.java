@@ -0,0 +1,379 @@
+package com.fsfind.synthetic;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Describes a namespace level by level, and generates the listing of any of
+ * its directories on demand, from the directory's path alone. Nothing is
+ * held per directory or file, so a namespace of tens of millions of files
+ * costs no memory until its directories are listed, and listing the same
+ * directory twice gives the same files.
+ * <p/>
+ * Each level of directories is either a fixed name, a number of plain
+ * directories, or time partitions such as <code>dt=2014-06-10</code>. Files
+ * are in the directories of the last level. A file in a partition was last
+ * modified during the time its partition covers, any other file at an age
+ * drawn from a configurable distribution. For example, a year of daily
+ * partitions of a hundred tables with a thousand files each:
+ * <pre>
+ * NamespaceGenerator.builder()
+ *         .under("/data/warehouse")
+ *         .directories("table", 100)
+ *         .partitions("'dt='yyyy-MM-dd", TimeUnit.DAYS.toMillis(1), 365)
+ *         .files(1000)
+ *         .build();
+ * </pre>
+ * A directory was last modified when the newest file it may hold was. Safe
+ * to use from multiple threads.
+ */
+public final class NamespaceGenerator {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final Comparator<FileStatus> BY_NAME = new Comparator<FileStatus>() {
+        @Override
+        public int compare(FileStatus a, FileStatus b) {
+            return a.getPath().getName().compareTo(b.getPath().getName());
+        }
+    };
+
+    private final List<Level> levels;
+    private final int files;
+    private final long now;
+    private final long minAge;
+    private final long maxAge;
+    private final double skew;
+    private final long minSize;
+    private final long maxSize;
+    private final long seed;
+    private final String owner;
+
+    private NamespaceGenerator(Builder builder) {
+        this.levels = ImmutableList.copyOf(builder.levels);
+        this.files = builder.files;
+        this.now = builder.now;
+        this.minAge = builder.minAge;
+        this.maxAge = builder.maxAge;
+        this.skew = builder.skew;
+        this.minSize = builder.minSize;
+        this.maxSize = builder.maxSize;
+        this.seed = builder.seed;
+        this.owner = builder.owner;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return number of files in the whole namespace, partitions which
+     * split a parent partition into fewer than their count hold fewer
+     */
+    public long totalFiles() {
+        long total = files;
+        for (Level level : levels) {
+            total *= level.count;
+        }
+        return total;
+    }
+
+    /**
+     * @return the time the ages of the files are relative to
+     */
+    public long now() {
+        return now;
+    }
+
+    /**
+     * @return the status of the root directory of the namespace
+     */
+    GeneratedStatus root(Path root) {
+        return directory(root, null, Long.MIN_VALUE, now);
+    }
+
+    /**
+     * The children of a directory, sorted by name.
+     *
+     * @param dir a directory of the namespace, as returned by this generator
+     * @return the listing, the first level directories for the root
+     */
+    FileStatus[] list(GeneratedStatus dir) {
+        int depth = dir.depth();
+        FileStatus[] listing;
+        if (depth < levels.size()) {
+            listing = levels.get(depth).list(this, dir);
+        } else {
+            listing = new FileStatus[files];
+            Random random = new Random(seed * 31 + dir.getPath().toUri().getPath().hashCode());
+            for (int i = 0; i < files; i++) {
+                long mtime = dir.from == Long.MIN_VALUE
+                        ? now - minAge - (long) ((maxAge - minAge)
+                        * Math.pow(random.nextDouble(), skew))
+                        : dir.from + (long) ((Math.min(dir.to, now) - dir.from)
+                        * random.nextDouble());
+                long length = minSize + (long) ((maxSize - minSize) * random.nextDouble());
+                listing[i] = new GeneratedStatus(length, false, mtime, owner,
+                        new Path(dir.getPath(), String.format("part-%05d", i)), depth + 1,
+                        dir.from, dir.to);
+            }
+        }
+        Arrays.sort(listing, BY_NAME);
+        return listing;
+    }
+
+    private GeneratedStatus directory(Path path, GeneratedStatus parent, long from, long to) {
+        // the newest file a directory may hold is the one written last
+        long mtime = from == Long.MIN_VALUE ? now - minAge : Math.min(to, now);
+        return new GeneratedStatus(0, true, mtime, owner, path,
+                parent == null ? 0 : parent.depth() + 1, from, to);
+    }
+
+    /**
+     * Status of a generated path, knows its depth in the namespace and the
+     * time its files were written in.
+     */
+    static final class GeneratedStatus extends FileStatus {
+        private final int depth;
+        /* the time range of the partition the path is in, from is MIN_VALUE if it isn't */
+        private final long from;
+        private final long to;
+
+        private GeneratedStatus(long length, boolean isDir, long mtime, String owner, Path path,
+                                int depth, long from, long to) {
+            super(length, isDir, isDir ? 0 : 3, isDir ? 0 : 128L << 20, mtime, mtime,
+                    isDir ? FsPermission.getDirDefault() : FsPermission.getFileDefault(), owner,
+                    owner, path);
+            this.depth = depth;
+            this.from = from;
+            this.to = to;
+        }
+
+        /* a copy modified at given time */
+        GeneratedStatus modifiedAt(long mtime) {
+            return new GeneratedStatus(getLen(), isDirectory(), mtime, getOwner(), getPath(),
+                    depth, from, to);
+        }
+
+        int depth() {
+            return depth;
+        }
+    }
+
+    /* one level of directories */
+    private abstract static class Level {
+        final int count;
+
+        Level(int count) {
+            Preconditions.checkArgument(count > 0, "A level needs at least one directory");
+            this.count = count;
+        }
+
+        abstract FileStatus[] list(NamespaceGenerator generator, GeneratedStatus parent);
+    }
+
+    private static final class Fixed extends Level {
+        private final String name;
+
+        Fixed(String name) {
+            super(1);
+            Preconditions.checkArgument(!name.isEmpty() && !name.contains(Path.SEPARATOR),
+                    "Invalid directory name %s", name);
+            this.name = name;
+        }
+
+        @Override
+        FileStatus[] list(NamespaceGenerator generator, GeneratedStatus parent) {
+            return new FileStatus[]{generator.directory(new Path(parent.getPath(), name),
+                    parent, parent.from, parent.to)};
+        }
+    }
+
+    private static final class Plain extends Level {
+        private final String prefix;
+
+        Plain(String prefix, int count) {
+            super(count);
+            this.prefix = prefix;
+        }
+
+        @Override
+        FileStatus[] list(NamespaceGenerator generator, GeneratedStatus parent) {
+            FileStatus[] listing = new FileStatus[count];
+            for (int i = 0; i < count; i++) {
+                listing[i] = generator.directory(new Path(parent.getPath(),
+                        String.format("%s%05d", prefix, i)), parent, parent.from, parent.to);
+            }
+            return listing;
+        }
+    }
+
+    private static final class Partitions extends Level {
+        private final String format;
+        private final long period;
+
+        Partitions(String format, long period, int count) {
+            super(count);
+            Preconditions.checkArgument(period > 0, "The period has to be positive");
+            new SimpleDateFormat(format); // fail early on an invalid pattern
+            this.format = format;
+            this.period = period;
+        }
+
+        @Override
+        FileStatus[] list(NamespaceGenerator generator, GeneratedStatus parent) {
+            SimpleDateFormat names = new SimpleDateFormat(format);
+            names.setTimeZone(UTC);
+            List<FileStatus> listing = Lists.newArrayList();
+            if (parent.from == Long.MIN_VALUE) {
+                // the last periods up to now
+                long last = generator.now - generator.now % period;
+                for (int i = 0; i < count; i++) {
+                    long from = last - i * period;
+                    listing.add(partition(generator, parent, names, from));
+                }
+            } else {
+                // the periods within the parent's
+                for (long from = parent.from; from < parent.to && listing.size() < count;
+                     from += period) {
+                    listing.add(partition(generator, parent, names, from));
+                }
+            }
+            return listing.toArray(new FileStatus[listing.size()]);
+        }
+
+        private FileStatus partition(NamespaceGenerator generator, GeneratedStatus parent,
+                                     SimpleDateFormat names, long from) {
+            return generator.directory(new Path(parent.getPath(),
+                    names.format(new Date(from))), parent, from, from + period);
+        }
+    }
+
+    public static final class Builder {
+        private final List<Level> levels = Lists.newArrayList();
+        private int files = 10;
+        private long now = System.currentTimeMillis();
+        private long minAge = 0;
+        private long maxAge = 0;
+        private double skew = 1;
+        private long minSize = 0;
+        private long maxSize = 0;
+        private long seed = 0;
+        private String owner = "hadoop";
+
+        private Builder() {
+        }
+
+        /**
+         * Add a level of one directory per component of given path.
+         */
+        public Builder under(String path) {
+            for (String component : path.split(Path.SEPARATOR)) {
+                if (!component.isEmpty()) {
+                    levels.add(new Fixed(component));
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Add a level of directories named with given prefix and their index.
+         */
+        public Builder directories(String prefix, int count) {
+            levels.add(new Plain(prefix, count));
+            return this;
+        }
+
+        /**
+         * Add a level of time partitions. Under no other partition, they are
+         * the last periods up to now. Under a partition, they split the
+         * period of the parent, up to given count.
+         *
+         * @param format <code>SimpleDateFormat</code> pattern of the names,
+         *               formatting the start of the period in UTC
+         * @param period millis each partition covers
+         * @param count  number of partitions
+         */
+        public Builder partitions(String format, long period, int count) {
+            levels.add(new Partitions(format, period, count));
+            return this;
+        }
+
+        /**
+         * @param files number of files in each directory of the last level
+         */
+        public Builder files(int files) {
+            Preconditions.checkArgument(files >= 0, "Negative number of files");
+            this.files = files;
+            return this;
+        }
+
+        /**
+         * @param now the time ages and partitions are relative to, defaults
+         *            to when the builder was created
+         */
+        public Builder now(long now) {
+            this.now = now;
+            return this;
+        }
+
+        /**
+         * Ages of the files outside of partitions, drawn between the two ages.
+         * The higher the skew, the more files are young: the age is
+         * <code>minAge + (maxAge - minAge) * u^skew</code> for a uniform
+         * <code>u</code> in [0, 1). Files are new by default.
+         */
+        public Builder ages(long minAge, long maxAge, double skew) {
+            Preconditions.checkArgument(0 <= minAge && minAge <= maxAge,
+                    "Invalid ages %s, %s", minAge, maxAge);
+            Preconditions.checkArgument(skew > 0, "The skew has to be positive");
+            this.minAge = minAge;
+            this.maxAge = maxAge;
+            this.skew = skew;
+            return this;
+        }
+
+        /**
+         * Lengths of the files, drawn uniformly between the two sizes.
+         */
+        public Builder sizes(long minSize, long maxSize) {
+            Preconditions.checkArgument(0 <= minSize && minSize <= maxSize,
+                    "Invalid sizes %s, %s", minSize, maxSize);
+            this.minSize = minSize;
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * @param seed the same seed generates the same files
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * @param owner owner and group of every path
+         */
+        public Builder owner(String owner) {
+            this.owner = owner;
+            return this;
+        }
+
+        public NamespaceGenerator build() {
+            return new NamespaceGenerator(this);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.fsfind.synthetic;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import com.fsfind.PagedFileSystem;
+import com.fsfind.synthetic.NamespaceGenerator.GeneratedStatus;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.util.Progressable;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A metadata only <code>FileSystem</code> over the namespace of a
+ * {@link NamespaceGenerator}, to load test searches and retention runs at the
+ * scale of a production namespace on a single machine. Listings are generated
+ * as directories get listed, in name order like HDFS lists them.
+ * <p/>
+ * Deletes are recorded on top of the generated namespace: a deleted path
+ * disappears with everything under it, and its parent is modified at the time
+ * of the delete. Each delete holds on to the path it deleted. Files have no
+ * content and nothing else can change the namespace. Wrap it in a
+ * {@link LatencyInjectingFileSystem} for the calls to take as long as they do
+ * on a busy NameNode. Like HDFS, it lists a directory a page at a time,
+ * starting after a given name. Safe to use from multiple threads.
+ */
+public class SyntheticFileSystem extends FileSystem implements PagedFileSystem {
+
+    /**
+     * Scheme of the paths of the filesystem.
+     */
+    public static final String SCHEME = "synthetic";
+    /**
+     * Entries per page of a listing, the default of HDFS' dfs.ls.limit.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+    private static final URI NAME = URI.create(SCHEME + ":///");
+
+    private final NamespaceGenerator generator;
+    private final int pageSize;
+    private final Set<String> deleted = Collections.newSetFromMap(
+            new ConcurrentHashMap<String, Boolean>());
+    private final ConcurrentMap<String, Long> modified = new ConcurrentHashMap<String, Long>();
+    private volatile Path workingDirectory = qualified("/");
+
+    /**
+     * @param generator generates the namespace, under the root directory
+     */
+    public SyntheticFileSystem(NamespaceGenerator generator) {
+        this(generator, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * @param generator generates the namespace, under the root directory
+     * @param pageSize  entries per page of a listing
+     */
+    public SyntheticFileSystem(NamespaceGenerator generator, int pageSize) {
+        Preconditions.checkArgument(pageSize > 0, "pageSize has to be positive");
+        this.generator = generator;
+        this.pageSize = pageSize;
+        setConf(new Configuration());
+    }
+
+    /**
+     * @return number of paths deleted so far
+     */
+    public int deletes() {
+        return deleted.size();
+    }
+
+    @Override
+    public URI getUri() {
+        return NAME;
+    }
+
+    @Override
+    public FileStatus getFileStatus(Path path) throws IOException {
+        return resolve(path);
+    }
+
+    @Override
+    public FileStatus[] listStatus(Path path) throws IOException {
+        GeneratedStatus status = resolve(path);
+        if (!status.isDirectory()) {
+            return new FileStatus[]{status};
+        }
+        return visible(generator.list(status));
+    }
+
+    @Override
+    public RemoteIterator<LocatedFileStatus> listLocatedStatus(Path path) throws IOException {
+        final FileStatus[] listing = listStatus(path);
+        return new RemoteIterator<LocatedFileStatus>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < listing.length;
+            }
+
+            @Override
+            public LocatedFileStatus next() throws IOException {
+                if (index == listing.length) {
+                    throw new NoSuchElementException();
+                }
+                return new LocatedFileStatus(listing[index++], null);
+            }
+        };
+    }
+
+    @Override
+    public boolean listsPages() {
+        return true;
+    }
+
+    @Override
+    public Page listPage(Path dir, String after) throws IOException {
+        FileStatus[] listing = listStatus(dir);
+        int from = 0;
+        if (after != null) {
+            int index = find(listing, after);
+            from = index >= 0 ? index + 1 : -index - 1;
+        }
+        int to = Math.min(listing.length, from + pageSize);
+        return new Page(Arrays.copyOfRange(listing, from, to), to < listing.length);
+    }
+
+    @Override
+    public boolean delete(Path path, boolean recursive) throws IOException {
+        GeneratedStatus status;
+        try {
+            status = resolve(path);
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+        Path parent = status.getPath().getParent();
+        if (parent == null) {
+            throw new IOException("Can't delete the root directory");
+        } else if (status.isDirectory() && !recursive
+                && visible(generator.list(status)).length > 0) {
+            throw new IOException(path + " is a non empty directory");
+        }
+        if (!deleted.add(key(status.getPath()))) {
+            return false; // deleted by someone else in the meantime
+        }
+        modified.put(key(parent), System.currentTimeMillis());
+        return true;
+    }
+
+    @Override
+    public boolean mkdirs(Path path, FsPermission permission) throws IOException {
+        try {
+            if (resolve(path).isDirectory()) {
+                return true;
+            }
+        } catch (FileNotFoundException e) {
+            // can't be created
+        }
+        throw new UnsupportedOperationException("Only deletes change a synthetic namespace");
+    }
+
+    @Override
+    public boolean rename(Path src, Path dst) throws IOException {
+        throw new UnsupportedOperationException("Only deletes change a synthetic namespace");
+    }
+
+    @Override
+    public FSDataInputStream open(Path path, int bufferSize) throws IOException {
+        throw new UnsupportedOperationException("Synthetic files have no content");
+    }
+
+    @Override
+    public FSDataOutputStream create(Path path, FsPermission permission, boolean overwrite,
+                                     int bufferSize, short replication, long blockSize,
+                                     Progressable progress) throws IOException {
+        throw new UnsupportedOperationException("Only deletes change a synthetic namespace");
+    }
+
+    @Override
+    public FSDataOutputStream append(Path path, int bufferSize, Progressable progress)
+            throws IOException {
+        throw new UnsupportedOperationException("Only deletes change a synthetic namespace");
+    }
+
+    @Override
+    public void setWorkingDirectory(Path dir) {
+        workingDirectory = makeQualified(dir);
+    }
+
+    @Override
+    public Path getWorkingDirectory() {
+        return workingDirectory;
+    }
+
+    @Override
+    public String toString() {
+        return "SyntheticFileSystem{" +
+                "files=" + generator.totalFiles() +
+                ", deletes=" + deletes() +
+                '}';
+    }
+
+    /* walk down from the root, generating the listing of every directory on the way */
+    private GeneratedStatus resolve(Path path) throws FileNotFoundException {
+        GeneratedStatus status = generator.root(qualified("/"));
+        for (String name : key(path).split(Path.SEPARATOR)) {
+            if (name.isEmpty()) {
+                continue;
+            }
+            FileStatus[] listing = status.isDirectory() ? generator.list(status) : null;
+            int index = listing == null ? -1 : find(listing, name);
+            FileStatus child = index < 0 ? null : listing[index];
+            if (child == null || deleted.contains(key(child.getPath()))) {
+                throw new FileNotFoundException(path + " doesn't exist");
+            }
+            status = (GeneratedStatus) child;
+        }
+        return modified(status);
+    }
+
+    /* index of the child of given name in a listing sorted by name, (-(insertion point) - 1)
+    if there is none, like Arrays.binarySearch */
+    private static int find(FileStatus[] listing, String name) {
+        int low = 0;
+        int high = listing.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int comparison = listing[mid].getPath().getName().compareTo(name);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /* the listing without the deleted paths, and with the directories modified since */
+    private FileStatus[] visible(FileStatus[] listing) {
+        if (deleted.isEmpty()) {
+            return listing;
+        }
+        List<FileStatus> visible = Lists.newArrayListWithCapacity(listing.length);
+        for (FileStatus child : listing) {
+            if (!deleted.contains(key(child.getPath()))) {
+                visible.add(modified((GeneratedStatus) child));
+            }
+        }
+        return visible.toArray(new FileStatus[visible.size()]);
+    }
+
+    private GeneratedStatus modified(GeneratedStatus status) {
+        Long mtime = status.isDirectory() ? modified.get(key(status.getPath())) : null;
+        return mtime == null ? status : status.modifiedAt(mtime);
+    }
+
+    private String key(Path path) {
+        return makeQualified(path).toUri().getPath();
+    }
+
+    private static Path qualified(String path) {
+        return new Path(SCHEME, null, path);
+    }
+}
@@ -0,0 +1,65 @@
+package com.fsfind;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class TestCandidateBuffer {
+
+    private File spillDir;
+    private FSFindTestUtil findTestUtil = new FSFindTestUtil();
+
+    @BeforeClass(groups = {"unit"})
+    public void setUp() throws Exception {
+        spillDir = Files.createTempDir();
+    }
+
+    @AfterClass(groups = {"unit"})
+    public void tearDown() throws Exception {
+        findTestUtil.deleteDir(spillDir);
+    }
+
+    @Test(groups = {"unit"})
+    public void testSpilledRunsAreMerged() throws Exception {
+        Random random = new Random(42);
+        List<String> expected = Lists.newArrayList();
+        CandidateBuffer buffer = new CandidateBuffer(spillDir, 64);
+        for (int i = 0; i < 1000; i++) {
+            Path path = new Path(String.format("hdfs://nn:8020/data/dt=%d/part-%05d.gz",
+                    random.nextInt(30), random.nextInt(100000)));
+            buffer.add(path);
+            expected.add(path.toString());
+        }
+        Collections.sort(expected);
+        Assert.assertEquals(buffer.size(), 1000);
+        Assert.assertEquals(buffer.runs(), 15); // the last 40 stay in memory
+        Assert.assertEquals(spillDir.list().length, 15);
+
+        List<String> actual = Lists.newArrayList();
+        RemoteIterator<Path> paths = buffer.iterator();
+        while (paths.hasNext()) {
+            actual.add(paths.next().toString());
+        }
+        Assert.assertEquals(actual, expected);
+        buffer.close();
+        Assert.assertEquals(spillDir.list().length, 0);
+    }
+
+    @Test(groups = {"unit"})
+    public void testEmpty() throws Exception {
+        CandidateBuffer buffer = new CandidateBuffer(spillDir, 1);
+        Assert.assertFalse(buffer.iterator().hasNext());
+        buffer.close();
+    }
+}
@@ -0,0 +1,172 @@
+package com.fsfind;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestFSFindExpression {
+
+    private static final long GB = 1L << 30;
+
+    private FileSystem localFS;
+    private List<File> tmpDirs = new ArrayList<File>();
+    private FSFindTestUtil findTestUtil = new FSFindTestUtil();
+
+    @BeforeClass(groups = {"unit"})
+    public void setUp() throws Exception {
+        Configuration conf = new Configuration();
+        localFS = FileSystem.getLocal(conf);
+    }
+
+    @AfterClass(groups = {"unit"})
+    public void tearDown() throws Exception {
+        localFS.close();
+        for (File tmpDir : tmpDirs) {
+            findTestUtil.deleteDir(tmpDir);
+        }
+    }
+
+    @Test(groups = {"unit"})
+    public void testFiles() {
+        FSFindExpression expression = FSFindExpression.compile(
+                "-name '*.tmp' -and -size +1G -and -not -user hive");
+        Assert.assertTrue(expression.accept(file("/d/a.tmp", 2 * GB, "etl")));
+        Assert.assertFalse(expression.accept(file("/d/a.tmp", 2 * GB, "hive")));
+        Assert.assertFalse(expression.accept(file("/d/a.tmp", GB, "etl")));
+        Assert.assertFalse(expression.accept(file("/d/a.log", 2 * GB, "etl")));
+        // nothing says which directories to skip
+        Assert.assertTrue(expression.accept(dir("/d/logs", "hive")));
+
+        FSFindExpression either = FSFindExpression.compile(
+                "( -name part-* -o -regex '.*/_temporary/.*' ) -replication -4 -perm -002");
+        Assert.assertTrue(either.accept(file("/d/part-0", 0, "etl")));
+        Assert.assertTrue(either.accept(file("/d/_temporary/x", 0, "etl")));
+        Assert.assertFalse(either.accept(file("/d/x", 0, "etl")));
+        Assert.assertTrue(FSFindExpression.compile("-size 10c").accept(file("/x", 10, "etl")));
+        Assert.assertTrue(FSFindExpression.compile("! -size -1k").accept(file("/x", 1024, "etl")));
+        Assert.assertTrue(FSFindExpression.compile("-name x -o -name y")
+                .accept(file("/y", 0, "a")));
+    }
+
+    @Test(groups = {"unit"})
+    public void testPlan() {
+        // name comparisons before status fields before regular expressions
+        Assert.assertEquals(FSFindExpression.compile(
+                "-regex .*/x -user hive -name [ab].tmp -size +1G -name *.tmp").plan(),
+                "(-name *.tmp -and -user hive -and -size +1G -and -regex .*/x " +
+                        "-and -name [ab].tmp)");
+        Assert.assertEquals(FSFindExpression.compile(
+                "-size +1G -o -type f -name a*").plan(),
+                "((-type f -and -name a*) -or -size +1G)");
+    }
+
+    @Test(groups = {"unit"})
+    public void testDirectories() {
+        FSFindExpression expression = FSFindExpression.compile(
+                "-not ( -type d -name DONT_DELETE ) -name *.tmp");
+        Assert.assertFalse(expression.accept(dir("/d/DONT_DELETE", "etl")));
+        Assert.assertTrue(expression.accept(dir("/d/logs", "etl")));
+        Assert.assertTrue(FSFindExpression.compile("-not ( -type d -name DONT_DELETE )")
+                .accept(file("/d/DONT_DELETE", 0, "etl")), "-type d doesn't hold for files");
+        Assert.assertFalse(expression.accept(file("/d/x.log", 0, "etl")));
+
+        FSFindExpression onlyHive = FSFindExpression.compile("-type d -user hive");
+        Assert.assertTrue(onlyHive.accept(dir("/d/a", "hive")));
+        Assert.assertFalse(onlyHive.accept(dir("/d/a", "etl")));
+        // files below a directory may match -type f, whoever owns the directory
+        FSFindExpression hiveOrFiles = FSFindExpression.compile("-type d -user hive -o -type f");
+        Assert.assertTrue(hiveOrFiles.accept(dir("/d/a", "hive")));
+        Assert.assertTrue(hiveOrFiles.accept(dir("/d/a", "etl")));
+        for (String files : new String[]{"-type f", "-type f -name *.tmp", "-name *.tmp -type f",
+                "-not -type d"}) {
+            Assert.assertTrue(FSFindExpression.compile(files).accept(dir("/d", "etl")), files);
+        }
+        Assert.assertFalse(FSFindExpression.compile("-type d ( -type f -o -name x )")
+                .accept(dir("/d", "etl")));
+    }
+
+    @Test(groups = {"unit"})
+    public void testInvalidExpressions() {
+        for (String invalid : new String[]{"", "-name", "-size +1X", "-type x", "( -name a",
+                "-name a )", "-perm 9", "-replication many", "-owner hive", "-name 'a"}) {
+            try {
+                FSFindExpression.compile(invalid);
+                Assert.fail(invalid + " should be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    /* directories the expression skips aren't listed, and keep their parents */
+    @Test(groups = {"unit"})
+    public void testSearch() throws Exception {
+        File tmp = Files.createTempDir();
+        tmpDirs.add(tmp);
+        File root = new File(tmp, "root");
+        for (String name : new String[]{"a/x.tmp", "b/x.tmp", "b/y.log", "c/DONT_DELETE/x.tmp",
+                "c/z.tmp"}) {
+            File file = new File(root, name);
+            Files.createParentDirs(file);
+            Files.touch(file);
+            file.setLastModified(0);
+        }
+        Path rootPath = new Path(root.getCanonicalPath());
+        FileStatusFilter expression = FSFindExpression.compile(
+                "-name *.tmp -not ( -type d -name DONT_DELETE )");
+        List<Path> expected = Lists.newArrayList(
+                localFS.makeQualified(new Path(rootPath, "a")),
+                localFS.makeQualified(new Path(rootPath, "b/x.tmp")),
+                localFS.makeQualified(new Path(rootPath, "c/z.tmp")));
+
+        FSFindResult result = new FSFindImpl(true, localFS).findMatching(
+                FSFindQuery.make(rootPath), 1000, Integer.MAX_VALUE, expression);
+        Assert.assertEquals(result.candidates(), expected);
+        // the root, a, b and c are listed, DONT_DELETE isn't
+        Assert.assertEquals(result.rpcCounts().get(FSOperation.LIST_STATUS), 4);
+    }
+
+    /* -type f selects files at any depth, it doesn't prune the directories above them */
+    @Test(groups = {"unit"})
+    public void testFilesAtDepth() throws Exception {
+        File tmp = Files.createTempDir();
+        tmpDirs.add(tmp);
+        File root = new File(tmp, "root");
+        for (String name : new String[]{"x.tmp", "a/b/y.tmp", "a/b/z.log"}) {
+            File file = new File(root, name);
+            Files.createParentDirs(file);
+            Files.touch(file);
+            file.setLastModified(0);
+        }
+        Path rootPath = new Path(root.getCanonicalPath());
+        FSFindExpression tmpFiles = FSFindExpression.compile("-type f -name '*.tmp'");
+        List<Path> found = new FSFindImpl(false, localFS).findMatching(
+                FSFindQuery.make(rootPath), 1000, tmpFiles);
+        Assert.assertEqualsNoOrder(found.toArray(), new Path[]{
+                localFS.makeQualified(new Path(rootPath, "x.tmp")),
+                localFS.makeQualified(new Path(rootPath, "a/b/y.tmp"))});
+    }
+
+    private static FileStatus file(String path, long length, String owner) {
+        return new FileStatus(length, false, 3, 0, 0, 0, new FsPermission((short) 0666), owner,
+                "grid", new Path(path));
+    }
+
+    private static FileStatus dir(String path, String owner) {
+        return new FileStatus(0, true, 0, 0, 0, 0, new FsPermission((short) 0755), owner,
+                "grid", new Path(path));
+    }
+}
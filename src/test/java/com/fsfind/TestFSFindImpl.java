@@ -5,22 +5,32 @@ import com.google.common.collect.Sets;
 import com.google.common.io.Files;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FilterFileSystem;
 import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.mockito.Mockito;
 import org.testng.Assert;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TestFSFindImpl {
 
@@ -167,6 +177,43 @@ public class TestFSFindImpl {
 
     }
 
+    @Test(groups = {"unit"})
+    public void testResumeFromCursor() throws Exception {
+        File tmp = createTmpNameSpace();
+        FSFindTestUtil.FSFindTestDataFile testData = findTestUtil.createTestBed("findresumesearch" +
+                        ".txt",
+                tmp.getCanonicalPath(), true);
+        FSFind fsFind = new FSFindImpl(true, localFS); //include directories
+        Set<Path> seen = Sets.newHashSet();
+        FSFindCursor cursor = null;
+        int batches = 0;
+        do {
+            FSFindResult batch = fsFind.find(FSFindQuery.make(testData.getPathOrPattern(), cursor),
+                    testData.getPurgeTime(), 2, testData.getFilter());
+            Assert.assertTrue(batch.size() <= 2);
+            for (Path candidate : batch.candidates()) {
+                Assert.assertTrue(seen.add(candidate), candidate + " returned twice");
+            }
+            deletePaths(batch.candidates());
+            Assert.assertTrue(batch.cursor().depth() <= 2, "Cursor is bounded by tree depth");
+            cursor = roundTrip(batch.cursor());
+            batches++;
+        } while (!cursor.isExhausted());
+        Assert.assertEquals(batches, 5);
+
+        /* an exhausted cursor means there is nothing left to search */
+        FSFindResult done = fsFind.find(FSFindQuery.make(testData.getPathOrPattern(), cursor),
+                testData.getPurgeTime(), 2, testData.getFilter());
+        Assert.assertEquals(done.size(), 0);
+        Assert.assertEquals(done.rpcCounts().total(), 0);
+
+        /* we should be left with 4 paths */
+        List<File> filesPostDelete = Lists.newArrayList();
+        findTestUtil.allFiles(new File(testData.getPathOrPattern().toUri().getPath()),
+                filesPostDelete);
+        Assert.assertEquals(filesPostDelete.size(), 4);
+    }
+
     @Test(groups = {"unit"})
     public void testFileNotFoundException() throws Exception {
         File tmp = createTmpNameSpace();
@@ -177,7 +224,7 @@ public class TestFSFindImpl {
                 "/user/johndoe/subdir");
         FileSystem fs = FileSystem.getLocal(new Configuration());
         FileSystem spy = Mockito.spy(fs);
-        Mockito.when(spy.getFileStatus(subdir)).thenThrow(new FileNotFoundException());
+        Mockito.when(spy.listStatus(subdir)).thenThrow(new FileNotFoundException());
         FSFind fsFind = new FSFindImpl(true, spy); //include directories
         FSFindResult result = fsFind.find(FSFindQuery.make(testData.getPathOrPattern()),
                 testData.getPurgeTime(), 5, testData.getFilter());
@@ -185,12 +232,181 @@ public class TestFSFindImpl {
         fs.close();
     }
 
+    @Test(groups = {"unit"})
+    public void testStreamSameAsFind() throws Exception {
+        for (String testFile : new String[]{"find.txt", "findIncludeDirs.txt", "findfilter.txt",
+                "findresumesearch.txt"}) {
+            File tmp = createTmpNameSpace();
+            FSFindTestUtil.FSFindTestDataFile testData = findTestUtil.createTestBed(testFile,
+                    tmp.getCanonicalPath(), true);
+            for (boolean includeDirs : new boolean[]{true, false}) {
+                FSFind fsFind = new FSFindImpl(includeDirs, localFS);
+                FSFindQuery query = FSFindQuery.make(testData.getPathOrPattern());
+                List<Path> expected = fsFind.find(query, testData.getPurgeTime(),
+                        testData.getFilter());
+                List<Path> streamed = Lists.newArrayList();
+                FSFindIterator iterator = fsFind.stream(query, testData.getPurgeTime(),
+                        testData.getFilter());
+                while (iterator.hasNext()) {
+                    streamed.add(iterator.next());
+                }
+                Assert.assertEquals(streamed, expected, testFile);
+            }
+        }
+    }
+
+    @Test(groups = {"unit"})
+    public void testOneRpcPerDirectory() throws Exception {
+        File tmp = createTmpNameSpace();
+        FSFindTestUtil.FSFindTestDataFile testData = findTestUtil.createTestBed("find.txt",
+                tmp.getCanonicalPath(), false);
+        FileSystem spy = Mockito.spy(FileSystem.getLocal(new Configuration()));
+        FSFind fsFind = new FSFindImpl(spy);
+        FSFindResult result = fsFind.find(FSFindQuery.make(testData.getPathOrPattern()),
+                testData.getPurgeTime(), Integer.MAX_VALUE, testData.getFilter());
+
+        /* search path and its two sub directories are listed, only search path is stat'ed */
+        Assert.assertEquals(result.rpcCounts().get(FSOperation.LIST_STATUS), 3);
+        Assert.assertEquals(result.rpcCounts().get(FSOperation.GET_FILE_STATUS), 1);
+        Mockito.verify(spy, Mockito.times(3)).listStatus(Mockito.any(Path.class));
+        Mockito.verify(spy, Mockito.times(1)).getFileStatus(Mockito.any(Path.class));
+    }
+
+    /* a batch stops fetching a huge directory once full, the next one resumes after it */
+    @Test(groups = {"unit"})
+    public void testIncrementalListing() throws Exception {
+        File tmp = createTmpNameSpace();
+        File huge = new File(tmp, "huge");
+        huge.mkdir();
+        for (int i = 0; i < 100; i++) {
+            File file = new File(huge, String.format("file%03d", i));
+            Assert.assertTrue(file.createNewFile());
+            Assert.assertTrue(file.setLastModified(1000L));
+        }
+        final AtomicInteger fetched = new AtomicInteger();
+        FileSystem fs = new FilterFileSystem(localFS) {
+            @Override
+            public RemoteIterator<LocatedFileStatus> listLocatedStatus(Path path)
+                    throws IOException {
+                final FileStatus[] listing = listStatus(path);
+                Arrays.sort(listing);
+                return new RemoteIterator<LocatedFileStatus>() {
+                    private int index = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < listing.length;
+                    }
+
+                    @Override
+                    public LocatedFileStatus next() throws IOException {
+                        fetched.incrementAndGet();
+                        return new LocatedFileStatus(listing[index++], null);
+                    }
+                };
+            }
+        };
+        FSFindImpl fsFind = new FSFindImpl(fs);
+        fsFind.listIncrementally(true);
+        Path searchPath = new Path(LocalFileSystem.DEFAULT_FS + huge.getCanonicalPath());
+        FSFindResult first = fsFind.findMatching(FSFindQuery.make(searchPath), 2000L, 10,
+                FileStatusFilters.all());
+        Assert.assertEquals(first.size(), 10);
+        Assert.assertEquals(fetched.get(), 11);
+
+        List<Path> found = Lists.newArrayList(first.candidates());
+        FSFindCursor cursor = first.cursor();
+        while (!cursor.isExhausted()) {
+            FSFindResult batch = fsFind.findMatching(FSFindQuery.make(searchPath, cursor), 2000L,
+                    10, FileStatusFilters.all());
+            found.addAll(batch.candidates());
+            cursor = batch.cursor();
+        }
+        Assert.assertEquals(found, new FSFindImpl(localFS).findMatching(
+                FSFindQuery.make(searchPath), 2000L, FileStatusFilters.all()));
+    }
+
+    @Test(groups = {"unit"})
+    public void testPagedListingResumesAfterLastName() throws Exception {
+        File tmp = createTmpNameSpace();
+        File huge = new File(tmp, "huge");
+        huge.mkdir();
+        for (int i = 0; i < 100; i++) {
+            File file = new File(huge, String.format("file%03d", i));
+            Assert.assertTrue(file.createNewFile());
+            Assert.assertTrue(file.setLastModified(1000L));
+        }
+        PagedLocalFileSystem paged = new PagedLocalFileSystem(localFS, 10);
+        FSFindMetrics metrics = new FSFindMetrics("paged");
+        // every page goes through the wrappers
+        FSFind fsFind = new FSFindImpl(new RateLimitedFileSystem(
+                new MeteredFileSystem(paged, metrics), 0, 0));
+        Path searchPath = new Path(LocalFileSystem.DEFAULT_FS + huge.getCanonicalPath());
+        FSFindResult first = fsFind.findMatching(FSFindQuery.make(searchPath), 2000L, 10,
+                FileStatusFilters.all());
+        Assert.assertEquals(first.size(), 10);
+        // the 11th file is on the second page
+        Assert.assertEquals(paged.pages.get(), 2);
+        Assert.assertEquals(first.rpcCounts().get(FSOperation.LIST_STATUS), 2);
+
+        List<Path> found = Lists.newArrayList(first.candidates());
+        FSFindCursor cursor = first.cursor();
+        while (!cursor.isExhausted()) {
+            FSFindResult batch = fsFind.findMatching(FSFindQuery.make(searchPath, cursor), 2000L,
+                    10, FileStatusFilters.all());
+            Assert.assertTrue(batch.rpcCounts().get(FSOperation.LIST_STATUS) <= 2,
+                    "a batch starts listing after the last name of the one before");
+            found.addAll(batch.candidates());
+            cursor = batch.cursor();
+        }
+        Assert.assertEquals(found, new FSFindImpl(localFS).findMatching(
+                FSFindQuery.make(searchPath), 2000L, FileStatusFilters.all()));
+        Assert.assertEquals(paged.pages.get(), 19);
+        Assert.assertEquals(metrics.calls(FSOperation.LIST_STATUS), 19);
+    }
+
     @Test(groups = {"unit"}, expectedExceptions = IllegalStateException.class)
     public void testInvalidSearch() throws IOException {
         FSFind fsFind = new FSFindImpl(true, localFS);
         fsFind.find(FSFindQuery.make(new Path("/this_cant_exist")), Long.MAX_VALUE);
     }
 
+    /* lists local directories a page at a time, like HDFS */
+    private static final class PagedLocalFileSystem extends FilterFileSystem
+            implements PagedFileSystem {
+        private final int pageSize;
+        private final AtomicInteger pages = new AtomicInteger();
+
+        private PagedLocalFileSystem(FileSystem fs, int pageSize) {
+            super(fs);
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public boolean listsPages() {
+            return true;
+        }
+
+        @Override
+        public Page listPage(Path dir, String after) throws IOException {
+            pages.incrementAndGet();
+            FileStatus[] listing = listStatus(dir);
+            Arrays.sort(listing);
+            List<FileStatus> page = Lists.newArrayList();
+            int remaining = 0;
+            for (FileStatus status : listing) {
+                if (after != null && status.getPath().getName().compareTo(after) <= 0) {
+                    continue;
+                } else if (page.size() < pageSize) {
+                    page.add(status);
+                } else {
+                    remaining++;
+                }
+            }
+            return new Page(page.toArray(new FileStatus[page.size()]), remaining > 0);
+        }
+    }
+
     /**
      * Verify count, value of included items & return the actual result for
      * further assertions.
@@ -228,6 +444,15 @@ public class TestFSFindImpl {
         return actual;
     }
 
+    private FSFindCursor roundTrip(FSFindCursor cursor) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(cursor);
+        out.close();
+        return (FSFindCursor) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))
+                .readObject();
+    }
+
     private File createTmpNameSpace() {
         File tmp = Files.createTempDir();
         tmpDirs.add(tmp);
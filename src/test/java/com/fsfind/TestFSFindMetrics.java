@@ -0,0 +1,121 @@
+package com.fsfind;
+
+import com.google.common.io.Files;
+
+import com.fsfind.FSFindMetrics.Counter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.lang.management.ManagementFactory;
+
+public class TestFSFindMetrics {
+
+    private FileSystem localFS;
+    private File tmp;
+    private FSFindTestUtil findTestUtil = new FSFindTestUtil();
+
+    @BeforeClass(groups = {"unit"})
+    public void setUp() throws Exception {
+        localFS = FileSystem.getLocal(new Configuration());
+        tmp = Files.createTempDir();
+    }
+
+    @AfterClass(groups = {"unit"})
+    public void tearDown() throws Exception {
+        localFS.close();
+        findTestUtil.deleteDir(tmp);
+    }
+
+    @Test(groups = {"unit"})
+    public void testSearchIsCounted() throws Exception {
+        File dir = new File(tmp, "search");
+        touch(new File(dir, "old/a"), 1000L);
+        touch(new File(dir, "old/b"), 1000L);
+        touch(new File(dir, "new/c"), System.currentTimeMillis());
+        touch(new File(dir, "d"), 1000L);
+        FSFindMetrics metrics = new FSFindMetrics("search");
+        FSFindImpl fsFind = new FSFindImpl(true, new MeteredFileSystem(localFS, metrics));
+        fsFind.useMetrics(metrics);
+
+        FSFindQuery query = FSFindQuery.make(new Path(dir.getCanonicalPath()));
+        FSFindResult result = fsFind.findMatching(query, System.currentTimeMillis() - 60000L,
+                Integer.MAX_VALUE, FileStatusFilters.all());
+        Assert.assertEquals(result.size(), 2, "old collapsed, and d");
+        Assert.assertEquals(metrics.get(Counter.DIRECTORIES_VISITED), 3);
+        Assert.assertEquals(metrics.get(Counter.FILES_VISITED), 4);
+        Assert.assertEquals(metrics.get(Counter.COLLAPSES), 1);
+        Assert.assertEquals(metrics.get(Counter.CANDIDATES_EMITTED), 2);
+        Assert.assertEquals(metrics.calls(FSOperation.GET_FILE_STATUS), 1);
+        Assert.assertEquals(metrics.calls(FSOperation.LIST_STATUS), 3);
+
+        // a stream counts the same
+        FSFindIterator iterator = fsFind.streamMatching(query,
+                System.currentTimeMillis() - 60000L, FileStatusFilters.all());
+        while (iterator.hasNext()) {
+            iterator.next();
+        }
+        Assert.assertEquals(metrics.get(Counter.DIRECTORIES_VISITED), 6);
+        Assert.assertEquals(metrics.get(Counter.FILES_VISITED), 8);
+        Assert.assertEquals(metrics.get(Counter.COLLAPSES), 2);
+        Assert.assertEquals(metrics.get(Counter.CANDIDATES_EMITTED), 4);
+    }
+
+    @Test(groups = {"unit"})
+    public void testMissingPathIsNoFailure() throws Exception {
+        FSFindMetrics metrics = new FSFindMetrics("missing");
+        FileSystem fs = new MeteredFileSystem(localFS, metrics);
+        try {
+            fs.getFileStatus(new Path(tmp.getCanonicalPath(), "missing"));
+            Assert.fail();
+        } catch (FileNotFoundException e) {
+            // expected
+        }
+        Assert.assertEquals(metrics.calls(FSOperation.GET_FILE_STATUS), 1);
+        Assert.assertEquals(metrics.failures(FSOperation.GET_FILE_STATUS), 0);
+    }
+
+    @Test(groups = {"unit"})
+    public void testPublishedThroughJmx() throws Exception {
+        try {
+            FSFindMetrics metrics = FSFindMetrics.register("TestFSFindMetrics");
+            metrics.increment(Counter.FILES_VISITED, 42);
+            metrics.record(FSOperation.DELETE, 1000000L, true);
+            metrics.gauge("DeleteQueue", "Deletes waiting", new FSFindMetrics.Gauge() {
+                @Override
+                public long value() {
+                    return 7;
+                }
+            });
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("Hadoop:service=fsfind,name=TestFSFindMetrics");
+            // the attributes are refreshed once per period of the metrics system, 1 second here
+            for (int i = 0; i < 50 && !server.getAttribute(name, "FilesVisited").equals(42L); i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertEquals(server.getAttribute(name, "FilesVisited"), 42L);
+            Assert.assertEquals(server.getAttribute(name, "DeleteNumOps"), 1L);
+            Assert.assertEquals(server.getAttribute(name, "DeleteFailures"), 1L);
+            Assert.assertEquals(server.getAttribute(name, "DeleteQueue"), 7L);
+        } finally {
+            DefaultMetricsSystem.shutdown();
+        }
+    }
+
+    private static void touch(File file, long mtime) throws Exception {
+        Files.createParentDirs(file);
+        Files.touch(file);
+        Assert.assertTrue(file.setLastModified(mtime));
+    }
+}
@@ -0,0 +1,129 @@
+package com.fsfind;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestFSFindOrder {
+
+    private static final long PURGE_TIME = 100000000L;
+
+    private FileSystem localFS;
+    private List<File> tmpDirs = new ArrayList<File>();
+    private FSFindTestUtil findTestUtil = new FSFindTestUtil();
+
+    @BeforeClass(groups = {"unit"})
+    public void setUp() throws Exception {
+        Configuration conf = new Configuration();
+        localFS = FileSystem.getLocal(conf);
+    }
+
+    @AfterClass(groups = {"unit"})
+    public void tearDown() throws Exception {
+        localFS.close();
+        for (File tmpDir : tmpDirs) {
+            findTestUtil.deleteDir(tmpDir);
+        }
+    }
+
+    /* batches of the oldest candidates, deleting each batch before searching the next */
+    @Test(groups = {"unit"})
+    public void testOldestFirst() throws Exception {
+        File root = createTree();
+        FSFindQuery query = FSFindQuery.make(new Path(root.getCanonicalPath()))
+                .withOrder(FSFindOrder.OLDEST_FIRST);
+        List<String> deleted = Lists.newArrayList();
+        FSFindResult batch = new FSFindResult();
+        do {
+            batch = new FSFindImpl(true, localFS).find(FSFindQuery.makeFromResult(
+                    query.searchPath(), batch).withOrder(query.order()), PURGE_TIME, 2);
+            Assert.assertTrue(batch.size() <= 2);
+            for (Path candidate : batch.candidates()) {
+                deleted.add(candidate.getName());
+                Assert.assertTrue(localFS.delete(candidate, true));
+            }
+        } while (!batch.cursor().isExhausted());
+        // b collapses and is as old as its newest file, the recent file stays
+        Assert.assertEquals(deleted, Lists.newArrayList("z", "b", "x", "y"));
+        Assert.assertTrue(new File(root, "c/recent").exists());
+    }
+
+    /* an empty batch selects nothing, like a walk ordered one, yet tells there is more */
+    @Test(groups = {"unit"})
+    public void testEmptyBatch() throws Exception {
+        File root = createTree();
+        FSFindQuery query = FSFindQuery.make(new Path(root.getCanonicalPath()))
+                .withOrder(FSFindOrder.OLDEST_FIRST);
+        FSFindResult result = new FSFindImpl(true, localFS).find(query, PURGE_TIME, 0);
+        Assert.assertEquals(result.size(), 0);
+        Assert.assertFalse(result.cursor().isExhausted());
+    }
+
+    @Test(groups = {"unit"})
+    public void testLargestFirst() throws Exception {
+        File root = createTree();
+        FSFindQuery query = FSFindQuery.make(new Path(root.getCanonicalPath()))
+                .withOrder(FSFindOrder.LARGEST_FIRST);
+        ParallelFSFindImpl parallel = new ParallelFSFindImpl(true, localFS, 4);
+        try {
+            for (FSFind fsFind : new FSFind[]{new FSFindImpl(true, localFS), parallel}) {
+                FSFindResult result = fsFind.find(query, PURGE_TIME, 2);
+                // b holds 300 bytes in two files
+                Assert.assertEquals(result.candidates(), Lists.newArrayList(
+                        localFS.makeQualified(new Path(query.searchPath(), "b")),
+                        localFS.makeQualified(new Path(query.searchPath(), "c/y"))));
+                Assert.assertFalse(result.cursor().isExhausted());
+                Assert.assertEquals(result.reclaimable().files(), 3);
+                Assert.assertEquals(result.reclaimable().bytes(), 550);
+            }
+        } finally {
+            parallel.close();
+        }
+        // a batch big enough for every candidate is the last one
+        Assert.assertTrue(new FSFindImpl(true, localFS).find(query, PURGE_TIME, 10).cursor()
+                .isExhausted());
+    }
+
+    @Test(groups = {"unit"}, expectedExceptions = IllegalArgumentException.class)
+    public void testNamespaceDump() throws Exception {
+        File tmp = Files.createTempDir();
+        tmpDirs.add(tmp);
+        new FSImageFind(true, localFS, new File(tmp, "fsimage.txt")).find(FSFindQuery.make(
+                new Path("/")).withOrder(FSFindOrder.OLDEST_FIRST), PURGE_TIME, 10);
+    }
+
+    /* a/x 100 bytes, b/{1,2} 300 bytes, c/y 250 bytes, c/z 10 bytes, c/recent too new */
+    private File createTree() throws Exception {
+        File tmp = Files.createTempDir();
+        tmpDirs.add(tmp);
+        File root = new File(tmp, "root");
+        createFile(root, "a/x", 100, 3000000);
+        createFile(root, "b/1", 150, 1000000);
+        createFile(root, "b/2", 150, 2000000);
+        createFile(root, "c/y", 250, 4000000);
+        createFile(root, "c/z", 10, 500000);
+        createFile(root, "c/recent", 1, PURGE_TIME + 1000);
+        // the sibling keeps a from collapsing
+        createFile(root, "a/recent", 1, PURGE_TIME + 1000);
+        return root;
+    }
+
+    private static void createFile(File root, String name, int length, long mtime)
+            throws Exception {
+        File file = new File(root, name);
+        Files.createParentDirs(file);
+        Files.write(new byte[length], file);
+        Assert.assertTrue(file.setLastModified(mtime));
+    }
+}
@@ -0,0 +1,64 @@
+package com.fsfind;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+public class TestFSFindResult {
+
+    @Test(groups = {"unit"})
+    public void testPathsRoundTrip() {
+        List<Path> paths = Lists.newArrayList(
+                new Path("file:/tmp/a/b/file1"),
+                new Path("file:/tmp/a/b/file2"),
+                new Path("file:/tmp/a/b"),
+                new Path("file:/"),
+                new Path("hdfs://namenode:8020/tmp/a/b/file1"),
+                new Path("hdfs://other:8020/tmp/a/b/file1"),
+                new Path("file:/tmp/a/b c/\u00e9t\u00e9/\u65e5\u672c/\ud83d\ude00"),
+                new Path("file:/tmp/a/b/file1"));
+        FSFindResult result = new FSFindResult();
+        for (Path path : paths) {
+            result.add(path);
+            result.markExplored(path.getParent() == null ? path : path.getParent());
+        }
+        Assert.assertEquals(result.size(), paths.size());
+        Assert.assertEquals(result.candidates(), paths);
+        Assert.assertEquals(result.getLast(), new Path("file:/tmp/a/b/file1"));
+        Assert.assertTrue(result.candidates().contains(new Path("hdfs://other:8020/tmp/a/b/file1")));
+        Assert.assertFalse(result.candidates().contains(new Path("hdfs://other:8020/tmp/a/b")));
+        Assert.assertFalse(result.candidates().contains(new Path("hdfs://third:8020/tmp/a/b")));
+        Assert.assertEquals(result.explored(), Sets.newHashSet(new Path("file:/tmp/a/b"),
+                new Path("file:/tmp/a"), new Path("file:/"), new Path("hdfs://namenode:8020/tmp/a/b"),
+                new Path("hdfs://other:8020/tmp/a/b"), new Path("file:/tmp/a/b c/\u00e9t\u00e9/\u65e5\u672c")));
+    }
+
+    @Test(groups = {"unit"})
+    public void testRemoveLast() {
+        FSFindResult result = new FSFindResult();
+        for (int i = 0; i < 1000; i++) {
+            result.add(new Path("file:/tmp/dir" + (i % 7) + "/file" + i));
+        }
+        result.removeLast(400);
+        Assert.assertEquals(result.size(), 600);
+        Assert.assertEquals(result.getLast(), new Path("file:/tmp/dir" + (599 % 7) + "/file599"));
+        Assert.assertTrue(result.isLast(new Path("file:/tmp/dir" + (599 % 7) + "/file599")));
+        Assert.assertFalse(result.candidates().contains(new Path("file:/tmp/dir0/file700")));
+        // slots freed by removeLast are reused
+        result.add(new Path("file:/tmp/dir0/file700"));
+        Assert.assertEquals(result.size(), 601);
+        Assert.assertTrue(result.candidates().contains(new Path("file:/tmp/dir0/file700")));
+    }
+
+    @Test(groups = {"unit"}, expectedExceptions = IllegalStateException.class)
+    public void testRemoveTooMany() {
+        FSFindResult result = new FSFindResult();
+        result.add(new Path("file:/tmp/file"));
+        result.removeLast(2);
+    }
+}
@@ -0,0 +1,177 @@
+package com.fsfind;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+public class TestFSImageFind {
+
+    private FileSystem localFS;
+    private List<File> tmpDirs = new ArrayList<File>();
+    private FSFindTestUtil findTestUtil = new FSFindTestUtil();
+
+    @BeforeClass(groups = {"unit"})
+    public void setUp() throws Exception {
+        Configuration conf = new Configuration();
+        localFS = FileSystem.getLocal(conf);
+    }
+
+    @AfterClass(groups = {"unit"})
+    public void tearDown() throws Exception {
+        localFS.close();
+        for (File tmpDir : tmpDirs) {
+            findTestUtil.deleteDir(tmpDir);
+        }
+    }
+
+    /* searching a dump of the namespace finds the same candidates as listing it */
+    @Test(groups = {"unit"})
+    public void testSameResultsAsListing() throws Exception {
+        for (String testFile : new String[]{"find.txt", "findIncludeDirs.txt", "findfilter.txt",
+                "findresumesearch.txt"}) {
+            for (boolean includeDirectories : new boolean[]{true, false}) {
+                File tmp = createTmpNameSpace();
+                FSFindTestUtil.FSFindTestDataFile testData = findTestUtil.createTestBed(testFile,
+                        tmp.getCanonicalPath(), true);
+                File image = dump(tmp);
+                FSFindQuery query = FSFindQuery.make(testData.getPathOrPattern());
+                FSFindResult listed = new FSFindImpl(includeDirectories, localFS).find(query,
+                        testData.getPurgeTime(), Integer.MAX_VALUE, testData.getFilter());
+                FSFindResult dumped = new FSImageFind(includeDirectories, localFS, image).find(
+                        query, testData.getPurgeTime(), Integer.MAX_VALUE, testData.getFilter());
+                // the dump is in inode order rather than name order
+                Assert.assertTrue(Sets.newHashSet(dumped.candidates()).equals(
+                        Sets.newHashSet(listed.candidates())), testFile);
+                Assert.assertEquals(dumped.candidates().size(), listed.candidates().size());
+                Assert.assertTrue(dumped.explored().equals(listed.explored()), testFile);
+                Assert.assertEquals(dumped.rpcCounts().total(), 0);
+                Assert.assertTrue(dumped.cursor().isExhausted());
+            }
+        }
+    }
+
+    /* the dump doesn't change as candidates get deleted, batches resume from the offset */
+    @Test(groups = {"unit"})
+    public void testBatching() throws Exception {
+        File tmp = createTmpNameSpace();
+        FSFindTestUtil.FSFindTestDataFile testData = findTestUtil.createTestBed(
+                "findresumesearch.txt", tmp.getCanonicalPath(), true);
+        File image = dump(tmp);
+        FSFind fsFind = new FSImageFind(true, localFS, image);
+        Set<Path> expected = Sets.newHashSet(fsFind.find(
+                FSFindQuery.make(testData.getPathOrPattern()), testData.getPurgeTime()));
+
+        Set<Path> seen = Sets.newHashSet();
+        FSFindResult batch = new FSFindResult();
+        do {
+            batch = fsFind.find(FSFindQuery.makeFromResult(testData.getPathOrPattern(), batch),
+                    testData.getPurgeTime(), 2);
+            Assert.assertTrue(batch.size() <= 2, "Batch should never exceed its size");
+            for (Path candidate : batch.candidates()) {
+                Assert.assertTrue(seen.add(candidate), candidate + " returned twice");
+                localFS.delete(candidate, true);
+            }
+        } while (!batch.cursor().isExhausted());
+        Assert.assertEquals(seen, expected);
+
+        /* same survivors as the batching test of the listing search */
+        List<File> filesPostDelete = new ArrayList<File>();
+        findTestUtil.allFiles(new File(testData.getPathOrPattern().toUri().getPath()),
+                filesPostDelete);
+        Assert.assertEquals(filesPostDelete.size(), 4);
+    }
+
+    /* the image viewer writes minutes in local time, and a header line */
+    @Test(groups = {"unit"})
+    public void testImageViewerFormat() throws Exception {
+        File tmp = createTmpNameSpace();
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        long purgeTime = format.parse("2014-06-10 00:00").getTime();
+        File image = new File(tmp, "fsimage.txt");
+        Files.write("Path\tReplication\tModificationTime\tAccessTime\tPreferredBlockSize\t" +
+                "BlocksCount\tFileSize\tNSQUOTA\tDSQUOTA\tPermission\tUserName\tGroupName\n" +
+                "/\t0\t2014-06-10 10:00\t1970-01-01 00:00\t0\t0\t0\t-1\t-1\tdrwxr-xr-x\thdfs\thdfs\n" +
+                "/data\t0\t2014-06-10 10:00\t1970-01-01 00:00\t0\t0\t0\t-1\t-1\tdrwxr-xr-x\thdfs\thdfs\n" +
+                "/data/old\t0\t2014-06-09 10:00\t1970-01-01 00:00\t0\t0\t0\t-1\t-1\tdrwxr-xr-x\thdfs\thdfs\n" +
+                "/data/old/part-0\t3\t2014-06-09 23:59\t2014-06-09 23:59\t134217728\t1\t42\t0\t0\t-rw-r--r--\thdfs\thdfs\n" +
+                "/data/new\t0\t2014-06-10 10:00\t1970-01-01 00:00\t0\t0\t0\t-1\t-1\tdrwxr-xr-x\thdfs\thdfs\n" +
+                "/data/new/part-0\t3\t2014-06-09 10:00\t2014-06-09 10:00\t134217728\t1\t42\t0\t0\t-rw-r--r--\thdfs\thdfs\n" +
+                "/data/new/part-1\t3\t2014-06-10 00:00\t2014-06-10 00:00\t134217728\t1\t42\t0\t0\t-rw-r--r--\thdfs\thdfs\n",
+                image, Charsets.UTF_8);
+        List<Path> candidates = new FSImageFind(true, localFS, image).find(
+                FSFindQuery.make(new Path("/data")), purgeTime);
+        Assert.assertEquals(Sets.newHashSet(candidates), Sets.newHashSet(
+                localFS.makeQualified(new Path("/data/old")),
+                localFS.makeQualified(new Path("/data/new/part-0"))));
+
+        // the files under the included directory count as well, a look ahead doesn't
+        for (int batchSize : new int[]{1, Integer.MAX_VALUE}) {
+            FSFindResult result = new FSImageFind(true, localFS, image).findMatching(
+                    FSFindQuery.make(new Path("/data")), purgeTime, batchSize,
+                    FileStatusFilters.all());
+            Assert.assertEquals(result.reclaimable().files(), batchSize == 1 ? 1 : 2);
+            Assert.assertEquals(result.reclaimable().replicatedBytes(), batchSize == 1 ? 126 : 252);
+        }
+
+        // the filter sees the size column, rejected files keep their directory too
+        Assert.assertTrue(new FSImageFind(true, localFS, image).findMatching(
+                FSFindQuery.make(new Path("/data")), purgeTime,
+                FileStatusFilters.sizeAtLeast(100)).isEmpty());
+    }
+
+    @Test(groups = {"unit"}, expectedExceptions = IllegalStateException.class)
+    public void testInvalidSearch() throws Exception {
+        File image = dump(createTmpNameSpace());
+        new FSImageFind(true, localFS, image).find(
+                FSFindQuery.make(new Path("/this_cant_exist")), Long.MAX_VALUE);
+    }
+
+    /* dump the tree under given directory, in the layout of the image viewer */
+    private File dump(File dir) throws IOException {
+        File image = File.createTempFile("fsimage", ".txt", createTmpNameSpace());
+        Writer writer = Files.newWriter(image, Charsets.UTF_8);
+        try {
+            writer.write("Path\tReplication\tModificationTime\tAccessTime\tPreferredBlockSize\t" +
+                    "BlocksCount\tFileSize\tNSQUOTA\tDSQUOTA\tPermission\tUserName\tGroupName\n");
+            dump(localFS.getFileStatus(new Path(dir.getCanonicalPath())), writer);
+        } finally {
+            writer.close();
+        }
+        return image;
+    }
+
+    private void dump(FileStatus status, Writer writer) throws IOException {
+        writer.write(String.format("%s\t%d\t%d\t%d\t0\t0\t%d\t-1\t-1\t%s%s\t%s\t%s\n",
+                status.getPath().toUri().getPath(), status.getReplication(),
+                status.getModificationTime(), status.getAccessTime(), status.getLen(),
+                status.isDirectory() ? "d" : "-", status.getPermission(), "user", "group"));
+        if (status.isDirectory()) {
+            for (FileStatus child : localFS.listStatus(status.getPath())) {
+                dump(child, writer);
+            }
+        }
+    }
+
+    private File createTmpNameSpace() {
+        File tmp = Files.createTempDir();
+        tmpDirs.add(tmp);
+        return tmp;
+    }
+}
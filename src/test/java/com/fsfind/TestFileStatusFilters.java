@@ -0,0 +1,133 @@
+package com.fsfind;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestFileStatusFilters {
+
+    private FileSystem localFS;
+    private List<File> tmpDirs = new ArrayList<File>();
+    private FSFindTestUtil findTestUtil = new FSFindTestUtil();
+
+    @BeforeClass(groups = {"unit"})
+    public void setUp() throws Exception {
+        Configuration conf = new Configuration();
+        localFS = FileSystem.getLocal(conf);
+    }
+
+    @AfterClass(groups = {"unit"})
+    public void tearDown() throws Exception {
+        localFS.close();
+        for (File tmpDir : tmpDirs) {
+            findTestUtil.deleteDir(tmpDir);
+        }
+    }
+
+    @Test(groups = {"unit"})
+    public void testPredicates() {
+        FileStatus file = status(false, 100, (short) 3, (short) 0644, "etl", "grid");
+        FileStatus dir = status(true, 0, (short) 0, (short) 0777, "ops", "grid");
+
+        Assert.assertTrue(FileStatusFilters.sizeAtLeast(100).accept(file));
+        Assert.assertFalse(FileStatusFilters.sizeAtLeast(101).accept(file));
+        Assert.assertTrue(FileStatusFilters.sizeAtMost(100).accept(file));
+        Assert.assertFalse(FileStatusFilters.sizeAtMost(99).accept(file));
+        Assert.assertTrue(FileStatusFilters.sizeAtLeast(101).accept(dir),
+                "directories have no size");
+        Assert.assertTrue(FileStatusFilters.replicationAtLeast((short) 3).accept(file));
+        Assert.assertFalse(FileStatusFilters.replicationAtLeast((short) 4).accept(file));
+        Assert.assertTrue(FileStatusFilters.replicationAtLeast((short) 4).accept(dir));
+
+        FileStatusFilter etl = FileStatusFilters.ownedBy("etl");
+        FileStatusFilter ops = FileStatusFilters.ownedBy("ops");
+        Assert.assertTrue(etl.accept(file));
+        Assert.assertFalse(etl.accept(dir));
+        Assert.assertTrue(FileStatusFilters.onFiles(etl).accept(dir));
+        Assert.assertTrue(FileStatusFilters.inGroup("grid").accept(dir));
+        FileStatusFilter worldWritable = FileStatusFilters.permissionHasAll(
+                new FsPermission((short) 0002));
+        Assert.assertFalse(worldWritable.accept(file));
+        Assert.assertTrue(worldWritable.accept(dir));
+
+        FileStatusFilter small = FileStatusFilters.sizeAtLeast(10);
+        FileStatusFilter large = FileStatusFilters.sizeAtLeast(1000);
+        Assert.assertTrue(FileStatusFilters.and(etl, small).accept(file));
+        Assert.assertFalse(FileStatusFilters.and(etl, large).accept(file));
+        Assert.assertTrue(FileStatusFilters.or(ops, small).accept(file));
+        Assert.assertFalse(FileStatusFilters.or(ops, large).accept(file));
+        Assert.assertTrue(FileStatusFilters.not(ops).accept(file));
+    }
+
+    @Test(groups = {"unit"})
+    public void testPathFilterAdapter() {
+        PathFilter noTmp = new PathFilter() {
+            @Override
+            public boolean accept(Path path) {
+                return !path.getName().equals("tmp");
+            }
+        };
+        FileStatusFilter adapted = FileStatusFilters.of(noTmp);
+        Assert.assertFalse(adapted.accept(new FileStatus(0, true, 0, 0, 0, new Path("/a/tmp"))));
+        Assert.assertTrue(adapted.accept(new FileStatus(0, false, 0, 0, 0, new Path("/a/tmp"))),
+                "path filters only apply to directories");
+        Assert.assertEquals(FileStatusFilters.of(noTmp), adapted);
+        Assert.assertSame(FileStatusFilters.of(FSFindFilters.ACCEPTS_ALL),
+                FileStatusFilters.all());
+    }
+
+    /* the filter sees the listed status, small files are left alone without any extra RPC */
+    @Test(groups = {"unit"})
+    public void testSearchBySize() throws Exception {
+        File tmp = Files.createTempDir();
+        tmpDirs.add(tmp);
+        File root = new File(tmp, "root");
+        for (String name : new String[]{"a/big", "a/small", "b/big", "c/small"}) {
+            File file = new File(root, name);
+            Files.createParentDirs(file);
+            Files.write(new byte[name.endsWith("big") ? 1024 : 1], file);
+            file.setLastModified(0);
+        }
+        FSFindQuery query = FSFindQuery.make(new Path(root.getCanonicalPath()));
+        FileStatusFilter bigFiles = FileStatusFilters.sizeAtLeast(1024);
+        List<Path> expected = Lists.newArrayList(
+                localFS.makeQualified(new Path(root.getCanonicalPath(), "a/big")),
+                localFS.makeQualified(new Path(root.getCanonicalPath(), "b")));
+
+        FSFindResult result = new FSFindImpl(true, localFS).findMatching(query, 1000,
+                Integer.MAX_VALUE, bigFiles);
+        Assert.assertEquals(result.candidates(), expected);
+        Assert.assertEquals(result.rpcCounts().get(FSOperation.GET_FILE_STATUS), 1);
+
+        // statuses served from a listing index carry enough for the filter too
+        File indexFile = new File(tmp, "listings");
+        FileStatusFilter mine = FileStatusFilters.and(bigFiles,
+                FileStatusFilters.ownedBy(System.getProperty("user.name")));
+        for (int run = 0; run < 2; run++) {
+            ListingIndex index = new ListingIndex(indexFile, 0);
+            Assert.assertEquals(new FSFindImpl(true, localFS, index).findMatching(query, 1000,
+                    Integer.MAX_VALUE, mine).candidates(), expected);
+            index.complete();
+        }
+    }
+
+    private static FileStatus status(boolean isDir, long length, short replication,
+                                     short permission, String owner, String group) {
+        return new FileStatus(length, isDir, replication, 0, 0, 0,
+                new FsPermission(permission), owner, group, new Path("/x"));
+    }
+}
@@ -0,0 +1,186 @@
+package com.fsfind;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestListingIndex {
+
+    private FileSystem localFS;
+    private List<File> tmpDirs = new ArrayList<File>();
+    private FSFindTestUtil findTestUtil = new FSFindTestUtil();
+
+    @BeforeClass(groups = {"unit"})
+    public void setUp() throws Exception {
+        Configuration conf = new Configuration();
+        localFS = FileSystem.getLocal(conf);
+    }
+
+    @AfterClass(groups = {"unit"})
+    public void tearDown() throws Exception {
+        localFS.close();
+        for (File tmpDir : tmpDirs) {
+            findTestUtil.deleteDir(tmpDir);
+        }
+    }
+
+    /* a second search over an unchanged tree lists nothing, and finds the same candidates */
+    @Test(groups = {"unit"})
+    public void testUnchangedTree() throws Exception {
+        for (String testFile : new String[]{"find.txt", "findIncludeDirs.txt", "findfilter.txt"}) {
+            File tmp = createTmpNameSpace();
+            FSFindTestUtil.FSFindTestDataFile testData = findTestUtil.createTestBed(testFile,
+                    tmp.getCanonicalPath(), true);
+            File indexFile = new File(createTmpNameSpace(), "listings");
+
+            ListingIndex index = new ListingIndex(indexFile, 0);
+            FSFindResult first = find(index, testData);
+            Assert.assertEquals(index.hits(), 0);
+            Assert.assertEquals(index.misses(), first.rpcCounts().get(FSOperation.LIST_STATUS));
+            index.complete();
+
+            index = new ListingIndex(indexFile, 0);
+            FSFindResult second = find(index, testData);
+            index.complete();
+            Assert.assertEquals(second.rpcCounts().get(FSOperation.LIST_STATUS), 0, testFile);
+            Assert.assertEquals(index.misses(), 0, testFile);
+            Assert.assertEquals(second.candidates(), first.candidates(), testFile);
+            Assert.assertTrue(second.explored().equals(first.explored()), testFile);
+
+            FSFindResult streamed = new FSFindResult();
+            index = new ListingIndex(indexFile, 0);
+            FSFindIterator iterator = new FSFindImpl(true, localFS, index).stream(
+                    FSFindQuery.make(testData.getPathOrPattern()), testData.getPurgeTime(),
+                    testData.getFilter());
+            while (iterator.hasNext()) {
+                streamed.add(iterator.next());
+            }
+            index.complete();
+            Assert.assertEquals(iterator.rpcCounts().get(FSOperation.LIST_STATUS), 0, testFile);
+            Assert.assertEquals(streamed.candidates(), first.candidates(), testFile);
+        }
+    }
+
+    /* a directory whose mtime changed is listed again, the others are still served */
+    @Test(groups = {"unit"})
+    public void testModifiedDirectory() throws Exception {
+        File tmp = createTmpNameSpace();
+        File root = new File(tmp, "root");
+        File changed = new File(root, "changed");
+        File unchanged = new File(root, "unchanged");
+        Assert.assertTrue(changed.mkdirs() && unchanged.mkdirs());
+        Files.touch(new File(unchanged, "old"));
+        new File(unchanged, "old").setLastModified(1000);
+        File indexFile = new File(tmp, "listings");
+        FSFindQuery query = FSFindQuery.make(new Path(root.getCanonicalPath()));
+
+        ListingIndex index = new ListingIndex(indexFile, 0);
+        new FSFindImpl(false, localFS, index).find(query, 5000);
+        index.complete();
+
+        Files.touch(new File(changed, "new"));
+        new File(changed, "new").setLastModified(1000);
+        changed.setLastModified(changed.lastModified() + 60000);
+
+        index = new ListingIndex(indexFile, 0);
+        List<Path> candidates = new FSFindImpl(false, localFS, index).find(query, 5000);
+        index.complete();
+        Assert.assertEquals(index.misses(), 1);
+        Assert.assertEquals(index.hits(), 2);
+        Assert.assertEquals(Lists.newArrayList(candidates), Lists.newArrayList(
+                localFS.makeQualified(new Path(new File(changed, "new").getCanonicalPath())),
+                localFS.makeQualified(new Path(new File(unchanged, "old").getCanonicalPath()))));
+    }
+
+    /* revalidation lists unchanged directories, and notices when they were stale */
+    @Test(groups = {"unit"})
+    public void testRevalidation() throws Exception {
+        File tmp = createTmpNameSpace();
+        File root = new File(tmp, "root");
+        Assert.assertTrue(root.mkdirs());
+        File file = new File(root, "appended");
+        Files.touch(file);
+        file.setLastModified(1000);
+        File indexFile = new File(tmp, "listings");
+        FSFindQuery query = FSFindQuery.make(new Path(root.getCanonicalPath()));
+
+        ListingIndex index = new ListingIndex(indexFile, 0);
+        Assert.assertEquals(new FSFindImpl(false, localFS, index).find(query, 5000).size(), 1);
+        index.complete();
+
+        // an append changes the file but not its directory
+        long dirMtime = root.lastModified();
+        file.setLastModified(10000);
+        root.setLastModified(dirMtime);
+
+        index = new ListingIndex(indexFile, 0);
+        Assert.assertEquals(new FSFindImpl(false, localFS, index).find(query, 5000).size(), 1);
+        index.complete();
+        Assert.assertEquals(index.hits(), 1);
+
+        index = new ListingIndex(indexFile, 1);
+        Assert.assertEquals(new FSFindImpl(false, localFS, index).find(query, 5000).size(), 0);
+        index.complete();
+        Assert.assertEquals(index.hits(), 0);
+        Assert.assertEquals(index.revalidations(), 1);
+        Assert.assertEquals(index.stale(), 1);
+    }
+
+    /* the listings of a search which didn't complete don't replace the index */
+    @Test(groups = {"unit"})
+    public void testIncompleteSearchKeepsIndex() throws Exception {
+        File tmp = createTmpNameSpace();
+        File root = new File(tmp, "root");
+        Assert.assertTrue(new File(root, "dir").mkdirs());
+        File indexFile = new File(tmp, "listings");
+        FSFindQuery query = FSFindQuery.make(new Path(root.getCanonicalPath()));
+
+        ListingIndex index = new ListingIndex(indexFile, 0);
+        new FSFindImpl(false, localFS, index).find(query, 5000);
+        index.complete();
+        byte[] completed = Files.toByteArray(indexFile);
+
+        index = new ListingIndex(indexFile, 0);
+        new FSFindImpl(false, localFS, index).find(FSFindQuery.make(
+                new Path(new File(root, "dir").getCanonicalPath())), 5000);
+        index.close();
+        Assert.assertEquals(Files.toByteArray(indexFile), completed);
+        Assert.assertFalse(new File(indexFile.getPath() + ".next").exists());
+
+        index = new ListingIndex(indexFile, 0);
+        new FSFindImpl(false, localFS, index).find(query, 5000);
+        index.complete();
+        Assert.assertEquals(index.hits(), 2);
+        index.close(); // once complete, closing again changes nothing
+        Assert.assertTrue(indexFile.exists());
+    }
+
+    @Test(groups = {"unit"}, expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidRevalidationRate() throws Exception {
+        new ListingIndex(new File(createTmpNameSpace(), "listings"), 1.5);
+    }
+
+    private FSFindResult find(ListingIndex index, FSFindTestUtil.FSFindTestDataFile testData)
+            throws Exception {
+        return new FSFindImpl(true, localFS, index).find(
+                FSFindQuery.make(testData.getPathOrPattern()), testData.getPurgeTime(),
+                Integer.MAX_VALUE, testData.getFilter());
+    }
+
+    private File createTmpNameSpace() {
+        File tmp = Files.createTempDir();
+        tmpDirs.add(tmp);
+        return tmp;
+    }
+}
@@ -0,0 +1,110 @@
+package com.fsfind;
+
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+public class TestParallelFSFindImpl {
+
+    private FileSystem localFS;
+    private List<File> tmpDirs = new ArrayList<File>();
+    private FSFindTestUtil findTestUtil = new FSFindTestUtil();
+
+    @BeforeClass(groups = {"unit"})
+    public void setUp() throws Exception {
+        Configuration conf = new Configuration();
+        localFS = FileSystem.getLocal(conf);
+    }
+
+    @AfterClass(groups = {"unit"})
+    public void tearDown() throws Exception {
+        localFS.close();
+        for (File tmpDir : tmpDirs) {
+            findTestUtil.deleteDir(tmpDir);
+        }
+    }
+
+    @Test(groups = {"unit"})
+    public void testSameResultsAsSerial() throws Exception {
+        for (String testFile : new String[]{"find.txt", "findIncludeDirs.txt", "findfilter.txt",
+                "findresumesearch.txt"}) {
+            File tmp = createTmpNameSpace();
+            FSFindTestUtil.FSFindTestDataFile testData = findTestUtil.createTestBed(testFile,
+                    tmp.getCanonicalPath(), true);
+            FSFindQuery query = FSFindQuery.make(testData.getPathOrPattern());
+            FSFindResult serial = new FSFindImpl(true, localFS).find(query,
+                    testData.getPurgeTime(), Integer.MAX_VALUE, testData.getFilter());
+            ParallelFSFindImpl fsFind = new ParallelFSFindImpl(true, localFS, 4);
+            try {
+                FSFindResult parallel = fsFind.find(query, testData.getPurgeTime(),
+                        Integer.MAX_VALUE, testData.getFilter());
+                Assert.assertEquals(parallel.candidates(), serial.candidates(), testFile);
+                // explored is a set, its iteration order depends on the order paths were added in
+                Assert.assertTrue(parallel.explored().equals(serial.explored()), testFile);
+                Assert.assertEquals(parallel.rpcCounts().toString(),
+                        serial.rpcCounts().toString(), testFile);
+            } finally {
+                fsFind.close();
+            }
+        }
+    }
+
+    @Test(groups = {"unit"})
+    public void testBatching() throws Exception {
+        File tmp = createTmpNameSpace();
+        FSFindTestUtil.FSFindTestDataFile testData = findTestUtil.createTestBed("findresumesearch" +
+                ".txt", tmp.getCanonicalPath(), true);
+        ParallelFSFindImpl fsFind = new ParallelFSFindImpl(true, localFS, 4);
+        try {
+            Set<Path> seen = Sets.newHashSet();
+            FSFindResult batch = new FSFindResult();
+            do {
+                batch = fsFind.find(FSFindQuery.makeFromResult(testData.getPathOrPattern(), batch),
+                        testData.getPurgeTime(), 2);
+                Assert.assertTrue(batch.size() <= 2, "Batch should never exceed its size");
+                for (Path candidate : batch.candidates()) {
+                    Assert.assertTrue(seen.add(candidate), candidate + " returned twice");
+                    localFS.delete(candidate, true);
+                }
+            } while (!batch.cursor().isExhausted());
+        } finally {
+            fsFind.close();
+        }
+
+        /* same survivors as the serial batching test */
+        List<File> filesPostDelete = new ArrayList<File>();
+        findTestUtil.allFiles(new File(testData.getPathOrPattern().toUri().getPath()),
+                filesPostDelete);
+        Assert.assertEquals(filesPostDelete.size(), 4);
+    }
+
+    @Test(groups = {"unit"}, expectedExceptions = IllegalStateException.class)
+    public void testInvalidSearch() throws IOException {
+        ParallelFSFindImpl fsFind = new ParallelFSFindImpl(localFS);
+        try {
+            fsFind.find(FSFindQuery.make(new Path("/this_cant_exist")), Long.MAX_VALUE);
+        } finally {
+            fsFind.close();
+        }
+    }
+
+    private File createTmpNameSpace() {
+        File tmp = Files.createTempDir();
+        tmpDirs.add(tmp);
+        return tmp;
+    }
+
+}
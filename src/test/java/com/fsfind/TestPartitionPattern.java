@@ -0,0 +1,152 @@
+package com.fsfind;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import com.fsfind.PartitionPattern.Age;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+public class TestPartitionPattern {
+
+    private FileSystem localFS;
+    private List<File> tmpDirs = new ArrayList<File>();
+    private FSFindTestUtil findTestUtil = new FSFindTestUtil();
+
+    @BeforeClass(groups = {"unit"})
+    public void setUp() throws Exception {
+        Configuration conf = new Configuration();
+        localFS = FileSystem.getLocal(conf);
+    }
+
+    @AfterClass(groups = {"unit"})
+    public void tearDown() throws Exception {
+        localFS.close();
+        for (File tmpDir : tmpDirs) {
+            findTestUtil.deleteDir(tmpDir);
+        }
+    }
+
+    @Test(groups = {"unit"})
+    public void testAge() throws Exception {
+        PartitionPattern pattern = PartitionPattern.compile("dt={yyyy-MM-dd}/hr={HH}");
+        long purgeTime = utc("2014-06-10 03:30");
+        Assert.assertEquals(pattern.age(new Path("/data/dt=2014-06-09"), purgeTime), Age.OLDER);
+        Assert.assertEquals(pattern.age(new Path("/data/dt=2014-06-10"), purgeTime), Age.UNKNOWN);
+        Assert.assertEquals(pattern.age(new Path("/data/dt=2014-06-11"), purgeTime), Age.NEWER);
+        Assert.assertEquals(pattern.age(new Path("/data/dt=2014-06-10/hr=02"), purgeTime),
+                Age.OLDER);
+        Assert.assertEquals(pattern.age(new Path("/data/dt=2014-06-10/hr=03"), purgeTime),
+                Age.UNKNOWN);
+        Assert.assertEquals(pattern.age(new Path("/data/dt=2014-06-10/hr=04"), purgeTime),
+                Age.NEWER);
+        // the hour only counts under its day
+        Assert.assertEquals(pattern.age(new Path("/data/hr=02"), purgeTime), Age.UNKNOWN);
+        // names which don't round trip aren't partitions
+        Assert.assertEquals(pattern.age(new Path("/data/dt=2014-6-9"), purgeTime), Age.UNKNOWN);
+        Assert.assertEquals(pattern.age(new Path("/data/dt=2014-06-09.tmp"), purgeTime),
+                Age.UNKNOWN);
+        Assert.assertEquals(pattern.age(new Path("/data/dt=2014-02-30"), purgeTime), Age.UNKNOWN);
+
+        PartitionPattern nested = PartitionPattern.compile("{yyyy}/{MM}/{dd}");
+        Assert.assertEquals(nested.age(new Path("/logs/2013"), purgeTime), Age.OLDER);
+        Assert.assertEquals(nested.age(new Path("/logs/2014"), purgeTime), Age.UNKNOWN);
+        Assert.assertEquals(nested.age(new Path("/logs/2014/05"), purgeTime), Age.OLDER);
+        Assert.assertEquals(nested.age(new Path("/logs/2014/06/09"), purgeTime), Age.OLDER);
+        Assert.assertEquals(nested.age(new Path("/logs/2014/06/11"), purgeTime), Age.NEWER);
+        Assert.assertEquals(nested.age(new Path("/logs/2014/06/11/extra"), purgeTime),
+                Age.UNKNOWN);
+    }
+
+    @Test(groups = {"unit"})
+    public void testInvalidPatterns() {
+        for (String invalid : new String[]{"", "dt={MM-dd}", "{yyyy}/{dd}", "{yyyy-MM}/{MM}",
+                "{yyyy}//{MM}", "dt={yyyy", "{yyyy}/{EEE}", "{yyyy}/x={'MM'}"}) {
+            try {
+                PartitionPattern.compile(invalid);
+                Assert.fail(invalid + " should be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    /* old partitions are included without being listed, new ones are skipped without an RPC */
+    @Test(groups = {"unit"})
+    public void testPruning() throws Exception {
+        File tmp = Files.createTempDir();
+        tmpDirs.add(tmp);
+        long purgeTime = utc("2014-06-10 12:00");
+        for (String dir : new String[]{"dt=2014-06-08/hr=00", "dt=2014-06-08/hr=01",
+                "dt=2014-06-10/hr=11", "dt=2014-06-10/hr=12", "dt=2014-06-11/hr=00"}) {
+            File file = new File(new File(tmp, dir), "part-0");
+            Files.createParentDirs(file);
+            Files.touch(file);
+            // every file is old, the names decide
+            file.setLastModified(0);
+        }
+        File unpartitioned = new File(tmp, "_logs");
+        Assert.assertTrue(unpartitioned.mkdir());
+        unpartitioned.setLastModified(0);
+
+        Path root = new Path(tmp.getCanonicalPath());
+        FSFindQuery query = FSFindQuery.make(root).withPartitions(ImmutableList.of(
+                PartitionPattern.compile("dt={yyyy-MM-dd}/hr={HH}")));
+        List<Path> expected = Lists.newArrayList(
+                localFS.makeQualified(new Path(root, "_logs")),
+                localFS.makeQualified(new Path(root, "dt=2014-06-08")),
+                localFS.makeQualified(new Path(root, "dt=2014-06-10/hr=11")));
+
+        FSFindResult serial = new FSFindImpl(true, localFS).find(query, purgeTime,
+                Integer.MAX_VALUE, FSFindFilters.ACCEPTS_ALL);
+        Assert.assertEquals(serial.candidates(), expected);
+        // the root, _logs and dt=2014-06-10 are listed, the other partitions aren't
+        Assert.assertEquals(serial.rpcCounts().get(FSOperation.LIST_STATUS), 3);
+
+        ParallelFSFindImpl parallel = new ParallelFSFindImpl(true, localFS, 4);
+        try {
+            Assert.assertEquals(parallel.find(query, purgeTime, Integer.MAX_VALUE,
+                    FSFindFilters.ACCEPTS_ALL).candidates(), expected);
+        } finally {
+            parallel.close();
+        }
+
+        List<Path> streamed = Lists.newArrayList();
+        FSFindIterator iterator = new FSFindImpl(true, localFS).stream(query, purgeTime,
+                FSFindFilters.ACCEPTS_ALL);
+        while (iterator.hasNext()) {
+            streamed.add(iterator.next());
+        }
+        Assert.assertEquals(streamed, expected);
+
+        // batches stop in front of a partition and resume at it
+        List<Path> batched = Lists.newArrayList();
+        FSFindResult batch = new FSFindResult();
+        do {
+            batch = new FSFindImpl(true, localFS).find(FSFindQuery.makeFromResult(root, batch)
+                    .withPartitions(query.partitions()), purgeTime, 1, FSFindFilters.ACCEPTS_ALL);
+            Assert.assertTrue(batch.size() <= 1);
+            batched.addAll(batch.candidates());
+        } while (!batch.cursor().isExhausted());
+        Assert.assertEquals(batched, expected);
+    }
+
+    private static long utc(String time) throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.parse(time).getTime();
+    }
+}
@@ -0,0 +1,56 @@
+package com.fsfind;
+
+import com.google.common.io.Files;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+
+public class TestRateLimitedFileSystem {
+
+    private FileSystem localFS;
+    private File tmp;
+    private FSFindTestUtil findTestUtil = new FSFindTestUtil();
+
+    @BeforeClass(groups = {"unit"})
+    public void setUp() throws Exception {
+        localFS = FileSystem.getLocal(new Configuration());
+        tmp = Files.createTempDir();
+    }
+
+    @AfterClass(groups = {"unit"})
+    public void tearDown() throws Exception {
+        localFS.close();
+        findTestUtil.deleteDir(tmp);
+    }
+
+    @Test(groups = {"unit"})
+    public void testReadsAndWritesHaveTheirOwnBudget() throws Exception {
+        Path dir = new Path(tmp.getCanonicalPath());
+        RateLimitedFileSystem fs = new RateLimitedFileSystem(localFS, 20, 0);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 11; i++) {
+            fs.exists(dir); // a getFileStatus call
+        }
+        // the first read goes right away, the next 10 are 50 ms apart
+        Assert.assertTrue(System.currentTimeMillis() - start >= 450);
+
+        start = System.currentTimeMillis();
+        for (int i = 0; i < 11; i++) {
+            Path sub = new Path(dir, "sub" + i);
+            fs.mkdirs(sub);
+            fs.delete(sub, true);
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 450, "writes have no limit");
+
+        fs.setRates(0, 20);
+        Assert.assertEquals(fs.readsPerSecond(), 0.0);
+        Assert.assertEquals(fs.writesPerSecond(), 20.0);
+    }
+}
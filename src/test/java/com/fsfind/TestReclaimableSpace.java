@@ -0,0 +1,101 @@
+package com.fsfind;
+
+import com.google.common.io.Files;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestReclaimableSpace {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final long PURGE_TIME = 1000 * DAY;
+
+    private FileSystem localFS;
+    private List<File> tmpDirs = new ArrayList<File>();
+    private FSFindTestUtil findTestUtil = new FSFindTestUtil();
+
+    @BeforeClass(groups = {"unit"})
+    public void setUp() throws Exception {
+        Configuration conf = new Configuration();
+        localFS = FileSystem.getLocal(conf);
+    }
+
+    @AfterClass(groups = {"unit"})
+    public void tearDown() throws Exception {
+        localFS.close();
+        for (File tmpDir : tmpDirs) {
+            findTestUtil.deleteDir(tmpDir);
+        }
+    }
+
+    /* every way of searching accounts for the same files, whether they collapse or not */
+    @Test(groups = {"unit"})
+    public void testAccounting() throws Exception {
+        File tmp = Files.createTempDir();
+        tmpDirs.add(tmp);
+        createFile(tmp, "a/x", 10, PURGE_TIME - DAY / 2);
+        createFile(tmp, "a/y", 20, PURGE_TIME - 3 * DAY);
+        createFile(tmp, "b/x", 30, PURGE_TIME - 400 * DAY);
+        createFile(tmp, "b/new", 1000, PURGE_TIME + DAY);
+        FSFindQuery query = FSFindQuery.make(new Path(tmp.getCanonicalPath()));
+
+        FSFindResult serial = new FSFindImpl(true, localFS).findMatching(query, PURGE_TIME,
+                Integer.MAX_VALUE, FileStatusFilters.all());
+        assertAccount(serial.reclaimable());
+
+        ParallelFSFindImpl parallel = new ParallelFSFindImpl(true, localFS, 4);
+        try {
+            assertAccount(parallel.findMatching(query, PURGE_TIME, Integer.MAX_VALUE,
+                    FileStatusFilters.all()).reclaimable());
+        } finally {
+            parallel.close();
+        }
+
+        FSFindIterator iterator = new FSFindImpl(true, localFS).stream(query, PURGE_TIME);
+        while (iterator.hasNext()) {
+            iterator.next();
+        }
+        assertAccount(iterator.reclaimable());
+
+        ReclaimableSpace batched = new ReclaimableSpace();
+        FSFindResult batch = new FSFindResult();
+        do {
+            batch = new FSFindImpl(true, localFS).findMatching(FSFindQuery.makeFromResult(
+                    query.searchPath(), batch), PURGE_TIME, 1, FileStatusFilters.all());
+            batched.add(batch.reclaimable());
+        } while (!batch.cursor().isExhausted());
+        assertAccount(batched);
+        Assert.assertEquals(serial.rpcCounts().get(FSOperation.GET_FILE_STATUS), 1);
+    }
+
+    private static void assertAccount(ReclaimableSpace space) {
+        Assert.assertEquals(space.files(), 3);
+        Assert.assertEquals(space.bytes(), 60);
+        // the local file system has a replication of 1
+        Assert.assertEquals(space.replicatedBytes(), 60);
+        Assert.assertEquals(space.unlistedDirectories(), 0);
+        Assert.assertTrue(Arrays.equals(space.ageHistogram(), new long[]{1, 1, 0, 0, 0, 1}),
+                Arrays.toString(space.ageHistogram()));
+        ReclaimableSpace.Totals owner = space.owners().get(System.getProperty("user.name"));
+        Assert.assertEquals(owner.files(), 3, space.toString());
+        Assert.assertEquals(owner.bytes(), 60);
+    }
+
+    private static void createFile(File root, String name, int length, long mtime)
+            throws Exception {
+        File file = new File(root, name);
+        Files.createParentDirs(file);
+        Files.write(new byte[length], file);
+        Assert.assertTrue(file.setLastModified(mtime));
+    }
+}
@@ -0,0 +1,69 @@
+package com.fsfind.retention;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import com.fsfind.FSFindCursor;
+import com.fsfind.FSFindTestUtil;
+
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestCheckpointJournal {
+
+    private List<File> tmpDirs = new ArrayList<File>();
+    private FSFindTestUtil findTestUtil = new FSFindTestUtil();
+
+    @AfterClass(groups = {"unit"})
+    public void tearDown() throws Exception {
+        for (File tmpDir : tmpDirs) {
+            findTestUtil.deleteDir(tmpDir);
+        }
+    }
+
+    @Test(groups = {"unit"})
+    public void testResumeIncompleteRun() throws Exception {
+        File file = new File(createTmpDir(), "journal");
+        Path dirA = new Path("file:/tmp/a");
+        Path dirB = new Path("file:/tmp/b");
+
+        CheckpointJournal journal = new CheckpointJournal(file);
+        Assert.assertNull(journal.checkpoint("policy", "/tmp/*", dirA));
+        journal.record("policy", "/tmp/*", dirA, FSFindCursor.EXHAUSTED, 3);
+        journal.record("policy", "/tmp/*", dirB, FSFindCursor.EXHAUSTED, 5);
+        journal.record("policy", "/tmp/*", dirB, FSFindCursor.EXHAUSTED, 2);
+        journal.close(); // died before completing
+
+        // a crash half way through a write leaves a torn record behind
+        Files.append("{\"policy\":\"policy\",\"pa", file, Charsets.UTF_8);
+
+        journal = new CheckpointJournal(file);
+        Assert.assertEquals(journal.checkpoint("policy", "/tmp/*", dirA).deleted(), 3);
+        Assert.assertEquals(journal.checkpoint("policy", "/tmp/*", dirB).deleted(), 7);
+        Assert.assertTrue(journal.checkpoint("policy", "/tmp/*", dirB).cursor().isExhausted());
+        Assert.assertNull(journal.checkpoint("other", "/tmp/*", dirB));
+        journal.record("policy", "/tmp/*", dirA, FSFindCursor.EXHAUSTED, 1);
+        journal.close();
+
+        journal = new CheckpointJournal(file);
+        Assert.assertEquals(journal.checkpoint("policy", "/tmp/*", dirA).deleted(), 4);
+        journal.complete();
+
+        // completed run, next one starts from scratch
+        journal = new CheckpointJournal(file);
+        Assert.assertNull(journal.checkpoint("policy", "/tmp/*", dirA));
+        journal.close();
+    }
+
+    private File createTmpDir() {
+        File tmp = Files.createTempDir();
+        tmpDirs.add(tmp);
+        return tmp;
+    }
+}
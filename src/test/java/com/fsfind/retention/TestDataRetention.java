@@ -4,14 +4,19 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.Files;
 
+import com.fsfind.FSFindOrder;
+import com.fsfind.FSFindResult;
 import com.fsfind.FSFindTestUtil;
+import com.fsfind.FileStatusFilters;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.GnuParser;
 import org.apache.commons.cli.Options;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FilterFileSystem;
 import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
 import org.testng.Assert;
@@ -26,7 +31,12 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TestDataRetention {
 
@@ -185,6 +195,298 @@ public class TestDataRetention {
         Assert.assertTrue(base.exists());
     }
 
+    /* Dry run reports the same candidates as a real run but leaves them in place */
+    @Test(groups = {"unit"})
+    public void testDryRun() throws Exception {
+        File base = createTmpNameSpace();
+        long oneDayAgo = nTimeUnitsAgo(System.currentTimeMillis(), 1, TimeUnit.DAYS);
+        File subDir = new File(base, "sub");
+        List<File> files = touchFiles(oneDayAgo, base);
+        touchFiles(oneDayAgo, subDir);
+        touchFile(oneDayAgo, subDir, true);
+
+        retention.toggleDryRun(true);
+        int candidates;
+        try {
+            candidates = applyRetention(1, base.getCanonicalPath());
+        } finally {
+            retention.toggleDryRun(false);
+        }
+        Assert.assertEquals(candidates, files.size() + 1); // sub dir gets collapsed
+        Assert.assertTrue(subDir.exists());
+        for (File file : files) {
+            Assert.assertTrue(file.exists());
+        }
+        Assert.assertEquals(applyRetention(1, base.getCanonicalPath()), candidates);
+    }
+
+    /* A run that dies half way is resumed from the checkpoint journal by the next run */
+    @Test(groups = {"unit"})
+    public void testResumeFromCheckpoint() throws Exception {
+        File base = createTmpNameSpace();
+        long oneDayAgo = nTimeUnitsAgo(System.currentTimeMillis(), 1, TimeUnit.DAYS);
+        touchFiles(oneDayAgo, new File(base, "sub1"));
+        touchFiles(oneDayAgo, new File(base, "sub2"));
+        touchFiles(System.currentTimeMillis(), new File(base, "sub3"));
+        File journalFile = new File(createTmpNameSpace(), "journal");
+        Map<String, Integer> pathMappings = Maps.newHashMap();
+        pathMappings.put(base.getCanonicalPath(), 1);
+        DataRetentionPolicy policy = new DataRetentionPolicy(4, pathMappings);
+
+        DataRetention crashing = new DataRetention(localFS) {
+            private int batches = 0;
+
+            @Override
+            protected CountDownLatch doDeletes(FileSystem fs, FSFindResult result,
+                                               long purgeTime) {
+                if (++batches == 2) {
+                    throw new IllegalStateException("crash");
+                }
+                return super.doDeletes(fs, result, purgeTime);
+            }
+        };
+        crashing.toggleDryRun(false);
+        crashing.setJournal(new CheckpointJournal(journalFile));
+        try {
+            crashing.applyPolicy("policy", policy);
+            Assert.fail("Expected the run to crash");
+        } catch (IllegalStateException expected) {
+            // the journal is left behind as is, without a complete marker
+        }
+
+        CheckpointJournal journal = new CheckpointJournal(journalFile);
+        retention.setJournal(journal);
+        try {
+            // the first 4 files of sub1 were deleted before the crash, resuming from there
+            // deletes what is left of sub1 (collapsed into sub1 itself) and then sub2
+            Assert.assertEquals(retention.applyPolicy("policy", policy), 5);
+            journal.complete();
+        } finally {
+            retention.setJournal(null);
+        }
+        List<File> actual = Lists.newArrayList();
+        findTestUtil.allFiles(base, actual);
+        Assert.assertEquals(actual.size(), 6); // sub3 and its 5 recent files
+    }
+
+    /* the next batch is searched for while the deletes of the last one are still running */
+    @Test(groups = {"unit"})
+    public void testSearchOverlapsDeletes() throws Exception {
+        File base = createTmpNameSpace();
+        long oneDayAgo = nTimeUnitsAgo(System.currentTimeMillis(), 1, TimeUnit.DAYS);
+        touchFiles(oneDayAgo, new File(base, "sub1"));
+        final File sub2 = new File(base, "sub2");
+        touchFiles(oneDayAgo, sub2);
+        final CountDownLatch listedSub2 = new CountDownLatch(1);
+        final AtomicInteger deletesBeforeListing = new AtomicInteger();
+        // the deletes of the first batch (4 files of sub1) hold until the second batch lists sub2
+        FileSystem fs = new FilterFileSystem(localFS) {
+            @Override
+            public FileStatus[] listStatus(Path path) throws IOException {
+                if (path.getName().equals(sub2.getName())) {
+                    listedSub2.countDown();
+                }
+                return super.listStatus(path);
+            }
+
+            @Override
+            public boolean delete(Path path, boolean recursive) throws IOException {
+                try {
+                    if (!listedSub2.await(10, TimeUnit.SECONDS)) {
+                        deletesBeforeListing.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return super.delete(path, recursive);
+            }
+        };
+        DataRetention pipelined = new DataRetention(fs);
+        pipelined.toggleDryRun(false);
+        Map<String, Integer> pathMappings = Maps.newHashMap();
+        pathMappings.put(base.getCanonicalPath(), 1);
+        // 4 files of sub1, what is left of sub1 collapsed with 3 files of sub2, the rest of sub2
+        Assert.assertEquals(pipelined.applyPolicy(new DataRetentionPolicy(4, pathMappings)), 9);
+        Assert.assertEquals(deletesBeforeListing.get(), 0);
+        Assert.assertEquals(base.list().length, 0);
+    }
+
+    /* policies applied concurrently delete and account for the same as applied one by one */
+    @Test(groups = {"unit"})
+    public void testConcurrentPolicies() throws Exception {
+        DataRetention serial = new DataRetention(localFS);
+        serial.toggleDryRun(false);
+        File serialBase = createTmpNameSpace();
+        int serialDeleted = serial.applyPolicies(twoPolicies(serialBase));
+
+        DataRetention concurrent = new DataRetention(localFS);
+        concurrent.toggleDryRun(false);
+        concurrent.useConcurrency(3);
+        File concurrentBase = createTmpNameSpace();
+        Assert.assertEquals(concurrent.applyPolicies(twoPolicies(concurrentBase)),
+                serialDeleted);
+        Assert.assertEquals(concurrent.reclaimed().files(), 20);
+        Assert.assertEquals(concurrent.reclaimed().files(), serial.reclaimed().files());
+        List<File> actual = Lists.newArrayList();
+        findTestUtil.allFiles(concurrentBase, actual);
+        // the matched directories themselves are kept, emptied, sub5 keeps its 5 recent files
+        Assert.assertEquals(actual.size(), 10);
+    }
+
+    /* a directory matched by two patterns is governed by the more specific one, and listed once */
+    @Test(groups = {"unit"})
+    public void testOverlappingPatterns() throws Exception {
+        File base = createTmpNameSpace();
+        long twoDaysAgo = nTimeUnitsAgo(System.currentTimeMillis(), 2, TimeUnit.DAYS);
+        final File kept = new File(base, "keep/x");
+        touchFiles(twoDaysAgo, kept);
+        touchFiles(twoDaysAgo, new File(base, "logs/x"));
+        final AtomicInteger keptListings = new AtomicInteger();
+        FileSystem fs = new FilterFileSystem(localFS) {
+            @Override
+            public FileStatus[] listStatus(Path path) throws IOException {
+                if (path.toUri().getPath().equals(kept.getCanonicalPath())) {
+                    keptListings.incrementAndGet();
+                }
+                return super.listStatus(path);
+            }
+        };
+        DataRetention overlapping = new DataRetention(fs);
+        overlapping.toggleDryRun(false);
+        Map<String, Integer> everything = Maps.newHashMap();
+        everything.put(base.getCanonicalPath() + "/*", 1);
+        Map<String, Integer> keep = Maps.newHashMap();
+        keep.put(base.getCanonicalPath() + "/keep/*", 30);
+        Map<String, DataRetentionPolicy> policies = Maps.newLinkedHashMap();
+        policies.put("everything", new DataRetentionPolicy(Integer.MAX_VALUE, everything));
+        policies.put("keep", new DataRetentionPolicy(Integer.MAX_VALUE, keep));
+
+        // logs/x is deleted whole, keep/x is governed by the 30 days of keep/*
+        Assert.assertEquals(overlapping.applyPolicies(policies), 1);
+        Assert.assertEquals(kept.list().length, 5);
+        Assert.assertFalse(new File(base, "logs/x").exists());
+        Assert.assertEquals(keptListings.get(), 1);
+    }
+
+    /* a capacity mapping would be planned on the file system, not on the dump */
+    @Test(groups = {"unit"}, expectedExceptions = IllegalArgumentException.class)
+    public void testImageWithCapacity() throws Exception {
+        Map<String, String> budget = Maps.newHashMap();
+        budget.put("/data/logs/*", "1g");
+        DataRetention imaged = new DataRetention(localFS);
+        imaged.useImage(new File("fsimage.tsv"));
+        imaged.applyPolicy(new DataRetentionPolicy(Integer.MAX_VALUE, null, null, budget));
+    }
+
+    @Test(groups = {"unit"}, expectedExceptions = IllegalArgumentException.class)
+    public void testImageWithOrder() throws Exception {
+        Map<String, Integer> week = Maps.newHashMap();
+        week.put("/data/logs/*", 7);
+        DataRetention imaged = new DataRetention(localFS);
+        imaged.useImage(new File("fsimage.tsv"));
+        imaged.useOrder(FSFindOrder.LARGEST_FIRST);
+        imaged.applyPolicy(new DataRetentionPolicy(Integer.MAX_VALUE, week));
+    }
+
+    /* a pattern in two policies is governed by the rule which keeps more, globbed once */
+    @Test(groups = {"unit"})
+    public void testPatternInTwoPolicies() throws Exception {
+        final File base = createTmpNameSpace();
+        long tenDaysAgo = nTimeUnitsAgo(System.currentTimeMillis(), 10, TimeUnit.DAYS);
+        File logs = new File(base, "logs");
+        touchFiles(tenDaysAgo, logs);
+        final AtomicInteger baseListings = new AtomicInteger();
+        FileSystem fs = new FilterFileSystem(localFS) {
+            @Override
+            public FileStatus[] listStatus(Path path) throws IOException {
+                if (path.toUri().getPath().equals(base.getCanonicalPath())) {
+                    baseListings.incrementAndGet();
+                }
+                return super.listStatus(path);
+            }
+        };
+        DataRetention twice = new DataRetention(fs);
+        twice.toggleDryRun(false);
+        Map<String, Integer> week = Maps.newHashMap();
+        week.put(base.getCanonicalPath() + "/*", 7);
+        Map<String, Integer> month = Maps.newHashMap();
+        month.put(base.getCanonicalPath() + "/*/", 30);
+        Map<String, DataRetentionPolicy> policies = Maps.newLinkedHashMap();
+        policies.put("week", new DataRetentionPolicy(Integer.MAX_VALUE, week));
+        policies.put("month", new DataRetentionPolicy(Integer.MAX_VALUE, month));
+
+        Assert.assertEquals(twice.applyPolicies(policies), 0);
+        Assert.assertEquals(logs.list().length, 5);
+        Assert.assertEquals(baseListings.get(), 1);
+    }
+
+    /* candidates are moved into quarantine, can be restored from it, and are purged later */
+    @Test(groups = {"unit"})
+    public void testQuarantine() throws Exception {
+        File base = createTmpNameSpace();
+        long twoDaysAgo = nTimeUnitsAgo(System.currentTimeMillis(), 2, TimeUnit.DAYS);
+        File logs = new File(base, "logs");
+        List<File> files = touchFiles(twoDaysAgo, logs);
+        Path root = new Path(base.getCanonicalPath(), "quarantine");
+        Map<String, Integer> mapping = Maps.newHashMap();
+        mapping.put(base.getCanonicalPath() + "/*", 1);
+        DataRetentionPolicy policy = new DataRetentionPolicy(Integer.MAX_VALUE, mapping);
+
+        DataRetention quarantining = new DataRetention(localFS);
+        quarantining.toggleDryRun(false);
+        quarantining.useQuarantine(root);
+        Assert.assertEquals(quarantining.applyPolicy(policy), 5);
+        Assert.assertEquals(logs.list().length, 0);
+        File runDir = new File(localFS.listStatus(root)[0].getPath().toUri().getPath());
+        Assert.assertEquals(new File(runDir, logs.getCanonicalPath()).list().length, 5);
+
+        Assert.assertEquals(quarantining.restoreQuarantine(new Path(runDir.getPath())), 5);
+        Assert.assertEqualsNoOrder(logs.listFiles(), files.toArray());
+        Assert.assertFalse(runDir.exists());
+
+        // the quarantine directory now matches the policy's pattern, and is left alone
+        DataRetention again = new DataRetention(localFS);
+        again.toggleDryRun(false);
+        again.useQuarantine(root);
+        Assert.assertEquals(again.applyPolicy(policy), 5);
+        Assert.assertEquals(again.purgeQuarantine(root, 1), 0);
+        // expiry goes by the start time of the run the directory is named after, not its mtime
+        for (FileStatus run : localFS.listStatus(root)) {
+            localFS.setTimes(run.getPath(), twoDaysAgo, -1);
+        }
+        Assert.assertEquals(again.purgeQuarantine(root, 1), 0);
+        Path earlierRun = new Quarantine(localFS, root, twoDaysAgo).runDir();
+        Assert.assertTrue(localFS.rename(localFS.listStatus(root)[0].getPath(), earlierRun));
+        Assert.assertTrue(localFS.mkdirs(new Path(root, "not-a-run")));
+        Assert.assertEquals(again.purgeQuarantine(root, 1), 1);
+        Assert.assertEquals(localFS.listStatus(root).length, 1);
+        Assert.assertEquals(logs.list().length, 0);
+    }
+
+    /* a delete submitted once the workers are shut down is rejected, not queued for nobody */
+    @Test(groups = {"unit"}, expectedExceptions = RejectedExecutionException.class)
+    public void testDeleteAfterShutdown() {
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(1), DataRetention.WAIT_FOR_ROOM);
+        workers.shutdown();
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+    }
+
+    @Test(groups = {"unit"})
+    public void testRoundRobin() {
+        List<List<String>> lists = Lists.newArrayList();
+        lists.add(Lists.newArrayList("a1", "a2", "a3"));
+        lists.add(Lists.<String>newArrayList());
+        lists.add(Lists.newArrayList("b1"));
+        lists.add(Lists.newArrayList("c1", "c2"));
+        Assert.assertEquals(DataRetention.roundRobin(lists),
+                Lists.newArrayList("a1", "b1", "c1", "a2", "c2", "a3"));
+    }
+
     @Test(groups = {"unit"})
     public void tesMatchingDirectories() throws Exception {
         File base = createTmpNameSpace();
@@ -195,7 +497,7 @@ public class TestDataRetention {
         sub2.mkdir();
         sub3.mkdir();
         String pathPattern = base.getCanonicalPath() + "/sub*";
-        List<Path> dirs = retention.matchingDirectories(pathPattern);
+        List<Path> dirs = retention.matchingDirectories(localFS, pathPattern);
         Assert.assertEquals(dirs.size(), 2);
         Assert.assertEqualsNoOrder(dirs.toArray(), new Path[]{fileToPath(sub1), fileToPath(sub2)});
     }
@@ -271,6 +573,129 @@ public class TestDataRetention {
         Assert.assertTrue(baseB.exists());
     }
 
+    /* the oldest files go until the path is within its budget, a directory of them included */
+    @Test(groups = {"unit"})
+    public void testCapacityTarget() throws Exception {
+        File base = createTmpNameSpace();
+        long now = System.currentTimeMillis();
+        List<String> names = Lists.newArrayList("old/a", "old/b", "c", "d", "e");
+        for (int i = 0; i < names.size(); i++) {
+            File file = new File(base, names.get(i));
+            Files.createParentDirs(file);
+            Files.write(new byte[100], file);
+            file.setLastModified(nTimeUnitsAgo(now, 10 - i, TimeUnit.DAYS));
+        }
+        Map<String, String> capacityMapping = Maps.newHashMap();
+        capacityMapping.put(base.getCanonicalPath(), "250");
+        DataRetentionPolicy policy = new DataRetentionPolicy(10, null, null, capacityMapping);
+
+        Assert.assertEquals(retention.applyPolicy(policy), 2);
+        List<File> actual = Lists.newArrayList();
+        findTestUtil.allFiles(base, actual);
+        Assert.assertEqualsNoOrder(actual.toArray(), new File[]{new File(base, "d"),
+                new File(base, "e")});
+        // within budget now, nothing else goes
+        Assert.assertEquals(retention.applyPolicy(policy), 0);
+    }
+
+    /* without a batch size, what the plan purges is streamed in one walk, never held in a batch */
+    @Test(groups = {"unit"})
+    public void testUnbatchedCapacityStreams() throws Exception {
+        File base = createTmpNameSpace();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            File file = new File(base, "f" + i);
+            Files.write(new byte[100], file);
+            file.setLastModified(nTimeUnitsAgo(now, 10 - i, TimeUnit.DAYS));
+        }
+        Map<String, String> capacityMapping = Maps.newHashMap();
+        capacityMapping.put(base.getCanonicalPath(), "250");
+        DataRetentionPolicy policy = new DataRetentionPolicy(Integer.MAX_VALUE, null, null,
+                capacityMapping);
+        final AtomicInteger batches = new AtomicInteger();
+        DataRetention streaming = new DataRetention(localFS) {
+            @Override
+            protected CountDownLatch doDeletes(FileSystem fs, FSFindResult result,
+                                               long purgeTime) {
+                batches.incrementAndGet();
+                return super.doDeletes(fs, result, purgeTime);
+            }
+        };
+        streaming.toggleDryRun(false);
+        streaming.useOrder(FSFindOrder.LARGEST_FIRST);
+        Assert.assertEquals(streaming.applyPolicy(policy), 3);
+        Assert.assertEquals(batches.get(), 0);
+        Assert.assertEqualsNoOrder(base.list(), new String[]{"f3", "f4"});
+    }
+
+    /* files the filter keeps count toward the budget, only the ones it accepts go, oldest first */
+    @Test(groups = {"unit"})
+    public void testCapacityCountsFilteredFiles() throws Exception {
+        File base = createTmpNameSpace();
+        long now = System.currentTimeMillis();
+        List<String> names = Lists.newArrayList("big", "a", "b", "c");
+        for (int i = 0; i < names.size(); i++) {
+            File file = new File(base, names.get(i));
+            Files.write(new byte[i == 0 ? 300 : 100], file);
+            file.setLastModified(nTimeUnitsAgo(now, 10 - i, TimeUnit.DAYS));
+        }
+        Map<String, String> capacityMapping = Maps.newHashMap();
+        capacityMapping.put(base.getCanonicalPath(), "450");
+        // one at a time, oldest first whatever order is asked for
+        DataRetentionPolicy policy = new DataRetentionPolicy(1, null, null, capacityMapping);
+        retention.useFilter(FileStatusFilters.sizeAtMost(100));
+        retention.useOrder(FSFindOrder.LARGEST_FIRST);
+        try {
+            Assert.assertEquals(retention.applyPolicy(policy), 2);
+        } finally {
+            retention.useFilter(FileStatusFilters.all());
+            retention.useOrder(FSFindOrder.WALK);
+        }
+        List<File> actual = Lists.newArrayList();
+        findTestUtil.allFiles(base, actual);
+        Assert.assertEqualsNoOrder(actual.toArray(), new File[]{new File(base, "big"),
+                new File(base, "c")});
+    }
+
+    /* a run which fails part way keeps the listing index of the last run that completed */
+    @Test(groups = {"unit"})
+    public void testFailedRunKeepsListingIndex() throws Exception {
+        File base = createTmpNameSpace();
+        final File sub2 = new File(base, "sub2");
+        Assert.assertTrue(new File(base, "sub1").mkdirs() && sub2.mkdirs());
+        File indexFile = new File(createTmpNameSpace(), "listings");
+        String[] args = new String[]{"-" + DataRetention.HDFS_PATH, base.getCanonicalPath(),
+                "-" + DataRetention.NUM_DAYS, "1", "-" + DataRetention.DELETE,
+                "-" + DataRetention.LISTING_INDEX, indexFile.getPath()};
+        new DataRetention(new FilterFileSystem(localFS) {
+            @Override
+            public void close() {
+                // the local filesystem is shared by the tests
+            }
+        }).run(parser.parse(options, args));
+        byte[] completed = Files.toByteArray(indexFile);
+
+        FileSystem failing = new FilterFileSystem(localFS) {
+            @Override
+            public FileStatus[] listStatus(Path path) throws IOException {
+                if (path.getName().equals(sub2.getName())) {
+                    throw new IOException("Failed listing " + path);
+                }
+                return super.listStatus(path);
+            }
+        };
+        // sub2 was listed by the first run, it has to be listed again once it changed
+        Files.touch(new File(sub2, "new"));
+        try {
+            new DataRetention(failing).run(parser.parse(options, args));
+            Assert.fail();
+        } catch (IOException e) {
+            // expected
+        }
+        Assert.assertEquals(Files.toByteArray(indexFile), completed);
+        Assert.assertFalse(new File(indexFile.getPath() + ".next").exists());
+    }
+
     @Test(groups = {"unit"})
     /* Non existing dir don't throw exception */
     public void testRetentionNonExistingPath() throws Exception {
@@ -308,6 +733,14 @@ public class TestDataRetention {
         cl = parser.parse(options, args);
         Assert.assertFalse(retention.isValidOption(cl));
 
+        // Test give both FSIMAGE and LISTING_INDEX. Expect false.
+        args = new String[]{
+                "-" + DataRetention.CONF_FILE, mockConfFile, "-" + DataRetention.FSIMAGE,
+                "fsimage.tsv", "-" + DataRetention.LISTING_INDEX, "listings",
+        };
+        cl = parser.parse(options, args);
+        Assert.assertFalse(retention.isValidOption(cl));
+
         // Test give CONF_FILE and POLICY. Expect true.
         args = new String[]{
                 "-" + DataRetention.CONF_FILE, mockConfFile, "-" + DataRetention.POLICY, mockPolicy,
@@ -343,6 +776,23 @@ public class TestDataRetention {
         return retention.applyPolicy(policy);
     }
 
+    /* sub1 and sub2 in one policy, sub3 to sub5 batched in another, only sub5 is recent */
+    private Map<String, DataRetentionPolicy> twoPolicies(File base) throws IOException {
+        long oneDayAgo = nTimeUnitsAgo(System.currentTimeMillis(), 1, TimeUnit.DAYS);
+        for (int i = 1; i <= 4; i++) {
+            touchFiles(oneDayAgo, new File(base, "sub" + i));
+        }
+        touchFiles(System.currentTimeMillis(), new File(base, "sub5"));
+        Map<String, Integer> first = Maps.newHashMap();
+        first.put(base.getCanonicalPath() + "/sub[12]", 1);
+        Map<String, Integer> second = Maps.newHashMap();
+        second.put(base.getCanonicalPath() + "/sub[345]", 1);
+        Map<String, DataRetentionPolicy> policies = Maps.newLinkedHashMap();
+        policies.put("first", new DataRetentionPolicy(Integer.MAX_VALUE, first));
+        policies.put("second", new DataRetentionPolicy(2, second));
+        return policies;
+    }
+
     private void touchFile(long time, File fileToCreate, boolean isDirectory) throws IOException {
         if (isDirectory) {
             fileToCreate.mkdirs();
@@ -9,6 +9,7 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -25,10 +26,18 @@ public class TestDataRetentionConfiguration {
         Map<String, Integer> opsPaths = new HashMap<String, Integer>();
         opsPaths.put("/user/mysql/path1", 5);
         opsPaths.put("/user/mysql/path2", 10);
-        DataRetentionPolicy opsPolicy = new DataRetentionPolicy(500, opsPaths);
+        DataRetentionPolicy opsPolicy = new DataRetentionPolicy(500, opsPaths,
+                Arrays.asList("dt={yyyy-MM-dd}/hr={HH}"));
+
+        Map<String, String> sparkCapacity = new HashMap<String, String>();
+        sparkCapacity.put("/tmp/spark-events", "5t");
+        DataRetentionPolicy sparkPolicy = new DataRetentionPolicy(500, null, null,
+                sparkCapacity, 200, 50);
+        Assert.assertEquals(sparkPolicy.getCapacity("/tmp/spark-events"), 5L << 40);
 
         expected.put("grid.etl", etlPolicy);
         expected.put("ops.mysql", opsPolicy);
+        expected.put("spark", sparkPolicy);
 
         ObjectMapper mapper = new ObjectMapper();
         String json = mapper.writeValueAsString(expected);
@@ -0,0 +1,56 @@
+package com.fsfind.retention;
+
+import com.google.common.io.Files;
+
+import com.fsfind.FSFindMetrics;
+import com.fsfind.FSFindTestUtil;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+
+public class TestDeleteCallable {
+
+    private FileSystem localFS;
+    private File base;
+
+    @BeforeClass(groups = {"unit"})
+    public void setUp() throws Exception {
+        localFS = FileSystem.getLocal(new Configuration());
+        base = Files.createTempDir();
+    }
+
+    @AfterClass(groups = {"unit"})
+    public void tearDown() throws Exception {
+        localFS.close();
+        new FSFindTestUtil().deleteDir(base);
+    }
+
+    /* a candidate modified since it was found is skipped, unless it isn't checked again */
+    @Test(groups = {"unit"})
+    public void testRecheck() throws Exception {
+        File file = new File(base, "part-00000");
+        Assert.assertTrue(file.createNewFile());
+        Path path = new Path(file.getCanonicalPath());
+        FSFindMetrics metrics = new FSFindMetrics("test");
+        CountDownLatch latch = new CountDownLatch(2);
+
+        Assert.assertFalse(new DeleteCallable(localFS, path, latch, file.lastModified(), null,
+                null, metrics).call());
+        Assert.assertTrue(file.exists());
+        Assert.assertTrue(new DeleteCallable(localFS, path, latch, DeleteCallable.NO_RECHECK,
+                new DeleteLimiter(1, 1, 1), null, metrics).call());
+        Assert.assertFalse(file.exists());
+
+        Assert.assertEquals(latch.getCount(), 0);
+        Assert.assertEquals(metrics.get(FSFindMetrics.Counter.DELETES_SKIPPED), 1);
+        Assert.assertEquals(metrics.get(FSFindMetrics.Counter.DELETES_SUCCEEDED), 1);
+    }
+}
@@ -0,0 +1,98 @@
+package com.fsfind.retention;
+
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.RetriableException;
+import org.apache.hadoop.ipc.StandbyException;
+import org.apache.hadoop.security.AccessControlException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestDeleteLimiter {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test(groups = {"unit"})
+    public void testAdditiveIncreaseMultiplicativeDecrease() {
+        DeleteLimiter limiter = new DeleteLimiter(2, 8, 5, 10);
+        window(limiter, 10 * MS, 0);
+        Assert.assertEquals(limiter.limit(), 6);
+        // a bit slower than the best window is within the tolerance
+        window(limiter, 15 * MS, 0);
+        Assert.assertEquals(limiter.limit(), 7);
+        window(limiter, 10 * MS, 0);
+        window(limiter, 10 * MS, 0);
+        Assert.assertEquals(limiter.limit(), 8, "the limit can't go over the max");
+        window(limiter, 30 * MS, 0);
+        Assert.assertEquals(limiter.limit(), 4, "three times slower halves the limit");
+        window(limiter, 10 * MS, 1);
+        Assert.assertEquals(limiter.limit(), 2, "an overload halves the limit");
+        window(limiter, 10 * MS, 10);
+        Assert.assertEquals(limiter.limit(), 2, "the limit can't go under the min");
+    }
+
+    /* deletes of big directories after deletes of single files back off, then recover */
+    @Test(groups = {"unit"})
+    public void testSlowerDeletesAfterFastOnes() {
+        DeleteLimiter limiter = new DeleteLimiter(1, 8, 4, 10);
+        for (int i = 0; i < 3; i++) {
+            window(limiter, MS / 2, 0);
+        }
+        Assert.assertEquals(limiter.limit(), 7);
+        window(limiter, 20 * MS, 0);
+        Assert.assertEquals(limiter.limit(), 3);
+        for (int i = 0; i < 10; i++) {
+            window(limiter, 20 * MS, 0);
+        }
+        Assert.assertTrue(limiter.limit() > 5, "the baseline rose to the slower deletes");
+    }
+
+    @Test(groups = {"unit"})
+    public void testOverload() {
+        Assert.assertTrue(DeleteLimiter.isOverload(new SocketTimeoutException()));
+        Assert.assertTrue(DeleteLimiter.isOverload(new RetriableException("safe mode")));
+        Assert.assertTrue(DeleteLimiter.isOverload(new IOException(new RemoteException(
+                StandbyException.class.getName(), "standby"))));
+        Assert.assertFalse(DeleteLimiter.isOverload(new AccessControlException("denied")));
+        Assert.assertFalse(DeleteLimiter.isOverload(new RemoteException(
+                AccessControlException.class.getName(), "denied")));
+    }
+
+    @Test(groups = {"unit"})
+    public void testAcquireWaitsForRelease() throws Exception {
+        final DeleteLimiter limiter = new DeleteLimiter(1, 1, 1);
+        limiter.acquire();
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiting = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    limiter.acquire();
+                    acquired.countDown();
+                } catch (InterruptedException e) {
+                    // the test fails on the latch
+                }
+            }
+        };
+        waiting.start();
+        Assert.assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        limiter.release(MS, false);
+        Assert.assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        waiting.join();
+    }
+
+    @Test(groups = {"unit"}, expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidBounds() {
+        new DeleteLimiter(4, 2, 3);
+    }
+
+    private static void window(DeleteLimiter limiter, long latency, int failures) {
+        for (int i = 0; i < 10; i++) {
+            limiter.record(latency, i < failures);
+        }
+    }
+}
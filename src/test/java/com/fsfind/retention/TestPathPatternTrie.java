@@ -0,0 +1,58 @@
+package com.fsfind.retention;
+
+import com.google.common.collect.Lists;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestPathPatternTrie {
+
+    private final PathPatternTrie trie = new PathPatternTrie(Lists.newArrayList(
+            "/data/*", "/data/logs/*", "/data/l*", "/data/logs", "/data/*"));
+
+    @Test(groups = {"unit"})
+    public void testMatches() {
+        Assert.assertEquals(trie.matches(new Path("hdfs://nn/data/logs")),
+                Lists.newArrayList(0, 2, 3, 4));
+        Assert.assertEquals(trie.matches(new Path("/data/logs/x")), Lists.newArrayList(1));
+        Assert.assertTrue(trie.matches(new Path("/data/logs/x/y")).isEmpty());
+        Assert.assertTrue(trie.matches(new Path("/data")).isEmpty());
+    }
+
+    @Test(groups = {"unit"})
+    public void testGoverning() {
+        // literal before wildcard, more literal characters, then the first one
+        Assert.assertEquals(trie.governing(new Path("/data/logs")), 3);
+        Assert.assertEquals(trie.governing(new Path("/data/lib")), 2);
+        Assert.assertEquals(trie.governing(new Path("/data/tmp")), 0);
+        Assert.assertEquals(trie.governing(new Path("/tmp")), -1);
+    }
+
+    @Test(groups = {"unit"})
+    public void testTieGoesToNameOrder() {
+        PathPatternTrie tie = new PathPatternTrie(Lists.newArrayList("/x/y*", "/x/*y"));
+        Assert.assertTrue(tie.equallySpecific(0, 1));
+        Assert.assertEquals(tie.governing(new Path("/x/yy")), 1);
+        PathPatternTrie reversed = new PathPatternTrie(Lists.newArrayList("/x/*y", "/x/y*"));
+        Assert.assertEquals(reversed.governing(new Path("/x/yy")), 0);
+        Assert.assertFalse(trie.equallySpecific(0, 3));
+    }
+
+    @Test(groups = {"unit"})
+    public void testUnclaimedUnder() {
+        Assert.assertTrue(trie.unclaimedUnder(new Path("/data/logs")).accept(
+                dir("file:/data/logs")), "the directory searched itself");
+        Assert.assertFalse(trie.unclaimedUnder(new Path("/data/logs")).accept(
+                dir("/data/logs/x")));
+        Assert.assertTrue(trie.unclaimedUnder(new Path("/data/logs")).accept(
+                dir("/data/logs/x/y")));
+        Assert.assertTrue(trie.unclaimedUnder(new Path("/data")).accept(
+                new FileStatus(0, false, 1, 0, 0, new Path("/data/logs"))), "files");
+    }
+
+    private static FileStatus dir(String path) {
+        return new FileStatus(0, true, 0, 0, 0, new Path(path));
+    }
+}
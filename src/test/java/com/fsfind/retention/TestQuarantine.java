@@ -0,0 +1,75 @@
+package com.fsfind.retention;
+
+import com.google.common.io.Files;
+
+import com.fsfind.FSFindTestUtil;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+public class TestQuarantine {
+
+    private FileSystem localFS;
+    private File base;
+
+    @BeforeClass(groups = {"unit"})
+    public void setUp() throws Exception {
+        localFS = FileSystem.getLocal(new Configuration());
+        base = Files.createTempDir();
+    }
+
+    @AfterClass(groups = {"unit"})
+    public void tearDown() throws Exception {
+        localFS.close();
+        new FSFindTestUtil().deleteDir(base);
+    }
+
+    /* runs started in the same second get directories of their own, all of them expire */
+    @Test(groups = {"unit"})
+    public void testRunDirs() throws Exception {
+        Path root = new Path(base.getCanonicalPath(), "runs");
+        long twoDaysAgo = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2);
+        Path first = new Quarantine(localFS, root, twoDaysAgo).runDir();
+        Path second = new Quarantine(localFS, root, twoDaysAgo).runDir();
+        Assert.assertNotEquals(first, second);
+        localFS.mkdirs(first);
+        localFS.mkdirs(second);
+        // named by an earlier version, in the default time zone
+        localFS.mkdirs(new Path(root, new SimpleDateFormat("yyyyMMdd-HHmmss")
+                .format(new Date(twoDaysAgo))));
+        localFS.mkdirs(new Path(root, "20240101-000000Z-notarun"));
+        long oneDayAgo = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+        Assert.assertEquals(Quarantine.expired(localFS, root, oneDayAgo).size(), 3);
+        Assert.assertTrue(Quarantine.expired(localFS, root, twoDaysAgo - 1000).isEmpty());
+    }
+
+    /* a directory isn't moved onto the parent created for a path under it */
+    @Test(groups = {"unit"})
+    public void testMoveOntoExisting() throws Exception {
+        File logs = new File(base, "logs");
+        File old = new File(logs, "x/old");
+        Assert.assertTrue(old.getParentFile().mkdirs());
+        Assert.assertTrue(old.createNewFile());
+        Quarantine quarantine = new Quarantine(localFS, new Path(base.getCanonicalPath(),
+                "quarantine"), System.currentTimeMillis());
+        Path x = new Path(old.getParentFile().getCanonicalPath());
+
+        Assert.assertTrue(quarantine.move(localFS, new Path(old.getCanonicalPath())));
+        Assert.assertFalse(quarantine.move(localFS, x));
+        Assert.assertTrue(localFS.exists(x));
+        Assert.assertEquals(localFS.listStatus(quarantine.target(x)).length, 1);
+
+        Assert.assertEquals(Quarantine.restore(localFS, quarantine.runDir()), 1);
+        Assert.assertTrue(old.exists());
+    }
+}
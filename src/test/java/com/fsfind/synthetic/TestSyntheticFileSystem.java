@@ -0,0 +1,127 @@
+package com.fsfind.synthetic;
+
+import com.fsfind.FSFindImpl;
+import com.fsfind.FSFindQuery;
+import com.fsfind.FSFindResult;
+import com.fsfind.FSOperation;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+public class TestSyntheticFileSystem {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final long NOW = 1402358400000L + DAY / 2; // noon of 2014-06-10 UTC
+
+    /* 3 tables of 10 daily partitions of 5 files */
+    private static NamespaceGenerator generator(long seed) {
+        return NamespaceGenerator.builder()
+                .under("/data")
+                .directories("table", 3)
+                .partitions("'dt='yyyy-MM-dd", DAY, 10)
+                .files(5)
+                .sizes(10, 100)
+                .now(NOW)
+                .seed(seed)
+                .build();
+    }
+
+    @Test(groups = {"unit"})
+    public void testGeneratedNamespace() throws Exception {
+        FileSystem fs = new SyntheticFileSystem(generator(1));
+        Assert.assertEquals(generator(1).totalFiles(), 150);
+        FileStatus[] tables = fs.listStatus(new Path("/data"));
+        Assert.assertEquals(tables.length, 3);
+        Assert.assertEquals(tables[0].getPath(), new Path("synthetic:/data/table00000"));
+
+        FileStatus[] partitions = fs.listStatus(tables[1].getPath());
+        Assert.assertEquals(partitions.length, 10);
+        Assert.assertEquals(partitions[0].getPath().getName(), "dt=2014-06-01");
+        Assert.assertEquals(partitions[9].getPath().getName(), "dt=2014-06-10");
+        long from = NOW - DAY / 2 - 9 * DAY;
+        for (FileStatus file : fs.listStatus(partitions[0].getPath())) {
+            Assert.assertTrue(file.getModificationTime() >= from, file.toString());
+            Assert.assertTrue(file.getModificationTime() < from + DAY, file.toString());
+            Assert.assertTrue(file.getLen() >= 10 && file.getLen() < 100, file.toString());
+        }
+        // today's files are written by now
+        for (FileStatus file : fs.listStatus(partitions[9].getPath())) {
+            Assert.assertTrue(file.getModificationTime() <= NOW, file.toString());
+        }
+
+        Path file = new Path("/data/table00002/dt=2014-06-05/part-00004");
+        Assert.assertEquals(fs.getFileStatus(file),
+                new SyntheticFileSystem(generator(1)).getFileStatus(file));
+        Assert.assertEquals(fs.getFileStatus(file).getModificationTime(),
+                new SyntheticFileSystem(generator(1)).getFileStatus(file).getModificationTime());
+        Assert.assertFalse(fs.exists(new Path("/data/table00003")));
+        Assert.assertFalse(fs.exists(new Path("/data/table00002/dt=2014-06-11")));
+    }
+
+    /* the 5 days of partitions before the purge time are found, nothing is held in memory */
+    @Test(groups = {"unit"})
+    public void testSearch() throws Exception {
+        FileSystem fs = new SyntheticFileSystem(generator(2));
+        FSFindResult result = new FSFindImpl(fs).find(FSFindQuery.make(new Path("/data")),
+                NOW - DAY / 2 - 4 * DAY, Integer.MAX_VALUE);
+        Assert.assertEquals(result.size(), 75);
+    }
+
+    @Test(groups = {"unit"})
+    public void testDeletes() throws Exception {
+        SyntheticFileSystem fs = new SyntheticFileSystem(generator(3));
+        Path table = new Path("/data/table00000");
+        Path partition = new Path(table, "dt=2014-06-01");
+        long before = System.currentTimeMillis();
+        try {
+            fs.delete(partition, false);
+            Assert.fail("A non empty directory was deleted");
+        } catch (IOException e) {
+            // expected
+        }
+        Assert.assertTrue(fs.delete(new Path(partition, "part-00000"), false));
+        Assert.assertEquals(fs.listStatus(partition).length, 4);
+        Assert.assertTrue(fs.getFileStatus(partition).getModificationTime() >= before);
+
+        Assert.assertTrue(fs.delete(partition, true));
+        Assert.assertFalse(fs.delete(partition, true));
+        Assert.assertEquals(fs.listStatus(table).length, 9);
+        Assert.assertTrue(fs.getFileStatus(table).getModificationTime() >= before);
+        try {
+            fs.getFileStatus(new Path(partition, "part-00001"));
+            Assert.fail("A file under a deleted directory was found");
+        } catch (FileNotFoundException e) {
+            // expected
+        }
+        Assert.assertEquals(fs.deletes(), 2);
+    }
+
+    @Test(groups = {"unit"})
+    public void testLatencies() throws Exception {
+        LatencyInjectingFileSystem fs = new LatencyInjectingFileSystem(
+                new SyntheticFileSystem(generator(4), 2), 2);
+        fs.setLatency(FSOperation.GET_FILE_STATUS, 20, 5, TimeUnit.MILLISECONDS);
+        Path partition = new Path("/data/table00000/dt=2014-06-01");
+        long start = System.nanoTime();
+        fs.getFileStatus(partition);
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+        Assert.assertEquals(fs.calls(FSOperation.GET_FILE_STATUS), 1);
+
+        // 5 files in pages of 2
+        Assert.assertEquals(fs.listStatus(partition).length, 5);
+        Assert.assertEquals(fs.calls(FSOperation.LIST_STATUS), 3);
+        FSFindResult result = new FSFindImpl(fs).find(FSFindQuery.make(partition),
+                NOW, 2);
+        Assert.assertEquals(result.size(), 2);
+        // listed a page at a time, the page of the third file was fetched to find the batch
+        // full
+        Assert.assertEquals(fs.calls(FSOperation.LIST_STATUS), 5);
+    }
+}